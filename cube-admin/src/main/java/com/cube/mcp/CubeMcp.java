@@ -3,7 +3,6 @@ package com.cube.mcp;
 import cn.hutool.json.JSONUtil;
 import com.alibaba.fastjson.JSONObject;
 import com.cube.common.core.domain.AjaxResult;
-import com.cube.common.core.redis.RedisCache;
 import com.cube.common.entity.CustomMultipartFile;
 import com.cube.common.entity.UserInfoRequest;
 import com.cube.common.entity.UserSimpleInfo;
@@ -32,6 +31,9 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,9 +47,11 @@ import java.util.regex.Pattern;
 @RequiredArgsConstructor
 public class CubeMcp {
 
+    // 等待引擎回传结果的最长时间（秒）
+    private static final long RESULT_TIMEOUT_SECONDS = 200;
+
     private final UserInfoUtil userInfoUtil;
     private final MyWebSocketHandler myWebSocketHandler;
-    private final RedisCache redisCache;
     private final WechatMpController wechatMpController;
     private final AIGCController aigcController;
     private final MediaController mediaController;
@@ -115,18 +119,25 @@ public class CubeMcp {
             String taskId = UUID.randomUUID().toString();
             userInfoRequest.setTaskId(taskId);
             userInfoRequest.setRoles(aiConfig);
-            myWebSocketHandler.sendMsgToAI(userSimpleInfo.getCropId(), userInfoRequest);
-            for (int i = 0; i < 20; i++) {
-                Object cacheObject = redisCache.getCacheObject("mcp:" + userSimpleInfo.getUserId() + ":" + userInfoRequest.getAiName() + ":" + userInfoRequest.getTaskId());
-                if (cacheObject != null) {
-                    if(cacheObject instanceof McpResult) {
-                        return (McpResult) cacheObject;
-                    }
-                    return McpResult.fail("返回结果错误,请联系管理员", null);
-                }
-                Thread.sleep(10000);
+            // 先登记再下发，引擎回传结果时立即唤醒
+            CompletableFuture<String> future = MyWebSocketHandler.registerTask(taskId, RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if ("false".equals(myWebSocketHandler.sendMsgToAI(userSimpleInfo.getCropId(), userInfoRequest))) {
+                future.cancel(false);
+                return McpResult.fail(aiName + "未在线,请稍后重试", null);
+            }
+            // MCP 工具调用是同步的，只能阻塞等待，但不超过结果的等待时间
+            String result;
+            try {
+                result = future.get(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                MyWebSocketHandler.releaseTask(taskId, future);
+                return McpResult.fail(aiName + "响应超时,请稍后重试", null);
             }
-            return McpResult.fail("返回结果错误,请联系管理员", null);
+            McpResult mcpResult = JSONObject.parseObject(result, McpResult.class);
+            if (mcpResult == null) {
+                return McpResult.fail("返回结果错误,请联系管理员", null);
+            }
+            return mcpResult;
         } catch (Exception e) {
             // 使用增强的异常日志记�?
             return McpResult.fail(aiName + "调用异常,请联系管理员", null);
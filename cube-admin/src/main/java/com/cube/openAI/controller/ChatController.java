@@ -6,6 +6,7 @@ import com.cube.openAI.pojos.ChatCompletionResponse;
 import com.cube.openAI.pojos.ChatCompletionStreamResponse;
 import com.cube.openAI.pojos.Message;
 import com.cube.openAI.config.ModelRegistry;
+import com.cube.openAI.utils.AIResultUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -15,12 +16,14 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import reactor.core.publisher.Flux;
 
 import javax.validation.Valid;
 import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
 
 /**
  * @author muyou
@@ -31,6 +34,9 @@ import java.util.UUID;
 @RequestMapping("/v1") // 基础路径与OpenAI一致
 public class ChatController {
 
+    // 非流式请求的异步超时，需长于结果等待时间，由结果 future 先超时并返回明确的错误，而不是容器默认的 30 秒超时
+    static final long ASYNC_TIMEOUT_MILLIS = AIResultUtil.RESULT_TIMEOUT.plusSeconds(30).toMillis();
+
     @Autowired
     private ModelRegistry modelRegistry;
 
@@ -54,35 +60,47 @@ public class ChatController {
             );
         }
 
-        // 2. 调用模型生成结果
-        String responseText = model.generate(
+        // 2. 调用模型生成结果，引擎回传结果后再组装响应，等待期间释放请求线程
+        DeferredResult<ResponseEntity<ChatCompletionResponse>> deferredResult = new DeferredResult<>(ASYNC_TIMEOUT_MILLIS);
+        // 兜底：容器先超时时同样返回模型执行错误，而不是 503
+        deferredResult.onTimeout(() -> deferredResult.setErrorResult(
+                new RuntimeException(OpenAIExceptionConstants.MODEL_EXECUTE_ERROR)));
+        model.generateAsync(
                 request.getMessages(),
                 request.getTemperature(),
                 request.getMaxTokens()
-        );
-        // 3. 构建符合OpenAI规范的响应
-        long timestamp = System.currentTimeMillis() / 1000; // 秒级时间戳
-        ChatCompletionResponse response = ChatCompletionResponse.builder()
-                .id("chatcmpl-" + UUID.randomUUID().toString().substring(0, 10))
-                .created(timestamp)
-                .model(request.getModel())
-                .choices(List.of(
-                        ChatCompletionResponse.Choice.builder()
-                                .index(0)
-                                .message(new Message("assistant", responseText))
-                                .finishReason("stop")
-                                .build()
-                ))
-                .usage(ChatCompletionResponse.Usage.builder()
-                        .promptTokens(calculatePromptTokens(request.getMessages()))
-                        .completionTokens(responseText.length())
-                        .totalTokens(calculatePromptTokens(request.getMessages()) + responseText.length())
-                        .build())
-                .build();
+        ).thenApply(responseText -> {
+            // 3. 构建符合OpenAI规范的响应
+            long timestamp = System.currentTimeMillis() / 1000; // 秒级时间戳
+            ChatCompletionResponse response = ChatCompletionResponse.builder()
+                    .id("chatcmpl-" + UUID.randomUUID().toString().substring(0, 10))
+                    .created(timestamp)
+                    .model(request.getModel())
+                    .choices(List.of(
+                            ChatCompletionResponse.Choice.builder()
+                                    .index(0)
+                                    .message(new Message("assistant", responseText))
+                                    .finishReason("stop")
+                                    .build()
+                    ))
+                    .usage(ChatCompletionResponse.Usage.builder()
+                            .promptTokens(calculatePromptTokens(request.getMessages()))
+                            .completionTokens(responseText.length())
+                            .totalTokens(calculatePromptTokens(request.getMessages()) + responseText.length())
+                            .build())
+                    .build();
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE + ";charset=UTF-8")
-                .body(response);
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE + ";charset=UTF-8")
+                    .body(response);
+        }).whenComplete((response, e) -> {
+            if (e == null) {
+                deferredResult.setResult(response);
+            } else {
+                deferredResult.setErrorResult(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            }
+        });
+        return deferredResult;
     }
 
     // 简单计算输入令牌数（实际需根据模型tokenizer实现）
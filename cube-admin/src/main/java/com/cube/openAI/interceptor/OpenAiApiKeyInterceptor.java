@@ -3,7 +3,6 @@ package com.cube.openAI.interceptor;
 import com.cube.common.entity.UserSimpleInfo;
 import com.cube.openAI.utils.ApiKeyStore;
 import com.cube.openAI.utils.ThreadUserInfo;
-import com.cube.wechat.selfapp.app.mapper.SysHostWhitelistMapper;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
@@ -24,12 +23,10 @@ public class OpenAiApiKeyInterceptor implements HandlerInterceptor {
 
     private final ApiKeyStore apiKeyStore;
     private final ObjectMapper objectMapper;
-    private final SysHostWhitelistMapper whitelistMapper;
 
-    public OpenAiApiKeyInterceptor(ApiKeyStore apiKeyStore, ObjectMapper objectMapper,SysHostWhitelistMapper whitelistMapper) {
+    public OpenAiApiKeyInterceptor(ApiKeyStore apiKeyStore, ObjectMapper objectMapper) {
         this.apiKeyStore = apiKeyStore;
         this.objectMapper = objectMapper;
-        this.whitelistMapper = whitelistMapper;
     }
 
     @Override
@@ -66,11 +63,11 @@ public class OpenAiApiKeyInterceptor implements HandlerInterceptor {
             return false;
         }
         String cropId = split[0];
-//        检查主机ID是否有效
-        int i = whitelistMapper.selectActiveByHostId(cropId);
         String unionId = split[1];
-        String userId = apiKeyStore.isValid(unionId);
-        if (cropId == null || userId == null || i == 0) {
+//        检查主机ID与用户是否有效，结果有缓存
+        ApiKeyStore.ApiKeyInfo keyInfo = apiKeyStore.resolve(cropId, unionId);
+        String userId = keyInfo.getUserId();
+        if (!keyInfo.isValid()) {
             sendErrorResponse(response,
                     HttpStatus.UNAUTHORIZED.value(),
                     "invalid_api_key",
@@ -4,6 +4,7 @@ import com.cube.openAI.pojos.Message;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 // 所有AI模型的统一调用标准
 public interface AIModel {
@@ -12,6 +13,11 @@ public interface AIModel {
      */
     String generate(List<Message> messages, Double temperature, Integer maxTokens);
 
+    /**
+     * 非流式输出（异步），结果到达前不占用请求线程
+     */
+    CompletableFuture<String> generateAsync(List<Message> messages, Double temperature, Integer maxTokens);
+
     /**
      * 流式输出
      */
@@ -7,6 +7,7 @@ import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author muyou
@@ -25,6 +26,11 @@ public class BaiDuAI implements AIModel{
         }
     }
 
+    @Override
+    public CompletableFuture<String> generateAsync(List<Message> messages, Double temperature, Integer maxTokens) {
+        return AIResultUtil.waitForResultAsync(messages, "baidu", "baidu-agent");
+    }
+
     @Override
     public Flux<String> generateByStream(List<Message> messages, Double temperature, Integer maxTokens) {
         try {
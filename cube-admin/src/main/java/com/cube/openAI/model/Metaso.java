@@ -6,6 +6,7 @@ import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author muyou
@@ -24,6 +25,11 @@ public class Metaso implements AIModel{
         }
     }
 
+    @Override
+    public CompletableFuture<String> generateAsync(List<Message> messages, Double temperature, Integer maxTokens) {
+        return AIResultUtil.waitForResultAsync(messages, "metaso", "mita");
+    }
+
     @Override
     public Flux<String> generateByStream(List<Message> messages, Double temperature, Integer maxTokens) {
         try {
@@ -0,0 +1,82 @@
+package com.cube.openAI.utils;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/**
+ * 单个流式任务的结果通道
+ * 引擎推送的增量（openAIDelta）直接下发；旧版引擎推送的全量内容按已下发的前缀计算增量，两种方式可以混用。
+ * 页面改写了已下发的内容时，客户端已收到的部分无法撤回，只下发分歧点之后的内容，之后的增量以改写后的全文为基准。
+ *
+ * @author muyou
+ * dateStart 2024/8/4 9:34
+ * dateNow   2025/9/14 10:21
+ */
+public class AIResultStream {
+
+    private final Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
+
+    // 已下发给客户端的全部内容
+    private final StringBuilder emitted = new StringBuilder();
+
+    private boolean completed;
+
+    /**
+     * 追加增量内容
+     */
+    public synchronized void appendDelta(String delta) {
+        if (completed || delta == null || delta.isEmpty()) {
+            return;
+        }
+        emitted.append(delta);
+        sink.tryEmitNext(delta);
+    }
+
+    /**
+     * 追加全量内容，只下发比已下发内容多出的部分；与已下发内容不一致时按改写处理
+     */
+    public synchronized void appendFull(String content) {
+        if (completed || content == null) {
+            return;
+        }
+        if (content.startsWith(emitted.toString())) {
+            appendDelta(content.substring(emitted.length()));
+        } else {
+            reset(content);
+        }
+    }
+
+    /**
+     * 内容被改写，以改写后的全文为新的基准，下发分歧点之后的部分
+     */
+    public synchronized void reset(String content) {
+        if (completed || content == null) {
+            return;
+        }
+        int common = 0;
+        int max = Math.min(emitted.length(), content.length());
+        while (common < max && emitted.charAt(common) == content.charAt(common)) {
+            common++;
+        }
+        emitted.setLength(0);
+        emitted.append(content);
+        if (common < content.length()) {
+            sink.tryEmitNext(content.substring(common));
+        }
+    }
+
+    /**
+     * 结束流
+     */
+    public synchronized void complete() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        sink.tryEmitComplete();
+    }
+
+    public Flux<String> asFlux() {
+        return sink.asFlux();
+    }
+}
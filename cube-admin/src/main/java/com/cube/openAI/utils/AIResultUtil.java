@@ -1,7 +1,6 @@
 package com.cube.openAI.utils;
 
 import cn.hutool.core.lang.UUID;
-import com.cube.common.core.redis.RedisCache;
 import com.cube.common.entity.UserInfoRequest;
 import com.cube.common.entity.UserSimpleInfo;
 import com.cube.openAI.constants.OpenAIExceptionConstants;
@@ -11,11 +10,14 @@ import com.cube.wechat.selfapp.app.config.MyWebSocketHandler;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author muyou
@@ -24,121 +26,118 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 @Slf4j
 public class AIResultUtil {
-//    最大投射次数
-    private static final Long MAX_EMISSIONS = 1000L;
+//    非流式任务等待结果的最大时间
+    public static final Duration RESULT_TIMEOUT = Duration.ofSeconds(200);
+//    等待首个增量的最大时间（含浏览器启动、登录检查与指令输入）
+    private static final Duration FIRST_CONTENT_TIME = Duration.ofMinutes(3);
 //    内容保持的最大时间
-    private static final Long INTERVAL_TIME= 20 * 1000L;
+    private static final Duration INTERVAL_TIME = Duration.ofSeconds(20);
     public static String waitForResult(List<Message> messages, String aiName, String roles, boolean isStream) throws InterruptedException {
-        try {
-            MyWebSocketHandler myWebSocketHandler = SpringContextUtils.getBean(MyWebSocketHandler.class);
-            RedisCache redisCache = SpringContextUtils.getBean(RedisCache.class);
-            UserSimpleInfo userInfo = ThreadUserInfo.getUserInfo();
-            if(userInfo == null) {
-                throw new RuntimeException(OpenAIExceptionConstants.USER_NOT_FOUND);
+        if(isStream) {
+            UserInfoRequest userInfoRequest = buildRequest(messages, aiName, roles);
+            String taskId = userInfoRequest.getTaskId();
+//            先登记结果通道，避免引擎的第一个增量早于订阅到达
+            MyWebSocketHandler.registerStream(taskId, new AIResultStream());
+            if("false".equals(dispatch(userInfoRequest))) {
+                MyWebSocketHandler.removeStream(taskId);
+                throw new RuntimeException(OpenAIExceptionConstants.MODEL_EXECUTE_ERROR);
             }
-            UserInfoRequest userInfoRequest = new UserInfoRequest();
-            userInfoRequest.setUserId(userInfo.getUserId());
-            userInfoRequest.setRoles(roles);
-            userInfoRequest.setCorpId(userInfo.getCropId());
-            userInfoRequest.setUserPrompt(messages.toString());
-            userInfoRequest.setType("openAI");
-            userInfoRequest.setAiName(aiName);
-            String taskId = UUID.randomUUID().toString();
-            userInfoRequest.setTaskId(taskId);
-            myWebSocketHandler.sendMsgToAI(userInfo.getCropId(), userInfoRequest);
-            if(!isStream) {
-                for (int i = 0; i < 20; i++) {
-                    Object cacheObject = redisCache.getCacheObject("openAI:" + userInfo.getUserId() + ":" + userInfoRequest.getAiName() + ":" + userInfoRequest.getTaskId());
-                    if (cacheObject != null) {
-                        return cacheObject.toString();
-                    }
-                    Thread.sleep(10000);
-                }
-            } else {
-                return taskId;
+            return taskId;
+        }
+        try {
+            return waitForResultAsync(messages, aiName, roles).get();
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
             throw new RuntimeException(OpenAIExceptionConstants.MODEL_EXECUTE_ERROR);
-        } catch (Exception e) {
-            throw e;
         }
     }
+
+    /**
+     * 下发任务并返回结果 future，引擎回传结果时立即完成，等待期间不占用线程
+     */
+    public static CompletableFuture<String> waitForResultAsync(List<Message> messages, String aiName, String roles) {
+        UserInfoRequest userInfoRequest = buildRequest(messages, aiName, roles);
+        CompletableFuture<String> future = MyWebSocketHandler.registerTask(userInfoRequest.getTaskId(), RESULT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        if("false".equals(dispatch(userInfoRequest))) {
+            future.completeExceptionally(new RuntimeException(OpenAIExceptionConstants.MODEL_EXECUTE_ERROR));
+        }
+        return future.handle((result, e) -> {
+            if(e != null) {
+                throw new RuntimeException(OpenAIExceptionConstants.MODEL_EXECUTE_ERROR);
+            }
+            return result;
+        });
+    }
+
+    private static UserInfoRequest buildRequest(List<Message> messages, String aiName, String roles) {
+        UserSimpleInfo userInfo = ThreadUserInfo.getUserInfo();
+        if(userInfo == null) {
+            throw new RuntimeException(OpenAIExceptionConstants.USER_NOT_FOUND);
+        }
+        UserInfoRequest userInfoRequest = new UserInfoRequest();
+        userInfoRequest.setUserId(userInfo.getUserId());
+        userInfoRequest.setRoles(roles);
+        userInfoRequest.setCorpId(userInfo.getCropId());
+        userInfoRequest.setUserPrompt(messages.toString());
+        userInfoRequest.setType("openAI");
+        userInfoRequest.setAiName(aiName);
+        userInfoRequest.setTaskId(UUID.randomUUID().toString());
+        return userInfoRequest;
+    }
+
+    private static String dispatch(UserInfoRequest userInfoRequest) {
+        MyWebSocketHandler myWebSocketHandler = SpringContextUtils.getBean(MyWebSocketHandler.class);
+        return myWebSocketHandler.sendMsgToAI(userInfoRequest.getCorpId(), userInfoRequest);
+    }
+
     public static Flux<String> waitForResultByStream(List<Message> messages, String aiName, String roles, String modelName) throws InterruptedException {
         try {
             aiName = aiName + "-stream";
             String taskId = AIResultUtil.waitForResult(messages, aiName, roles, true);
+            AIResultStream stream = MyWebSocketHandler.getStream(taskId);
+            if (stream == null) {
+                throw new RuntimeException(OpenAIExceptionConstants.MODEL_EXECUTE_ERROR);
+            }
             ObjectMapper objectMapper = SpringContextUtils.getBean(ObjectMapper.class);
-            RedisCache redisCache = SpringContextUtils.getBean(RedisCache.class);
             String id = "chatcmpl-" + java.util.UUID.randomUUID().toString().substring(0, 10);
             long timestamp = System.currentTimeMillis() / 1000;
 
-            String userId = ThreadUserInfo.getUserInfo().getUserId();
-            String key = "openAI:" + userId + ":" + aiName + ":" + taskId;
-            AtomicInteger times = new AtomicInteger();
-
-            AtomicReference<Long> intervalTime = new AtomicReference<>(System.currentTimeMillis());
-            AtomicReference<String> currentContent = new AtomicReference<>("");
-            AtomicReference<String> lastContent = new AtomicReference<>("");
-            return Flux
-                    .interval(Duration.ofSeconds(2))
-                    .delayElements(Duration.ofMillis(300))
-                    .flatMap(i -> {
-                        String newContent = "";
-                        String cacheStr= redisCache.getCacheObject(key);
-                        if(cacheStr != null) {
-                            lastContent.set(cacheStr);
-                        } else {
-                            //如果空，判断三次，如果三次都为空，则正常判断时长
-                            if(times.get() <  3) {
-                                intervalTime.set(System.currentTimeMillis());
-                            }
-                            times.getAndIncrement();
-                        }
-                        if (cacheStr != null && cacheStr.contains("END")) {
-                            return Flux.just("END");
-                        }
-                        if(lastContent.get().length() > currentContent.get().length()) {
-                            newContent = lastContent.get().substring(currentContent.get().length());
-                            currentContent.set(lastContent.get());
-                            intervalTime.set(System.currentTimeMillis());
-                        } else {
-//                            如果内容相同时间超过10秒就结束
-                            if(System.currentTimeMillis() - intervalTime.get() > INTERVAL_TIME) {
-                                return Flux.just("END");
-                            }
-                        }
-                        String[] chunks = newContent.split("(?<=[。？！，；：])");
-                        return Flux
-                                .fromArray(chunks)
-                                .delayElements(Duration.ofMillis(300))
-                                .map(chunk -> {
-                                    boolean isLastChunk = chunk.equals(chunks[chunks.length - 1]);
-                                    ChatCompletionStreamResponse response = ChatCompletionStreamResponse.builder()
-                                            .id(id)
-                                            .object("chat.completion.chunk")
-                                            .created(timestamp)
-                                            .model(modelName)
-                                            .choices(List.of(
-                                                    ChatCompletionStreamResponse.Choice.builder()
-                                                            .index(0)
-                                                            .delta(ChatCompletionStreamResponse.Delta.builder()
-                                                                    .content(chunk)
-                                                                    .build())
-                                                            .finishReason(isLastChunk ? "stop" : null)
-                                                            .build()
-                                            ))
-                                            .build();
-
-                                    try {
-                                        return objectMapper.writeValueAsString(response);
-                                    } catch (Exception e) {
-                                        return "{\"error\": {\"message\": \"序列化失败: " + e.getMessage() + "\"}}";
-                                    }
-                                });
-                    })
-                    .takeWhile(content -> !content.contains("END"))
-                    .take(MAX_EMISSIONS);
+            // 引擎推送的增量到达即下发；首个增量或两次增量之间等待过久则结束
+            return stream.asFlux()
+                    .timeout(Mono.delay(FIRST_CONTENT_TIME), chunk -> Mono.delay(INTERVAL_TIME))
+                    .onErrorResume(TimeoutException.class, e -> Flux.empty())
+                    .map(chunk -> toStreamChunk(objectMapper, id, timestamp, modelName, chunk, null))
+                    .concatWith(Mono.fromSupplier(() -> toStreamChunk(objectMapper, id, timestamp, modelName, "", "stop")))
+                    // 客户端断开、超时或正常结束时都释放通道
+                    .doFinally(signal -> MyWebSocketHandler.removeStream(taskId));
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private static String toStreamChunk(ObjectMapper objectMapper, String id, long timestamp, String modelName,
+                                        String content, String finishReason) {
+        ChatCompletionStreamResponse response = ChatCompletionStreamResponse.builder()
+                .id(id)
+                .object("chat.completion.chunk")
+                .created(timestamp)
+                .model(modelName)
+                .choices(List.of(
+                        ChatCompletionStreamResponse.Choice.builder()
+                                .index(0)
+                                .delta(ChatCompletionStreamResponse.Delta.builder()
+                                        .content(content)
+                                        .build())
+                                .finishReason(finishReason)
+                                .build()
+                ))
+                .build();
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (Exception e) {
+            return "{\"error\": {\"message\": \"序列化失败: " + e.getMessage() + "\"}}";
+        }
+    }
 }
@@ -1,13 +1,125 @@
 package com.cube.openAI.utils;
 
+import com.alibaba.fastjson.JSONObject;
+import com.cube.wechat.selfapp.app.mapper.SysHostWhitelistMapper;
 import com.cube.wechat.selfapp.app.util.UserInfoUtil;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * API密钥校验
+ * 密钥格式为 主机ID-unionId，校验需要查询主机白名单与用户两次数据库。
+ * 校验结果先缓存在本机内存，再缓存到 Redis 供其他节点复用；无效密钥同样缓存，过期时间更短。
+ * 白名单或用户变更后调用 invalidate 方法，通过 Redis 发布订阅通知所有节点清除本机缓存。
+ * 每个用户的密钥登记在反向索引集合中，用户变更时只删除该用户的缓存；被撤销的密钥同时记录撤销时间，
+ * 撤销前加载的结果即使被其他节点重新写回 Redis 也不再生效，不必等缓存过期。
+ */
 @Component
 @RequiredArgsConstructor
-public class ApiKeyStore {
+@Slf4j
+public class ApiKeyStore implements MessageListener {
+
+    private static final String CACHE_KEY = "openai_api_key:";
+    // 用户 -> 该用户已缓存的密钥（主机ID:unionId）
+    private static final String USER_INDEX_KEY = "openai_api_key_user:";
+    // 密钥 -> 撤销时间，早于该时间加载的缓存结果视为无效
+    private static final String REVOKED_KEY = "openai_api_key_revoked:";
+    private static final String CHANNEL = "cube:openai:apikey";
+
     private final UserInfoUtil userInfoUtil;
+    private final SysHostWhitelistMapper whitelistMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer container;
+
+    // 密钥 -> 校验结果
+    private final ConcurrentHashMap<String, CacheEntry> localCache = new ConcurrentHashMap<>();
+
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong redisHits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    // 本机缓存时间（毫秒）
+    @Value("${openai.api-key.local-ttl:60000}")
+    private long localTtl;
+
+    // Redis 缓存时间（毫秒）
+    @Value("${openai.api-key.redis-ttl:600000}")
+    private long redisTtl;
+
+    // 无效密钥的缓存时间（毫秒）
+    @Value("${openai.api-key.negative-ttl:30000}")
+    private long negativeTtl;
+
+    // 本机缓存条数上限
+    @Value("${openai.api-key.max-size:10000}")
+    private int maxSize;
+
+    /**
+     * 密钥校验结果
+     */
+    public static class ApiKeyInfo {
+        private String userId;
+        private String corpId;
+        private boolean whitelisted;
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getCorpId() {
+            return corpId;
+        }
+
+        public boolean isWhitelisted() {
+            return whitelisted;
+        }
+
+        /**
+         * 用户存在且主机在白名单中
+         */
+        public boolean isValid() {
+            return userId != null && whitelisted;
+        }
+    }
+
+    private static class CacheEntry {
+        private final ApiKeyInfo info;
+        private final long expireAt;
+
+        private CacheEntry(ApiKeyInfo info, long expireAt) {
+            this.info = info;
+            this.expireAt = expireAt;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        container.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
     // 验证密钥是否有效
     public String isValid(String apiKey) {
         try {
@@ -20,4 +132,230 @@ public class ApiKeyStore {
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 校验 主机ID-unionId 格式的密钥，依次查询本机缓存、Redis、数据库
+     *
+     * @return 校验结果，需再判断 isValid
+     */
+    public ApiKeyInfo resolve(String corpId, String unionId) {
+        String key = corpId + ":" + unionId;
+        long now = System.currentTimeMillis();
+        CacheEntry entry = localCache.get(key);
+        if (entry != null && entry.expireAt > now) {
+            localHits.incrementAndGet();
+            return count(entry.info);
+        }
+
+        ApiKeyInfo info = readRedis(key);
+        if (info != null) {
+            redisHits.incrementAndGet();
+        } else {
+            loads.incrementAndGet();
+            long loadedAt = System.currentTimeMillis();
+            info = new ApiKeyInfo();
+            info.corpId = corpId;
+            info.whitelisted = whitelistMapper.selectActiveByHostId(corpId) > 0;
+            // 主机不在白名单时无需再查用户
+            info.userId = info.whitelisted ? isValid(unionId) : null;
+            writeRedis(key, info, loadedAt);
+        }
+        long ttl = info.isValid() ? localTtl : Math.min(localTtl, negativeTtl);
+        if (localCache.size() >= maxSize) {
+            localCache.values().removeIf(cached -> cached.expireAt <= now);
+            if (localCache.size() >= maxSize) {
+                localCache.clear();
+            }
+        }
+        localCache.put(key, new CacheEntry(info, now + ttl));
+        return count(info);
+    }
+
+    private ApiKeyInfo count(ApiKeyInfo info) {
+        if (!info.isValid()) {
+            rejected.incrementAndGet();
+        }
+        return info;
+    }
+
+    private ApiKeyInfo readRedis(String key) {
+        try {
+            List<String> values = stringRedisTemplate.opsForValue().multiGet(Arrays.asList(CACHE_KEY + key, REVOKED_KEY + key));
+            String value = values == null ? null : values.get(0);
+            if (value == null) {
+                return null;
+            }
+            JSONObject json = JSONObject.parseObject(value);
+            String revokedAt = values.get(1);
+            if (revokedAt != null && json.getLongValue("loadedAt") <= Long.parseLong(revokedAt)) {
+                // 撤销之前加载的结果，重新查询数据库
+                return null;
+            }
+            ApiKeyInfo info = new ApiKeyInfo();
+            info.userId = json.getString("userId");
+            info.corpId = json.getString("corpId");
+            info.whitelisted = json.getBooleanValue("whitelisted");
+            return info;
+        } catch (Exception e) {
+            log.warn("读取API密钥缓存失败", e);
+            return null;
+        }
+    }
+
+    private void writeRedis(String key, ApiKeyInfo info, long loadedAt) {
+        JSONObject json = new JSONObject();
+        json.put("userId", info.userId);
+        json.put("corpId", info.corpId);
+        json.put("whitelisted", info.whitelisted);
+        json.put("loadedAt", loadedAt);
+        try {
+            stringRedisTemplate.opsForValue().set(CACHE_KEY + key, json.toJSONString(),
+                    info.isValid() ? redisTtl : negativeTtl, TimeUnit.MILLISECONDS);
+            if (info.userId != null) {
+                String indexKey = USER_INDEX_KEY + info.userId;
+                stringRedisTemplate.opsForSet().add(indexKey, key);
+                stringRedisTemplate.expire(indexKey, redisTtl, TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            log.warn("写入API密钥缓存失败", e);
+        }
+    }
+
+    /**
+     * 主机白名单变更后清除该主机下所有密钥的缓存
+     */
+    public void invalidateHost(String hostId) {
+        if (hostId == null) {
+            return;
+        }
+        revoke(scanKeys(CACHE_KEY + hostId + ":*"));
+        publish("hostId", hostId);
+    }
+
+    /**
+     * 用户变更（停用、删除、unionId 变化等）后清除该用户密钥的缓存
+     */
+    public void invalidateUser(String userId) {
+        if (userId == null) {
+            return;
+        }
+        // unionId 可能已经变化，按反向索引查找该用户缓存过的密钥
+        try {
+            String indexKey = USER_INDEX_KEY + userId;
+            Set<String> keys = stringRedisTemplate.opsForSet().members(indexKey);
+            if (keys != null && !keys.isEmpty()) {
+                List<String> cacheKeys = new ArrayList<>();
+                for (String key : keys) {
+                    cacheKeys.add(CACHE_KEY + key);
+                }
+                revoke(cacheKeys);
+            }
+            stringRedisTemplate.delete(indexKey);
+        } catch (Exception e) {
+            log.warn("清除用户API密钥缓存失败: " + userId, e);
+        }
+        publish("userId", userId);
+    }
+
+    /**
+     * 清除全部缓存
+     */
+    public void invalidateAll() {
+        revoke(scanKeys(CACHE_KEY + "*"));
+        publish("all", "true");
+    }
+
+    /**
+     * 删除缓存并记录撤销时间，撤销记录保留到撤销前写入的缓存全部过期为止
+     *
+     * @param cacheKeys 带 CACHE_KEY 前缀的缓存键
+     */
+    private void revoke(List<String> cacheKeys) {
+        if (cacheKeys.isEmpty()) {
+            return;
+        }
+        String now = String.valueOf(System.currentTimeMillis());
+        try {
+            for (String cacheKey : cacheKeys) {
+                stringRedisTemplate.opsForValue().set(REVOKED_KEY + cacheKey.substring(CACHE_KEY.length()), now,
+                        redisTtl, TimeUnit.MILLISECONDS);
+            }
+            stringRedisTemplate.delete(cacheKeys);
+        } catch (Exception e) {
+            log.warn("撤销API密钥缓存失败", e);
+        }
+    }
+
+    /**
+     * 以 SCAN 分批查找缓存键，不使用会阻塞 Redis 的 KEYS
+     */
+    private List<String> scanKeys(String pattern) {
+        List<String> keys = new ArrayList<>();
+        try {
+            stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+                ScanOptions options = ScanOptions.scanOptions().match(pattern).count(500).build();
+                try (Cursor<byte[]> cursor = connection.scan(options)) {
+                    while (cursor.hasNext()) {
+                        keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("查找API密钥缓存失败: " + pattern, e);
+        }
+        return keys;
+    }
+
+    private void publish(String field, String value) {
+        // 先清除本机，发布失败时至少本机生效
+        evictLocal(field, value);
+        JSONObject message = new JSONObject();
+        message.put(field, value);
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, message.toJSONString());
+        } catch (Exception e) {
+            log.warn("广播API密钥缓存清除失败", e);
+        }
+    }
+
+    private void evictLocal(String field, String value) {
+        switch (field) {
+            case "hostId":
+                localCache.keySet().removeIf(key -> key.startsWith(value + ":"));
+                break;
+            case "userId":
+                localCache.values().removeIf(entry -> value.equals(entry.info.userId));
+                break;
+            default:
+                localCache.clear();
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            JSONObject body = JSONObject.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+            for (String field : body.keySet()) {
+                evictLocal(field, body.getString(field));
+            }
+        } catch (Exception e) {
+            log.warn("处理API密钥缓存清除广播失败", e);
+        }
+    }
+
+    /**
+     * 缓存命中情况
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("localSize", localCache.size());
+        stats.put("localHits", localHits.get());
+        stats.put("redisHits", redisHits.get());
+        stats.put("loads", loads.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+}
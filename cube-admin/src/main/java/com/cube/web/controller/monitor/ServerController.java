@@ -1,10 +1,16 @@
 package com.cube.web.controller.monitor;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import com.cube.common.core.domain.AjaxResult;
+import com.cube.common.utils.WriteBehindBuffer;
 import com.cube.framework.web.domain.Server;
+import com.cube.openAI.utils.ApiKeyStore;
+import com.cube.wechat.selfapp.app.config.EngineRouter;
 
 /**
  * 服务器监控
@@ -15,6 +21,12 @@ import com.cube.framework.web.domain.Server;
 @RequestMapping("/monitor/server")
 public class ServerController
 {
+    @Autowired
+    private EngineRouter engineRouter;
+
+    @Autowired
+    private ApiKeyStore apiKeyStore;
+
     @GetMapping()
     public AjaxResult getInfo() throws Exception
     {
@@ -22,4 +34,48 @@ public class ServerController
         server.copyTo();
         return AjaxResult.success(server);
     }
+
+    /**
+     * 日志写后缓冲的队列深度与写入耗时
+     */
+    @GetMapping("/writeBehind")
+    public AjaxResult getWriteBehind()
+    {
+        return AjaxResult.success(WriteBehindBuffer.getAllStats());
+    }
+
+    /**
+     * 各主体在线的引擎主机与负载
+     */
+    @GetMapping("/engines")
+    public AjaxResult getEngines()
+    {
+        return AjaxResult.success(engineRouter.getHosts());
+    }
+
+    /**
+     * API密钥校验缓存的命中情况
+     */
+    @GetMapping("/apiKeys")
+    public AjaxResult getApiKeys()
+    {
+        return AjaxResult.success(apiKeyStore.getStats());
+    }
+
+    /**
+     * 主机白名单变更后清除API密钥缓存，不指定主机时全部清除
+     */
+    @DeleteMapping("/apiKeys")
+    public AjaxResult clearApiKeys(@RequestParam(required = false) String hostId)
+    {
+        if (hostId == null)
+        {
+            apiKeyStore.invalidateAll();
+        }
+        else
+        {
+            apiKeyStore.invalidateHost(hostId);
+        }
+        return AjaxResult.success();
+    }
 }
@@ -23,6 +23,7 @@ import com.cube.common.utils.file.FileUploadUtils;
 import com.cube.common.utils.file.MimeTypeUtils;
 import com.cube.framework.web.service.TokenService;
 import com.cube.system.service.ISysUserService;
+import com.cube.wechat.selfapp.app.config.EngineRouter;
 
 /**
  * 个人信息 业务处理
@@ -70,6 +71,7 @@ public class SysProfileController extends BaseController
         currentUser.setEmail(user.getEmail());
         currentUser.setPhonenumber(user.getPhonenumber());
         currentUser.setSex(user.getSex());
+        String oldCorpId = currentUser.getCorpId();
         currentUser.setCorpId(user.getCorpId());
         if (StringUtils.isNotEmpty(user.getPhonenumber()) && !userService.checkPhoneUnique(currentUser))
         {
@@ -83,6 +85,8 @@ public class SysProfileController extends BaseController
         {
             // 更新缓存用户信息
             tokenService.setLoginUser(loginUser);
+            // 主体可能变更，清除引擎路由中的对应关系
+            EngineRouter.invalidateUser(String.valueOf(currentUser.getUserId()), oldCorpId, currentUser.getCorpId());
             return success();
         }
 
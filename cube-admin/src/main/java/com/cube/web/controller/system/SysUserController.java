@@ -15,6 +15,8 @@ import com.cube.system.service.ISysDeptService;
 import com.cube.system.service.ISysPostService;
 import com.cube.system.service.ISysRoleService;
 import com.cube.system.service.ISysUserService;
+import com.cube.openAI.utils.ApiKeyStore;
+import com.cube.wechat.selfapp.app.config.EngineRouter;
 import org.apache.commons.lang3.ArrayUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
@@ -46,6 +48,9 @@ public class SysUserController extends BaseController
     @Autowired
     private ISysPostService postService;
 
+    @Autowired
+    private ApiKeyStore apiKeyStore;
+
     /**
      * 获取用户列表
      */
@@ -155,7 +160,11 @@ public class SysUserController extends BaseController
             return error("修改用户'" + user.getUserName() + "'失败，邮箱账号已存在");
         }
         user.setUpdateBy(getUsername());
-        return toAjax(userService.updateUser(user));
+        int rows = userService.updateUser(user);
+        // 主体可能变更，清除引擎路由中的对应关系
+        EngineRouter.invalidateAll();
+        apiKeyStore.invalidateUser(String.valueOf(user.getUserId()));
+        return toAjax(rows);
     }
 
     /**
@@ -169,7 +178,12 @@ public class SysUserController extends BaseController
         {
             return error("当前用户不能删除");
         }
-        return toAjax(userService.deleteUserByIds(userIds));
+        int rows = userService.deleteUserByIds(userIds);
+        for (Long userId : userIds)
+        {
+            apiKeyStore.invalidateUser(String.valueOf(userId));
+        }
+        return toAjax(rows);
     }
 
     /**
@@ -196,7 +210,9 @@ public class SysUserController extends BaseController
         userService.checkUserAllowed(user);
         userService.checkUserDataScope(user.getUserId());
         user.setUpdateBy(getUsername());
-        return toAjax(userService.updateUserStatus(user));
+        int rows = userService.updateUserStatus(user);
+        apiKeyStore.invalidateUser(String.valueOf(user.getUserId()));
+        return toAjax(rows);
     }
 
     /**
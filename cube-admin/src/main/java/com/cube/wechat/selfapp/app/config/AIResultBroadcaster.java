@@ -0,0 +1,92 @@
+package com.cube.wechat.selfapp.app.config;
+
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AI任务结果广播
+ * 多节点部署时，引擎回传结果的节点上可能没有等待该任务的请求，
+ * 此时通过 Redis 发布订阅把结果转发给所有节点，由持有对应 taskId 的节点完成等待。
+ * 草稿等大多数情况下无人等待的结果，只有某个节点登记过等待标记时才广播。
+ *
+ * @author AspireLife
+ * @version JDK 1.8
+ * @date 2025年09月15日 10:05
+ */
+@Component
+@Slf4j
+public class AIResultBroadcaster implements MessageListener {
+
+    private static final String CHANNEL = "cube:ai:result";
+
+    private static final String EXPECT_PREFIX = "cube:ai:expect:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer container;
+
+    @PostConstruct
+    public void init() {
+        container.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 登记等待标记，结果到达其他节点时据此判断是否需要广播
+     */
+    public void expect(String taskId, long timeout, TimeUnit unit) {
+        try {
+            stringRedisTemplate.opsForValue().set(EXPECT_PREFIX + taskId, "1", timeout, unit);
+        } catch (Exception e) {
+            log.warn("登记AI任务等待标记失败，taskId: " + taskId, e);
+        }
+    }
+
+    /**
+     * 是否有节点登记过等待标记
+     */
+    public boolean isExpected(String taskId) {
+        try {
+            return Boolean.TRUE.equals(stringRedisTemplate.hasKey(EXPECT_PREFIX + taskId));
+        } catch (Exception e) {
+            // 无法确认时按有人等待处理
+            return true;
+        }
+    }
+
+    /**
+     * 广播任务结果
+     */
+    public void publish(String taskId, String content) {
+        JSONObject message = new JSONObject();
+        message.put("taskId", taskId);
+        message.put("content", content);
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, message.toJSONString());
+        } catch (Exception e) {
+            log.warn("广播AI任务结果失败，taskId: " + taskId, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            JSONObject body = JSONObject.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+            MyWebSocketHandler.completeLocalTask(body.getString("taskId"), body.getString("content"));
+        } catch (Exception e) {
+            log.warn("处理AI任务结果广播失败", e);
+        }
+    }
+}
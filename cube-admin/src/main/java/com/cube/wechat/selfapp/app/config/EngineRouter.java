@@ -0,0 +1,260 @@
+package com.cube.wechat.selfapp.app.config;
+
+import com.alibaba.fastjson.JSONObject;
+import com.cube.wechat.selfapp.app.mapper.UserInfoMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 引擎主机路由表
+ * 同一主体（corpId）可以同时连接多台引擎主机，引擎通过心跳上报并发容量与当前负载，
+ * 下发任务时选择负载最低的主机；用户一旦分配到某台主机（浏览器登录状态保存在该主机上），
+ * 只要该主机在线就一直使用，满载时由该主机的引擎排队，只有尚未分配或原主机已下线的用户才按负载选择。
+ * 同时缓存用户与主体的对应关系，避免每条消息都查询数据库。
+ *
+ * @author AspireLife
+ * @version JDK 1.8
+ * @date 2025年09月18日 16:20
+ */
+@Component
+@Slf4j
+public class EngineRouter {
+
+    // corpId -> (sessionId -> 引擎主机)
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, EngineHost>> HOSTS = new ConcurrentHashMap<>();
+    // userId -> 分配的引擎 sessionId，主机下线时移除
+    private static final ConcurrentHashMap<String, String> USER_AFFINITY = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, CacheEntry<String>> USER_CORP = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, CacheEntry<List<String>>> CORP_USERS = new ConcurrentHashMap<>();
+
+    @Autowired
+    private UserInfoMapper userInfoMapper;
+
+    // 用户与主体对应关系的缓存时间（毫秒）
+    @Value("${engine.mapping-ttl:60000}")
+    private long mappingTtl;
+
+    // 是否把同一用户的任务固定发给分配的主机
+    @Value("${engine.user-affinity:true}")
+    private boolean userAffinity;
+
+    /**
+     * 引擎主机
+     */
+    private static class EngineHost {
+        private final WebSocketSession session;
+        private final long connectedAt = System.currentTimeMillis();
+        private volatile int maxConcurrent;
+        private volatile int running;
+        private volatile int queued;
+        private volatile long lastHeartbeat;
+        // 上次心跳之后下发的任务数，心跳到达后清零
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong dispatched = new AtomicLong();
+
+        private EngineHost(WebSocketSession session) {
+            this.session = session;
+        }
+
+        private double load() {
+            return (double) (running + queued + pending.get()) / Math.max(1, maxConcurrent);
+        }
+    }
+
+    private static class CacheEntry<T> {
+        private final T value;
+        private final long expireAt;
+
+        private CacheEntry(T value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 登记引擎主机连接
+     */
+    public void register(String corpId, WebSocketSession session) {
+        HOSTS.computeIfAbsent(corpId, key -> new ConcurrentHashMap<>()).put(session.getId(), new EngineHost(session));
+        log.info("引擎主机上线 - 主体: {}, 会话: {}, 当前主机数: {}", corpId, session.getId(), HOSTS.get(corpId).size());
+    }
+
+    /**
+     * 移除引擎主机连接
+     *
+     * @return 该主体剩余的一个在线会话，没有时返回 null
+     */
+    public WebSocketSession unregister(String corpId, WebSocketSession session) {
+        Map<String, EngineHost> hosts = HOSTS.get(corpId);
+        if (hosts == null) {
+            return null;
+        }
+        hosts.remove(session.getId());
+        USER_AFFINITY.values().removeIf(session.getId()::equals);
+        log.info("引擎主机下线 - 主体: {}, 会话: {}, 剩余主机数: {}", corpId, session.getId(), hosts.size());
+        for (EngineHost host : hosts.values()) {
+            if (host.session.isOpen()) {
+                return host.session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 根据心跳更新主机容量与负载
+     */
+    public void updateCapacity(String corpId, WebSocketSession session, JSONObject heartbeat) {
+        Map<String, EngineHost> hosts = HOSTS.get(corpId);
+        EngineHost host = hosts == null ? null : hosts.get(session.getId());
+        if (host == null) {
+            return;
+        }
+        host.lastHeartbeat = System.currentTimeMillis();
+        if (heartbeat.containsKey("maxConcurrent")) {
+            host.maxConcurrent = heartbeat.getIntValue("maxConcurrent");
+            host.running = heartbeat.getIntValue("running");
+            host.queued = heartbeat.getIntValue("queued");
+            host.pending.set(0);
+        }
+    }
+
+    /**
+     * 为用户的任务选择引擎主机
+     *
+     * @return 在线的引擎会话，没有时返回 null
+     */
+    public WebSocketSession pick(Object corpId, Object userId) {
+        Map<String, EngineHost> hosts = HOSTS.get(String.valueOf(corpId));
+        if (hosts == null || hosts.isEmpty()) {
+            return null;
+        }
+        String user = userId == null ? null : String.valueOf(userId);
+        EngineHost chosen;
+        if (userAffinity && user != null) {
+            // 已分配且在线的主机保持不变，只有未分配或原主机不可用时才重新分配
+            String sessionId = USER_AFFINITY.compute(user, (key, assigned) -> {
+                EngineHost host = assigned == null ? null : hosts.get(assigned);
+                if (host != null && host.session.isOpen()) {
+                    return assigned;
+                }
+                EngineHost least = leastLoaded(hosts);
+                return least == null ? null : least.session.getId();
+            });
+            chosen = sessionId == null ? null : hosts.get(sessionId);
+        } else {
+            chosen = leastLoaded(hosts);
+        }
+        if (chosen == null) {
+            return null;
+        }
+        chosen.pending.incrementAndGet();
+        chosen.dispatched.incrementAndGet();
+        return chosen.session;
+    }
+
+    /**
+     * 负载最低的在线主机，负载相同时选下发任务较少的
+     */
+    private EngineHost leastLoaded(Map<String, EngineHost> hosts) {
+        EngineHost chosen = null;
+        for (EngineHost host : hosts.values()) {
+            if (!host.session.isOpen()) {
+                continue;
+            }
+            if (chosen == null || host.load() < chosen.load()
+                    || host.load() == chosen.load() && host.dispatched.get() < chosen.dispatched.get()) {
+                chosen = host;
+            }
+        }
+        return chosen;
+    }
+
+    public String getCorpIdByUserId(String userId) {
+        CacheEntry<String> entry = USER_CORP.get(userId);
+        if (entry != null && entry.expireAt > System.currentTimeMillis()) {
+            return entry.value;
+        }
+        String corpId = userInfoMapper.getCorpIdByUserId(userId);
+        USER_CORP.put(userId, new CacheEntry<>(corpId, System.currentTimeMillis() + mappingTtl));
+        return corpId;
+    }
+
+    public List<String> getUserIdsByCorpId(String corpId) {
+        CacheEntry<List<String>> entry = CORP_USERS.get(corpId);
+        if (entry != null && entry.expireAt > System.currentTimeMillis()) {
+            return entry.value;
+        }
+        List<String> userIds = userInfoMapper.getUserIdsByCorpId(corpId);
+        userIds = userIds == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(userIds));
+        CORP_USERS.put(corpId, new CacheEntry<>(userIds, System.currentTimeMillis() + mappingTtl));
+        return userIds;
+    }
+
+    /**
+     * 用户的主体变更后清除缓存
+     *
+     * @param corpIds 变更前后的主体
+     */
+    public static void invalidateUser(String userId, String... corpIds) {
+        CacheEntry<String> entry = USER_CORP.remove(userId);
+        if (entry != null && entry.value != null) {
+            CORP_USERS.remove(entry.value);
+        }
+        for (String corpId : corpIds) {
+            if (corpId != null) {
+                CORP_USERS.remove(corpId);
+            }
+        }
+        USER_AFFINITY.remove(userId);
+    }
+
+    /**
+     * 清除全部对应关系缓存
+     */
+    public static void invalidateAll() {
+        USER_CORP.clear();
+        CORP_USERS.clear();
+    }
+
+    /**
+     * 各主体的引擎主机与负载
+     */
+    public Map<String, List<Map<String, Object>>> getHosts() {
+        Map<String, List<Map<String, Object>>> result = new LinkedHashMap<>();
+        HOSTS.forEach((corpId, hosts) -> {
+            List<Map<String, Object>> list = new ArrayList<>();
+            for (EngineHost host : hosts.values()) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("sessionId", host.session.getId());
+                item.put("remoteAddress", String.valueOf(host.session.getRemoteAddress()));
+                item.put("open", host.session.isOpen());
+                item.put("maxConcurrent", host.maxConcurrent);
+                item.put("running", host.running);
+                item.put("queued", host.queued);
+                item.put("pending", host.pending.get());
+                item.put("load", host.load());
+                item.put("dispatched", host.dispatched.get());
+                item.put("connectedAt", host.connectedAt);
+                item.put("lastHeartbeat", host.lastHeartbeat);
+                list.add(item);
+            }
+            if (!list.isEmpty()) {
+                result.put(corpId, list);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,150 @@
+package com.cube.wechat.selfapp.app.config;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * admin 与引擎之间的二进制消息帧
+ * 帧格式：魔数 'C' | 版本 | 标志位 | 类型编号 | taskId 长度(2字节) | taskId | 消息体。
+ * 消息体仍是原来的 JSON，接收方不必解析 JSON 就能按类型分发、按 taskId 路由；
+ * 未协商 permessage-deflate 时，超过阈值的消息体单独压缩并置标志位。
+ * 格式与引擎端 MessageEnvelope 保持一致。
+ *
+ * @author AspireLife
+ * @version JDK 1.8
+ * @date 2025年09月22日 10:15
+ */
+public final class MessageEnvelope {
+
+    // 二进制协议版本，旧版纯 JSON 协议视为版本 1
+    public static final int VERSION = 2;
+
+    private static final byte MAGIC = 'C';
+    private static final int FLAG_DEFLATE = 1;
+    private static final int HEADER_SIZE = 6;
+    // 解压后的消息体上限，防止异常数据撑爆内存
+    private static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+    private final MessageType type;
+    private final String taskId;
+    private final String body;
+
+    private MessageEnvelope(MessageType type, String taskId, String body) {
+        this.type = type;
+        this.taskId = taskId;
+        this.body = body;
+    }
+
+    public MessageType getType() {
+        return type;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * 编码消息
+     *
+     * @param compressThreshold 消息体超过该字节数时压缩，0 表示不压缩
+     */
+    public static byte[] encode(MessageType type, String taskId, String body, int compressThreshold) {
+        byte[] taskIdBytes = taskId == null ? new byte[0] : taskId.getBytes(StandardCharsets.UTF_8);
+        byte[] bodyBytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        int flags = 0;
+        if (compressThreshold > 0 && bodyBytes.length > compressThreshold) {
+            byte[] deflated = deflate(bodyBytes);
+            if (deflated.length < bodyBytes.length) {
+                bodyBytes = deflated;
+                flags |= FLAG_DEFLATE;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + taskIdBytes.length + bodyBytes.length);
+        buffer.put(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) flags);
+        buffer.put((byte) (type == null ? MessageType.OTHER : type).getCode());
+        buffer.putShort((short) taskIdBytes.length);
+        buffer.put(taskIdBytes);
+        buffer.put(bodyBytes);
+        return buffer.array();
+    }
+
+    /**
+     * 解码消息
+     *
+     * @throws IllegalArgumentException 不是本协议的帧或内容损坏
+     */
+    public static MessageEnvelope decode(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.get() != MAGIC) {
+            throw new IllegalArgumentException("不是有效的消息帧");
+        }
+        int version = buffer.get() & 0xFF;
+        if (version > VERSION) {
+            throw new IllegalArgumentException("不支持的协议版本: " + version);
+        }
+        int flags = buffer.get() & 0xFF;
+        MessageType type = MessageType.of(buffer.get());
+        int taskIdLength = buffer.getShort() & 0xFFFF;
+        if (buffer.remaining() < taskIdLength) {
+            throw new IllegalArgumentException("消息帧长度不足");
+        }
+        byte[] taskIdBytes = new byte[taskIdLength];
+        buffer.get(taskIdBytes);
+        byte[] bodyBytes = new byte[buffer.remaining()];
+        buffer.get(bodyBytes);
+        if ((flags & FLAG_DEFLATE) != 0) {
+            bodyBytes = inflate(bodyBytes);
+        }
+        String taskId = taskIdLength == 0 ? null : new String(taskIdBytes, StandardCharsets.UTF_8);
+        return new MessageEnvelope(type, taskId, new String(bodyBytes, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("压缩数据不完整");
+                }
+                if (out.size() + n > MAX_BODY_SIZE) {
+                    throw new IllegalArgumentException("消息体超过上限");
+                }
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("压缩数据损坏", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
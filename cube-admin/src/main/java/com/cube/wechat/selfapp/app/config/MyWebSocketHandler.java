@@ -5,21 +5,26 @@ package com.cube.wechat.selfapp.app.config;
  * @version JDK 1.8
  * @date 2025年01月06日 11:34
  */
+import com.alibaba.fastjson.JSONException;
 import com.alibaba.fastjson.JSONObject;
 import com.cube.common.core.redis.RedisCache;
 import com.cube.common.entity.UserInfoRequest;
 import com.cube.common.utils.StringUtils;
+import com.cube.openAI.utils.AIResultStream;
 import com.cube.openAI.utils.SpringContextUtils;
 import com.cube.wechat.selfapp.app.mapper.UserInfoMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import java.io.IOException;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -28,18 +33,41 @@ import java.util.concurrent.TimeUnit;
 
 @Component
 @Slf4j
-public class MyWebSocketHandler extends TextWebSocketHandler {
+public class MyWebSocketHandler extends AbstractWebSocketHandler {
 
     private static final ConcurrentHashMap<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<String, CompletableFuture<String>> FUTURE_MAP = new ConcurrentHashMap<>();
+    // 流式任务：taskId -> 结果通道
+    private static final ConcurrentHashMap<String, AIResultStream> STREAM_MAP = new ConcurrentHashMap<>();
+    // 会话属性：引擎已协商使用二进制帧
+    private static final String ENVELOPE_ATTR = "envelope";
 
+    // 引擎上行消息类型 -> 处理方法，未登记的类型转发给用户端
+    private final Map<MessageType, PayloadHandler> handlers = new EnumMap<>(MessageType.class);
+
+    // 未协商到 permessage-deflate 时，下发给引擎的消息体超过该字节数单独压缩
+    @Value("${engine.compress-threshold:4096}")
+    private int compressThreshold;
 
     @Autowired
     private UserInfoMapper userInfoMapper;
     @Autowired
+    private AIResultBroadcaster aiResultBroadcaster;
+    @Autowired
+    private EngineRouter engineRouter;
+    @Autowired
     public MyWebSocketHandler(UserInfoMapper userInfoMapper) {
         this.userInfoMapper = userInfoMapper;
+        handlers.put(MessageType.OPENAI_DELTA, this::handleDelta);
+        handlers.put(MessageType.OPENAI, this::handleOpenAI);
+        handlers.put(MessageType.MCP, this::handleMcp);
+        handlers.put(MessageType.PROTOCOL, this::handleProtocol);
     }
+
+    private interface PayloadHandler {
+        void handle(WebSocketSession session, String clientId, String payload) throws Exception;
+    }
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         // 获取客户端 ID
@@ -47,6 +75,10 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
         if (clientId != null) {
             // 保存客户端 ID 和会话的映射
             sessions.put(clientId, session);
+            // 同一主体可以连接多台引擎主机
+            if (clientId.startsWith("play-")) {
+                engineRouter.register(clientId.substring(5), session);
+            }
             JSONObject res = new JSONObject();
             res.put("message","online");
             // 1.0
@@ -65,7 +97,16 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
         // 移除断开的客户端会话
         String clientId = (String) session.getAttributes().get("clientId");
         if (clientId != null) {
-            sessions.remove(clientId);
+            if (clientId.startsWith("play-")) {
+                WebSocketSession remaining = engineRouter.unregister(clientId.substring(5), session);
+                if (remaining != null) {
+                    // 该主体还有其他引擎主机在线，不通知下线
+                    sessions.put(clientId, remaining);
+                    System.out.println("引擎主机连接关闭，ID: " + clientId + "，该主体仍有主机在线");
+                    return;
+                }
+            }
+            sessions.remove(clientId, session);
             System.out.println("客户端连接关闭，ID: " + clientId);
             JSONObject res = new JSONObject();
             res.put("message","offline");
@@ -79,28 +120,43 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        handlePayload(session, null, message.getPayload());
+    }
+
+    /**
+     * 引擎协商后发送的二进制帧，帧头携带消息类型，不必再按内容判断
+     */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        MessageEnvelope envelope;
+        try {
+            envelope = MessageEnvelope.decode(message.getPayload());
+        } catch (IllegalArgumentException e) {
+            log.warn("无法解析的二进制消息，来自: {}，原因: {}", session.getAttributes().get("clientId"), e.getMessage());
+            return;
+        }
+        handlePayload(session, envelope.getType(), envelope.getBody());
+    }
+
+    private void handlePayload(WebSocketSession session, MessageType type, String payload) throws Exception {
         // 从 session 中获取 clientId
         String clientId = (String) session.getAttributes().get("clientId");
-        String payload = message.getPayload();
-
-        System.out.println("收到来自客户端 " + clientId + " 的消息: " + payload);
+        if (type == null) {
+            type = resolveType(payload);
+        }
 
-        // 判断是否为心跳消息
-        if (payload.contains("heartbeat")) {
-            // 减少心跳日志输出，只在DEBUG模式下显示
-            // System.out.println("心跳检查：" + clientId);
+        // 心跳与流式增量消息量大，直接处理，不打印
+        if (type == MessageType.HEARTBEAT) {
+            handleHeartbeat(session, clientId, payload);
             return;
         }
-        Map map = JSONObject.parseObject(payload, Map.class);
-        Object o = map.get("type");
-        if(o != null && "openAI".equals(o.toString())) {
-            System.out.println("收到openAI调用结果：" + payload);
-            String userId = map.get("userId").toString();
-            String aiName = map.get("aiName").toString();
-            String content = map.get("message").toString();
-            String taskId = map.get("taskId").toString();
-            saveAiResponse("openAI:" + userId + ":" + aiName + ":" + taskId, content);
-            log.info("保存openAI结果：" + payload);
+        if (type != MessageType.OPENAI_DELTA) {
+            log.debug("收到来自客户端 {} 的消息: {}", clientId, payload);
+        }
+
+        PayloadHandler handler = handlers.get(type);
+        if (handler != null) {
+            handler.handle(session, clientId, payload);
             return;
         }
 
@@ -109,6 +165,114 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
         sendMsgToClient(clientId,payload,new JSONObject());
     }
 
+    /**
+     * 按 type 字段识别 JSON 消息的类型，不按内容包含关系判断，正文中出现 heartbeat 等字样的消息不会被误判
+     */
+    private MessageType resolveType(String payload) {
+        String text = payload.trim();
+        // 纯文本心跳
+        if (MessageType.HEARTBEAT.getToken().equals(text)) {
+            return MessageType.HEARTBEAT;
+        }
+        if (!text.startsWith("{")) {
+            return MessageType.OTHER;
+        }
+        MessageType type;
+        try {
+            type = MessageType.ofToken(JSONObject.parseObject(text).getString("type"));
+        } catch (JSONException e) {
+            return MessageType.OTHER;
+        }
+        return type == null ? MessageType.OTHER : type;
+    }
+
+    private void handleDelta(WebSocketSession session, String clientId, String payload) {
+        JSONObject delta = JSONObject.parseObject(payload);
+        AIResultStream stream = STREAM_MAP.get(delta.getString("taskId"));
+        if (stream == null) {
+            return;
+        }
+        if (delta.containsKey("reset")) {
+            stream.reset(delta.getString("reset"));
+        } else {
+            stream.appendDelta(delta.getString("delta"));
+        }
+    }
+
+    private void handleHeartbeat(WebSocketSession session, String clientId, String payload) {
+        // 减少心跳日志输出，只在DEBUG模式下显示
+        // System.out.println("心跳检查：" + clientId);
+        // 引擎心跳携带并发容量与负载
+        if (clientId != null && clientId.startsWith("play-")) {
+            engineRouter.updateCapacity(clientId.substring(5), session, JSONObject.parseObject(payload));
+        }
+    }
+
+    private void handleOpenAI(WebSocketSession session, String clientId, String payload) {
+        Map map = JSONObject.parseObject(payload, Map.class);
+        System.out.println("收到openAI调用结果：" + payload);
+        String userId = map.get("userId").toString();
+        String aiName = map.get("aiName").toString();
+        String content = map.get("message").toString();
+        String taskId = map.get("taskId").toString();
+        AIResultStream stream = STREAM_MAP.get(taskId);
+        if (stream != null) {
+            if ("END".equals(content)) {
+                stream.complete();
+            } else {
+                stream.appendFull(content);
+            }
+            return;
+        }
+        saveAiResponse("openAI:" + userId + ":" + aiName + ":" + taskId, content);
+        completeTask(taskId, content);
+        log.info("保存openAI结果：" + payload);
+    }
+
+    private void handleMcp(WebSocketSession session, String clientId, String payload) {
+        Map map = JSONObject.parseObject(payload, Map.class);
+        Object taskId = map.get("taskId");
+        Object content = map.get("message");
+        if (taskId != null && content != null) {
+            completeTask(taskId.toString(), content.toString());
+        }
+    }
+
+    /**
+     * 引擎声明支持二进制帧，确认后该连接上的下发消息改用二进制帧
+     */
+    private void handleProtocol(WebSocketSession session, String clientId, String payload) throws IOException {
+        if (clientId == null || !clientId.startsWith("play-")
+                || JSONObject.parseObject(payload).getIntValue("version") < MessageEnvelope.VERSION) {
+            return;
+        }
+        JSONObject ack = new JSONObject();
+        ack.put("type", MessageType.PROTOCOL.getToken());
+        ack.put("version", MessageEnvelope.VERSION);
+        session.sendMessage(new TextMessage(ack.toJSONString()));
+        session.getAttributes().put(ENVELOPE_ATTR, Boolean.TRUE);
+    }
+
+    /**
+     * 向引擎发送消息，引擎已协商二进制帧时带类型与 taskId 帧头发送，否则发送原 JSON
+     */
+    private void sendToEngine(WebSocketSession session, MessageType type, String taskId, String message) throws IOException {
+        if (!Boolean.TRUE.equals(session.getAttributes().get(ENVELOPE_ATTR))) {
+            session.sendMessage(new TextMessage(message));
+            return;
+        }
+        // 已协商 permessage-deflate 时由传输层压缩
+        boolean deflateNegotiated = session.getExtensions().stream()
+                .anyMatch(extension -> "permessage-deflate".equals(extension.getName()));
+        session.sendMessage(new BinaryMessage(MessageEnvelope.encode(type, taskId, message,
+                deflateNegotiated ? 0 : compressThreshold)));
+    }
+
+    private void sendToEngine(WebSocketSession session, JSONObject message) throws IOException {
+        sendToEngine(session, MessageType.resolve(message.getString("type"), message.getString("roles")),
+                message.getString("taskId"), message.toJSONString());
+    }
+
     public void saveAiResponse(String type, String message) {
 //        消息保存60秒
         RedisCache redisCache = SpringContextUtils.getBean(RedisCache.class);
@@ -121,10 +285,9 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
         if(userInfoRequest == null) {
             return "false";
         }
-        clientId = "play-" + clientId;
-        System.out.println("请求主机" + clientId);
+        System.out.println("请求主机play-" + clientId);
         try {
-            WebSocketSession webSocketSession = sessions.get(clientId);
+            WebSocketSession webSocketSession = engineRouter.pick(clientId, userInfoRequest.getUserId());
             if(webSocketSession == null) {
                 System.out.println("未查询到客户端，ID: " + clientId);
                 return "false";
@@ -135,7 +298,7 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
             }
             userInfoRequest.setRoles("使用F8S:" + userInfoRequest.getRoles());
             log.info("发送给openAI：" + JSONObject.toJSONString(userInfoRequest));
-            webSocketSession.sendMessage(new TextMessage(JSONObject.toJSONString(userInfoRequest)));
+            sendToEngine(webSocketSession, MessageType.AI_CHAT, userInfoRequest.getTaskId(), JSONObject.toJSONString(userInfoRequest));
         } catch (IOException e) {
             return "false";
         }
@@ -151,9 +314,9 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
         // 确定实际的客户端 ID
         if(clientId.contains("mini") && message.contains("playWright")){
             //小程序发给playwright
-            String corpId = userInfoMapper.getCorpIdByUserId(clientId.substring(5));
-            // 获取 WebSocketSession
-            WebSocketSession session = sessions.get("play-"+corpId);
+            String corpId = engineRouter.getCorpIdByUserId(clientId.substring(5));
+            // 获取负载最低的引擎主机
+            WebSocketSession session = engineRouter.pick(corpId, clientId.substring(5));
             // 判断 session 是否存在且在线
             if (session == null || !session.isOpen()) {
                 System.out.println("playWright-" + corpId + " 不在线或连接已关闭");
@@ -162,11 +325,11 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
             }
             JSONObject jsonObject = JSONObject.parseObject(message);
             jsonObject.put("userId",clientId.substring(5));
-            session.sendMessage(new TextMessage(jsonObject.toJSONString()));
+            sendToEngine(session, jsonObject);
         }
 
         if(StringUtils.isNotEmpty(taskId)){
-            WebSocketSession session = sessions.get("play-"+companyId);
+            WebSocketSession session = engineRouter.pick(companyId, clientId);
             // 判断 session 是否存在且在线
             if (session == null || !session.isOpen()) {
                 System.out.println("play-" + companyId + " 不在线或连接已关闭");
@@ -182,14 +345,14 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
             jsonObject.put("username", username);
             jsonObject.put("userId",clientId);
             // 发送消息
-            session.sendMessage(new TextMessage(jsonObject.toJSONString()));
+            sendToEngine(session, jsonObject);
         }
 
         if(clientId.contains("play")&& !message.contains("plugin")){
             System.out.println("play消息："+message);
             JSONObject jsonObject = JSONObject.parseObject(message);
             if(message.contains("checkYB") || message.contains("offline") || message.contains("online")){
-                List<String> userIds = userInfoMapper.getUserIdsByCorpId(clientId.substring(5));
+                List<String> userIds = engineRouter.getUserIdsByCorpId(clientId.substring(5));
                 for (String userId : userIds) {
                     //小程序发给playwright
                     WebSocketSession session = sessions.get("mini-"+userId);
@@ -242,7 +405,7 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
         JSONObject res = new JSONObject();
 
         if(jsonObject.get("taskId")!=null && jsonObject.get("taskId") != ""){
-            WebSocketSession session = sessions.get("play-"+jsonObject.get("corpId"));
+            WebSocketSession session = engineRouter.pick(jsonObject.get("corpId"), jsonObject.get("userId"));
             // 判断 session 是否存在且在线
             if (session == null || !session.isOpen()) {
                 System.out.println("play-" + jsonObject.get("corpId") + " 不在线或连接已关闭");
@@ -261,7 +424,7 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
 //            jsonObject.put("roles",userInfo.getRoles());
 
             // 发送消息
-            session.sendMessage(new TextMessage(jsonObject.toJSONString()));
+            sendToEngine(session, jsonObject);
         }
 
 
@@ -269,7 +432,7 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
             //web发给playwright
             JSONObject jsonObjectMsg = JSONObject.parseObject(message);
             // 获取 WebSocketSession
-            WebSocketSession session = sessions.get("play-"+jsonObjectMsg.get("corpId"));
+            WebSocketSession session = engineRouter.pick(jsonObjectMsg.get("corpId"), clientId.substring(5));
             // 判断 session 是否存在且在线
             if (session == null || !session.isOpen()) {
                 System.out.println("playWright-" + jsonObjectMsg.get("corpId") + " 不在线或连接已关闭");
@@ -278,7 +441,8 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
             }
 
             jsonObjectMsg.put("userId",clientId.substring(5));
-            session.sendMessage(new TextMessage(message));
+            sendToEngine(session, MessageType.resolve(jsonObjectMsg.getString("type"), jsonObjectMsg.getString("roles")),
+                    jsonObjectMsg.getString("taskId"), message);
         }
 
 
@@ -286,7 +450,7 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
             System.out.println("play消息："+message);
             JSONObject jsonObjectMsg = JSONObject.parseObject(message);
             if(message.contains("CHECK") || message.contains("offline") || message.contains("online")){
-                List<String> userIds = userInfoMapper.getUserIdsByCorpId(clientId.substring(5));
+                List<String> userIds = engineRouter.getUserIdsByCorpId(clientId.substring(5));
                 for (String userId : userIds) {
                     //小程序发给playwright
                     WebSocketSession session = sessions.get("mini-"+userId);
@@ -334,10 +498,7 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
                 }
             }else if(message.contains("HTTP")){
                 String requestId = jsonObjectMsg.get("requestId")+"";
-                CompletableFuture<String> future = FUTURE_MAP.remove(requestId);
-                if (future != null) {
-                    future.complete(jsonObjectMsg.get("res")+"");
-                }
+                completeTask(requestId, jsonObjectMsg.get("res")+"");
             }else{
                 String userId = jsonObjectMsg.get("userId")+"";
                 if(StringUtils.isNotEmpty(userId)){
@@ -366,8 +527,60 @@ public class MyWebSocketHandler extends TextWebSocketHandler {
         res.put("message","online");
         return res.toJSONString();
     }
-    public static void registerFuture(String requestId, CompletableFuture<String> future) {
-        FUTURE_MAP.put(requestId, future);
+    /**
+     * 登记一个等待引擎回传结果的任务，结果到达或超时后自动移除
+     */
+    public static CompletableFuture<String> registerTask(String taskId, long timeout, TimeUnit unit) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        FUTURE_MAP.put(taskId, future);
+        future.orTimeout(timeout, unit).whenComplete((result, e) -> FUTURE_MAP.remove(taskId, future));
+        return future;
+    }
+
+    /**
+     * 释放登记的任务，等待方超时或连接断开时调用
+     */
+    public static void releaseTask(String taskId, CompletableFuture<String> future) {
+        FUTURE_MAP.remove(taskId, future);
+        future.cancel(false);
+    }
+
+    /**
+     * 完成任务；本节点没有等待者时广播给其他节点
+     */
+    public void completeTask(String taskId, String content) {
+        if (!completeLocalTask(taskId, content)) {
+            aiResultBroadcaster.publish(taskId, content);
+        }
+    }
+
+    /**
+     * 完成通常无人等待的任务（如草稿）；本节点没有等待者且有节点登记过等待标记时才广播
+     */
+    public void completeExpectedTask(String taskId, String content) {
+        if (!completeLocalTask(taskId, content) && aiResultBroadcaster.isExpected(taskId)) {
+            aiResultBroadcaster.publish(taskId, content);
+        }
+    }
+
+    public static boolean completeLocalTask(String taskId, String content) {
+        CompletableFuture<String> future = FUTURE_MAP.remove(taskId);
+        return future != null && future.complete(content);
+    }
+
+    public static void registerStream(String taskId, AIResultStream stream) {
+        STREAM_MAP.put(taskId, stream);
+    }
+
+    public static AIResultStream getStream(String taskId) {
+        return STREAM_MAP.get(taskId);
+    }
+
+    public static void removeStream(String taskId) {
+        AIResultStream stream = STREAM_MAP.remove(taskId);
+        if (stream != null) {
+            stream.complete();
+        }
     }
 
 
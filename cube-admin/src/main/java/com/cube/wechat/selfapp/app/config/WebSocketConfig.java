@@ -1,6 +1,5 @@
 package com.cube.wechat.selfapp.app.config;
 
-import com.cube.wechat.selfapp.app.mapper.UserInfoMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
@@ -11,14 +10,15 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
     @Autowired
-    private UserInfoMapper userInfoMapper;
+    private MyWebSocketHandler myWebSocketHandler;
 
     @Autowired
     private HostIdInterceptor hostIdInterceptor;
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(new MyWebSocketHandler(userInfoMapper), "/websocket")
+        // 使用容器中的处理器，保证路由表、结果广播等依赖已注入
+        registry.addHandler(myWebSocketHandler, "/websocket")
                 .addInterceptors(new MyHandshakeInterceptor()) // 添加自定义握手拦截器
                 .addInterceptors(hostIdInterceptor)
                 .setAllowedOrigins("*"); // 允许跨域
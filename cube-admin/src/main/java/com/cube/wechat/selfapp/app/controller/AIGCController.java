@@ -6,6 +6,7 @@ import com.cube.common.annotation.Log;
 import com.cube.common.core.controller.BaseController;
 import com.cube.common.entity.UserLogInfo;
 import com.cube.point.controller.PointsSystem;
+import com.cube.wechat.selfapp.app.config.AIResultBroadcaster;
 import com.cube.wechat.selfapp.app.config.MyWebSocketHandler;
 import com.cube.wechat.selfapp.app.domain.JsonRpcRequest;
 import com.cube.wechat.selfapp.app.domain.UserInfoReq;
@@ -17,15 +18,17 @@ import com.cube.wechat.selfapp.app.util.HttpClientUtil;
 import com.cube.wechat.selfapp.app.util.RestUtils;
 import com.cube.wechat.selfapp.corpchat.util.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * @author AspireLife
@@ -40,6 +43,8 @@ public class AIGCController extends BaseController {
     private RedisUtil redisUtil;
     @Autowired
     private MyWebSocketHandler myWebSocketHandler;
+    @Autowired
+    private AIResultBroadcaster aiResultBroadcaster;
 
     @Autowired
     private WeChatApiUtils weChatApiUtils;
@@ -65,6 +70,16 @@ public class AIGCController extends BaseController {
     @Autowired
     private PointsSystem pointsSystem;
 
+    @Autowired
+    @Qualifier("scheduledExecutorService")
+    private ScheduledExecutorService scheduledExecutorService;
+
+    // 小程序等待AI结果的最长时间（秒）
+    private static final long AI_RESULT_TIMEOUT = 250;
+
+    // 等待草稿结果的最长时间（毫秒）
+    private static final long DRAFT_TIMEOUT = 600000;
+
     @GetMapping("/getPlayWrighDrafts")
     public ResultBody getPlayWrighDrafts(WcChromeData wcChromeData){
         wcChromeData.setUsername(getUsername());
@@ -179,20 +194,23 @@ public class AIGCController extends BaseController {
         return ResultBody.success(aigcMapper.getChatHistory(userId,isAll));
     }
 
+    /**
+     * 请求线程只负责下发指令，结果由 MyWebSocketHandler 收到引擎回传后完成，超时或连接断开时释放登记的任务
+     */
     @GetMapping("/getAIResult")
-    public String getAIResult(String userPrompt,String userId,String type){
-
+    public DeferredResult<String> getAIResult(String userPrompt,String userId,String type){
+        DeferredResult<String> deferredResult = new DeferredResult<>(TimeUnit.SECONDS.toMillis(AI_RESULT_TIMEOUT + 5), "发送成功");
         try {
             //先通过userId获取内部ID
             Map map = aigcMapper.getUserInfoByYqId(userId);
             if(map == null){
-                return "用户不存在";
+                deferredResult.setResult("用户不存在");
+                return deferredResult;
             }
             String requestId = UUID.randomUUID().toString();
-            CompletableFuture<String> future = new CompletableFuture<>();
-            MyWebSocketHandler.registerFuture(requestId, future);
-
-
+            CompletableFuture<String> future = MyWebSocketHandler.registerTask(requestId, AI_RESULT_TIMEOUT, TimeUnit.SECONDS);
+            deferredResult.onCompletion(() -> MyWebSocketHandler.releaseTask(requestId, future));
+            future.whenComplete((res, e) -> deferredResult.setResult(e == null ? res : "发送成功"));
 
             userId = map.get("userId") + "";
             String corpId = map.get("corpId") + "";
@@ -203,25 +221,13 @@ public class AIGCController extends BaseController {
             jsonObject.put("corpId",corpId);
             jsonObject.put("requestId",requestId);
             myWebSocketHandler.sendMsgToClient("mini-"+jsonObject.get("userId"),jsonObject.toJSONString(),jsonObject);
-
-            try {
-                return future.get(250, TimeUnit.SECONDS);
-            } catch (TimeoutException e) {
-               e.printStackTrace();
-            } catch (Exception e) {
-               e.printStackTrace();
-            }
-
-
         } catch (Exception e) {
             e.printStackTrace();
+            deferredResult.setResult("发送成功");
         }
-
-        return "发送成功";
+        return deferredResult;
     }
 
-
-
     @GetMapping("/getYBDraft")
     public ResultBody getYBDraft(String taskId){
 
@@ -311,23 +317,15 @@ public class AIGCController extends BaseController {
     }
 
     @GetMapping("/sendNMPrompt")
-    public ResultBody sendNMPrompt(String ciphertext) throws InterruptedException {
-        try {
-
-           Thread.sleep(70000);
-           return ResultBody.success("返回结果");
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        // 将关键词发送给 WebSocket 服务
-        return ResultBody.success("成功");
+    public DeferredResult<ResultBody> sendNMPrompt(String ciphertext) {
+        DeferredResult<ResultBody> deferredResult = new DeferredResult<>(80000L, ResultBody.success("成功"));
+        scheduledExecutorService.schedule(() -> deferredResult.setResult(ResultBody.success("返回结果")), 70, TimeUnit.SECONDS);
+        return deferredResult;
     }
 
     @GetMapping("/sendDSPrompt")
-    public ResultBody sendDSPrompt(String ciphertext) throws InterruptedException {
+    public DeferredResult<ResultBody> sendDSPrompt(String ciphertext) {
         try {
-            Thread.sleep(1000);
             String jsonStr = AESEncryptor.decrypt(ciphertext);
             JSONObject jsonObject = JSONObject.parseObject(jsonStr);
             UserInfoReq userInfoReq = new UserInfoReq();
@@ -339,94 +337,64 @@ public class AIGCController extends BaseController {
             userInfoReq.setTaskId(jsonObject.get("taskId")+"");
             userInfoReq.setType("START_DS");
 //            myWebSocketHandler.sendMsgToClient(userInfoReq.getUserId(),userInfoReq.getUserPrompt(),userInfoReq);
-            long startTime = System.currentTimeMillis();
-            long timeout = 600000;
-            boolean isCompleted = false;
-            Object str = null;
-            while (!isCompleted && (System.currentTimeMillis() - startTime) < timeout) {
-                str = redisUtil.get(jsonObject.get("taskId")+"_DS");
-                if(str!=null){
-                    isCompleted =true;
-                }else {
-                    Thread.sleep(1200);
-                }
-            }
-
-            return ResultBody.success(str.toString());
-
+            return awaitDraft(userInfoReq.getTaskId(), "DeepSeek", ResultBody.success("成功"));
         } catch (Exception e) {
             e.printStackTrace();
         }
         // 将关键词发送给 WebSocket 服务
-        return ResultBody.success("成功");
+        DeferredResult<ResultBody> deferredResult = new DeferredResult<>();
+        deferredResult.setResult(ResultBody.success("成功"));
+        return deferredResult;
     }
 
     @PostMapping("/sendMTPrompt")
-    public ResultBody sendMTPrompt(@RequestBody Map<String, String> map) throws InterruptedException {
-        try {
-            Thread.sleep(500);
-            UserInfoReq userInfoReq = new UserInfoReq();
-            userInfoReq.setUserId(map.get("userId"));
-            userInfoReq.setCorpId(map.get("corpId"));
-            userInfoReq.setKeyword(map.get("userPrompt"));
-            userInfoReq.setUserPrompt(map.get("userPrompt"));
-            userInfoReq.setTaskId(map.get("taskId"));
-            userInfoReq.setRoles(map.get("roles"));
-            userInfoReq.setType("START_MT");
+    public DeferredResult<ResultBody> sendMTPrompt(@RequestBody Map<String, String> map) {
+        UserInfoReq userInfoReq = new UserInfoReq();
+        userInfoReq.setUserId(map.get("userId"));
+        userInfoReq.setCorpId(map.get("corpId"));
+        userInfoReq.setKeyword(map.get("userPrompt"));
+        userInfoReq.setUserPrompt(map.get("userPrompt"));
+        userInfoReq.setTaskId(map.get("taskId"));
+        userInfoReq.setRoles(map.get("roles"));
+        userInfoReq.setType("START_MT");
 //            myWebSocketHandler.sendMsgToClient(userInfoReq.getUserId(),userInfoReq.getUserPrompt(),userInfoReq);
-            long startTime = System.currentTimeMillis();
-            long timeout = 600000;
-            boolean isCompleted = false;
-            String str = null;
-            while (!isCompleted && (System.currentTimeMillis() - startTime) < timeout) {
-                str = aigcService.getDraftContent(map.get("taskId"),"秘塔AI");
-                if(str!=null){
-                    isCompleted =true;
-                }else {
-                    Thread.sleep(2000);
-                }
-            }
-
-            return ResultBody.success(str);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        // 将关键词发送给 WebSocket 服务
-        return ResultBody.success("网络出现异常，请重新尝试一次");
+        return awaitDraft(map.get("taskId"), "秘塔AI", ResultBody.success(null));
     }
 
     @PostMapping("/sendBaiduPrompt")
-    public ResultBody sendBaiduPrompt(@RequestBody Map<String, String> map) throws InterruptedException {
-        try {
-            Thread.sleep(500);
-            UserInfoReq userInfoReq = new UserInfoReq();
-            userInfoReq.setUserId(map.get("userId"));
-            userInfoReq.setCorpId(map.get("corpId"));
-            userInfoReq.setKeyword(map.get("userPrompt"));
-            userInfoReq.setUserPrompt(map.get("userPrompt"));
-            userInfoReq.setTaskId(map.get("taskId"));
-            userInfoReq.setRoles(map.get("roles"));
-            userInfoReq.setType("START_BAIDU");
-            long startTime = System.currentTimeMillis();
-            long timeout = 600000;
-            boolean isCompleted = false;
-            String str = null;
-            while (!isCompleted && (System.currentTimeMillis() - startTime) < timeout) {
-                str = aigcService.getDraftContent(map.get("taskId"), "百度AI");
-                if(str != null) {
-                    isCompleted = true;
-                } else {
-                    Thread.sleep(2000);
-                }
-            }
-
-            return ResultBody.success(str);
+    public DeferredResult<ResultBody> sendBaiduPrompt(@RequestBody Map<String, String> map) {
+        UserInfoReq userInfoReq = new UserInfoReq();
+        userInfoReq.setUserId(map.get("userId"));
+        userInfoReq.setCorpId(map.get("corpId"));
+        userInfoReq.setKeyword(map.get("userPrompt"));
+        userInfoReq.setUserPrompt(map.get("userPrompt"));
+        userInfoReq.setTaskId(map.get("taskId"));
+        userInfoReq.setRoles(map.get("roles"));
+        userInfoReq.setType("START_BAIDU");
+        return awaitDraft(map.get("taskId"), "百度AI", ResultBody.success(null));
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * 等待引擎保存指定AI的草稿，不占用请求线程
+     * 草稿保存（saveDraftContent）时完成等待；登记之前已保存的草稿直接返回；超时或连接断开时释放登记的任务
+     * 草稿可能由其他节点保存，登记等待标记后该节点才会广播
+     */
+    private DeferredResult<ResultBody> awaitDraft(String taskId, String aiName, ResultBody timeoutResult) {
+        String key = draftTaskKey(taskId, aiName);
+        DeferredResult<ResultBody> deferredResult = new DeferredResult<>(DRAFT_TIMEOUT + 5000, timeoutResult);
+        CompletableFuture<String> future = MyWebSocketHandler.registerTask(key, DRAFT_TIMEOUT, TimeUnit.MILLISECONDS);
+        deferredResult.onCompletion(() -> MyWebSocketHandler.releaseTask(key, future));
+        future.whenComplete((content, e) -> deferredResult.setResult(e == null ? ResultBody.success(content) : timeoutResult));
+        aiResultBroadcaster.expect(key, DRAFT_TIMEOUT, TimeUnit.MILLISECONDS);
+        String saved = aigcService.getDraftContent(taskId, aiName);
+        if (saved != null) {
+            future.complete(saved);
         }
-        return ResultBody.success("网络出现异常，请重新尝试一次");
+        return deferredResult;
+    }
+
+    private static String draftTaskKey(Object taskId, Object aiName) {
+        return "draft:" + taskId + ":" + aiName;
     }
 
     @PostMapping("/saveDraftContent")
@@ -442,13 +410,28 @@ public class AIGCController extends BaseController {
 //        }else if(map.get("aiName").equals("福帮手智能体")){
 //            redisUtil.set(map.get("taskId")+"_AGENT",map.get("draftContent")+"",10);
 //        }
-        return aigcService.saveDraftContent(map);
+        ResultBody resultBody = aigcService.saveDraftContent(map);
+        // 通知等待该草稿的请求，内容与 getDraftContent 一致：有分享图片时返回图片地址
+        Object shareImgUrl = map.get("shareImgUrl");
+        Object content = shareImgUrl != null && !"".equals(shareImgUrl) ? shareImgUrl : map.get("draftContent");
+        if (map.get("taskId") != null && map.get("aiName") != null && content != null) {
+            myWebSocketHandler.completeExpectedTask(draftTaskKey(map.get("taskId"), map.get("aiName")), content + "");
+        }
+        return resultBody;
     }
     @PostMapping("/saveLogInfo")
     public ResultBody saveLogInfo(@RequestBody UserLogInfo userLogInfo){
         return aigcService.saveLogInfo(userLogInfo);
     }
 
+    /**
+     * 批量保存日志，引擎端日志批量上报使用
+     */
+    @PostMapping("/saveLogInfoBatch")
+    public ResultBody saveLogInfoBatch(@RequestBody List<UserLogInfo> userLogInfos){
+        return aigcService.saveLogInfoBatch(userLogInfos);
+    }
+
 
     /**
     * 获取腾讯文档token
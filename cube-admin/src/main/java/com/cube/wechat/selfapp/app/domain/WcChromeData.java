@@ -49,4 +49,10 @@ public class WcChromeData extends BaseEntity
     private Integer limit;
 
     private Integer page;
+
+    /** 游标分页：上一页最后一条的时间 */
+    private String lastTime;
+
+    /** 游标分页：上一页最后一条的任务ID */
+    private String lastTaskId;
 }
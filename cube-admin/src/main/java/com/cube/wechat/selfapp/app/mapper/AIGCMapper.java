@@ -13,13 +13,14 @@ public interface AIGCMapper {
 
 
 
-    List<Map> getPlayWrightDraftList(@Param("userId") Long userId,@Param("keyWord") String keyWord);
+    List<Map> getPlayWrightDraftList(@Param("userId") Long userId,@Param("keyWord") String keyWord,
+                                     @Param("lastTime") String lastTime,@Param("lastTaskId") String lastTaskId);
 
-    List<Map> getPlayWrightDraftAiList(String taskId);
+    List<Map> getPlayWrightDraftAiListByTaskIds(List<String> taskIds);
 
     List<Map> getNodeLogList();
 
-    List<Map> getPlayWrightNodeList(String userPrompt);
+    List<Map> getPlayWrightNodeListByPrompts(List<String> userPrompts);
 
     int saveDraftContent(Map map);
 
@@ -37,5 +38,7 @@ public interface AIGCMapper {
 
     int saveLogInfo(UserLogInfo userLogInfo);
 
+    int saveLogInfoBatch(List<UserLogInfo> userLogInfos);
+
 
 }
@@ -28,6 +28,8 @@ public interface AIGCService {
 
     ResultBody saveLogInfo(UserLogInfo userLogInfo);
 
+    ResultBody saveLogInfoBatch(List<UserLogInfo> userLogInfos);
+
     String getUserIdByUnionId(String unionId);
 
     String getUnionIdByUserId(String userId);
@@ -1,6 +1,8 @@
 package com.cube.wechat.selfapp.app.service.impl;
 
 import com.cube.common.entity.UserLogInfo;
+import com.cube.common.utils.StringUtils;
+import com.cube.common.utils.WriteBehindBuffer;
 import com.cube.wechat.selfapp.app.domain.WcChromeData;
 import com.cube.wechat.selfapp.app.mapper.AIGCMapper;
 import com.cube.wechat.selfapp.app.mapper.UserInfoMapper;
@@ -9,8 +11,12 @@ import com.cube.wechat.selfapp.corpchat.util.ResultBody;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -30,6 +36,30 @@ public class AIGCServiceImpl implements AIGCService {
     @Autowired
     private UserInfoMapper userInfoMapper;
 
+    @Value("${writeBehind.capacity:10000}")
+    private int writeBehindCapacity;
+
+    @Value("${writeBehind.batchSize:200}")
+    private int writeBehindBatchSize;
+
+    @Value("${writeBehind.flushMillis:1000}")
+    private long writeBehindFlushMillis;
+
+    /**
+     * 引擎日志写后缓冲，合并为多行插入
+     */
+    private WriteBehindBuffer<UserLogInfo> logInfoBuffer;
+
+    @PostConstruct
+    public void initLogInfoBuffer() {
+        logInfoBuffer = new WriteBehindBuffer<>("wc_log_info", writeBehindCapacity, writeBehindBatchSize,
+                writeBehindFlushMillis, list -> aigcMapper.saveLogInfoBatch(list));
+    }
+
+    @PreDestroy
+    public void shutdownLogInfoBuffer() {
+        logInfoBuffer.shutdown();
+    }
 
     @Override
     public String getUserIdByUnionId(String unionId) {
@@ -38,25 +68,74 @@ public class AIGCServiceImpl implements AIGCService {
 
     @Override
     public ResultBody getPlayWrighDrafts(WcChromeData wcChromeData) {
+        if (StringUtils.isNotEmpty(wcChromeData.getLastTaskId())) {
+            return getPlayWrighDraftsAfter(wcChromeData);
+        }
         PageHelper.startPage(wcChromeData.getPage(),wcChromeData.getLimit());
-        List<Map> list = aigcMapper.getPlayWrightDraftList(wcChromeData.getUserId(),wcChromeData.getKeyWord());
+        List<Map> list = aigcMapper.getPlayWrightDraftList(wcChromeData.getUserId(),wcChromeData.getKeyWord(),null,null);
         PageInfo pageInfo = new PageInfo(list);
-        List<Map> resList = pageInfo.getList();
+        fillDraftAiResponses(pageInfo.getList());
+        return ResultBody.success(pageInfo);
+    }
+
+    /**
+     * 游标分页：从上一页最后一条（lastTime、lastTaskId）之后继续查询，不统计总数，也不跳过前面的页；
+     * 游标之前的草稿仍需按任务分组后排序，扫描量与剩余的历史草稿数成正比
+     */
+    private ResultBody getPlayWrighDraftsAfter(WcChromeData wcChromeData) {
+        int limit = wcChromeData.getLimit() == null ? 10 : wcChromeData.getLimit();
+        // 多取一条用于判断是否还有下一页
+        PageHelper.startPage(1, limit + 1, false);
+        List<Map> list = aigcMapper.getPlayWrightDraftList(wcChromeData.getUserId(),wcChromeData.getKeyWord(),
+                wcChromeData.getLastTime(),wcChromeData.getLastTaskId());
+        boolean hasNextPage = list.size() > limit;
+        List<Map> resList = hasNextPage ? new ArrayList<>(list.subList(0, limit)) : new ArrayList<>(list);
+        fillDraftAiResponses(resList);
+        Map<String, Object> res = new HashMap<>();
+        res.put("list", resList);
+        res.put("hasNextPage", hasNextPage);
+        return ResultBody.success(res);
+    }
+
+    /**
+     * 一次查询当前页所有任务的AI回复，按任务分组后回填
+     */
+    private void fillDraftAiResponses(List<Map> resList) {
+        if (resList.isEmpty()) {
+            return;
+        }
+        List<String> taskIds = new ArrayList<>();
         for (Map map : resList) {
-            List<Map> draftList = aigcMapper.getPlayWrightDraftAiList(map.get("taskId")+"");
-            map.put("aiResponses",draftList);
+            taskIds.add(map.get("taskId")+"");
+        }
+        Map<String, List<Map>> grouped = new HashMap<>();
+        for (Map draft : aigcMapper.getPlayWrightDraftAiListByTaskIds(taskIds)) {
+            grouped.computeIfAbsent(draft.remove("taskId")+"", key -> new ArrayList<>()).add(draft);
+        }
+        for (Map map : resList) {
+            map.put("aiResponses", grouped.getOrDefault(map.get("taskId")+"", new ArrayList<>()));
         }
-        return ResultBody.success(pageInfo);
     }
+
     @Override
     public ResultBody getNodeLog(WcChromeData wcChromeData) {
         PageHelper.startPage(wcChromeData.getPage(),wcChromeData.getLimit());
         List<Map> list = aigcMapper.getNodeLogList();
         PageInfo pageInfo = new PageInfo(list);
         List<Map> resList = pageInfo.getList();
-        for (Map map : resList) {
-            List<Map> draftList = aigcMapper.getPlayWrightNodeList(map.get("question")+"");
-            map.put("aiResponses",draftList);
+        if (!resList.isEmpty()) {
+            // 一次查询当前页所有问题的节点日志，按问题分组后回填
+            List<String> questions = new ArrayList<>();
+            for (Map map : resList) {
+                questions.add(map.get("question")+"");
+            }
+            Map<String, List<Map>> grouped = new HashMap<>();
+            for (Map node : aigcMapper.getPlayWrightNodeListByPrompts(questions)) {
+                grouped.computeIfAbsent(node.remove("question")+"", key -> new ArrayList<>()).add(node);
+            }
+            for (Map map : resList) {
+                map.put("aiResponses", grouped.getOrDefault(map.get("question")+"", new ArrayList<>()));
+            }
         }
         return ResultBody.success(pageInfo);
     }
@@ -73,7 +152,26 @@ public class AIGCServiceImpl implements AIGCService {
 
     @Override
     public ResultBody saveLogInfo(UserLogInfo userLogInfo) {
-        aigcMapper.saveLogInfo(userLogInfo);
+        // 调用方未给出执行时间时以入队时间为准，批量写入时作为执行时间
+        if (userLogInfo.getExecutionTime() == null) {
+            userLogInfo.setExecutionTime(LocalDateTime.now());
+        }
+        logInfoBuffer.offer(userLogInfo);
+        return ResultBody.success("保存成功");
+    }
+
+    @Override
+    public ResultBody saveLogInfoBatch(List<UserLogInfo> userLogInfos) {
+        if (userLogInfos == null || userLogInfos.isEmpty()) {
+            return ResultBody.success("保存成功");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (UserLogInfo userLogInfo : userLogInfos) {
+            if (userLogInfo.getExecutionTime() == null) {
+                userLogInfo.setExecutionTime(now);
+            }
+        }
+        logInfoBuffer.offerAll(userLogInfos);
         return ResultBody.success("保存成功");
     }
 
@@ -447,6 +447,86 @@ public class RedisUtil {
             return 0;
         }
     }
+    // ===============================zset=================================
+
+    /**
+     * 将数据放入有序集合并设置时间
+     *
+     * @param key 键
+     * @param value 值
+     * @param score 分值
+     * @param time 时间(秒) 大于0时刷新整个集合的过期时间
+     * @return true成功 false失败
+     */
+    public boolean zAdd(String key, Object value, double score, long time) {
+        try {
+            key = getKey(key);
+            redisTemplate.opsForZSet().add(key, value, score);
+            if (time > 0) {
+                redisTemplate.expire(key, time, TimeUnit.SECONDS);
+            }
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * 按分值范围获取有序集合的内容
+     *
+     * @param key 键
+     * @param min 最小分值
+     * @param max 最大分值
+     * @return
+     */
+    public Set<Object> zRangeByScore(String key, double min, double max) {
+        try {
+            key = getKey(key);
+            return redisTemplate.opsForZSet().rangeByScore(key, min, max);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 按分值范围移除有序集合的内容
+     *
+     * @param key 键
+     * @param min 最小分值
+     * @param max 最大分值
+     * @return 移除的个数
+     */
+    public long zRemoveRangeByScore(String key, double min, double max) {
+        try {
+            key = getKey(key);
+            Long count = redisTemplate.opsForZSet().removeRangeByScore(key, min, max);
+            return count == null ? 0 : count;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * 移除有序集合中的值
+     *
+     * @param key 键
+     * @param values 值 可以是多个
+     * @return 移除的个数
+     */
+    public long zRemove(String key, Object... values) {
+        try {
+            key = getKey(key);
+            Long count = redisTemplate.opsForZSet().remove(key, values);
+            return count == null ? 0 : count;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
     // ===============================list=================================
 
     /**
@@ -8,12 +8,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * 微信消息服务类
@@ -28,11 +32,46 @@ public class WeChatMessageService {
     @Autowired
     private RedisUtil redisUtil;
     
-    // 消息缓存Key前缀
-    private static final String MESSAGE_CACHE_PREFIX = "wechat_message:";
+    // 消息索引Key前缀，按内容哈希分组的有序集合，分值为消息时间，供多个节点共同查询
+    private static final String MESSAGE_INDEX_PREFIX = "wechat_message_idx:";
     
-    // 内存缓存，用于快速查询
-    private final Map<String, WeChatMessage> messageCache = new ConcurrentHashMap<>();
+    // 消息缓存时长（毫秒）
+    private static final long CACHE_MILLIS = 10000;
+    
+    // 匹配时间范围：目标时间前4秒
+    private static final long MATCH_WINDOW_MILLIS = 4000;
+    
+    // 时间桶个数，需覆盖缓存时长，按秒循环使用
+    private static final int BUCKET_SLOTS = 16;
+    
+    // 内存索引：按消息时间（秒）分桶，桶内按内容分组；过期时整桶替换，查询只访问时间范围内的几个桶。
+    // 只在 Redis 不可用时使用，正常情况下以 Redis 中所有节点共同写入的有序集合为准
+    private final AtomicReferenceArray<MessageBucket> buckets = new AtomicReferenceArray<>(BUCKET_SLOTS);
+    
+    /**
+     * 匹配到的消息，member 为它在 Redis 有序集合中的原始成员，从内存索引匹配时为 null
+     */
+    private static final class MatchedMessage {
+        private final WeChatMessage message;
+        private final Object member;
+        
+        private MatchedMessage(WeChatMessage message, Object member) {
+            this.message = message;
+            this.member = member;
+        }
+    }
+    
+    /**
+     * 一秒内的消息，按内容分组
+     */
+    private static final class MessageBucket {
+        private final long second;
+        private final Map<String, List<WeChatMessage>> byContent = new ConcurrentHashMap<>();
+        
+        private MessageBucket(long second) {
+            this.second = second;
+        }
+    }
     
     // 时间格式解析器
     private static final List<SimpleDateFormat> TIME_FORMATS = Arrays.asList(
@@ -53,20 +92,21 @@ public class WeChatMessageService {
      */
     public void cacheMessage(WeChatMessage message) {
         try {
-            String cacheKey = MESSAGE_CACHE_PREFIX + message.getCreateTime() + ":" + message.getContent();
+            if (message.getCreateTime() == null || message.getContent() == null) {
+                return;
+            }
             
-            // 存储到Redis，过期时间10秒
-            redisUtil.set(cacheKey, JSON.toJSONString(message), 10);
+            // 存储到Redis有序集合，过期时间10秒，并移除集合中已过期的消息
+            String indexKey = indexKey(message.getContent());
+            redisUtil.zAdd(indexKey, JSON.toJSONString(message), message.getCreateTime(), CACHE_MILLIS / 1000);
+            redisUtil.zRemoveRangeByScore(indexKey, 0, message.getCreateTime() - CACHE_MILLIS);
             
-            // 存储到内存缓存
-            messageCache.put(cacheKey, message);
+            // 存储到内存索引
+            indexMessage(message);
             
             // 美观输出消息信息
             printMessageInfo(message);
             
-            // 清理过期的内存缓存
-            cleanExpiredCache();
-            
         } catch (Exception e) {
             logger.error("缓存消息失败", e);
         }
@@ -96,7 +136,7 @@ public class WeChatMessageService {
             }
             
             // 在4秒时间范围内查找匹配的消息
-            List<WeChatMessage> matchedMessages = findMatchedMessages(targetTime, content);
+            List<MatchedMessage> matchedMessages = findMatchedMessages(targetTime, content);
             
             if (matchedMessages.isEmpty()) {
                 String defaultUnionId = "ovZrQ673x1GGaP6cX5XUnfzu7TmE";
@@ -110,10 +150,14 @@ public class WeChatMessageService {
                 return ApiResponse.success(defaultUnionId);
             }
             
-            WeChatMessage message = matchedMessages.get(0);
+            WeChatMessage message = matchedMessages.get(0).message;
             
-            // 使用后删除缓存
-            removeMessageFromCache(message);
+            // 使用后删除缓存，同一条消息被其他节点抢先使用时按未找到处理
+            if (!removeMessageFromCache(matchedMessages.get(0))) {
+                String defaultUnionId = "ovZrQ673x1GGaP6cX5XUnfzu7TmE";
+                logger.info("📤 返回结果 | 错误码: 10010 | union_id: {}", defaultUnionId);
+                return ApiResponse.success(defaultUnionId);
+            }
             String unionId = message.getUnionId();
             if(unionId == null) {
                 unionId = "ovZrQ673x1GGaP6cX5XUnfzu7TmE"; // 默认值
@@ -178,83 +222,144 @@ public class WeChatMessageService {
     
     /**
      * 查找匹配的消息（4秒时间范围内）
+     * 以 Redis 为准，其中包含所有节点收到的消息，多个节点各收到一条相同内容时同样能识别为重复；
+     * Redis 不可用时退回本节点的内存索引
      */
-    private List<WeChatMessage> findMatchedMessages(Long targetTime, String content) {
-        List<WeChatMessage> matchedMessages = new ArrayList<>();
-        
+    private List<MatchedMessage> findMatchedMessages(Long targetTime, String content) {
         // 查找时间范围：目标时间前4秒
-        long startTime = targetTime - 4000;
+        long startTime = targetTime - MATCH_WINDOW_MILLIS;
         long endTime = targetTime;
         
-        // 从内存缓存中查找
-        for (WeChatMessage message : messageCache.values()) {
-            if (message.getCreateTime() != null && 
-                message.getCreateTime() >= startTime && 
-                message.getCreateTime() <= endTime &&
-                content.equals(message.getContent())) {
-                matchedMessages.add(message);
-            }
+        List<MatchedMessage> matchedMessages = findFromRedis(startTime, endTime, content);
+        if (matchedMessages == null) {
+            matchedMessages = findFromMemory(startTime, endTime, content);
         }
-        
-        // 如果内存缓存中没有找到，尝试从Redis中查找
-        if (matchedMessages.isEmpty()) {
-            matchedMessages = findFromRedis(startTime, endTime, content);
-        }
-        
         return matchedMessages;
     }
     
     /**
      * 从Redis中查找消息
+     *
+     * @return Redis 不可用时返回 null
      */
-    private List<WeChatMessage> findFromRedis(long startTime, long endTime, String content) {
-        List<WeChatMessage> matchedMessages = new ArrayList<>();
-        
+    private List<MatchedMessage> findFromRedis(long startTime, long endTime, String content) {
+        Set<Object> values = redisUtil.zRangeByScore(indexKey(content), startTime, endTime);
+        if (values == null) {
+            return null;
+        }
+        List<MatchedMessage> matchedMessages = new ArrayList<>();
         try {
-            // 由于RedisUtil没有keys方法，我们使用内存缓存进行查找
-            // 在实际生产环境中，建议使用Redis的scan命令来避免keys的性能问题
+            for (Object value : values) {
+                WeChatMessage message = JSON.parseObject(String.valueOf(value), WeChatMessage.class);
+                // 排除哈希冲突
+                if (message != null && content.equals(message.getContent())) {
+                    matchedMessages.add(new MatchedMessage(message, value));
+                }
+            }
         } catch (Exception e) {
-            // 静默处理异常
+            logger.error("解析Redis中的消息失败", e);
+            return null;
+        }
+        return matchedMessages;
+    }
+    
+    /**
+     * 从内存索引中查找，只访问时间范围覆盖的几个桶
+     */
+    private List<MatchedMessage> findFromMemory(long startTime, long endTime, String content) {
+        List<MatchedMessage> matchedMessages = new ArrayList<>();
+        for (long second = Math.floorDiv(startTime, 1000); second <= Math.floorDiv(endTime, 1000); second++) {
+            MessageBucket bucket = liveBucket(second);
+            if (bucket == null) {
+                continue;
+            }
+            List<WeChatMessage> messages = bucket.byContent.get(content);
+            if (messages == null) {
+                continue;
+            }
+            for (WeChatMessage message : messages) {
+                if (message.getCreateTime() >= startTime && message.getCreateTime() <= endTime) {
+                    matchedMessages.add(new MatchedMessage(message, null));
+                }
+            }
         }
-        
         return matchedMessages;
     }
     
     /**
      * 从缓存中删除消息
+     * Redis 中的删除是原子的 ZREM，多个节点同时匹配到同一条消息时只有一个节点删除成功
+     *
+     * @return 是否由本次调用删除；消息已被其他节点使用时返回 false
      */
-    private void removeMessageFromCache(WeChatMessage message) {
+    private boolean removeMessageFromCache(MatchedMessage matched) {
+        WeChatMessage message = matched.message;
+        boolean claimed = true;
         try {
-            String cacheKey = MESSAGE_CACHE_PREFIX + message.getCreateTime() + ":" + message.getContent();
-            
-            // 从Redis删除
-            redisUtil.delete(cacheKey);
+            if (matched.member != null) {
+                claimed = redisUtil.zRemove(indexKey(message.getContent()), matched.member) > 0;
+            }
             
-            // 从内存缓存删除
-            messageCache.remove(cacheKey);
+            // 从内存索引删除
+            MessageBucket bucket = liveBucket(Math.floorDiv(message.getCreateTime(), 1000));
+            if (bucket != null) {
+                List<WeChatMessage> messages = bucket.byContent.get(message.getContent());
+                if (messages != null) {
+                    messages.removeIf(cached -> sameMessage(cached, message));
+                }
+            }
         } catch (Exception e) {
             logger.error("删除消息缓存失败", e);
         }
+        return claimed;
     }
     
     /**
-     * 清理过期的内存缓存
+     * 写入内存索引，时间桶已被更早的秒占用时整桶替换，相当于整桶过期
      */
-    private void cleanExpiredCache() {
-        long currentTime = System.currentTimeMillis();
-        Iterator<Map.Entry<String, WeChatMessage>> iterator = messageCache.entrySet().iterator();
-        
-        while (iterator.hasNext()) {
-            Map.Entry<String, WeChatMessage> entry = iterator.next();
-            WeChatMessage message = entry.getValue();
-            
-            // 清理超过10秒的缓存
-            if (currentTime - message.getCacheTime() > 10000) {
-                iterator.remove();
+    private void indexMessage(WeChatMessage message) {
+        long second = Math.floorDiv(message.getCreateTime(), 1000);
+        int slot = (int) Math.floorMod(second, (long) BUCKET_SLOTS);
+        while (true) {
+            MessageBucket bucket = buckets.get(slot);
+            if (bucket != null && bucket.second == second) {
+                bucket.byContent.computeIfAbsent(message.getContent(), key -> new CopyOnWriteArrayList<>()).add(message);
+                return;
             }
+            if (bucket != null && bucket.second > second) {
+                // 比桶内消息早一轮以上，早已过期，只保留在Redis中
+                return;
+            }
+            buckets.compareAndSet(slot, bucket, new MessageBucket(second));
         }
     }
     
+    /**
+     * 取指定秒的时间桶，已过期的桶直接清除
+     */
+    private MessageBucket liveBucket(long second) {
+        int slot = (int) Math.floorMod(second, (long) BUCKET_SLOTS);
+        MessageBucket bucket = buckets.get(slot);
+        if (bucket == null || bucket.second != second) {
+            return null;
+        }
+        if ((second + 1) * 1000 < System.currentTimeMillis() - CACHE_MILLIS) {
+            buckets.compareAndSet(slot, bucket, null);
+            return null;
+        }
+        return bucket;
+    }
+    
+    private boolean sameMessage(WeChatMessage a, WeChatMessage b) {
+        return a == b || (Objects.equals(a.getMsgId(), b.getMsgId())
+                && Objects.equals(a.getCreateTime(), b.getCreateTime())
+                && Objects.equals(a.getFromUserName(), b.getFromUserName()));
+    }
+    
+    private String indexKey(String content) {
+        return MESSAGE_INDEX_PREFIX + DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8));
+    }
+    
     /**
      * 简化输出消息信息
      */
@@ -278,14 +383,26 @@ public class WeChatMessageService {
      * 获取缓存大小
      */
     public int getCacheSize() {
-        return messageCache.size();
+        int size = 0;
+        for (int i = 0; i < BUCKET_SLOTS; i++) {
+            MessageBucket bucket = buckets.get(i);
+            if (bucket == null || liveBucket(bucket.second) == null) {
+                continue;
+            }
+            for (List<WeChatMessage> messages : bucket.byContent.values()) {
+                size += messages.size();
+            }
+        }
+        return size;
     }
     
     /**
      * 清空缓存
      */
     public void clearCache() {
-        messageCache.clear();
+        for (int i = 0; i < BUCKET_SLOTS; i++) {
+            buckets.set(i, null);
+        }
         logger.info("🗑️ 内存缓存已清空");
     }
     
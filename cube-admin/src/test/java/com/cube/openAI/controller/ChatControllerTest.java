@@ -0,0 +1,164 @@
+package com.cube.openAI.controller;
+
+import com.cube.openAI.config.ModelRegistry;
+import com.cube.openAI.constants.OpenAIExceptionConstants;
+import com.cube.openAI.model.AIModel;
+import com.cube.openAI.pojos.ChatCompletionRequest;
+import com.cube.openAI.pojos.ChatCompletionResponse;
+import com.cube.openAI.pojos.Message;
+import com.cube.openAI.utils.AIResultUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import reactor.core.publisher.Flux;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatControllerTest {
+
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+    private ChatController controller;
+
+    @BeforeEach
+    void setUp() {
+        AIModel model = new AIModel() {
+            @Override
+            public String generate(List<Message> messages, Double temperature, Integer maxTokens) {
+                return result.join();
+            }
+
+            @Override
+            public CompletableFuture<String> generateAsync(List<Message> messages, Double temperature, Integer maxTokens) {
+                return result;
+            }
+
+            @Override
+            public Flux<String> generateByStream(List<Message> messages, Double temperature, Integer maxTokens) {
+                return Flux.empty();
+            }
+        };
+        controller = new ChatController();
+        ReflectionTestUtils.setField(controller, "modelRegistry", new ModelRegistry() {
+            @Override
+            public AIModel getModel(String modelName) {
+                return model;
+            }
+        });
+    }
+
+    private DeferredResult<?> createCompletion() {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setModel("deepseek");
+        request.setMessages(List.of(new Message("user", "你好")));
+        Object response = controller.createCompletion(request);
+        assertTrue(response instanceof DeferredResult);
+        return (DeferredResult<?>) response;
+    }
+
+    /**
+     * 模拟容器的异步请求，记录 Spring MVC 设置的超时时间与超时回调
+     */
+    private static class AsyncRequest {
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final List<Runnable> timeoutHandlers = new ArrayList<>();
+        private Long timeout;
+        private boolean started;
+        private boolean dispatched;
+
+        private final AsyncWebRequest request = (AsyncWebRequest) Proxy.newProxyInstance(
+                AsyncWebRequest.class.getClassLoader(), new Class<?>[]{AsyncWebRequest.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAttribute":
+                            return attributes.get((String) args[0]);
+                        case "setAttribute":
+                            attributes.put((String) args[0], args[1]);
+                            return null;
+                        case "setTimeout":
+                            timeout = (Long) args[0];
+                            return null;
+                        case "addTimeoutHandler":
+                            timeoutHandlers.add((Runnable) args[0]);
+                            return null;
+                        case "startAsync":
+                            started = true;
+                            return null;
+                        case "isAsyncStarted":
+                            return started && !dispatched;
+                        case "dispatch":
+                            dispatched = true;
+                            return null;
+                        default:
+                            return method.getReturnType() == boolean.class ? false : null;
+                    }
+                });
+
+        private WebAsyncManager start(DeferredResult<?> deferredResult) throws Exception {
+            WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+            asyncManager.setAsyncWebRequest(request);
+            asyncManager.startDeferredResultProcessing(deferredResult);
+            return asyncManager;
+        }
+
+        private void fireTimeout() {
+            timeoutHandlers.forEach(Runnable::run);
+        }
+    }
+
+    @Test
+    void asyncTimeoutOutlastsResultWait() throws Exception {
+        AsyncRequest asyncRequest = new AsyncRequest();
+        asyncRequest.start(createCompletion());
+
+        assertNotNull(asyncRequest.timeout);
+        assertTrue(asyncRequest.timeout > AIResultUtil.RESULT_TIMEOUT.toMillis());
+        assertFalse(asyncRequest.dispatched);
+    }
+
+    @Test
+    void containerTimeoutReturnsModelError() throws Exception {
+        AsyncRequest asyncRequest = new AsyncRequest();
+        DeferredResult<?> deferredResult = createCompletion();
+        WebAsyncManager asyncManager = asyncRequest.start(deferredResult);
+
+        asyncRequest.fireTimeout();
+
+        assertTrue(asyncRequest.dispatched);
+        RuntimeException error = assertInstanceOf(RuntimeException.class, asyncManager.getConcurrentResult());
+        assertEquals(OpenAIExceptionConstants.MODEL_EXECUTE_ERROR, error.getMessage());
+        assertSame(error, deferredResult.getResult());
+    }
+
+    @Test
+    void completesWithResponseWhenResultArrives() {
+        DeferredResult<?> deferredResult = createCompletion();
+
+        result.complete("回答");
+
+        ResponseEntity<?> entity = (ResponseEntity<?>) deferredResult.getResult();
+        ChatCompletionResponse response = (ChatCompletionResponse) entity.getBody();
+        assertEquals("回答", response.getChoices().get(0).getMessage().getContent());
+    }
+
+    @Test
+    void propagatesResultFailure() {
+        DeferredResult<?> deferredResult = createCompletion();
+        RuntimeException failure = new RuntimeException("超时");
+
+        result.completeExceptionally(failure);
+
+        assertSame(failure, deferredResult.getResult());
+    }
+}
@@ -0,0 +1,58 @@
+package com.cube.openAI.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AIResultStreamTest {
+
+    private static List<String> drain(AIResultStream stream) {
+        stream.complete();
+        return stream.asFlux().collectList().block();
+    }
+
+    @Test
+    void fullContentEmitsOnlyTheNewSuffix() {
+        AIResultStream stream = new AIResultStream();
+        stream.appendDelta("你好");
+        stream.appendFull("你好，世界");
+        stream.appendFull("你好，世界");
+
+        assertEquals(List.of("你好", "，世界"), drain(stream));
+    }
+
+    @Test
+    void resetRebasesLaterDeltas() {
+        AIResultStream stream = new AIResultStream();
+        stream.appendDelta("# 标题");
+        stream.appendDelta("\n正文");
+        // markdown 重新排版后标题符号消失
+        stream.reset("标题\n正文");
+        stream.appendDelta("继续");
+        stream.appendFull("标题\n正文继续。");
+
+        assertEquals(List.of("# 标题", "\n正文", "标题\n正文", "继续", "。"), drain(stream));
+    }
+
+    @Test
+    void resetThatOnlyExtendsEmitsTheSuffix() {
+        AIResultStream stream = new AIResultStream();
+        stream.appendDelta("第一段");
+        stream.reset("第一段第二段");
+        stream.reset("第一段");
+
+        assertEquals(List.of("第一段", "第二段"), drain(stream));
+    }
+
+    @Test
+    void divergentFullContentIsTreatedAsReset() {
+        AIResultStream stream = new AIResultStream();
+        stream.appendDelta("答案是 4");
+        stream.appendFull("答案是 5");
+        stream.appendFull("答案是 5，因为");
+
+        assertEquals(List.of("答案是 4", "5", "，因为"), drain(stream));
+    }
+}
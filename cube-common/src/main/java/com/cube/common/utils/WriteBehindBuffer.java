@@ -0,0 +1,298 @@
+package com.cube.common.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 写后缓冲
+ * 日志类的数据先进入内存队列，由后台线程按条数或时间间隔合并成一次多行插入写库，
+ * 避免每条记录单独占用一次事务。队列已满或缓冲已关闭时在调用线程中直接写入，不丢数据。
+ * 多行插入失败时改为逐条写入，只放弃单独写入仍失败的记录。
+ * 应用退出时由 ShutdownManager 调用 shutdownAll 写完剩余数据。
+ *
+ * @author cube
+ * @date 2025-09-16
+ */
+public class WriteBehindBuffer<T>
+{
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    /**
+     * 已创建的缓冲，退出时统一关闭
+     */
+    private static final List<WriteBehindBuffer<?>> BUFFERS = new CopyOnWriteArrayList<>();
+
+    private final String name;
+
+    private final int batchSize;
+
+    private final long flushMillis;
+
+    private final BlockingQueue<T> queue;
+
+    private final Consumer<List<T>> writer;
+
+    private final Thread flushThread;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong offered = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong direct = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+
+    private volatile long lastFlushNanos;
+
+    private volatile long maxFlushNanos;
+
+    /**
+     * @param name 名称，用于日志与监控
+     * @param capacity 队列容量
+     * @param batchSize 每次写入的最大条数
+     * @param flushMillis 不足一批时最长等待时间（毫秒）
+     * @param writer 批量写入方法，通常对应 Mapper 中的多行 insert
+     */
+    public WriteBehindBuffer(String name, int capacity, int batchSize, long flushMillis, Consumer<List<T>> writer)
+    {
+        this.name = name;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushMillis = Math.max(1, flushMillis);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.writer = writer;
+        this.flushThread = new Thread(this::run, "write-behind-" + name);
+        this.flushThread.setDaemon(true);
+        this.flushThread.start();
+        BUFFERS.add(this);
+    }
+
+    /**
+     * 加入队列，队列已满或已关闭时直接写入
+     */
+    public void offer(T item)
+    {
+        offered.incrementAndGet();
+        if (!running || !queue.offer(item))
+        {
+            direct.incrementAndGet();
+            write(Collections.singletonList(item));
+            return;
+        }
+        if (!running)
+        {
+            // 与 shutdown 并发时入队可能晚于 shutdown 排空队列，由调用线程补写
+            drain();
+        }
+    }
+
+    /**
+     * 批量加入队列
+     */
+    public void offerAll(List<T> items)
+    {
+        for (T item : items)
+        {
+            offer(item);
+        }
+    }
+
+    private void run()
+    {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (running)
+        {
+            try
+            {
+                T first = queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+                if (first == null)
+                {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMillis);
+                while (batch.size() < batchSize)
+                {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || queue.drainTo(batch, batchSize - batch.size()) == 0
+                            && !pollInto(batch, remaining))
+                    {
+                        break;
+                    }
+                }
+                write(batch);
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    private boolean pollInto(List<T> batch, long remainingNanos) throws InterruptedException
+    {
+        T item = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+        if (item == null)
+        {
+            return false;
+        }
+        batch.add(item);
+        return true;
+    }
+
+    private void write(List<T> batch)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            writer.accept(batch);
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+        }
+        catch (Exception e)
+        {
+            if (batch.size() > 1)
+            {
+                logger.warn("写后缓冲[{}]批量写入{}条失败，改为逐条写入", name, batch.size(), e);
+                writeEach(batch);
+            }
+            else
+            {
+                failed.incrementAndGet();
+                logger.error("写后缓冲[{}]写入失败，数据: {}", name, batch.get(0), e);
+            }
+        }
+        finally
+        {
+            long cost = System.nanoTime() - start;
+            lastFlushNanos = cost;
+            totalFlushNanos.addAndGet(cost);
+            if (cost > maxFlushNanos)
+            {
+                maxFlushNanos = cost;
+            }
+        }
+    }
+
+    /**
+     * 逐条写入，一条记录出错不影响同批的其他记录
+     */
+    private void writeEach(List<T> batch)
+    {
+        for (T item : batch)
+        {
+            try
+            {
+                writer.accept(Collections.singletonList(item));
+                written.incrementAndGet();
+            }
+            catch (Exception e)
+            {
+                failed.incrementAndGet();
+                logger.error("写后缓冲[{}]写入失败，数据: {}", name, item, e);
+            }
+        }
+        batches.incrementAndGet();
+    }
+
+    /**
+     * 停止后台线程并写完队列中剩余的数据，之后的写入在调用线程中直接完成
+     */
+    public void shutdown()
+    {
+        if (!running)
+        {
+            return;
+        }
+        running = false;
+        // 不中断后台线程，避免打断正在执行的写入
+        try
+        {
+            flushThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+        logger.info("写后缓冲[{}]已关闭，累计写入{}条", name, written.get());
+    }
+
+    /**
+     * 在当前线程写完队列中的数据
+     */
+    private void drain()
+    {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0)
+        {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 关闭所有写后缓冲
+     */
+    public static void shutdownAll()
+    {
+        for (WriteBehindBuffer<?> buffer : BUFFERS)
+        {
+            buffer.shutdown();
+        }
+    }
+
+    /**
+     * 队列深度与写入耗时
+     */
+    public Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batchCount = batches.get();
+        stats.put("name", name);
+        stats.put("queueDepth", queue.size());
+        stats.put("capacity", queue.size() + queue.remainingCapacity());
+        stats.put("offered", offered.get());
+        stats.put("written", written.get());
+        stats.put("batches", batchCount);
+        stats.put("direct", direct.get());
+        stats.put("failed", failed.get());
+        stats.put("lastFlushMillis", TimeUnit.NANOSECONDS.toMillis(lastFlushNanos));
+        stats.put("avgFlushMillis", batchCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalFlushNanos.get() / batchCount));
+        stats.put("maxFlushMillis", TimeUnit.NANOSECONDS.toMillis(maxFlushNanos));
+        return stats;
+    }
+
+    /**
+     * 所有写后缓冲的状态
+     */
+    public static List<Map<String, Object>> getAllStats()
+    {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (WriteBehindBuffer<?> buffer : BUFFERS)
+        {
+            list.add(buffer.getStats());
+        }
+        return list;
+    }
+}
@@ -99,6 +99,12 @@ public class AIGCController {
     @Value("${cube.uploadurl}")
     private String uploadUrl;
 
+    @Value("${cube.screenshot.format:png}")
+    private String screenshotFormat;
+
+    @Value("${cube.screenshot.quality:0.85}")
+    private float screenshotQuality;
+
     @Autowired
     private CubeMcp cubeMcp;
 
@@ -297,7 +303,7 @@ public class AIGCController {
                     }
 
                     int currentCount = i.getAndIncrement();
-                    logInfo.sendImgData(page, userId + "智能评分执行过程截图" + currentCount, userId);
+                    logInfo.sendProgressImgData(page, userId + "智能评分执行过程截图" + currentCount, userId);
                 } catch (com.microsoft.playwright.impl.TargetClosedError e) {
                 } catch (PlaywrightException e) {
                 } catch (Exception e) {
@@ -328,27 +334,23 @@ public class AIGCController {
 
             AtomicReference<String> shareUrlRef = new AtomicReference<>();
 
-            clipboardLockManager.runWithClipboardLock(() -> {
-                try {
+            try {
+                // 复制的链接由页面级捕获获得，不再占用全局剪贴板锁
+                String shareUrl = clipboardLockManager.copyText(page, () -> {
                     if (isRight && page.locator("//*[@id=\"root\"]/div[1]/div/div[3]/aside/div[2]/div/div[1]/div/div[1]/div[3]/div/div/div/div[4]").count() > 0) {
                         page.locator("//*[@id=\"root\"]/div[1]/div/div[3]/aside/div[2]/div/div[1]/div/div[1]/div[3]/div/div/div/div[4]").click();
                         Thread.sleep(1000);
                         page.getByRole(AriaRole.BUTTON, new Page.GetByRoleOptions().setName("公开分享")).click();
-                        Thread.sleep(500);
                     } else {
                         page.locator("button[data-testid='message_action_share']").last().click();
                         Thread.sleep(2000);
                         page.locator("button[data-testid='thread_share_copy_btn']").first().click();
                     }
-
-                    // 建议适当延迟等待内容更新
-                    Thread.sleep(2000);
-                    String shareUrl = (String) page.evaluate("navigator.clipboard.readText()");
-                    shareUrlRef.set(shareUrl);
-                } catch (Exception e) {
-                    UserLogUtil.sendExceptionLog(userId, "智能评分复制", "startDBScore", e, url + "/saveLogInfo");
-                }
-            });
+                });
+                shareUrlRef.set(shareUrl);
+            } catch (Exception e) {
+                UserLogUtil.sendExceptionLog(userId, "智能评分复制", "startDBScore", e, url + "/saveLogInfo");
+            }
 
             Thread.sleep(1000);
             String shareUrl = shareUrlRef.get();
@@ -462,7 +464,7 @@ public class AIGCController {
                     }
 
                     int currentCount = i.getAndIncrement();
-                    logInfo.sendImgData(page, userId + "豆包执行过程截图" + currentCount, userId);
+                    logInfo.sendProgressImgData(page, userId + "豆包执行过程截图" + currentCount, userId);
                 } catch (com.microsoft.playwright.impl.TargetClosedError e) {
                 } catch (PlaywrightException e) {
                 } catch (Exception e) {
@@ -496,8 +498,9 @@ public class AIGCController {
 
             AtomicReference<String> shareUrlRef = new AtomicReference<>();
 
-            clipboardLockManager.runWithClipboardLock(() -> {
-                try {
+            try {
+                // 复制的链接由页面级捕获获得，不再占用全局剪贴板锁
+                String shareUrl = clipboardLockManager.copyText(page, () -> {
                     if (isRight) {
                         page.locator("button[data-testid='message_action_share']").last().click();
                         Thread.sleep(1000);
@@ -510,15 +513,11 @@ public class AIGCController {
                         Thread.sleep(1000);
                         page.locator("button[data-testid='thread_share_copy_btn']").first().click();
                     }
-                    Thread.sleep(2000);
-                    String shareUrl = (String) page.evaluate("navigator.clipboard.readText()");
-                    shareUrlRef.set(shareUrl);
-
-                    // 建议适当延迟等待内容更新
-                } catch (Exception e) {
-                    UserLogUtil.sendExceptionLog(userId, "豆包复制", "startDB", e, url + "/saveLogInfo");
-                }
-            });
+                });
+                shareUrlRef.set(shareUrl);
+            } catch (Exception e) {
+                UserLogUtil.sendExceptionLog(userId, "豆包复制", "startDB", e, url + "/saveLogInfo");
+            }
 
             Thread.sleep(1000);
             String shareUrl = shareUrlRef.get();
@@ -688,7 +687,7 @@ public class AIGCController {
                         return;
                     }
                     int currentCount = i.getAndIncrement();
-                    logInfo.sendImgData(page, userId + "百度AI执行过程截图" + currentCount, userId);
+                    logInfo.sendProgressImgData(page, userId + "百度AI执行过程截图" + currentCount, userId);
                 } catch (Exception e) {
                     UserLogUtil.sendExceptionLog(userId, "百度AI截图", "startBaidu", e, url + "/saveLogInfo");
                 }
@@ -809,7 +808,7 @@ public class AIGCController {
                     int currentCount = i.getAndIncrement();
                     try {
                         // 使用更安全的截图方式
-                        logInfo.sendImgData(page, userId + "DeepSeek执行过程截图" + currentCount, userId);
+                        logInfo.sendProgressImgData(page, userId + "DeepSeek执行过程截图" + currentCount, userId);
                     } catch (Exception e) {
                         UserLogUtil.sendExceptionLog(userId, "DeepSeek执行过程截图", "startDeepSeek", e, url + "/saveLogInfo");
                     }
@@ -967,9 +966,8 @@ public class AIGCController {
             String shareUrl = "";
             try {
                 // 设置较短的超时时间用于分享操作
-                page.locator("button:has-text('分享')").click(new Locator.ClickOptions().setTimeout(30000));
-                Thread.sleep(1500); // 稍微增加等待时间
-                shareUrl = (String) page.evaluate("navigator.clipboard.readText()");
+                shareUrl = clipboardLockManager.copyText(page, () ->
+                        page.locator("button:has-text('分享')").click(new Locator.ClickOptions().setTimeout(30000)));
                 if (shareUrl != null && !shareUrl.trim().isEmpty()) {
                 } else {
                     shareUrl = page.url();
@@ -986,7 +984,7 @@ public class AIGCController {
             String shareImgUrl = "";
             try {
                 // 使用新的分条截图方法
-                MessageScreenshot screenshotter = new MessageScreenshot();
+                MessageScreenshot screenshotter = new MessageScreenshot(screenshotFormat, screenshotQuality);
                 shareImgUrl = screenshotter.captureMessagesAsLongScreenshot(page, uploadUrl, userId);
             } catch (Exception e) {
                 logInfo.sendTaskLog("DeepSeek导出图片失败: " + e.getMessage(), userId, "DeepSeek");
@@ -1058,7 +1056,7 @@ public class AIGCController {
             ScheduledFuture<?> screenshotFuture = screenshotExecutor.scheduleAtFixedRate(() -> {
                 try {
                     int currentCount = i.getAndIncrement();
-                    logInfo.sendImgData(page, userId + aiName + "执行过程截图" + currentCount, userId);
+                    logInfo.sendProgressImgData(page, userId + aiName + "执行过程截图" + currentCount, userId);
                 } catch (Exception e) {
                     UserLogUtil.sendExceptionLog(userId, "通义千问截图", "startTYQianwen", e, url + "/saveLogInfo");
                 }
@@ -1162,21 +1160,17 @@ public class AIGCController {
             }
 
             // 获取分享链接
-            clipboardLockManager.runWithClipboardLock(() -> {
-                try {
-                    logInfo.sendTaskLog("正在获取分享链接...", userId, aiName);
-
-                    page.getByRole(AriaRole.BUTTON, new Page.GetByRoleOptions().setName("复制链接")).click();
-                    page.waitForTimeout(500);
+            try {
+                logInfo.sendTaskLog("正在获取分享链接...", userId, aiName);
 
-                    String shareUrl = (String) page.evaluate("navigator.clipboard.readText()");
-                    shareUrlRef.set(shareUrl);
-                    logInfo.sendTaskLog("成功获取分享链接: " + shareUrl, userId, aiName);
-                } catch (Exception e) {
-                    logInfo.sendTaskLog("获取分享链接失败", userId, aiName);
-                    UserLogUtil.sendExceptionLog(userId, "通义千问获取分型链接", "startTYQianwen", e, url + "/saveLogInfo");
-                }
-            });
+                String shareUrl = clipboardLockManager.copyText(page, () ->
+                        page.getByRole(AriaRole.BUTTON, new Page.GetByRoleOptions().setName("复制链接")).click());
+                shareUrlRef.set(shareUrl);
+                logInfo.sendTaskLog("成功获取分享链接: " + shareUrl, userId, aiName);
+            } catch (Exception e) {
+                logInfo.sendTaskLog("获取分享链接失败", userId, aiName);
+                UserLogUtil.sendExceptionLog(userId, "通义千问获取分型链接", "startTYQianwen", e, url + "/saveLogInfo");
+            }
 
             String shareUrl = shareUrlRef.get();
             String sharImgUrl = "";
@@ -1399,7 +1393,7 @@ public class AIGCController {
             ScheduledFuture<?> screenshotFuture = screenshotExecutor.scheduleAtFixedRate(() -> {
                 try {
                     int currentCount = i.getAndIncrement(); // 获取当前值并自增
-                    logInfo.sendImgData(page, userId + "秘塔执行过程截图" + currentCount, userId);
+                    logInfo.sendProgressImgData(page, userId + "秘塔执行过程截图" + currentCount, userId);
                 } catch (Exception e) {
                     UserLogUtil.sendExceptionLog(userId, "秘塔截图异常", "startMetaso", e, url + "/saveLogInfo");
                 }
@@ -1414,23 +1408,19 @@ public class AIGCController {
 
             AtomicReference<String> shareUrlRef = new AtomicReference<>();
 
-            clipboardLockManager.runWithClipboardLock(() -> {
-                try {
+            try {
+                String shareUrl = clipboardLockManager.copyText(page, () -> {
                     boolean visible = page.locator("(//*[name()='svg'])[26]").isVisible();
                     if(visible) {
                         page.locator("(//*[name()='svg'])[26]").click();
                     } else {
                         page.locator("(//button[@type='button'])[24]").click();
                     }
-                    // 建议适当延迟等待内容更新
-                    Thread.sleep(1000);
-
-                    String shareUrl = (String) page.evaluate("navigator.clipboard.readText()");
-                    shareUrlRef.set(shareUrl);
-                } catch (Exception e) {
-                    UserLogUtil.sendExceptionLog(userId, "秘塔复制链接异常", "startMetaso", e, url + "/saveLogInfo");
-                }
-            });
+                });
+                shareUrlRef.set(shareUrl);
+            } catch (Exception e) {
+                UserLogUtil.sendExceptionLog(userId, "秘塔复制链接异常", "startMetaso", e, url + "/saveLogInfo");
+            }
 
             Thread.sleep(4000);
             String shareUrl = shareUrlRef.get();
@@ -1559,7 +1549,7 @@ public class AIGCController {
                         return;
                     }
                     int currentCount = i.getAndIncrement();
-                    logInfo.sendImgData(page, userId + aiName + "执行过程截图" + currentCount, userId);
+                    logInfo.sendProgressImgData(page, userId + aiName + "执行过程截图" + currentCount, userId);
                 } catch (Exception e) {
                     // 不发送技术错误到前端
                 }
@@ -1688,9 +1678,8 @@ public class AIGCController {
 
             // 🔥 优化：Zhihu分享操作，增加超时保护
             try {
-                page.locator("div:has-text('分享回答')").last().click(new Locator.ClickOptions().setTimeout(30000));
-                page.waitForTimeout(1000); // 增加等待时间
-                shareUrl = (String) page.evaluate("navigator.clipboard.readText()");
+                shareUrl = clipboardLockManager.copyText(page, () ->
+                        page.locator("div:has-text('分享回答')").last().click(new Locator.ClickOptions().setTimeout(30000)));
 
                 if (shareUrl != null && !shareUrl.trim().isEmpty()) {
                 } else {
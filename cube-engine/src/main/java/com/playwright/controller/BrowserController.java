@@ -22,7 +22,6 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
 
 
 @RestController
@@ -59,11 +58,11 @@ public class BrowserController {
     private ZhiHuUtil zhiHuUtil;
     @Autowired
     private TongYiUtil tongYiUtil;
+    @Autowired
+    private LoginStateCache loginStateCache;
 
     @Value("${cube.url}")
     private String url;
-    public static final ConcurrentHashMap<String, String> loginMap = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<String, Integer> lockMap = new ConcurrentHashMap<>();
 
 
     /**
@@ -75,14 +74,14 @@ public class BrowserController {
     @Operation(summary = "获取秘塔登录二维码", description = "返回二维码截图 URL 或 false 表示失败")
     @GetMapping("/getMetasoQrCode")
     public String getMetasoQrCode(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws InterruptedException, IOException {
-        String key = userId + "-mt";
-        if (loginMap.containsKey(key)) {
+        String cached = loginStateCache.peek(userId, "metaso");
+        if (cached != null) {
             JSONObject jsonObjectTwo = new JSONObject();
-            jsonObjectTwo.put("status",loginMap.get(key));
+            jsonObjectTwo.put("status",cached);
             jsonObjectTwo.put("userId",userId);
             jsonObjectTwo.put("type","RETURN_METASO_STATUS");
             webSocketClientService.sendMessage(jsonObjectTwo.toJSONString());
-            return loginMap.get(key);
+            return cached;
         }
         try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "metaso")) {
             Page page = browserUtil.getOrCreatePage(context);
@@ -108,7 +107,7 @@ public class BrowserController {
                         Thread.sleep(2000);
                         String userName = metasoUtil.checkLogin(page, userId);
                         if (userName != null) {
-                            loginMap.put(key, s);
+                            loginStateCache.put(userId, "metaso", userName);
                             return userName;
                         }
                     }
@@ -129,25 +128,19 @@ public class BrowserController {
      */
     @Operation(summary = "检查秘塔登录状态", description = "返回登录表示已登录，false 表示未登录")
     @GetMapping("/checkMetasoLogin")
-    public String checkMetasoLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws InterruptedException {
-        String key = userId + "-mt";
-        if (loginMap.containsKey(key)) {
-            // 如果当前用户正在处理，则返回"处理中"
-            return loginMap.get(key);
-        }
-        try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "metaso")) {
-            Page page = browserUtil.getOrCreatePage(context);
-            page.navigate("https://metaso.cn/");
-            Thread.sleep(5000);
-            String s = metasoUtil.checkLogin(page, userId);
-            if (s == null) {
-                return "false";
+    public String checkMetasoLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws Exception {
+        return loginStateCache.get(userId, "metaso", () -> {
+            try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "metaso")) {
+                Page page = browserUtil.getOrCreatePage(context);
+                page.navigate("https://metaso.cn/");
+                Thread.sleep(5000);
+                String s = metasoUtil.checkLogin(page, userId);
+                if (s == null) {
+                    return "false";
+                }
+                return s;
             }
-            loginMap.put(key, s);
-            return s;
-        } catch (Exception e) {
-            throw e;
-        }
+        });
     }
 
     /**
@@ -158,40 +151,34 @@ public class BrowserController {
      */
     @Operation(summary = "检查通义AI登录状态", description = "返回用户名/手机号表示已登录，false 表示未登录")
     @GetMapping("/checkTongYiLogin")
-    public String checkTongYiLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) {
-        String key = userId + "-ty";
-        if (loginMap.containsKey(key)) {
-            // 如果当前用户正在处理，则返回"处理中"
-            return loginMap.get(key);
-        }
-        try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "ty")) {
-            Page page = browserUtil.getOrCreatePage(context);
-            page.navigate("https://www.tongyi.com/");
-            page.waitForTimeout(5000);
+    public String checkTongYiLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws Exception {
+        return loginStateCache.get(userId, "ty", () -> {
+            try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "ty")) {
+                Page page = browserUtil.getOrCreatePage(context);
+                page.navigate("https://www.tongyi.com/");
+                page.waitForTimeout(5000);
 
-            Locator loginButton = page.locator("//*[@id=\"new-nav-tab-wrapper\"]/div[2]/li");
+                Locator loginButton = page.locator("//*[@id=\"new-nav-tab-wrapper\"]/div[2]/li");
 
-            if (loginButton.count() > 0 && loginButton.isVisible()) {
-                // 如果找到“登录”按钮，说明未登录
-                return "false";
-            } else {
-                Locator userAvatarArea = page.locator(".popupUser");
-                if (userAvatarArea.count() > 0) {
-                    userAvatarArea.hover();
-                    page.waitForTimeout(1000);
-
-                    Locator userNameElement = page.locator(".userName");
-                    if (userNameElement.count() > 0 && userNameElement.isVisible()) {
-                        loginMap.put(key, userNameElement.textContent());
-                        // 返回获取到的用户名
-                        return userNameElement.textContent();
+                if (loginButton.count() > 0 && loginButton.isVisible()) {
+                    // 如果找到“登录”按钮，说明未登录
+                    return "false";
+                } else {
+                    Locator userAvatarArea = page.locator(".popupUser");
+                    if (userAvatarArea.count() > 0) {
+                        userAvatarArea.hover();
+                        page.waitForTimeout(1000);
+
+                        Locator userNameElement = page.locator(".userName");
+                        if (userNameElement.count() > 0 && userNameElement.isVisible()) {
+                            // 返回获取到的用户名
+                            return userNameElement.textContent();
+                        }
                     }
+                    return "false";
                 }
-                return "false";
             }
-        } catch (Exception e) {
-            throw e;
-        }
+        });
     }
 
     /**
@@ -203,6 +190,8 @@ public class BrowserController {
     @Operation(summary = "获取通义千问登录二维码", description = "返回二维码截图 URL 或 false 表示失败")
     @GetMapping("/getTongYiQrCode")
     public String getTongYiQrCode(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws IOException {
+        // 扫码登录后状态会变化，清除缓存的检测结果
+        loginStateCache.invalidate(userId, "ty");
         try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "ty")) {
             Page page = browserUtil.getOrCreatePage(context);
             page.navigate("https://www.tongyi.com/");
@@ -256,35 +245,29 @@ public class BrowserController {
      */
     @Operation(summary = "检查DeepSeek登录状态", description = "返回手机号表示已登录，false 表示未登录")
     @GetMapping("/checkDSLogin")
-    public String checkDSLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws InterruptedException {
-        String key = userId + "-ds";
-        if (loginMap.containsKey(key)) {
-            // 如果当前用户正在处理，则返回"处理中"
-            return loginMap.get(key);
-        }
-        try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "deepseek")) {
-            Page page = browserUtil.getOrCreatePage(context);
-
-            // 导航到DeepSeek页面并确保完全加载
-            page.navigate("https://chat.deepseek.com/");
-            page.waitForLoadState();
-            page.waitForTimeout(1500); // 额外等待1.5秒确保页面完全渲染
-
-            // 先使用工具类方法检测
-            String loginStatus = deepSeekUtil.checkLoginStatus(page, false);
+    public String checkDSLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws Exception {
+        return loginStateCache.get(userId, "deepseek", () -> {
+            try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "deepseek")) {
+                Page page = browserUtil.getOrCreatePage(context);
+
+                // 导航到DeepSeek页面并确保完全加载
+                page.navigate("https://chat.deepseek.com/");
+                page.waitForLoadState();
+                page.waitForTimeout(1500); // 额外等待1.5秒确保页面完全渲染
+
+                // 先使用工具类方法检测
+                String loginStatus = deepSeekUtil.checkLoginStatus(page, false);
+
+                // 如果检测到已登录，直接返回
+                if (!"false".equals(loginStatus) || !"未登录".equals(loginStatus)) {
+                    logMsgUtil.sendTaskLog("DeepSeek已登录，用户: " + loginStatus, userId, "DeepSeek");
+                    return loginStatus;
+                }
 
-            // 如果检测到已登录，直接返回
-            if (!"false".equals(loginStatus) || !"未登录".equals(loginStatus)) {
-                logMsgUtil.sendTaskLog("DeepSeek已登录，用户: " + loginStatus, userId, "DeepSeek");
-                loginMap.put(key, loginStatus);
-                return loginStatus;
+                // 所有尝试都失败，返回未登录状态
+                return "false";
             }
-
-            // 所有尝试都失败，返回未登录状态
-            return "false";
-        } catch (Exception e) {
-            throw e;
-        }
+        });
     }
 
     /**
@@ -296,6 +279,8 @@ public class BrowserController {
     @Operation(summary = "获取DeepSeek登录二维码", description = "返回二维码截图 URL 或 false 表示失败")
     @GetMapping("/getDSQrCode")
     public String getDSQrCode(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws Exception, IOException {
+        // 扫码登录后状态会变化，清除缓存的检测结果
+        loginStateCache.invalidate(userId, "deepseek");
         try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "deepseek")) {
             Page page = browserUtil.getOrCreatePage(context);
 
@@ -380,59 +365,29 @@ public class BrowserController {
      */
     @Operation(summary = "检查元宝登录状态", description = "返回手机号表示已登录，false 表示未登录")
     @GetMapping("/checkLogin")
-    public String checkYBLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws InterruptedException {
-        try {
-            String key = userId + "-yb";
-//            加锁，同一个用户只能有一个检查
-            if ((loginMap.get(key) == null || loginMap.get(key).contains("未登录")) && lockMap.get(key) == null) {
-                loginMap.remove(key);
-                lockMap.put(key, 1);
-                UnPersisBrowserContextInfo browserContextInfo = BrowserContextFactory.getBrowserContext(userId, 2);
-                BrowserContext browserContext = null;
-                if (browserContextInfo != null) {
-                    browserContext = browserContextInfo.getBrowserContext();
-                }
-                Page page = browserContext.pages().get(0);
-                page.navigate("https://yuanbao.tencent.com/chat/naQivTmsDa/");
-                page.waitForLoadState(LoadState.LOAD);
-                Thread.sleep(3000);
-                Locator phone = page.locator("//p[@class='nick-info-name']");
-                if (phone.count() > 0) {
-                    String phoneText = phone.textContent();
-                    if (phoneText.equals("未登录")) {
-                        loginMap.put(key, "未登录");
-                        lockMap.remove(key);
-                        return "false";
-                    }
-                    loginMap.put(key, phoneText);
-                    lockMap.remove(key);
-                    return phoneText;
-                } else {
-                    loginMap.put(key, "未登录");
-                    lockMap.remove(key);
+    public String checkYBLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws Exception {
+        // 同一个用户同时发起的检查由缓存合并为一次
+        return loginStateCache.get(userId, "yb", () -> {
+            UnPersisBrowserContextInfo browserContextInfo = BrowserContextFactory.getBrowserContext(userId, 2);
+            BrowserContext browserContext = null;
+            if (browserContextInfo != null) {
+                browserContext = browserContextInfo.getBrowserContext();
+            }
+            Page page = browserContext.pages().get(0);
+            page.navigate("https://yuanbao.tencent.com/chat/naQivTmsDa/");
+            page.waitForLoadState(LoadState.LOAD);
+            Thread.sleep(3000);
+            Locator phone = page.locator("//p[@class='nick-info-name']");
+            if (phone.count() > 0) {
+                String phoneText = phone.textContent();
+                if (phoneText.equals("未登录")) {
                     return "false";
                 }
+                return phoneText;
             } else {
-                log.info("已有其他线程检测,等待登录状态变化");
-                // 等待其他线程检测登录状态
-                for (int i = 0; i < 10; i++) {
-                    if (loginMap.get(key) != null) {
-                        if (loginMap.get(key).contains("未登录")) {
-                            log.info("检测到未登录");
-                            return "false";
-                        } else {
-                            log.info("检测到已登录");
-                            return loginMap.get(key);
-                        }
-                    }
-                    Thread.sleep(3000);
-                }
-                log.info("检测超时");
                 return "false";
             }
-        } catch (Exception e) {
-            throw e;
-        }
+        });
     }
 
 
@@ -445,6 +400,8 @@ public class BrowserController {
     @GetMapping("/getYBQrCode")
     @Operation(summary = "获取代理版元宝登录二维码", description = "返回二维码截图 URL 或 false 表示失败")
     public String getYBQrCode(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws InterruptedException, IOException {
+        // 扫码登录后状态会变化，清除缓存的检测结果
+        loginStateCache.invalidate(userId, "yb");
         try {
             UnPersisBrowserContextInfo browserContextInfo = BrowserContextFactory.getBrowserContext(userId, 2);
             BrowserContext context = null;
@@ -503,38 +460,32 @@ public class BrowserController {
      */
     @Operation(summary = "检查豆包登录状态", description = "返回手机号表示已登录，false 表示未登录")
     @GetMapping("/checkDBLogin")
-    public String checkDBLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws InterruptedException {
-        String key = userId + "-db";
-        if (loginMap.containsKey(key)) {
-            // 如果当前用户正在处理，则返回"处理中"
-            return loginMap.get(key);
-        }
-        try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "db")) {
-            Page page = browserUtil.getOrCreatePage(context);
-            page.navigate("https://www.doubao.com/chat/");
-            Thread.sleep(5000);
-            Locator locator = page.locator("//*[@id=\"root\"]/div[1]/div/div[3]/div/main/div/div/div[1]/div/div/div/div[2]/div/button");
-            if (locator.count() > 0 && locator.isVisible()) {
-                return "false";
-            } else {
-                Thread.sleep(500);
-                page.locator("[data-testid=\"chat_header_avatar_button\"]").click();
-                Thread.sleep(500);
-                page.locator("[data-testid=\"chat_header_setting_button\"]").click();
-//                Thread.sleep(1500);
-                Locator phone = page.locator(".nickName-cIcGuG");
-                phone.waitFor(new Locator.WaitForOptions().setTimeout(3000));
-                if (phone.count() > 0) {
-                    String phoneText = phone.textContent();
-                    loginMap.put(key, phoneText);
-                    return phoneText;
-                } else {
+    public String checkDBLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws Exception {
+        return loginStateCache.get(userId, "db", () -> {
+            try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "db")) {
+                Page page = browserUtil.getOrCreatePage(context);
+                page.navigate("https://www.doubao.com/chat/");
+                Thread.sleep(5000);
+                Locator locator = page.locator("//*[@id=\"root\"]/div[1]/div/div[3]/div/main/div/div/div[1]/div/div/div/div[2]/div/button");
+                if (locator.count() > 0 && locator.isVisible()) {
                     return "false";
+                } else {
+                    Thread.sleep(500);
+                    page.locator("[data-testid=\"chat_header_avatar_button\"]").click();
+                    Thread.sleep(500);
+                    page.locator("[data-testid=\"chat_header_setting_button\"]").click();
+    //                Thread.sleep(1500);
+                    Locator phone = page.locator(".nickName-cIcGuG");
+                    phone.waitFor(new Locator.WaitForOptions().setTimeout(3000));
+                    if (phone.count() > 0) {
+                        String phoneText = phone.textContent();
+                        return phoneText;
+                    } else {
+                        return "false";
+                    }
                 }
             }
-        } catch (Exception e) {
-            throw e;
-        }
+        });
     }
 
     /**
@@ -546,6 +497,8 @@ public class BrowserController {
     @Operation(summary = "获取豆包登录二维码", description = "返回二维码截图 URL 或 false 表示失败")
     @GetMapping("/getDBQrCode")
     public String getDBQrCode(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws InterruptedException, IOException {
+        // 扫码登录后状态会变化，清除缓存的检测结果
+        loginStateCache.invalidate(userId, "db");
         try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "db")) {
             Page page = browserUtil.getOrCreatePage(context);
             page.navigate("https://www.doubao.com/chat/");
@@ -608,26 +561,20 @@ public class BrowserController {
     @Operation(summary = "检查百度AI登录状态", description = "返回用户名/手机号表示已登录，false 表示未登录")
     @GetMapping("/checkBaiduLogin")
     public String checkBaiduLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws Exception {
-        String key = userId + "-bd";
-        if (loginMap.containsKey(key)) {
-            // 如果当前用户正在处理，则返回"处理中"
-            return loginMap.get(key);
-        }
-        try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "baidu")) {
-            Page page = browserUtil.getOrCreatePage(context);
-            // 使用BaiduUtil检查登录状态
-            String loginStatus = baiduUtil.checkBaiduLogin(page, true);
+        return loginStateCache.get(userId, "baidu", () -> {
+            try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "baidu")) {
+                Page page = browserUtil.getOrCreatePage(context);
+                // 使用BaiduUtil检查登录状态
+                String loginStatus = baiduUtil.checkBaiduLogin(page, true);
+
+                if (!"false".equals(loginStatus) && !"未登录".equals(loginStatus)) {
+                    return loginStatus; // 返回用户名或登录状态
+                } else {
+                    return "false"; // 未登录
+                }
 
-            if (!"false".equals(loginStatus) && !"未登录".equals(loginStatus)) {
-                loginMap.put(key, loginStatus);
-                return loginStatus; // 返回用户名或登录状态
-            } else {
-                return "false"; // 未登录
             }
-
-        } catch (Exception e) {
-            throw e;
-        }
+        });
     }
 
     /**
@@ -638,6 +585,8 @@ public class BrowserController {
     @Operation(summary = "获取百度登录二维码", description = "返回二维码截图 URL 或 false 表示失败")
     @GetMapping("/getBaiduQrCode")
     public String getBaiduQrCode(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) {
+        // 扫码登录后状态会变化，清除缓存的检测结果
+        loginStateCache.invalidate(userId, "baidu");
         try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "baidu")) {
             Page page = browserUtil.getOrCreatePage(context);
             // 首先检查当前登录状态
@@ -742,6 +691,8 @@ public class BrowserController {
     @GetMapping("/getZhihuQrCode")
     @Operation(summary = "获取知乎登录二维码", description = "返回二维码截图 URL 或 false 表示失败")
     public String getZhihuQrCode(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) {
+        // 扫码登录后状态会变化，清除缓存的检测结果
+        loginStateCache.invalidate(userId, "Zhihu");
         try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "Zhihu")) {
             Page page = browserUtil.getOrCreatePage(context);
             page.navigate("https://www.zhihu.com/signin");
@@ -871,38 +822,32 @@ public class BrowserController {
      */
     @Operation(summary = "检查知乎登录状态", description = "返回用户名表示已登录，false 表示未登录")
     @GetMapping("/checkZhihuLogin")
-    public String checkZhihuLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws InterruptedException {
-        String key = userId + "-zhzd";
-        if (loginMap.containsKey(key)) {
-            // 如果当前用户正在处理，则返回"处理中"
-            return loginMap.get(key);
-        }
-        try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "Zhihu")) {
-            Page page = browserUtil.getOrCreatePage(context);
-
-            // 先导航到知乎首页而不是登录页面，这样能更好地检测登录状态
-            page.navigate("https://www.zhihu.com/");
-            page.waitForLoadState();
-            Thread.sleep(3000);
+    public String checkZhihuLogin(@Parameter(description = "用户唯一标识") @RequestParam("userId") String userId) throws Exception {
+        return loginStateCache.get(userId, "Zhihu", () -> {
+            try (BrowserContext context = browserUtil.createPersistentBrowserContext(false, userId, "Zhihu")) {
+                Page page = browserUtil.getOrCreatePage(context);
+
+                // 先导航到知乎首页而不是登录页面，这样能更好地检测登录状态
+                page.navigate("https://www.zhihu.com/");
+                page.waitForLoadState();
+                Thread.sleep(3000);
 
-            // 检查当前URL是否跳转到登录页面
-            String currentUrl = page.url();
-            if (currentUrl.contains("signin") || currentUrl.contains("login")) {
-                return "false";
-            }
+                // 检查当前URL是否跳转到登录页面
+                String currentUrl = page.url();
+                if (currentUrl.contains("signin") || currentUrl.contains("login")) {
+                    return "false";
+                }
 
-            // 检测登录状态
-            String userName = zhiHuUtil.checkLoginStatus(page);
+                // 检测登录状态
+                String userName = zhiHuUtil.checkLoginStatus(page);
 
-            if (!"false".equals(userName) && !"未登录".equals(userName)) {
-                loginMap.put(key, userName);
-                return userName;
-            }
+                if (!"false".equals(userName) && !"未登录".equals(userName)) {
+                    return userName;
+                }
 
-            return "false";
+                return "false";
 
-        } catch (Exception e) {
-            throw e;
-        }
+            }
+        });
     }
 }
\ No newline at end of file
@@ -1,13 +1,28 @@
 package com.playwright.controller;
 
 import com.playwright.utils.BrowserConcurrencyManager;
+import com.playwright.utils.BrowserContextPool;
+import com.playwright.utils.ClipboardLockManager;
+import com.playwright.utils.FanOutExecutor;
+import com.playwright.utils.LogShipper;
+import com.playwright.utils.LoginStateCache;
+import com.playwright.utils.LoginStateProbe;
+import com.playwright.utils.PageScripts;
+import com.playwright.utils.PollingGovernor;
+import com.playwright.utils.ResourceBlocker;
+import com.playwright.utils.ScreenshotUploadPipeline;
+import com.playwright.utils.SharedBrowserHost;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Map;
+
 /**
  * 并发监控控制器
  * 提供浏览器并发状态查询接口
@@ -19,6 +34,36 @@ public class ConcurrencyController {
     
     @Autowired
     private BrowserConcurrencyManager concurrencyManager;
+
+    @Autowired
+    private BrowserContextPool browserContextPool;
+
+    @Autowired
+    private SharedBrowserHost sharedBrowserHost;
+
+    @Autowired
+    private ScreenshotUploadPipeline screenshotUploadPipeline;
+
+    @Autowired
+    private ClipboardLockManager clipboardLockManager;
+
+    @Autowired
+    private LogShipper logShipper;
+
+    @Autowired
+    private LoginStateProbe loginStateProbe;
+
+    @Autowired
+    private LoginStateCache loginStateCache;
+
+    @Autowired
+    private FanOutExecutor fanOutExecutor;
+
+    @Autowired
+    private ResourceBlocker resourceBlocker;
+
+    @Autowired
+    private PollingGovernor pollingGovernor;
     
     @GetMapping("/status")
     @Operation(summary = "获取当前并发状态", description = "返回当前浏览器任务的并发状态信息")
@@ -31,4 +76,90 @@ public class ConcurrencyController {
     public boolean canExecuteImmediately() {
         return concurrencyManager.canExecuteImmediately();
     }
-} 
\ No newline at end of file
+
+    @GetMapping("/scheduler")
+    @Operation(summary = "获取任务调度器状态", description = "返回各平台限额与排队情况、各用户运行数以及CPU/内存/浏览器RSS采样")
+    public BrowserConcurrencyManager.SchedulerStats getSchedulerStats() {
+        return concurrencyManager.getSchedulerStats();
+    }
+
+    @PostMapping("/platformLimit")
+    @Operation(summary = "调整平台并发上限", description = "运行时修改指定平台同时运行的任务数上限，0 表示只受硬上限约束")
+    public BrowserConcurrencyManager.SchedulerStats setPlatformLimit(@RequestParam String platform, @RequestParam int limit) {
+        concurrencyManager.setPlatformLimit(platform, limit);
+        return concurrencyManager.getSchedulerStats();
+    }
+
+    @GetMapping("/contextPool")
+    @Operation(summary = "获取浏览器上下文池状态", description = "返回预热上下文数量、命中/未命中次数及启动耗时")
+    public BrowserContextPool.PoolStats getContextPoolStats() {
+        return browserContextPool.getStats();
+    }
+
+    @GetMapping("/sharedBrowsers")
+    @Operation(summary = "获取共享浏览器状态", description = "shared 模式下返回每个常驻浏览器进程承载的上下文数量")
+    public Map<String, Integer> getSharedBrowserStatus() {
+        return sharedBrowserHost.getStatus();
+    }
+
+    @GetMapping("/pageScripts")
+    @Operation(summary = "获取页面脚本注入统计", description = "返回各平台页面函数的注入、调用与重新注入次数")
+    public Map<String, Long> getPageScriptStats() {
+        return PageScripts.getStats();
+    }
+
+    @GetMapping("/screenshotUploads")
+    @Operation(summary = "获取截图上传管道状态", description = "返回排队中的截图数量以及已上传、丢弃、未变化跳过和失败的次数")
+    public ScreenshotUploadPipeline.UploadStats getScreenshotUploadStats() {
+        return screenshotUploadPipeline.getStats();
+    }
+
+    @GetMapping("/clipboard")
+    @Operation(summary = "获取剪贴板读取统计", description = "返回通过页面级捕获获得复制内容的次数，以及回退到全局锁读取系统剪贴板的次数")
+    public Map<String, Long> getClipboardStats() {
+        return clipboardLockManager.getStats();
+    }
+
+    @GetMapping("/logShipper")
+    @Operation(summary = "获取日志批量上报状态", description = "返回缓冲区占用、已上报批次与条数，以及丢弃、写入暂存目录和补发的日志数量")
+    public LogShipper.ShipperStats getLogShipperStats() {
+        return logShipper.getStats();
+    }
+
+    @GetMapping("/loginProbe")
+    @Operation(summary = "获取免浏览器登录探测统计", description = "返回直接读取配置目录判定已登录、未登录的次数，回退到浏览器检测的次数以及平均耗时(微秒)")
+    public Map<String, Long> getLoginProbeStats() {
+        return loginStateProbe.getStats();
+    }
+
+    @GetMapping("/loginCache")
+    @Operation(summary = "获取登录状态缓存统计", description = "返回缓存条数、命中/未命中次数、合并的并发检测次数、配置目录判定与浏览器检测次数，以及清除和检测到登录失效的次数")
+    public Map<String, Long> getLoginCacheStats() {
+        return loginStateCache.getStats();
+    }
+
+    @GetMapping("/fanOut")
+    @Operation(summary = "获取多AI共享浏览器统计", description = "返回进行中的批次数、累计批次与浏览器启动次数、创建的标签页数，以及导出登录状态和退回单独启动的次数")
+    public Map<String, Long> getFanOutStats() {
+        return fanOutExecutor.getStats();
+    }
+
+    @GetMapping("/resourceBlock")
+    @Operation(summary = "获取资源拦截统计", description = "返回各平台拦截规则是否生效以及浏览器拦截的请求数")
+    public Map<String, ResourceBlocker.ProfileStats> getResourceBlockStats() {
+        return resourceBlocker.getStats();
+    }
+
+    @PostMapping("/resourceBlock")
+    @Operation(summary = "开关平台资源拦截", description = "平台页面因拦截出现异常时关闭该平台的拦截规则，新页面立即生效，已打开的页面在下次导航时生效")
+    public Map<String, ResourceBlocker.ProfileStats> setResourceBlock(@RequestParam String platform, @RequestParam boolean enabled) {
+        resourceBlocker.setEnabled(platform, enabled);
+        return resourceBlocker.getStats();
+    }
+
+    @GetMapping("/polling")
+    @Operation(summary = "获取回答等待轮询统计", description = "返回各平台等待次数、完成次数、轮询次数与平均间隔，以及首字时间和完成时间的分位数(毫秒)")
+    public Map<String, PollingGovernor.PollStats> getPollingStats() {
+        return pollingGovernor.getStats();
+    }
+}
@@ -3,12 +3,14 @@ package com.playwright.service;
 import com.microsoft.playwright.*;
 import com.playwright.utils.FastLoginChecker;
 import com.playwright.utils.LogMsgUtil;
+import com.playwright.utils.LoginStateCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 /**
  * 快速登录状态检测服务
  * 专门用于高性能的登录状态检测，减少CPU和内存占用
+ * 检测结果与 BrowserController 共用 LoginStateCache
  */
 @Service
 public class FastLoginService {
@@ -18,22 +20,28 @@ public class FastLoginService {
     
     @Autowired
     private LogMsgUtil logInfo;
+
+    @Autowired
+    private LoginStateCache loginStateCache;
     
     /**
      * 快速检测百家号登录状态
      */
     public String fastCheckBaijiahaoLogin(String userId) {
-        try (BrowserContext context = fastLoginChecker.createFastCheckContext(userId, "baijiahao")) {
-            Page page = context.newPage();
-            fastLoginChecker.optimizePageForFastCheck(page);
-            
-            // 快速导航到百家号
-            page.navigate("https://baijiahao.baidu.com/", new Page.NavigateOptions().setTimeout(10000));
-            fastLoginChecker.waitForFastReady(page, 5000);
+        try {
+            return loginStateCache.get(userId, "baijiahao", () -> {
+                try (BrowserContext context = fastLoginChecker.createFastCheckContext(userId, "baijiahao")) {
+                    Page page = context.newPage();
+                    fastLoginChecker.optimizePageForFastCheck(page);
             
-            // 快速检测登录状态
-            return checkBaijiahaoLoginStatus(page);
+                    // 快速导航到百家号
+                    page.navigate("https://baijiahao.baidu.com/", new Page.NavigateOptions().setTimeout(10000));
+                    fastLoginChecker.waitForFastReady(page, 5000);
             
+                    // 快速检测登录状态
+                    return checkBaijiahaoLoginStatus(page);
+                }
+            });
         } catch (Exception e) {
             System.err.println("快速检测百家号登录失败: " + e.getMessage());
             return "false";
@@ -44,17 +52,20 @@ public class FastLoginService {
      * 快速检测知乎登录状态
      */
     public String fastCheckZhihuLogin(String userId) {
-        try (BrowserContext context = fastLoginChecker.createFastCheckContext(userId, "zhihu")) {
-            Page page = context.newPage();
-            fastLoginChecker.optimizePageForFastCheck(page);
-            
-            // 快速导航到知乎
-            page.navigate("https://www.zhihu.com/", new Page.NavigateOptions().setTimeout(10000));
-            fastLoginChecker.waitForFastReady(page, 5000);
+        try {
+            return loginStateCache.get(userId, "zhihu", () -> {
+                try (BrowserContext context = fastLoginChecker.createFastCheckContext(userId, "zhihu")) {
+                    Page page = context.newPage();
+                    fastLoginChecker.optimizePageForFastCheck(page);
             
-            // 快速检测登录状态
-            return checkZhihuLoginStatus(page);
+                    // 快速导航到知乎
+                    page.navigate("https://www.zhihu.com/", new Page.NavigateOptions().setTimeout(10000));
+                    fastLoginChecker.waitForFastReady(page, 5000);
             
+                    // 快速检测登录状态
+                    return checkZhihuLoginStatus(page);
+                }
+            });
         } catch (Exception e) {
             System.err.println("快速检测知乎登录失败: " + e.getMessage());
             return "false";
@@ -65,17 +76,20 @@ public class FastLoginService {
      * 快速检测头条号登录状态
      */
     public String fastCheckToutiaoLogin(String userId) {
-        try (BrowserContext context = fastLoginChecker.createFastCheckContext(userId, "toutiao")) {
-            Page page = context.newPage();
-            fastLoginChecker.optimizePageForFastCheck(page);
-            
-            // 快速导航到头条号
-            page.navigate("https://mp.toutiao.com/", new Page.NavigateOptions().setTimeout(10000));
-            fastLoginChecker.waitForFastReady(page, 5000);
+        try {
+            return loginStateCache.get(userId, "toutiao", () -> {
+                try (BrowserContext context = fastLoginChecker.createFastCheckContext(userId, "toutiao")) {
+                    Page page = context.newPage();
+                    fastLoginChecker.optimizePageForFastCheck(page);
             
-            // 快速检测登录状态
-            return checkToutiaoLoginStatus(page);
+                    // 快速导航到头条号
+                    page.navigate("https://mp.toutiao.com/", new Page.NavigateOptions().setTimeout(10000));
+                    fastLoginChecker.waitForFastReady(page, 5000);
             
+                    // 快速检测登录状态
+                    return checkToutiaoLoginStatus(page);
+                }
+            });
         } catch (Exception e) {
             System.err.println("快速检测头条号登录失败: " + e.getMessage());
             return "false";
@@ -86,17 +100,25 @@ public class FastLoginService {
      * 快速检测AI平台登录状态（通用方法）
      */
     public String fastCheckAILogin(String userId, String platform, String url) {
-        try (BrowserContext context = fastLoginChecker.createFastCheckContext(userId, platform)) {
-            Page page = context.newPage();
-            fastLoginChecker.optimizePageForFastCheck(page);
-            
-            // 快速导航
-            page.navigate(url, new Page.NavigateOptions().setTimeout(10000));
-            fastLoginChecker.waitForFastReady(page, 5000);
+        try {
+            String status = loginStateCache.get(userId, platform, () -> {
+                try (BrowserContext context = fastLoginChecker.createFastCheckContext(userId, platform)) {
+                    Page page = context.newPage();
+                    fastLoginChecker.optimizePageForFastCheck(page);
             
-            // 通用登录状态检测
-            return checkGeneralLoginStatus(page);
+                    // 快速导航
+                    page.navigate(url, new Page.NavigateOptions().setTimeout(10000));
+                    fastLoginChecker.waitForFastReady(page, 5000);
             
+                    // 通用登录状态检测
+                    return checkGeneralLoginStatus(page);
+                }
+            });
+            if ("unknown".equals(status)) {
+                // 无法判断的结果不缓存
+                loginStateCache.invalidate(userId, platform);
+            }
+            return status;
         } catch (Exception e) {
             System.err.println("快速检测" + platform + "登录失败: " + e.getMessage());
             return "false";
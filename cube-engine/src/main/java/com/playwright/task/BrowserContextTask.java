@@ -2,6 +2,8 @@ package com.playwright.task;
 
 import com.playwright.entity.UnPersisBrowserContextInfo;
 import com.playwright.utils.BrowserContextFactory;
+import com.playwright.utils.LoginStateCache;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -14,6 +16,10 @@ import java.util.Set;
  */
 @Component
 public class BrowserContextTask {
+
+    @Autowired
+    private LoginStateCache loginStateCache;
+
 //    @Scheduled(cron = "0/10 * * * * ?") // 十秒钟一次，测试
     @Scheduled(cron = "0 0 * * * ?") // 一小时执行一次检查
     public void closeBrowserContext() {
@@ -21,7 +27,10 @@ public class BrowserContextTask {
         Map<String, UnPersisBrowserContextInfo> map = BrowserContextFactory.map;
         Set<String> set = map.keySet();
         for (String key : set) {
-            BrowserContextFactory.closeExpireData(key + "-yb");
+            // map 以 userId 为键，关闭后元宝的登录状态需要重新检测
+            if (BrowserContextFactory.closeExpireData(key)) {
+                loginStateCache.invalidate(key, "yb");
+            }
         }
     }
 }
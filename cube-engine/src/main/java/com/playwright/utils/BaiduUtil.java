@@ -1,6 +1,7 @@
 package com.playwright.utils;
 
 import com.alibaba.fastjson.JSONObject;
+import com.microsoft.playwright.ElementHandle;
 import com.microsoft.playwright.Locator;
 import com.microsoft.playwright.Page;
 import com.microsoft.playwright.TimeoutError;
@@ -23,6 +24,7 @@ import java.io.FileOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -50,6 +52,45 @@ public class BaiduUtil {
     @Autowired
     private ScreenshotUtil screenshotUtil;
 
+    @Autowired
+    private ResponseWatcher responseWatcher;
+
+    @Autowired
+    private PollingGovernor pollingGovernor;
+
+    @Autowired
+    private LoginStateCache loginStateCache;
+
+    // 回答监听规则：最后一个回答容器，暂停按钮消失后内容静默即完成
+    private static final ResponseWatcher.Spec WATCH_SPEC = new ResponseWatcher.Spec("div.chat-qa-container div.data-show-ext")
+            .generating("img.pause-icon")
+            .quietMillis(3000);
+
+    // 长截图滚动过程中反复执行的页面函数，每个页面只注入一次
+    private static final PageScripts.Bundle SCRIPTS = new PageScripts.Bundle("baidu", """
+            {
+                scrollMetrics(el) {
+                    return { scrollHeight: el.scrollHeight, scrollTop: el.scrollTop, clientHeight: el.clientHeight };
+                },
+
+                scrollTop(el) {
+                    return el.scrollTop;
+                },
+
+                clientHeight(el) {
+                    return el.clientHeight;
+                },
+
+                hide(selector) {
+                    const element = document.querySelector(selector);
+                    if (element) {
+                        element.style.display = 'none';
+                        element.style.visibility = 'hidden';
+                    }
+                }
+            }
+            """);
+
     /**
      * 检查百度对话AI登录状态
      *
@@ -303,6 +344,8 @@ public class BaiduUtil {
             // 检查登录状态
             String loginStatus = checkBaiduLogin(page, false);
             if ("false".equals(loginStatus)) {
+                // 缓存中的已登录状态已失效
+                loginStateCache.markLoggedOut(userId, "baidu");
                 logInfo.sendTaskLog("检测到需要登录，请扫码登录", userId, "百度AI");
                 logInfo.sendImgData(page, userId + "百度对话AI需要登录", userId);
                 // 等待用户登录
@@ -657,24 +700,45 @@ public class BaiduUtil {
                 // 等待内容完全生成 - 监听暂停按钮消失
                 logInfo.sendTaskLog("等待百度对话AI生成完成...", userId, "百度AI");
 
+                // 内容 3 秒不变视为回答完成
+                PollingGovernor.Session poll = pollingGovernor.begin("baidu", 3000);
+                // 优先等待页面推送的完成事件，监听未能接管时回退到暂停按钮轮询
+                boolean watchCompleted = false;
+                ResponseWatcher.Watch watch = responseWatcher.watch(page, WATCH_SPEC);
+                if (watch != null) {
+                    watchCompleted = watch.await(100000, 2000, null);
+                    if (watchCompleted) {
+                        poll.complete(watch);
+                        logInfo.sendTaskLog("百度对话AI生成完成", userId, "百度AI");
+                    }
+                }
+
                 try {
 
-                    for (int i = 0; i < 10; i++) {
+                    // 最多等待100秒；暂停按钮出现前不判定完成，最晚10秒后按钮不可见即视为完成
+                    long pollStart = System.currentTimeMillis();
+                    long lastProgressLog = pollStart;
+                    boolean pauseSeen = false;
+                    while (!watchCompleted && System.currentTimeMillis() - pollStart < 100000) {
                         try {
-
-                            Thread.sleep(10000);
+                            poll.pause(page);
                             boolean visible = page.locator("//img[@class='pause-icon']").isVisible();
-                            if (!visible) {
+                            if (visible) {
+                                pauseSeen = true;
+                            } else if (pauseSeen || System.currentTimeMillis() - pollStart >= 10000) {
+                                poll.complete();
                                 logInfo.sendTaskLog("百度对话AI生成完成", userId, "百度AI");
                                 break;
                             }
                         } catch (Exception e) {
                             // 按钮可能已经消失或变化，生成可能完成
+                            poll.complete();
                             logInfo.sendTaskLog("按钮状态变化，百度对话AI生成完成", userId, "百度AI");
                             break;
                         }
-                        if (i % 2 == 0) {
+                        if (System.currentTimeMillis() - lastProgressLog >= 20000) {
                             logInfo.sendTaskLog("百度对话AI生成中...", userId, "百度AI");
+                            lastProgressLog = System.currentTimeMillis();
                         }
                     }
 
@@ -683,24 +747,18 @@ public class BaiduUtil {
 
                     logInfo.sendTaskLog("未检测到暂停按钮变化，使用内容稳定性检测", userId, "百度AI");
 
-                    String lastContent = "";
-                    int stableCount = 0;
-
-                    for (int i = 0; i < 30; i++) { // 最多等待30秒
-                        Thread.sleep(1000);
+                    long stableStart = System.currentTimeMillis();
+                    while (System.currentTimeMillis() - stableStart < 30000) { // 最多等待30秒
+                        poll.pause(page);
 
                         try {
                             String currentContent = replyElement.innerHTML();
                             //                            String currentContent = replyElement.innerText();
-                            if (currentContent != null && currentContent.equals(lastContent)) {
-                                stableCount++;
-                                if (stableCount >= 3) { // 连续3秒内容不变，认为生成完成
-                                    logInfo.sendTaskLog("百度对话AI内容生成稳定，准备提取", userId, "百度AI");
-                                    break;
-                                }
-                            } else {
-                                stableCount = 0;
-                                lastContent = currentContent;
+                            poll.observe(currentContent);
+                            if (poll.isStable(3000)) { // 连续3秒内容不变，认为生成完成
+                                poll.complete();
+                                logInfo.sendTaskLog("百度对话AI内容生成稳定，准备提取", userId, "百度AI");
+                                break;
                             }
                         } catch (Exception contentException) {
                             // 继续等待
@@ -773,16 +831,12 @@ public class BaiduUtil {
             if(editor.count()>0){
                 Locator copyButton = page.locator("i.cos-icon.cos-icon-copy.button_AxaRd");
                 if(copyButton.count()>0){
-                    copyButton.click();
-                    Thread.sleep(1000);
-                    content = (String) page.evaluate("navigator.clipboard.readText()");
+                    content = clipboardLockManager.copyText(page, copyButton::click);
                 }
             }else if(comate.count()>0){
                 Locator copyButton = page.locator("i.cos-icon.cos-icon-copy.button_f81z6_14");
                 if(copyButton.count()>0){
-                    copyButton.click();
-                    Thread.sleep(1000);
-                    content = (String) page.evaluate("navigator.clipboard.readText()");
+                    content = clipboardLockManager.copyText(page, copyButton::click);
                 }
             }else{
 
@@ -792,9 +846,7 @@ public class BaiduUtil {
                 // 百度AI无法分享的组件也有分享按钮只是不可见，不可用
                 if(copyButton.count()>0){
                     if(copyButton.isVisible()){
-                        copyButton.click();
-                        Thread.sleep(1000);
-                        content = (String) page.evaluate("navigator.clipboard.readText()");
+                        content = clipboardLockManager.copyText(page, copyButton::click);
                     }
                 }
 
@@ -1007,82 +1059,41 @@ public class BaiduUtil {
     public String getBaiduShareUrl(Page page, String userId) throws Exception {
         AtomicReference<String> shareUrlRef = new AtomicReference<>();
 
-        clipboardLockManager.runWithClipboardLock(() -> {
-            try {
-
-                Locator editor = page.locator("div#editor-container");
-                Locator comate = page.locator("div#comate-chat-workspace");
-                //检测是否打开了右侧文本编辑框
-                if (editor.count() > 0) {
-                    String[] shareSelectors = {
-                            "i.share-button.cos-icon"
-                    };
+        fillBaiduShareUrl(page, userId, shareUrlRef);
 
-                    Locator shareButton = null;
-                    for (String selector : shareSelectors) {
-                        Locator temp = editor.locator(selector);
-                        if (temp.count() > 0) {
-                            shareButton = temp.last();
-                            break;
-                        }
-                    }
+        return shareUrlRef.get();
+    }
 
-                    if (shareButton != null) {
-                        shareButton.click();
-                    }
-                    Thread.sleep(2000);
-                    String[] copySelectors = {
-                            "button:has-text('复制链接')",
-                    };
-                    Locator copyButton = null;
-                    for (String selector : copySelectors) {
-                        Locator temp = page.locator(selector);
+    /**
+     * 打开分享面板并复制链接，复制内容由页面级捕获获得，不再整体占用剪贴板锁
+     */
+    private void fillBaiduShareUrl(Page page, String userId, AtomicReference<String> shareUrlRef) {
+        try {
 
-                        if (temp.count() > 0) {
-                            copyButton = temp.first();
-                            break;
-                        }
-                    }
-                    if (copyButton != null) {
-                        copyButton.click();
-                        Thread.sleep(2000);
+            Locator editor = page.locator("div#editor-container");
+            Locator comate = page.locator("div#comate-chat-workspace");
+            //检测是否打开了右侧文本编辑框
+            if (editor.count() > 0) {
+                String[] shareSelectors = {
+                        "i.share-button.cos-icon"
+                };
 
-                        // 读取剪贴板内容
-                        shareUrlRef.set((String) page.evaluate("navigator.clipboard.readText()"));
-                    }
-                    Thread.sleep(2000);
-                    return;
-                } else if (comate.count() > 0) {
-                    Locator downloadButton = page.locator(".cos-icon.cos-icon-download.button_1uqi9_1");
-                    if (downloadButton.count() > 0) {
-                        String url = screenshotUtil.downloadAndUploadFile(page, screenshotUtil.uploadUrl, () -> {
-                            try {
-                                Thread.sleep(2000);
-                                downloadButton.last().click();
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
-                            }
-                        });
-                        shareUrlRef.set(url);
-                        return;
+                Locator shareButton = null;
+                for (String selector : shareSelectors) {
+                    Locator temp = editor.locator(selector);
+                    if (temp.count() > 0) {
+                        shareButton = temp.last();
+                        break;
                     }
                 }
 
-
-                Locator container = page.locator("div.chat-qa-container").last();
-                Locator directShareButton = container.locator("//i[contains(@class, 'cos-icon') and contains(@class, 'cos-icon-share1')]");
-//                测试用
-//                Locator directShareButton = container.locator("//i[contains(@class, 'nosuchbutton') and contains(@class, 'abcdefg')]");
-                if (directShareButton.count() > 0) {
-                    directShareButton.last().click();
+                if (shareButton != null) {
+                    shareButton.click();
                 }
-                Thread.sleep(500);
+                Thread.sleep(2000);
                 String[] copySelectors = {
                         "button:has-text('复制链接')",
-                        ".copy-link",
-                        "[data-testid='copy-link']"
                 };
-
                 Locator copyButton = null;
                 for (String selector : copySelectors) {
                     Locator temp = page.locator(selector);
@@ -1092,22 +1103,65 @@ public class BaiduUtil {
                         break;
                     }
                 }
-
                 if (copyButton != null) {
-                    copyButton.click();
-                    Thread.sleep(1000);
+                    // 复制的链接由页面级捕获获得
+                    shareUrlRef.set(clipboardLockManager.copyText(page, copyButton::click));
+                }
+                Thread.sleep(2000);
+                return;
+            } else if (comate.count() > 0) {
+                Locator downloadButton = page.locator(".cos-icon.cos-icon-download.button_1uqi9_1");
+                if (downloadButton.count() > 0) {
+                    String url = screenshotUtil.downloadAndUploadFile(page, screenshotUtil.uploadUrl, () -> {
+                        try {
+                            Thread.sleep(2000);
+                            downloadButton.last().click();
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                    });
+                    shareUrlRef.set(url);
+                    return;
+                }
+            }
 
-                    // 读取剪贴板内容
-                    String shareUrl = (String) page.evaluate("navigator.clipboard.readText()");
-                    shareUrl = shareUrl.substring(shareUrl.indexOf('h'));
-                    shareUrlRef.set(shareUrl);
 
-                    logInfo.sendTaskLog("分享链接获取成功", userId, "百度AI");
-                    return;
+            Locator container = page.locator("div.chat-qa-container").last();
+            Locator directShareButton = container.locator("//i[contains(@class, 'cos-icon') and contains(@class, 'cos-icon-share1')]");
+//                测试用
+//                Locator directShareButton = container.locator("//i[contains(@class, 'nosuchbutton') and contains(@class, 'abcdefg')]");
+            if (directShareButton.count() > 0) {
+                directShareButton.last().click();
+            }
+            Thread.sleep(500);
+            String[] copySelectors = {
+                    "button:has-text('复制链接')",
+                    ".copy-link",
+                    "[data-testid='copy-link']"
+            };
+
+            Locator copyButton = null;
+            for (String selector : copySelectors) {
+                Locator temp = page.locator(selector);
+
+                if (temp.count() > 0) {
+                    copyButton = temp.first();
+                    break;
                 }
-                // 如果没找到按钮，不输出"未找到"信息
+            }
+
+            if (copyButton != null) {
+                // 复制的链接由页面级捕获获得
+                String shareUrl = clipboardLockManager.copyText(page, copyButton::click);
+                shareUrl = shareUrl.substring(shareUrl.indexOf('h'));
+                shareUrlRef.set(shareUrl);
+
+                logInfo.sendTaskLog("分享链接获取成功", userId, "百度AI");
+                return;
+            }
+            // 如果没找到按钮，不输出"未找到"信息
 
-                // 没有分享，先点击编辑，分享按钮才出现
+            // 没有分享，先点击编辑，分享按钮才出现
 //                Locator edit = container.locator("i.cos-icon.cos-icon-rewrite");
 //                if(edit.count()>0){
 //                    edit.click();
@@ -1120,16 +1174,13 @@ public class BaiduUtil {
 //                }
 //                Thread.sleep(2000);
 
-                // 如果没找到按钮，不输出"未找到"信息
-                // 如果没找到分享按钮，不输出"未找到分享按钮"信息
-
-            } catch (Exception e) {
-                // 静默处理分享链接获取失败，不影响主流程
-                UserLogUtil.sendExceptionLog(userId, "百度AI分享链接获取", "getBaiduShareUrl", e, url + "/saveLogInfo");
-            }
-        });
+            // 如果没找到按钮，不输出"未找到"信息
+            // 如果没找到分享按钮，不输出"未找到分享按钮"信息
 
-        return shareUrlRef.get();
+        } catch (Exception e) {
+            // 静默处理分享链接获取失败，不影响主流程
+            UserLogUtil.sendExceptionLog(userId, "百度AI分享链接获取", "getBaiduShareUrl", e, url + "/saveLogInfo");
+        }
     }
 
     /**
@@ -1398,27 +1449,24 @@ public class BaiduUtil {
                 Locator element = page.locator("div#conversation-flow-container").last();
                 Locator answer = page.locator("//*[@id=\"1\"]/div/div").last();
 
-                double scrollHeight = ((Number) page.evaluate("(ele) => ele.scrollHeight", element.elementHandle())).doubleValue();
-                double scrollTop = ((Number) page.evaluate("(ele) => ele.scrollTop", element.elementHandle())).doubleValue();
-                double clientHeight = ((Number) page.evaluate("(ele) => ele.clientHeight", element.elementHandle())).doubleValue();
+                // 滚动容器只取一次句柄，后续滚动检测复用
+                ElementHandle scroller = element.elementHandle();
+                Map<String, Object> metrics = (Map<String, Object>) PageScripts.call(page, SCRIPTS, "scrollMetrics", scroller);
+                double scrollHeight = ((Number) metrics.get("scrollHeight")).doubleValue();
+                double scrollTop = ((Number) metrics.get("scrollTop")).doubleValue();
+                double clientHeight = ((Number) metrics.get("clientHeight")).doubleValue();
                 // 先悬停在滑动文本框上以便后续滚动
                 answer.hover();
                 // 先滚动到页面顶部以便定位
                 while (scrollTop > 5) {
                     page.mouse().wheel(0, -clientHeight);
                     Thread.sleep(100);
-                    scrollTop = ((Number) page.evaluate("(ele) => ele.scrollTop", element.elementHandle())).doubleValue();
+                    scrollTop = ((Number) PageScripts.call(page, SCRIPTS, "scrollTop", scroller)).doubleValue();
                 }
                 //隐藏跳到底部元素
                 if (page.locator("#cs-bottom > div.false.false.cs-scroll-to-bottom-btn").count() > 0) {
                     try {
-                        page.evaluate("""
-                                    () => {
-                                        const element = document.querySelector('#cs-bottom > div.false.false.cs-scroll-to-bottom-btn');
-                                        element.style.display = 'none';
-                                        element.style.visibility = 'hidden';
-                                    }
-                                """);
+                        PageScripts.call(page, SCRIPTS, "hide", "#cs-bottom > div.false.false.cs-scroll-to-bottom-btn");
                     } catch (Exception e) {
                         System.err.println("隐藏跳到底部元素失败: " + e.getMessage());
                     }
@@ -1428,7 +1476,7 @@ public class BaiduUtil {
                 // 跳过之前的问答
                 Locator containers = page.locator("div.chat-qa-container");
                 for (int i = 0; i < containers.count() - 1; ++i) {
-                    double containerHeight = ((Number) page.evaluate("(ele) => ele.clientHeight", containers.nth(i).elementHandle())).doubleValue();
+                    double containerHeight = ((Number) PageScripts.call(page, SCRIPTS, "clientHeight", containers.nth(i).elementHandle())).doubleValue();
                     page.mouse().wheel(0, containerHeight);
                 }
                 Thread.sleep(2000);
@@ -1444,7 +1492,7 @@ public class BaiduUtil {
 //                }
                 int lastHeight = 0;
                 double lastScrollTop = -250;
-                scrollTop = ((Number) page.evaluate("(ele) => ele.scrollTop", element.elementHandle())).doubleValue();
+                scrollTop = ((Number) PageScripts.call(page, SCRIPTS, "scrollTop", scroller)).doubleValue();
                 while (scrollTop - lastScrollTop > 200) {
                     images.add(element.screenshot(new Locator.ScreenshotOptions()));
                     lastHeight=(int)scrollTop - (int)lastScrollTop;
@@ -1452,7 +1500,7 @@ public class BaiduUtil {
                     lastScrollTop = scrollTop;
                     page.mouse().wheel(0, clientHeight);
                     Thread.sleep(1500);
-                    scrollTop = ((Number) page.evaluate("(ele) => ele.scrollTop", element.elementHandle())).doubleValue();
+                    scrollTop = ((Number) PageScripts.call(page, SCRIPTS, "scrollTop", scroller)).doubleValue();
                 }
                 byte[] concatenatedImageBytes = null;
                 if(images.size() == 1){
@@ -1654,13 +1702,15 @@ public class BaiduUtil {
                 return "未能找到" + aiName + "回复内容";
             }
 
-            // 多次尝试获取内容，直到获取到有效内容
+            // 多次尝试获取内容，直到获取到有效内容，总共1分钟
             String content = "";
-            int maxAttempts = 30; // 最多尝试30次，每次间隔2秒，总共1分钟
+            PollingGovernor.Session poll = pollingGovernor.begin("baidu", 0);
+            long deadline = System.currentTimeMillis() + 60000;
 
-            for (int i = 0; i < maxAttempts; i++) {
+            while (true) {
                 try {
                     content = replyElement.innerHTML();
+                    poll.observe(content);
 
                     if (content != null && !content.trim().isEmpty() &&
                             !content.contains("未能提取到内容") && content.length() > 50) {
@@ -1668,13 +1718,16 @@ public class BaiduUtil {
                         return content;
                     }
 
-                    Thread.sleep(2000); // 等待2秒后重试
+                    if (System.currentTimeMillis() >= deadline) {
+                        break;
+                    }
+                    poll.pause(page);
 
                 } catch (Exception e) {
-                    if (i == maxAttempts - 1) {
+                    if (System.currentTimeMillis() >= deadline) {
                         throw e;
                     }
-                    Thread.sleep(2000);
+                    poll.pause(page);
                 }
             }
 
@@ -1,95 +1,285 @@
 package com.playwright.utils;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 /**
  * 浏览器并发管理器
- * 基于CPU核心数控制同时运行的浏览器自动化任务数量
- * 
+ * 按平台限流、按用户公平调度的浏览器任务调度器：
+ * 同一平台同时运行的任务数不超过该平台的上限，同一用户正在运行的任务越多，其排队任务越靠后，
+ * 等待越久的任务优先级越高（老化），是否启动新任务由实际测得的 CPU 与内存（含浏览器进程 RSS）决定，而不是 CPU 核心数。
+ * <p>
+ * 排队数量有上限，超出时直接拒绝并给出建议的重试时间；任务只在调度器的工作线程上执行，提交方（如 WebSocket 收消息线程）不会被占用。
+ *
  * @author cube-engine
  * @date 2025/8/11
  */
+@Slf4j
 @Component
 public class BrowserConcurrencyManager {
-    
+
     // CPU核心数
     private final int CPU_CORES = Runtime.getRuntime().availableProcessors();
 
-    // 并发限制：CPU核心数 + 2 (优化性能和资源平衡)
-    private final int MAX_CONCURRENT_BROWSERS;
-    
-    // 线程池执行器
-    private final ThreadPoolExecutor executor;
-    
+    // 同时运行任务数的硬上限，0 表示 CPU核心数 * 2（实际并发由资源准入控制）
+    @Value("${cube.concurrency.max-concurrent:0}")
+    private int maxConcurrentConfig;
+
+    // 各平台同时运行的任务数上限，格式 平台:数量，未配置的平台只受硬上限约束
+    @Value("${cube.concurrency.platform-limits:deepseek:3,doubao:2}")
+    private String platformLimitsConfig;
+
+    // 单个用户同时运行的任务数上限，0 表示不限制
+    @Value("${cube.concurrency.user-limit:3}")
+    private int userLimit;
+
+    // 用户每有一个正在运行的任务，其排队任务的优先级数值增加多少
+    @Value("${cube.concurrency.user-weight:2}")
+    private double userWeight;
+
+    // 任务每等待该时长（毫秒），优先级数值减 1
+    @Value("${cube.concurrency.aging-millis:30000}")
+    private long agingMillis;
+
+    // 系统 CPU 使用率超过该值时暂停启动新任务
+    @Value("${cube.concurrency.max-cpu-load:0.85}")
+    private double maxCpuLoad;
+
+    // 系统内存使用率超过该值时暂停启动新任务，Linux 上按 MemAvailable 计算，页缓存不计入
+    @Value("${cube.concurrency.max-memory-usage:0.9}")
+    private double maxMemoryUsage;
+
+    // 本进程及浏览器子进程的 RSS 总和上限（MB），0 表示不限制
+    @Value("${cube.concurrency.max-browser-rss-mb:0}")
+    private long maxBrowserRssMb;
+
+    // 排队任务总数上限，超出后拒绝新任务
+    @Value("${cube.concurrency.max-queue:50}")
+    private int maxQueue;
+
+    // 单个用户排队任务数上限，超出后拒绝该用户的新任务
+    @Value("${cube.concurrency.max-user-queue:16}")
+    private int maxUserQueue;
+
+    // 没有历史数据时假定的单个任务运行时长（毫秒），用于估算等待时间
+    private static final long DEFAULT_RUN_MILLIS = 60000;
+
+    // 建议重试时间的下限（毫秒）
+    private static final long MIN_RETRY_AFTER = 5000;
+
+    // 并发限制：启动时根据配置计算
+    private int MAX_CONCURRENT_BROWSERS;
+
+    // 线程池执行器，只负责执行已被调度器放行的任务
+    private ThreadPoolExecutor executor;
+
     // 当前运行的任务数量
     private final AtomicInteger runningTasks = new AtomicInteger(0);
-    
-    // 任务队列大小 - 增大队列以处理更多并发请求
-    private final int QUEUE_SIZE = 100;
-    
+
+    // 已完成的任务数量
+    private final AtomicLong completedTasks = new AtomicLong(0);
+
+    // 因资源不足而推迟启动的次数
+    private final AtomicLong admissionDeferrals = new AtomicLong(0);
+
+    // 因排队已满而拒绝的任务数
+    private final AtomicLong rejectedTasks = new AtomicLong(0);
+
     // 任务执行状态跟踪 - 防止重复执行
     private final Set<String> executingTasks = ConcurrentHashMap.newKeySet();
-    
+
+    // 调度锁，保护以下排队与计数状态
+    private final Object lock = new Object();
+
+    // 等待调度的任务
+    private final List<PriorityTask> pendingTasks = new ArrayList<>();
+
+    // 各平台的调度状态
+    private final Map<String, PlatformState> platforms = new ConcurrentHashMap<>();
+
+    // 各用户正在运行的任务数
+    private final Map<String, Integer> userRunning = new ConcurrentHashMap<>();
+
+    // 最近一次资源采样结果
+    private volatile ResourceSample lastSample = new ResourceSample(-1, -1, -1);
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 任务名称关键字与平台的对应关系
+     */
+    private static final Map<String, String> PLATFORM_KEYWORDS = new LinkedHashMap<>();
+
+    static {
+        PLATFORM_KEYWORDS.put("DeepSeek", "deepseek");
+        PLATFORM_KEYWORDS.put("豆包", "doubao");
+        PLATFORM_KEYWORDS.put("元宝", "yuanbao");
+        PLATFORM_KEYWORDS.put("元包", "yuanbao");
+        PLATFORM_KEYWORDS.put("通义", "tongyi");
+        PLATFORM_KEYWORDS.put("Metaso", "metaso");
+        PLATFORM_KEYWORDS.put("秘塔", "metaso");
+        PLATFORM_KEYWORDS.put("百度", "baidu");
+        PLATFORM_KEYWORDS.put("知乎", "zhihu");
+        PLATFORM_KEYWORDS.put("智谱", "zhihu");
+    }
+
+    private static final String DEFAULT_PLATFORM = "default";
+
     /**
      * 优先级任务包装器
-     * 用于支持任务优先级排序
+     * 调度器中的排队单元，记录平台、用户与提交时间
      */
-    public static class PriorityTask implements Runnable, Comparable<PriorityTask> {
+    public static class PriorityTask implements Runnable {
         private final Runnable task;
         private final String taskName;
         private final String userId;
+        private final String platform;
         private final int priority;
         private final long submissionTime;
-        
+        private final long seq;
+        private final TaskFuture<?> future;
+        private long startTime;
+
         // 优先级常量
         public static final int PRIORITY_HIGH = 1;      // 高优先级（百家号状态检测）
         public static final int PRIORITY_NORMAL = 5;    // 普通优先级
         public static final int PRIORITY_LOW = 10;      // 低优先级
-        
-        public PriorityTask(Runnable task, String taskName, String userId, int priority) {
+
+        public PriorityTask(Runnable task, String taskName, String userId, String platform, int priority, long seq,
+                            TaskFuture<?> future) {
             this.task = task;
             this.taskName = taskName;
-            this.userId = userId;
+            this.userId = userId == null ? "" : userId;
+            this.platform = platform;
             this.priority = priority;
-            this.submissionTime = System.nanoTime();
+            this.submissionTime = System.currentTimeMillis();
+            this.seq = seq;
+            this.future = future;
         }
-        
+
         @Override
         public void run() {
             task.run();
         }
-        
-        @Override
-        public int compareTo(PriorityTask other) {
-            // 首先按优先级排序（数字越小优先级越高）
-            int priorityComparison = Integer.compare(this.priority, other.priority);
-            if (priorityComparison != 0) {
-                return priorityComparison;
+
+        /**
+         * 老化后的优先级，等待越久数值越小
+         */
+        private double agedPriority(long now, long agingMillis) {
+            if (agingMillis <= 0) {
+                return priority;
             }
-            // 优先级相同时按提交时间排序（FIFO）
-            return Long.compare(this.submissionTime, other.submissionTime);
+            return priority - (double) (now - submissionTime) / agingMillis;
         }
-        
+
         public String getTaskName() { return taskName; }
         public String getUserId() { return userId; }
+        public String getPlatform() { return platform; }
         public int getPriority() { return priority; }
+        public long getSubmissionTime() { return submissionTime; }
+    }
+
+    /**
+     * 单个平台的限额与统计
+     */
+    private static class PlatformState {
+        private final String name;
+        private volatile int limit;
+        private int running;
+        private int queued;
+        private long completed;
+        private long totalWaitMillis;
+        private long maxWaitMillis;
+        private long totalRunMillis;
+
+        private PlatformState(String name, int limit) {
+            this.name = name;
+            this.limit = limit;
+        }
     }
-    
-    public BrowserConcurrencyManager() {
-        // 计算最大并发数：CPU核心数 + 2，提升并发处理能力
-        this.MAX_CONCURRENT_BROWSERS = CPU_CORES ;
-        
-        // 创建线程池：使用优先级队列支持任务优先级排序
+
+    /**
+     * 浏览器任务的 Future，附带排队位置、预计等待时间与拒绝信息
+     */
+    public static class TaskFuture<T> extends CompletableFuture<T> {
+        private final String taskName;
+        private volatile int queuePosition;
+        private volatile long estimatedWaitMillis;
+        private volatile long retryAfterMillis = -1;
+        private volatile BiConsumer<Integer, Long> queueListener;
+
+        private TaskFuture(String taskName) {
+            this.taskName = taskName;
+        }
+
+        /**
+         * 注册排队位置变化的回调，参数为新的位置与预计等待时间（毫秒）
+         */
+        public TaskFuture<T> onQueueUpdate(BiConsumer<Integer, Long> listener) {
+            this.queueListener = listener;
+            return this;
+        }
+
+        private void updateQueue(int position, long waitMillis) {
+            int previous = queuePosition;
+            queuePosition = position;
+            estimatedWaitMillis = waitMillis;
+            BiConsumer<Integer, Long> listener = queueListener;
+            if (listener != null && position > 0 && position != previous) {
+                try {
+                    listener.accept(position, waitMillis);
+                } catch (Exception e) {
+                    log.warn("排队位置回调执行失败: {}", e.getMessage());
+                }
+            }
+        }
+
+        public String getTaskName() { return taskName; }
+        /** 排队位置，从 1 开始；0 表示已开始执行或已被拒绝 */
+        public int getQueuePosition() { return queuePosition; }
+        public long getEstimatedWaitMillis() { return estimatedWaitMillis; }
+        public boolean isRejected() { return retryAfterMillis >= 0; }
+        public long getRetryAfterMillis() { return retryAfterMillis; }
+    }
+
+    /**
+     * 资源采样结果，取不到的指标为 -1
+     */
+    private record ResourceSample(double cpuLoad, double memoryUsage, long browserRssMb) {
+    }
+
+    @PostConstruct
+    public void init() {
+        this.MAX_CONCURRENT_BROWSERS = maxConcurrentConfig > 0 ? maxConcurrentConfig : CPU_CORES * 2;
+        parsePlatformLimits(platformLimitsConfig).forEach((name, limit) -> platforms.put(name, new PlatformState(name, limit)));
+
+        // 线程数与硬上限一致，排队与放行由调度器负责，不会出现线程池拒绝
         this.executor = new ThreadPoolExecutor(
-            MAX_CONCURRENT_BROWSERS,           // 核心线程数
-            MAX_CONCURRENT_BROWSERS +1,       // 最大线程数，允许临时超出处理突发请求
-            120L,                              // 增加线程空闲存活时间
-            TimeUnit.SECONDS,                  // 时间单位
-            new PriorityBlockingQueue<>(QUEUE_SIZE), // 使用优先级队列
+            MAX_CONCURRENT_BROWSERS,
+            MAX_CONCURRENT_BROWSERS,
+            120L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
             new ThreadFactory() {              // 线程工厂
                 private final AtomicInteger threadNumber = new AtomicInteger(1);
                 @Override
@@ -100,135 +290,123 @@ public class BrowserConcurrencyManager {
                     thread.setPriority(Thread.NORM_PRIORITY);
                     return thread;
                 }
-            },
-            new ThreadPoolExecutor.CallerRunsPolicy() // 拒绝策略：调用者运行
+            }
         );
-        
-        // 预启动核心线程，减少首次任务执行延迟
-        executor.prestartAllCoreThreads();
-        
+        executor.allowCoreThreadTimeOut(true);
+        sampleResources();
+        log.info("浏览器任务调度器已启动: 硬上限={}, 平台限额={}, 用户上限={}", MAX_CONCURRENT_BROWSERS, platformLimitsConfig, userLimit);
+    }
+
+    private static Map<String, Integer> parsePlatformLimits(String config) {
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        if (config == null || config.isBlank()) {
+            return limits;
+        }
+        for (String item : config.split(",")) {
+            String[] pair = item.trim().split(":");
+            if (pair.length != 2) {
+                continue;
+            }
+            try {
+                limits.put(pair[0].trim().toLowerCase(), Integer.parseInt(pair[1].trim()));
+            } catch (NumberFormatException e) {
+                log.warn("平台并发配置无效: {}", item);
+            }
+        }
+        return limits;
     }
-    
+
+    /**
+     * 根据任务名称识别平台
+     */
+    public static String resolvePlatform(String taskName) {
+        if (taskName != null) {
+            for (Map.Entry<String, String> entry : PLATFORM_KEYWORDS.entrySet()) {
+                if (taskName.contains(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return DEFAULT_PLATFORM;
+    }
+
+    private PlatformState platform(String name) {
+        return platforms.computeIfAbsent(name, key -> new PlatformState(key, 0));
+    }
+
     /**
      * 提交浏览器任务（普通优先级）
      * @param task 要执行的任务
      * @param taskName 任务名称（用于日志）
      * @param userId 用户ID（用于日志）
-     * @return Future对象，可用于获取执行结果或取消任务
+     * @return Future对象，任务结束后完成
      */
-    public Future<?> submitBrowserTask(Runnable task, String taskName, String userId) {
+    public TaskFuture<?> submitBrowserTask(Runnable task, String taskName, String userId) {
         return submitBrowserTaskWithPriority(task, taskName, userId, PriorityTask.PRIORITY_NORMAL);
     }
-    
+
     /**
      * 提交浏览器任务（指定优先级）
      * @param task 要执行的任务
      * @param taskName 任务名称（用于日志）
      * @param userId 用户ID（用于日志）
      * @param priority 任务优先级
-     * @return Future对象，可用于获取执行结果或取消任务
-     */
-    public Future<?> submitBrowserTaskWithPriority(Runnable task, String taskName, String userId, int priority) {
-        String priorityDesc = getPriorityDescription(priority);
-        
-        // 创建包装任务，添加监控和异常处理
-        Runnable wrappedTask = () -> {
-            int currentRunning = runningTasks.incrementAndGet();
-            
+     * @return Future对象，任务结束后完成
+     */
+    public TaskFuture<?> submitBrowserTaskWithPriority(Runnable task, String taskName, String userId, int priority) {
+        TaskFuture<Void> future = new TaskFuture<>(taskName);
+        enqueue(() -> {
             try {
                 task.run();
             } catch (Exception e) {
                 e.printStackTrace();
             } finally {
-                int remainingRunning = runningTasks.decrementAndGet();
+                future.complete(null);
             }
-        };
-        
-        // 创建优先级任务并提交
-        PriorityTask priorityTask = new PriorityTask(wrappedTask, taskName, userId, priority);
-        executor.execute(priorityTask);
-        
-        // 返回一个完成的Future，因为我们已经提交了任务
-        return CompletableFuture.completedFuture(null);
-    }
-    
-    /**
-     * 获取优先级描述
-     */
-    private String getPriorityDescription(int priority) {
-        switch (priority) {
-            case PriorityTask.PRIORITY_HIGH: return "高优先级";
-            case PriorityTask.PRIORITY_NORMAL: return "普通优先级";
-            case PriorityTask.PRIORITY_LOW: return "低优先级";
-            default: return "自定义优先级(" + priority + ")";
-        }
+        }, taskName, userId, priority, future);
+        return future;
     }
-    
+
     /**
      * 提交高优先级任务（百家号/知乎状态检测专用）
      */
-    public Future<?> submitHighPriorityTask(Runnable task, String taskName, String userId) {
+    public TaskFuture<?> submitHighPriorityTask(Runnable task, String taskName, String userId) {
         return submitBrowserTaskWithPriority(task, taskName, userId, PriorityTask.PRIORITY_HIGH);
     }
-    
+
     /**
      * 提交低优先级任务
      */
-    public Future<?> submitLowPriorityTask(Runnable task, String taskName, String userId) {
+    public TaskFuture<?> submitLowPriorityTask(Runnable task, String taskName, String userId) {
         return submitBrowserTaskWithPriority(task, taskName, userId, PriorityTask.PRIORITY_LOW);
     }
-    
+
     /**
-     * 提交有返回值的浏览器任务
+     * 提交有返回值的浏览器任务，与其他任务一样参与优先级与公平调度
      * @param task 要执行的任务
      * @param taskName 任务名称
      * @param userId 用户ID
      * @return Future对象，包含任务执行结果
      */
-    public <T> Future<T> submitBrowserTask(Callable<T> task, String taskName, String userId) {
-        
-        return executor.submit(() -> {
-            int currentRunning = runningTasks.incrementAndGet();
-            
+    public <T> TaskFuture<T> submitBrowserTask(Callable<T> task, String taskName, String userId) {
+        TaskFuture<T> future = new TaskFuture<>(taskName);
+        enqueue(() -> {
             try {
-                T result = task.call();
-                return result;
+                future.complete(task.call());
             } catch (Exception e) {
                 e.printStackTrace();
-                throw new RuntimeException(e);
-            } finally {
-                int remainingRunning = runningTasks.decrementAndGet();
+                future.completeExceptionally(e);
             }
-        });
+        }, taskName, userId, PriorityTask.PRIORITY_NORMAL, future);
+        return future;
     }
-    
+
     /**
      * 提交极速状态检测任务（专用于登录状态检测）
      * 使用轻量级浏览器配置，减少CPU和内存占用
      */
-    public Future<?> submitFastLoginCheckTask(Runnable task, String taskName, String userId, String platform) {
-        String priorityDesc = "极速检测";
-        
-        // 包装任务以记录性能指标
-        Runnable wrappedTask = () -> {
-            long startTime = System.currentTimeMillis();
-            int currentRunning = runningTasks.incrementAndGet();
-            
-            try {
-                task.run();
-                long duration = System.currentTimeMillis() - startTime;
-            } catch (Exception e) {
-                long duration = System.currentTimeMillis() - startTime;
-                e.printStackTrace();
-            } finally {
-                int remainingRunning = runningTasks.decrementAndGet();
-            }
-        };
-        
-        // 创建优先级任务并提交
-        PriorityTask priorityTask = new PriorityTask(wrappedTask, taskName + "_FAST_CHECK", userId, PriorityTask.PRIORITY_HIGH);
-        executor.execute(priorityTask);
-        return CompletableFuture.completedFuture(null);
+    public TaskFuture<?> submitFastLoginCheckTask(Runnable task, String taskName, String userId, String platform) {
+        return submitBrowserTaskWithPriority(task, taskName + "_FAST_CHECK", userId, PriorityTask.PRIORITY_HIGH);
     }
 
     /**
@@ -236,7 +414,7 @@ public class BrowserConcurrencyManager {
      */
     private String generateTaskKey(String taskName, String userId, String userPrompt) {
         // 使用任务名称、用户ID和用户输入的前50个字符生成唯一标识
-        String promptPrefix = userPrompt != null && userPrompt.length() > 50 ? 
+        String promptPrefix = userPrompt != null && userPrompt.length() > 50 ?
             userPrompt.substring(0, 50) : (userPrompt != null ? userPrompt : "");
         return taskName + ":" + userId + ":" + promptPrefix.hashCode();
     }
@@ -262,74 +440,368 @@ public class BrowserConcurrencyManager {
      * @param userId 用户ID（用于日志）
      * @param priority 任务优先级
      * @param userPrompt 用户输入内容（用于去重）
-     * @return Future对象，可用于获取执行结果或取消任务
+     * @return Future对象，任务结束后完成；重复任务返回已完成的Future
      */
     public Future<?> submitBrowserTaskWithDeduplication(Runnable task, String taskName, String userId, int priority, String userPrompt) {
         String taskKey = generateTaskKey(taskName, userId, userPrompt);
-        
-        // 检查是否已有相同任务在执行
+
+        // 检查是否已有相同任务在排队或执行
         if (!markTaskAsExecuting(taskKey)) {
             return CompletableFuture.completedFuture(null);
         }
 
-        String priorityDesc = getPriorityDescription(priority);
-        
-        // 创建包装任务，添加监控和异常处理
-        Runnable wrappedTask = () -> {
-            int currentRunning = runningTasks.incrementAndGet();
-            
+        TaskFuture<?> future = submitBrowserTaskWithPriority(() -> {
             try {
                 task.run();
-            } catch (Exception e) {
-                e.printStackTrace();
             } finally {
                 // 标记任务执行完成，允许后续相同任务执行
                 markTaskAsCompleted(taskKey);
-                
-                int remainingRunning = runningTasks.decrementAndGet();
             }
-        };
-        
-        // 创建优先级任务并提交
-        PriorityTask priorityTask = new PriorityTask(wrappedTask, taskName, userId, priority);
-        executor.execute(priorityTask);
-        
-        // 返回一个完成的Future，因为我们已经提交了任务
-        return CompletableFuture.completedFuture(null);
+        }, taskName, userId, priority);
+        // 被拒绝或排队中被取消时不会执行，释放去重标记
+        future.whenComplete((result, e) -> {
+            if (future.isRejected() || future.isCancelled()) {
+                markTaskAsCompleted(taskKey);
+            }
+        });
+        return future;
     }
-    
+
+    /**
+     * 任务进入排队，并尝试立即调度；排队已满时拒绝
+     */
+    private void enqueue(Runnable body, String taskName, String userId, int priority, TaskFuture<?> future) {
+        String platformName = resolvePlatform(taskName);
+        PriorityTask[] holder = new PriorityTask[1];
+        PriorityTask priorityTask = new PriorityTask(() -> {
+            try {
+                body.run();
+            } finally {
+                onFinished(holder[0]);
+            }
+        }, taskName, userId, platformName, priority, sequence.incrementAndGet(), future);
+        holder[0] = priorityTask;
+        synchronized (lock) {
+            long userQueued = pendingTasks.stream().filter(t -> t.userId.equals(priorityTask.userId)).count();
+            if ((maxQueue > 0 && pendingTasks.size() >= maxQueue) || (maxUserQueue > 0 && userQueued >= maxUserQueue)) {
+                reject(priorityTask, userQueued);
+                return;
+            }
+            pendingTasks.add(priorityTask);
+            platform(platformName).queued++;
+        }
+        // 排队中被取消的任务移出队列，不再执行
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                removePending(priorityTask);
+            }
+        });
+        dispatch();
+        refreshQueuePositions();
+    }
+
+    private void removePending(PriorityTask task) {
+        synchronized (lock) {
+            if (pendingTasks.remove(task)) {
+                platform(task.platform).queued--;
+            }
+        }
+        refreshQueuePositions();
+    }
+
+    /**
+     * 拒绝任务，建议的重试时间按排队中任务的预计消化速度估算
+     */
+    private void reject(PriorityTask task, long userQueued) {
+        long overflow = maxQueue > 0 && pendingTasks.size() >= maxQueue ? pendingTasks.size() - maxQueue + 1 : 1;
+        long retryAfter = Math.max(MIN_RETRY_AFTER, averageRunMillis(null) * overflow / MAX_CONCURRENT_BROWSERS);
+        rejectedTasks.incrementAndGet();
+        task.future.retryAfterMillis = retryAfter;
+        log.warn("浏览器任务队列已满，拒绝任务: {} 用户: {} 排队总数: {} 用户排队数: {} 建议 {} 秒后重试",
+                task.taskName, task.userId, pendingTasks.size(), userQueued, retryAfter / 1000);
+        task.future.completeExceptionally(new RejectedExecutionException(
+                "浏览器任务繁忙，请在 " + (retryAfter / 1000) + " 秒后重试"));
+    }
+
+    /**
+     * 平均任务运行时长，platformName 为 null 时统计全部平台
+     */
+    private long averageRunMillis(String platformName) {
+        long total = 0;
+        long count = 0;
+        for (PlatformState state : platforms.values()) {
+            if (platformName == null || state.name.equals(platformName)) {
+                total += state.totalRunMillis;
+                count += state.completed;
+            }
+        }
+        return count > 0 ? total / count : DEFAULT_RUN_MILLIS;
+    }
+
+    /**
+     * 按调度顺序重新计算排队位置与预计等待时间，位置变化时通知提交方
+     */
+    private void refreshQueuePositions() {
+        List<Runnable> notifications = new ArrayList<>();
+        synchronized (lock) {
+            long now = System.currentTimeMillis();
+            List<PriorityTask> ordered = new ArrayList<>(pendingTasks);
+            ordered.sort(Comparator.comparingDouble((PriorityTask t) ->
+                    t.agedPriority(now, agingMillis) + userRunning.getOrDefault(t.userId, 0) * userWeight)
+                    .thenComparingLong(t -> t.seq));
+            Map<String, Integer> aheadByPlatform = new ConcurrentHashMap<>();
+            for (int i = 0; i < ordered.size(); i++) {
+                PriorityTask task = ordered.get(i);
+                PlatformState state = platform(task.platform);
+                int ahead = aheadByPlatform.merge(task.platform, 1, Integer::sum) - 1;
+                int slots = state.limit > 0 ? Math.min(state.limit, MAX_CONCURRENT_BROWSERS) : MAX_CONCURRENT_BROWSERS;
+                long waitMillis = (ahead / slots + 1) * averageRunMillis(task.platform);
+                int position = i + 1;
+                notifications.add(() -> task.future.updateQueue(position, waitMillis));
+            }
+        }
+        notifications.forEach(Runnable::run);
+    }
+
+    private void onFinished(PriorityTask task) {
+        synchronized (lock) {
+            PlatformState state = platform(task.platform);
+            state.running--;
+            state.completed++;
+            state.totalRunMillis += System.currentTimeMillis() - task.startTime;
+            userRunning.computeIfPresent(task.userId, (key, count) -> count > 1 ? count - 1 : null);
+        }
+        runningTasks.decrementAndGet();
+        completedTasks.incrementAndGet();
+        dispatch();
+    }
+
+    /**
+     * 从排队任务中按“老化后的优先级 + 用户已运行任务权重”挑选可运行的任务，直到达到限额或资源不足
+     */
+    private void dispatch() {
+        synchronized (lock) {
+            while (!pendingTasks.isEmpty() && runningTasks.get() < MAX_CONCURRENT_BROWSERS) {
+                // 至少保证一个任务在运行，避免资源采样异常时全部卡住
+                if (runningTasks.get() > 0 && isOverloaded()) {
+                    admissionDeferrals.incrementAndGet();
+                    return;
+                }
+                PriorityTask next = pickNext();
+                if (next == null) {
+                    return;
+                }
+                start(next);
+            }
+        }
+    }
+
+    private PriorityTask pickNext() {
+        long now = System.currentTimeMillis();
+        PriorityTask best = null;
+        double bestScore = 0;
+        for (PriorityTask task : pendingTasks) {
+            PlatformState state = platform(task.platform);
+            if (state.limit > 0 && state.running >= state.limit) {
+                continue;
+            }
+            int running = userRunning.getOrDefault(task.userId, 0);
+            if (userLimit > 0 && running >= userLimit) {
+                continue;
+            }
+            double score = task.agedPriority(now, agingMillis) + running * userWeight;
+            if (best == null || score < bestScore || (score == bestScore && task.seq < best.seq)) {
+                best = task;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private void start(PriorityTask task) {
+        pendingTasks.remove(task);
+        task.startTime = System.currentTimeMillis();
+        task.future.queuePosition = 0;
+        PlatformState state = platform(task.platform);
+        state.queued--;
+        state.running++;
+        long waited = System.currentTimeMillis() - task.submissionTime;
+        state.totalWaitMillis += waited;
+        state.maxWaitMillis = Math.max(state.maxWaitMillis, waited);
+        userRunning.merge(task.userId, 1, Integer::sum);
+        runningTasks.incrementAndGet();
+        executor.execute(task);
+    }
+
+    private boolean isOverloaded() {
+        ResourceSample sample = lastSample;
+        if (maxCpuLoad > 0 && sample.cpuLoad() >= maxCpuLoad) {
+            return true;
+        }
+        if (maxMemoryUsage > 0 && sample.memoryUsage() >= maxMemoryUsage) {
+            return true;
+        }
+        return maxBrowserRssMb > 0 && sample.browserRssMb() >= maxBrowserRssMb;
+    }
+
+    /**
+     * 定时采样资源并重新调度因资源不足而推迟的任务
+     */
+    @Scheduled(fixedDelay = 2000)
+    public void tick() {
+        sampleResources();
+        dispatch();
+        refreshQueuePositions();
+    }
+
+    private void sampleResources() {
+        double cpuLoad = -1;
+        double memoryUsage = -1;
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            cpuLoad = os.getCpuLoad();
+            memoryUsage = readAvailableMemoryUsage();
+            long total = os.getTotalMemorySize();
+            if (memoryUsage < 0 && total > 0) {
+                memoryUsage = (double) (total - os.getFreeMemorySize()) / total;
+            }
+        }
+        lastSample = new ResourceSample(cpuLoad, memoryUsage, measureBrowserRssMb());
+    }
+
+    /**
+     * 按 /proc/meminfo 的 MemAvailable 计算内存使用率；MemFree 不含可回收的页缓存，长时间运行的 Linux 主机上会接近用满
+     *
+     * @return 不提供 /proc/meminfo 的系统返回 -1
+     */
+    private double readAvailableMemoryUsage() {
+        Path meminfo = Paths.get("/proc/meminfo");
+        if (!Files.isReadable(meminfo)) {
+            return -1;
+        }
+        long totalKb = -1;
+        long availableKb = -1;
+        try {
+            for (String line : Files.readAllLines(meminfo)) {
+                if (line.startsWith("MemTotal:")) {
+                    totalKb = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                } else if (line.startsWith("MemAvailable:")) {
+                    availableKb = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (Exception e) {
+            return -1;
+        }
+        if (totalKb <= 0 || availableKb < 0) {
+            return -1;
+        }
+        return (double) (totalKb - availableKb) / totalKb;
+    }
+
+    /**
+     * 统计本进程及其子进程（Chromium、Playwright 驱动）的常驻内存，仅在提供 /proc 的系统上可用
+     */
+    private long measureBrowserRssMb() {
+        if (!Files.isDirectory(Paths.get("/proc/self"))) {
+            return -1;
+        }
+        long totalKb = readRssKb(ProcessHandle.current().pid());
+        Iterator<ProcessHandle> iterator = ProcessHandle.current().descendants().iterator();
+        while (iterator.hasNext()) {
+            totalKb += readRssKb(iterator.next().pid());
+        }
+        return totalKb / 1024;
+    }
+
+    private long readRssKb(long pid) {
+        Path status = Paths.get("/proc", String.valueOf(pid), "status");
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (Exception e) {
+            // 进程已退出
+        }
+        return 0;
+    }
+
     /**
      * 获取当前系统状态信息
      */
     public ConcurrencyStatus getStatus() {
+        int queued;
+        synchronized (lock) {
+            queued = pendingTasks.size();
+        }
         return new ConcurrencyStatus(
             CPU_CORES,
             MAX_CONCURRENT_BROWSERS,
             runningTasks.get(),
-            executor.getQueue().size(),
+            queued,
             executor.getActiveCount(),
-            executor.getCompletedTaskCount()
+            completedTasks.get()
         );
     }
-    
+
+    /**
+     * 获取调度器详细状态：各平台限额与排队情况、各用户运行数、资源采样
+     */
+    public SchedulerStats getSchedulerStats() {
+        Map<String, PlatformStats> platformStats = new LinkedHashMap<>();
+        Map<String, Integer> userQueued = new LinkedHashMap<>();
+        synchronized (lock) {
+            for (PlatformState state : platforms.values()) {
+                long started = state.completed + state.running;
+                platformStats.put(state.name, new PlatformStats(state.limit, state.running, state.queued, state.completed,
+                        started > 0 ? state.totalWaitMillis / started : 0, state.maxWaitMillis,
+                        state.completed > 0 ? state.totalRunMillis / state.completed : 0));
+            }
+            for (PriorityTask task : pendingTasks) {
+                userQueued.merge(task.userId, 1, Integer::sum);
+            }
+        }
+        ResourceSample sample = lastSample;
+        return new SchedulerStats(MAX_CONCURRENT_BROWSERS, runningTasks.get(), userLimit, agingMillis,
+                sample.cpuLoad(), sample.memoryUsage(), sample.browserRssMb(), isOverloaded(), admissionDeferrals.get(),
+                maxQueue, maxUserQueue, rejectedTasks.get(),
+                platformStats, new LinkedHashMap<>(userRunning), userQueued);
+    }
+
+    /**
+     * 运行时调整平台并发上限，0 表示只受硬上限约束
+     */
+    public void setPlatformLimit(String platformName, int limit) {
+        platform(platformName.toLowerCase()).limit = Math.max(0, limit);
+        dispatch();
+    }
+
     /**
      * 获取是否可以立即执行任务（不需要等待）
      */
     public boolean canExecuteImmediately() {
-        return runningTasks.get() < MAX_CONCURRENT_BROWSERS;
+        return runningTasks.get() < MAX_CONCURRENT_BROWSERS && (runningTasks.get() == 0 || !isOverloaded());
     }
-    
+
     /**
      * 获取系统负载情况
      */
     public double getSystemLoad() {
         return (double) runningTasks.get() / MAX_CONCURRENT_BROWSERS;
     }
-    
+
     /**
      * 关闭管理器（应用程序关闭时调用）
      */
+    @PreDestroy
     public void shutdown() {
+        List<PriorityTask> dropped;
+        synchronized (lock) {
+            dropped = new ArrayList<>(pendingTasks);
+            pendingTasks.clear();
+        }
+        // 未执行的任务取消，等待方与多AI批次随之结束
+        dropped.forEach(task -> task.future.cancel(false));
         executor.shutdown();
         try {
             if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
@@ -343,7 +815,7 @@ public class BrowserConcurrencyManager {
             Thread.currentThread().interrupt();
         }
     }
-    
+
     /**
      * 并发状态信息类
      */
@@ -354,8 +826,8 @@ public class BrowserConcurrencyManager {
         private final int queueSize;
         private final int activeThreads;
         private final long completedTasks;
-        
-        public ConcurrencyStatus(int cpuCores, int maxConcurrent, int currentRunning, 
+
+        public ConcurrencyStatus(int cpuCores, int maxConcurrent, int currentRunning,
                                int queueSize, int activeThreads, long completedTasks) {
             this.cpuCores = cpuCores;
             this.maxConcurrent = maxConcurrent;
@@ -364,7 +836,7 @@ public class BrowserConcurrencyManager {
             this.activeThreads = activeThreads;
             this.completedTasks = completedTasks;
         }
-        
+
         // Getters
         public int getCpuCores() { return cpuCores; }
         public int getMaxConcurrent() { return maxConcurrent; }
@@ -372,7 +844,7 @@ public class BrowserConcurrencyManager {
         public int getQueueSize() { return queueSize; }
         public int getActiveThreads() { return activeThreads; }
         public long getCompletedTasks() { return completedTasks; }
-        
+
         @Override
         public String toString() {
             return String.format(
@@ -381,4 +853,97 @@ public class BrowserConcurrencyManager {
             );
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 单个平台的调度状态
+     */
+    public static class PlatformStats {
+        private final int limit;
+        private final int running;
+        private final int queued;
+        private final long completed;
+        private final long avgWaitMillis;
+        private final long maxWaitMillis;
+        private final long avgRunMillis;
+
+        public PlatformStats(int limit, int running, int queued, long completed, long avgWaitMillis, long maxWaitMillis,
+                             long avgRunMillis) {
+            this.limit = limit;
+            this.running = running;
+            this.queued = queued;
+            this.completed = completed;
+            this.avgWaitMillis = avgWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+            this.avgRunMillis = avgRunMillis;
+        }
+
+        // Getters
+        public int getLimit() { return limit; }
+        public int getRunning() { return running; }
+        public int getQueued() { return queued; }
+        public long getCompleted() { return completed; }
+        public long getAvgWaitMillis() { return avgWaitMillis; }
+        public long getMaxWaitMillis() { return maxWaitMillis; }
+        public long getAvgRunMillis() { return avgRunMillis; }
+    }
+
+    /**
+     * 调度器状态信息类
+     */
+    public static class SchedulerStats {
+        private final int maxConcurrent;
+        private final int running;
+        private final int userLimit;
+        private final long agingMillis;
+        private final double cpuLoad;
+        private final double memoryUsage;
+        private final long browserRssMb;
+        private final boolean overloaded;
+        private final long admissionDeferrals;
+        private final int maxQueue;
+        private final int maxUserQueue;
+        private final long rejected;
+        private final Map<String, PlatformStats> platforms;
+        private final Map<String, Integer> userRunning;
+        private final Map<String, Integer> userQueued;
+
+        public SchedulerStats(int maxConcurrent, int running, int userLimit, long agingMillis,
+                              double cpuLoad, double memoryUsage, long browserRssMb, boolean overloaded,
+                              long admissionDeferrals, int maxQueue, int maxUserQueue, long rejected,
+                              Map<String, PlatformStats> platforms,
+                              Map<String, Integer> userRunning, Map<String, Integer> userQueued) {
+            this.maxConcurrent = maxConcurrent;
+            this.running = running;
+            this.userLimit = userLimit;
+            this.agingMillis = agingMillis;
+            this.cpuLoad = cpuLoad;
+            this.memoryUsage = memoryUsage;
+            this.browserRssMb = browserRssMb;
+            this.overloaded = overloaded;
+            this.admissionDeferrals = admissionDeferrals;
+            this.maxQueue = maxQueue;
+            this.maxUserQueue = maxUserQueue;
+            this.rejected = rejected;
+            this.platforms = platforms;
+            this.userRunning = userRunning;
+            this.userQueued = userQueued;
+        }
+
+        // Getters
+        public int getMaxConcurrent() { return maxConcurrent; }
+        public int getRunning() { return running; }
+        public int getUserLimit() { return userLimit; }
+        public long getAgingMillis() { return agingMillis; }
+        public double getCpuLoad() { return cpuLoad; }
+        public double getMemoryUsage() { return memoryUsage; }
+        public long getBrowserRssMb() { return browserRssMb; }
+        public boolean isOverloaded() { return overloaded; }
+        public long getAdmissionDeferrals() { return admissionDeferrals; }
+        public int getMaxQueue() { return maxQueue; }
+        public int getMaxUserQueue() { return maxUserQueue; }
+        public long getRejected() { return rejected; }
+        public Map<String, PlatformStats> getPlatforms() { return platforms; }
+        public Map<String, Integer> getUserRunning() { return userRunning; }
+        public Map<String, Integer> getUserQueued() { return userQueued; }
+    }
+}
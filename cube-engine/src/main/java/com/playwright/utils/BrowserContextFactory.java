@@ -1,7 +1,6 @@
 package com.playwright.utils;
 
 import com.microsoft.playwright.*;
-import com.playwright.controller.BrowserController;
 import com.playwright.entity.UnPersisBrowserContextInfo;
 
 import java.util.*;
@@ -13,7 +12,7 @@ import java.util.concurrent.Semaphore;
  */
 public class BrowserContextFactory {
     public static final Map<String, UnPersisBrowserContextInfo> map = new HashMap<>();
-    private static final Playwright playwright = Playwright.create();
+    private static Playwright playwright;
     private static Integer CONTEXT_COUNT = 0;
     private static final Integer MAX_CONTEXT_COUNT = 20;
 
@@ -21,6 +20,16 @@ public class BrowserContextFactory {
     private static final Semaphore CREATION_SEMAPHORE = new Semaphore(2); // 最多允许2个同时创建
     private static final Object CREATION_LOCK = new Object();
 
+    /**
+     * 延迟创建 Playwright 驱动，shared 模式下不会被创建
+     */
+    private static synchronized Playwright getPlaywright() {
+        if (playwright == null) {
+            playwright = Playwright.create();
+        }
+        return playwright;
+    }
+
     /**
      * @param key   userId
      * @param count 页面数量
@@ -52,46 +61,54 @@ public class BrowserContextFactory {
                         closeLongestUsed();
                     }
 
-                    // 启动 Chromium 浏览器（优化资源消耗和稳定性）
-                    browser = playwright.chromium().launch(new BrowserType.LaunchOptions()
-                            .setHeadless(false)
-                            .setTimeout(30000) // 设置30秒超时
-                            .setArgs(Arrays.asList(
-                                    "--no-sandbox",                    // 禁用沙箱模式，减少CPU占用
-                                    "--disable-dev-shm-usage",        // 禁用/dev/shm，避免内存不足
-                                    "--disable-gpu",                   // 禁用GPU加速，减少GPU占用
-                                    "--disable-extensions",            // 禁用扩展
-                                    "--disable-plugins",               // 禁用插件
-                                    "--disable-images",                // 禁用图片加载，大幅减少网络和内存占用
-                                    "--disable-background-timer-throttling",  // 禁用后台定时器限制
-                                    "--disable-backgrounding-occluded-windows", // 禁用被遮挡窗口的后台化
-                                    "--disable-renderer-backgrounding", // 禁用渲染器后台化
-                                    "--memory-pressure-off",           // 关闭内存压力监控
-                                    "--max_old_space_size=192",        // 优化V8堆内存为192MB
-                                    "--aggressive-cache-discard",     // 积极丢弃缓存
-                                    "--disable-background-networking", // 禁用后台网络
-                                    "--disable-default-apps",         // 禁用默认应用
-                                    "--disable-sync",                  // 禁用同步
-                                    "--disable-web-security",         // 禁用web安全检查（减少CPU检查）
-                                    "--disable-features=VizDisplayCompositor", // 禁用合成器
-                                    "--disable-logging",               // 禁用日志记录
-                                    "--silent",                        // 静默模式
-                                    "--disable-hang-monitor",          // 禁用挂起监控
-                                    "--disable-prompt-on-repost",      // 禁用重复提交提示
-                                    "--disable-ipc-flooding-protection", // 禁用IPC洪水保护
-                                    "--disable-client-side-phishing-detection", // 禁用钓鱼检测
-                                    "--no-first-run",                  // 跳过首次运行
-                                    "--metrics-recording-only",        // 仅记录指标
-                                    "--safebrowsing-disable-auto-update" // 禁用安全浏览更新
-                            ))
-                    );
-
-                    // 创建浏览器上下文（相当于新的隐身窗口）
-                    browserContext = browser.newContext(new Browser.NewContextOptions()
-                            .setPermissions(Arrays.asList(
-                                    "clipboard-read",  // 允许读取剪贴板
-                                    "clipboard-write"  // 允许写入剪贴板
-                            )));
+                    SharedBrowserHost sharedBrowserHost = SpringContextUtils.getBean(SharedBrowserHost.class);
+                    if (sharedBrowserHost.isEnabled()) {
+                        // shared 模式：在常驻浏览器中创建隔离上下文，不再为每个用户单独启动 Chromium
+                        browserContext = sharedBrowserHost.newIsolatedContext(false);
+                    } else {
+                        // 启动 Chromium 浏览器（优化资源消耗和稳定性）
+                        browser = getPlaywright().chromium().launch(new BrowserType.LaunchOptions()
+                                .setHeadless(false)
+                                .setTimeout(30000) // 设置30秒超时
+                                .setArgs(Arrays.asList(
+                                        "--no-sandbox",                    // 禁用沙箱模式，减少CPU占用
+                                        "--disable-dev-shm-usage",        // 禁用/dev/shm，避免内存不足
+                                        "--disable-gpu",                   // 禁用GPU加速，减少GPU占用
+                                        "--disable-extensions",            // 禁用扩展
+                                        "--disable-plugins",               // 禁用插件
+                                        "--disable-images",                // 禁用图片加载，大幅减少网络和内存占用
+                                        "--disable-background-timer-throttling",  // 禁用后台定时器限制
+                                        "--disable-backgrounding-occluded-windows", // 禁用被遮挡窗口的后台化
+                                        "--disable-renderer-backgrounding", // 禁用渲染器后台化
+                                        "--memory-pressure-off",           // 关闭内存压力监控
+                                        "--max_old_space_size=192",        // 优化V8堆内存为192MB
+                                        "--aggressive-cache-discard",     // 积极丢弃缓存
+                                        "--disable-background-networking", // 禁用后台网络
+                                        "--disable-default-apps",         // 禁用默认应用
+                                        "--disable-sync",                  // 禁用同步
+                                        "--disable-web-security",         // 禁用web安全检查（减少CPU检查）
+                                        "--disable-features=VizDisplayCompositor", // 禁用合成器
+                                        "--disable-logging",               // 禁用日志记录
+                                        "--silent",                        // 静默模式
+                                        "--disable-hang-monitor",          // 禁用挂起监控
+                                        "--disable-prompt-on-repost",      // 禁用重复提交提示
+                                        "--disable-ipc-flooding-protection", // 禁用IPC洪水保护
+                                        "--disable-client-side-phishing-detection", // 禁用钓鱼检测
+                                        "--no-first-run",                  // 跳过首次运行
+                                        "--metrics-recording-only",        // 仅记录指标
+                                        "--safebrowsing-disable-auto-update" // 禁用安全浏览更新
+                                ))
+                        );
+
+                        // 创建浏览器上下文（相当于新的隐身窗口）
+                        browserContext = browser.newContext(new Browser.NewContextOptions()
+                                .setPermissions(Arrays.asList(
+                                        "clipboard-read",  // 允许读取剪贴板
+                                        "clipboard-write"  // 允许写入剪贴板
+                                )));
+                    }
+                    // 元宝使用非持久化上下文，同样注册资源拦截规则
+                    SpringContextUtils.getBean(ResourceBlocker.class).apply(browserContext, "yb");
 
                     // 确保有足够的页面 - 修复页面创建逻辑
                     int currentPageCount = browserContext.pages().size();
@@ -173,23 +190,27 @@ public class BrowserContextFactory {
         return unPersisBrowserContextInfo;
     }
 
-    // 检查过期时间
-    public static void closeExpireData(String key) {
+    /**
+     * 检查过期时间
+     *
+     * @return 是否关闭了该上下文，关闭后调用方需清除其登录状态缓存
+     */
+    public static boolean closeExpireData(String key) {
         UnPersisBrowserContextInfo unPersisBrowserContextInfo = map.get(key);
         if (unPersisBrowserContextInfo != null) {
             BrowserContext browserContext = unPersisBrowserContextInfo.getBrowserContext();
             if (browserContext == null) {
                 map.remove(key);
-                BrowserController.loginMap.remove(key);
-                return;
+                return true;
             }
 //            处理过期上下文
             if (System.currentTimeMillis() > unPersisBrowserContextInfo.getExpireTime()) {
                 browserContext.close();
-                BrowserController.loginMap.remove(key);
                 map.remove(key);
+                return true;
             }
         }
+        return false;
     }
 
     // 关闭存活最久的上下文
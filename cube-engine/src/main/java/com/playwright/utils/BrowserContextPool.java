@@ -0,0 +1,474 @@
+package com.playwright.utils;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 浏览器上下文预热池
+ * 按 userDataDir/name/userId 缓存已启动的持久化上下文，同一用户同一平台的连续请求直接复用，
+ * 避免每次请求都重新启动 Chromium。
+ * <p>
+ * 调用方拿到的是一个代理对象，close() 只会把上下文归还到池中，
+ * 真正的关闭由空闲过期、容量淘汰或健康检查失败触发。
+ * 池键包含用户，上下文只会被同一用户同一平台的后续任务复用；
+ * 任务通过代理注册的路由与监听在归还时移除，归还后的代理不能再使用。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月08日 10:12
+ */
+@Slf4j
+@Component
+public class BrowserContextPool {
+
+    // 是否启用上下文池，关闭后退化为每次请求新建上下文
+    @Value("${cube.pool.enabled:true}")
+    private boolean enabled;
+
+    // 池中最多保留的上下文数量（正在使用的上下文不会被淘汰）
+    @Value("${cube.pool.max-size:8}")
+    private int maxSize;
+
+    // 空闲超过该时间的上下文会被关闭（毫秒）
+    @Value("${cube.pool.idle-timeout:600000}")
+    private long idleTimeout;
+
+    // 等待同一上下文被归还的最长时间（毫秒）
+    @Value("${cube.pool.lease-timeout:300000}")
+    private long leaseTimeout;
+
+    private final Map<String, PooledContext> pool = new ConcurrentHashMap<>();
+
+    // 无法撤销的注册：调用过这些方法的上下文归还时直接关闭，不再复用
+    private static final Set<String> UNDOABLE = Set.of("exposeBinding", "exposeFunction", "addInitScript");
+
+    // 统计指标
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong launchFailures = new AtomicLong();
+    private final AtomicLong healthCheckFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong totalLaunchMillis = new AtomicLong();
+    private final AtomicLong maxLaunchMillis = new AtomicLong();
+
+    /**
+     * 池中的一个槽位，同一时刻只允许一个请求持有
+     */
+    private static class PooledContext {
+        private final String key;
+        private final Semaphore permit = new Semaphore(1);
+        private volatile BrowserContext context;
+        private volatile Consumer<BrowserContext> closer;
+        private volatile Consumer<BrowserContext> onRelease;
+        private volatile long lastUsedTime = System.currentTimeMillis();
+        private volatile boolean leased;
+
+        private PooledContext(String key) {
+            this.key = key;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 池中是否有该键已启动的上下文（无论是否正在使用）
+     */
+    public boolean isOpen(String key) {
+        PooledContext pooled = pool.get(key);
+        return pooled != null && pooled.context != null;
+    }
+
+    /**
+     * 租用一个上下文
+     *
+     * @param key      池键，一般为 userDataDir/name/userId
+     * @param launcher 池中没有可用上下文时的启动方法
+     * @param closer   上下文被淘汰时的关闭方法
+     * @return 代理后的上下文，close() 即归还
+     */
+    public BrowserContext lease(String key, Supplier<BrowserContext> launcher, Consumer<BrowserContext> closer) {
+        return lease(key, launcher, closer, null);
+    }
+
+    /**
+     * 租用一个上下文，并在每次归还时执行回调（如保存登录状态）
+     *
+     * @param onRelease 归还时的回调，可为 null
+     */
+    public BrowserContext lease(String key, Supplier<BrowserContext> launcher, Consumer<BrowserContext> closer,
+                                Consumer<BrowserContext> onRelease) {
+        long deadline = System.currentTimeMillis() + leaseTimeout;
+        while (true) {
+            PooledContext pooled = pool.computeIfAbsent(key, PooledContext::new);
+            acquire(pooled, deadline);
+            // 等待期间槽位可能已被淘汰，重新获取
+            if (pool.get(key) != pooled) {
+                pooled.permit.release();
+                continue;
+            }
+            try {
+                if (pooled.context != null && isHealthy(pooled.context)) {
+                    hits.incrementAndGet();
+                } else {
+                    if (pooled.context != null) {
+                        healthCheckFailures.incrementAndGet();
+                        closeQuietly(pooled);
+                    }
+                    misses.incrementAndGet();
+                    evictIfFull();
+                    pooled.context = launch(launcher);
+                    pooled.closer = closer;
+                }
+                pooled.onRelease = onRelease;
+                pooled.leased = true;
+                pooled.lastUsedTime = System.currentTimeMillis();
+                return wrap(pooled);
+            } catch (RuntimeException e) {
+                pool.remove(key, pooled);
+                pooled.permit.release();
+                throw e;
+            }
+        }
+    }
+
+    private void acquire(PooledContext pooled, long deadline) {
+        try {
+            long waitMillis = Math.max(0, deadline - System.currentTimeMillis());
+            if (!pooled.permit.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("浏览器上下文正被其他任务占用，等待超时: " + pooled.key);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待浏览器上下文时被中断", e);
+        }
+    }
+
+    private BrowserContext launch(Supplier<BrowserContext> launcher) {
+        long start = System.currentTimeMillis();
+        try {
+            BrowserContext context = launcher.get();
+            long cost = System.currentTimeMillis() - start;
+            totalLaunchMillis.addAndGet(cost);
+            maxLaunchMillis.accumulateAndGet(cost, Math::max);
+            return context;
+        } catch (RuntimeException e) {
+            launchFailures.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * 租用前的健康检查：与渲染进程做一次真实的往返
+     */
+    private boolean isHealthy(BrowserContext context) {
+        try {
+            List<Page> pages = context.pages();
+            Page probe = pages.isEmpty() ? context.newPage() : pages.get(0);
+            probe.evaluate("() => document.readyState");
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 一次租用期间任务通过代理做的注册，归还时撤销
+     */
+    private static class Lease {
+        private final List<Runnable> undo = new ArrayList<>();
+        private boolean tainted;
+    }
+
+    /**
+     * 归还上下文：撤销本次任务注册的路由与监听，只保留一个空白页，清掉本次任务遗留的页面
+     */
+    private void release(PooledContext pooled, Lease lease) {
+        try {
+            BrowserContext context = pooled.context;
+            if (context == null) {
+                return;
+            }
+            if (lease.tainted) {
+                // 注入的绑定与脚本无法移除，不能留给下一次任务
+                closeQuietly(pooled);
+                pool.remove(pooled.key, pooled);
+                return;
+            }
+            for (Runnable undo : lease.undo) {
+                try {
+                    undo.run();
+                } catch (Exception e) {
+                    log.debug("撤销上下文注册失败: {}", pooled.key, e);
+                }
+            }
+            if (pooled.onRelease != null) {
+                try {
+                    pooled.onRelease.accept(context);
+                } catch (Exception e) {
+                    log.warn("归还浏览器上下文回调执行失败: {}", pooled.key);
+                }
+            }
+            try {
+                List<Page> oldPages = new ArrayList<>(context.pages());
+                context.newPage();
+                for (Page page : oldPages) {
+                    if (!page.isClosed()) {
+                        page.close();
+                    }
+                }
+            } catch (Exception e) {
+                // 重置失败说明上下文已不可用，直接丢弃
+                closeQuietly(pooled);
+                pool.remove(pooled.key, pooled);
+            }
+        } finally {
+            pooled.leased = false;
+            pooled.lastUsedTime = System.currentTimeMillis();
+            pooled.permit.release();
+        }
+    }
+
+    private BrowserContext wrap(PooledContext pooled) {
+        BrowserContext target = pooled.context;
+        AtomicBoolean released = new AtomicBoolean(false);
+        Lease lease = new Lease();
+        return (BrowserContext) Proxy.newProxyInstance(
+                BrowserContext.class.getClassLoader(),
+                new Class<?>[]{BrowserContext.class},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(target, args);
+                    }
+                    if ("close".equals(name)) {
+                        if (released.compareAndSet(false, true)) {
+                            synchronized (lease) {
+                                release(pooled, lease);
+                            }
+                        }
+                        return null;
+                    }
+                    if (released.get()) {
+                        throw new IllegalStateException("浏览器上下文已归还到池中，不能继续使用: " + pooled.key);
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    synchronized (lease) {
+                        record(lease, target, method, args);
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * 记录任务通过代理注册的路由与监听，对应的 unroute/offXxx 在归还时执行
+     */
+    private static void record(Lease lease, BrowserContext target, Method method, Object[] args) {
+        String name = method.getName();
+        if (UNDOABLE.contains(name) || "routeFromHAR".equals(name) || "routeWebSocket".equals(name)) {
+            lease.tainted = true;
+            return;
+        }
+        String undoName;
+        int argCount;
+        if ("route".equals(name)) {
+            undoName = "unroute";
+            argCount = 2;
+        } else if (name.length() > 2 && name.startsWith("on") && Character.isUpperCase(name.charAt(2))) {
+            undoName = "off" + name.substring(2);
+            argCount = 1;
+        } else {
+            return;
+        }
+        if (args == null || args.length < argCount) {
+            return;
+        }
+        Object[] undoArgs = new Object[argCount];
+        System.arraycopy(args, 0, undoArgs, 0, argCount);
+        Class<?>[] types = new Class<?>[argCount];
+        System.arraycopy(method.getParameterTypes(), 0, types, 0, argCount);
+        try {
+            Method undo = BrowserContext.class.getMethod(undoName, types);
+            lease.undo.add(() -> {
+                try {
+                    undo.invoke(target, undoArgs);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (NoSuchMethodException e) {
+            // 没有对应的撤销方法，无法保证下一次任务不受影响
+            lease.tainted = true;
+        }
+    }
+
+    /**
+     * 超出容量时淘汰最久未使用的空闲上下文
+     */
+    private void evictIfFull() {
+        while (liveCount() >= maxSize) {
+            PooledContext oldest = null;
+            for (PooledContext pooled : pool.values()) {
+                if (pooled.context == null || pooled.leased) {
+                    continue;
+                }
+                if (oldest == null || pooled.lastUsedTime < oldest.lastUsedTime) {
+                    oldest = pooled;
+                }
+            }
+            if (oldest == null || !evict(oldest)) {
+                // 全部在使用中，允许临时超出上限
+                return;
+            }
+        }
+    }
+
+    private long liveCount() {
+        return pool.values().stream().filter(p -> p.context != null).count();
+    }
+
+    private boolean evict(PooledContext pooled) {
+        if (!pooled.permit.tryAcquire()) {
+            return false;
+        }
+        try {
+            pool.remove(pooled.key, pooled);
+            closeQuietly(pooled);
+            evictions.incrementAndGet();
+            return true;
+        } finally {
+            pooled.permit.release();
+        }
+    }
+
+    private void closeQuietly(PooledContext pooled) {
+        BrowserContext context = pooled.context;
+        pooled.context = null;
+        if (context == null) {
+            return;
+        }
+        try {
+            if (pooled.closer != null) {
+                pooled.closer.accept(context);
+            } else {
+                context.close();
+            }
+        } catch (Exception e) {
+            log.warn("关闭池化浏览器上下文失败: {}", pooled.key);
+        }
+    }
+
+    /**
+     * 定时关闭空闲过久的上下文
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (PooledContext pooled : pool.values()) {
+            if (!pooled.leased && now - pooled.lastUsedTime > idleTimeout) {
+                evict(pooled);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (PooledContext pooled : pool.values()) {
+            closeQuietly(pooled);
+        }
+        pool.clear();
+    }
+
+    /**
+     * 获取池状态
+     */
+    public PoolStats getStats() {
+        int leasedCount = (int) pool.values().stream().filter(p -> p.leased).count();
+        long launches = misses.get() - launchFailures.get();
+        return new PoolStats(
+                enabled,
+                (int) liveCount(),
+                leasedCount,
+                maxSize,
+                hits.get(),
+                misses.get(),
+                launchFailures.get(),
+                healthCheckFailures.get(),
+                evictions.get(),
+                launches > 0 ? totalLaunchMillis.get() / launches : 0,
+                maxLaunchMillis.get()
+        );
+    }
+
+    /**
+     * 上下文池状态信息类
+     */
+    public static class PoolStats {
+        private final boolean enabled;
+        private final int size;
+        private final int leased;
+        private final int maxSize;
+        private final long hits;
+        private final long misses;
+        private final long launchFailures;
+        private final long healthCheckFailures;
+        private final long evictions;
+        private final long avgLaunchMillis;
+        private final long maxLaunchMillis;
+
+        public PoolStats(boolean enabled, int size, int leased, int maxSize, long hits, long misses,
+                         long launchFailures, long healthCheckFailures, long evictions,
+                         long avgLaunchMillis, long maxLaunchMillis) {
+            this.enabled = enabled;
+            this.size = size;
+            this.leased = leased;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.launchFailures = launchFailures;
+            this.healthCheckFailures = healthCheckFailures;
+            this.evictions = evictions;
+            this.avgLaunchMillis = avgLaunchMillis;
+            this.maxLaunchMillis = maxLaunchMillis;
+        }
+
+        // Getters
+        public boolean isEnabled() { return enabled; }
+        public int getSize() { return size; }
+        public int getLeased() { return leased; }
+        public int getMaxSize() { return maxSize; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getLaunchFailures() { return launchFailures; }
+        public long getHealthCheckFailures() { return healthCheckFailures; }
+        public long getEvictions() { return evictions; }
+        public long getAvgLaunchMillis() { return avgLaunchMillis; }
+        public long getMaxLaunchMillis() { return maxLaunchMillis; }
+    }
+}
@@ -10,11 +10,16 @@ import com.microsoft.playwright.BrowserContext;
 import com.microsoft.playwright.BrowserType;
 import com.microsoft.playwright.Page;
 import com.microsoft.playwright.Playwright;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
@@ -33,7 +38,71 @@ public class BrowserUtil {
     private static final AtomicInteger CONCURRENT_CONTEXT_COUNT = new AtomicInteger(0);
     private static final int MAX_CONCURRENT_CONTEXTS = 3; // 最多同时创建3个上下文
 
+    // 持久化上下文与其 Playwright 驱动的对应关系，关闭上下文时一并关闭驱动
+    private static final Map<BrowserContext, Playwright> CONTEXT_DRIVERS = new ConcurrentHashMap<>();
 
+    @Autowired
+    private BrowserContextPool browserContextPool;
+
+    @Autowired
+    private SharedBrowserHost sharedBrowserHost;
+
+    @Autowired
+    private LoginStateCache loginStateCache;
+
+    @Autowired
+    private FanOutExecutor fanOutExecutor;
+
+    @Autowired
+    private ResourceBlocker resourceBlocker;
+
+    /**
+     * 获取持久化浏览器上下文
+     * 启用上下文池时优先复用同一用户同一平台的预热上下文，调用方 close() 即归还；
+     * shared 模式下上下文由共享浏览器承载，登录状态在每次归还时写回 storageState；
+     * 新建的上下文会监听页面跳转，跳转到登录页时清除登录状态缓存，并注册该平台的资源拦截规则；
+     * 多AI批次中的任务使用批次浏览器中的标签页，池中已有该平台的预热上下文时仍优先复用；
+     * 持久化上下文归还或关闭时把登录状态写回 storage-state.json，与批次标签页保持同步
+     *
+     * @return BrowserContext 持久化浏览器上下文
+     */
+    public BrowserContext createPersistentBrowserContext(boolean isHead, String userId, String name) {
+        String key = userDataDir + "/" + name + "/" + userId + (isHead ? "#headless" : "");
+        if (sharedBrowserHost.isEnabled()) {
+            // shared 模式始终经过上下文池，保证归还时保存登录状态
+            return browserContextPool.lease(key,
+                    () -> prepare(sharedBrowserHost.newUserContext(isHead, userId, name,
+                            statePath -> exportProfileStorageState(userId, name, statePath)), userId, name),
+                    sharedBrowserHost::saveAndClose,
+                    sharedBrowserHost::saveStorageState);
+        }
+        if (!browserContextPool.isOpen(key)) {
+            BrowserContext tab = fanOutExecutor.openTab(isHead, userId, name);
+            if (tab != null) {
+                return prepare(tab, userId, name);
+            }
+        }
+        Path profileDir = Paths.get(userDataDir, name, userId);
+        if (!browserContextPool.isEnabled()) {
+            BrowserContext context = launchPersistentBrowserContext(isHead, userId, name);
+            return prepare(StorageStateSync.saveOnClose(context, profileDir, () -> StorageStateSync.touch(profileDir)),
+                    userId, name);
+        }
+        return browserContextPool.lease(key,
+                () -> prepare(launchPersistentBrowserContext(isHead, userId, name), userId, name),
+                context -> {
+                    closePersistentBrowserContext(context);
+                    StorageStateSync.touch(profileDir);
+                },
+                context -> StorageStateSync.save(context, profileDir));
+    }
+
+    /**
+     * 新建上下文的公共处理：监听登录失效并注册资源拦截规则
+     */
+    private BrowserContext prepare(BrowserContext context, String userId, String name) {
+        return loginStateCache.watch(resourceBlocker.apply(context, name), userId, name);
+    }
 
     /**
      * 启动持久化浏览器上下文
@@ -41,7 +110,7 @@ public class BrowserUtil {
      *
      * @return BrowserContext 持久化浏览器上下文
      */
-    public BrowserContext createPersistentBrowserContext(boolean isHead, String userId, String name) {
+    private BrowserContext launchPersistentBrowserContext(boolean isHead, String userId, String name) {
         Exception lastException = null;
         
         // 🔥 并发控制：如果当前创建的上下文过多，等待
@@ -102,7 +171,18 @@ public class BrowserUtil {
                         context.grantPermissions(Arrays.asList("clipboard-read", "clipboard-write"));
                     } catch (Exception permissionError) {
                     }
-                    
+
+                    // 多AI批次标签页写回的登录状态较新时同步到持久化目录
+                    StorageStateSync.restoreCookies(context, Paths.get(userDataDir, name, userId));
+
+                    CONTEXT_DRIVERS.put(context, playwright);
+                    // 调用方直接 close() 时同样关闭驱动；关闭事件在驱动的派发过程中触发，不能在回调里直接关闭驱动
+                    context.onClose(closed -> {
+                        Playwright driver = CONTEXT_DRIVERS.remove(closed);
+                        if (driver != null) {
+                            CompletableFuture.runAsync(() -> gracefullyClosePlaywright(driver));
+                        }
+                    });
                     return context;
                     
                 } catch (com.microsoft.playwright.impl.TargetClosedError e) {
@@ -251,6 +331,32 @@ public class BrowserUtil {
         return options;
     }
     
+    /**
+     * 从持久化用户目录导出登录状态（切换到 shared 模式时只执行一次）
+     */
+    private void exportProfileStorageState(String userId, String name, Path statePath) {
+        BrowserContext context = launchPersistentBrowserContext(true, userId, name);
+        try {
+            context.storageState(new BrowserContext.StorageStateOptions().setPath(statePath));
+        } finally {
+            closePersistentBrowserContext(context);
+        }
+    }
+
+    /**
+     * 关闭持久化上下文及其 Playwright 驱动
+     */
+    private static void closePersistentBrowserContext(BrowserContext context) {
+        Playwright playwright = CONTEXT_DRIVERS.remove(context);
+        try {
+            context.close();
+        } catch (Exception e) {
+        }
+        if (playwright != null) {
+            gracefullyClosePlaywright(playwright);
+        }
+    }
+
     /**
      * 清理 Playwright 资源
      */
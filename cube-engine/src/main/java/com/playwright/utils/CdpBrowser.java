@@ -0,0 +1,178 @@
+package com.playwright.utils;
+
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Playwright;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 开放 CDP 端口的 Chromium 进程
+ * 直接启动 Playwright 自带的 Chromium，调试端口由浏览器自行分配（--remote-debugging-port=0），
+ * 启动后从临时用户目录下的 DevToolsActivePort 文件读取实际端口，不存在先探测空闲端口、再交给浏览器时被抢占的问题；
+ * 端口只监听本机回环地址。浏览器进程本身不绑定任何 Playwright 驱动，
+ * Playwright 对象不能被多个线程同时使用，因此每个上下文都用自己的驱动通过 connectOverCDP 连接。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年10月18日 10:20
+ */
+@Slf4j
+public final class CdpBrowser {
+
+    private static final String ACTIVE_PORT_FILE = "DevToolsActivePort";
+
+    private static volatile String executablePath;
+
+    private final Process process;
+    private final Path userDataDir;
+    private final String endpoint;
+
+    private CdpBrowser(Process process, Path userDataDir, String endpoint) {
+        this.process = process;
+        this.userDataDir = userDataDir;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * 启动浏览器并等待调试端口就绪
+     *
+     * @param headless      是否无头
+     * @param args          额外的启动参数
+     * @param timeoutMillis 等待端口就绪的最长时间
+     */
+    public static CdpBrowser launch(boolean headless, List<String> args, long timeoutMillis) throws IOException {
+        Path dir = Files.createTempDirectory("cube-cdp-");
+        List<String> command = new ArrayList<>();
+        command.add(executablePath());
+        command.add("--remote-debugging-port=0");
+        command.add("--remote-debugging-address=127.0.0.1");
+        command.add("--user-data-dir=" + dir.toAbsolutePath());
+        command.add("--no-first-run");
+        command.add("--no-default-browser-check");
+        if (headless) {
+            command.add("--headless=new");
+        }
+        command.addAll(args);
+        command.add("about:blank");
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            int port = awaitPort(process, dir.resolve(ACTIVE_PORT_FILE), timeoutMillis);
+            return new CdpBrowser(process, dir, "http://127.0.0.1:" + port);
+        } catch (IOException | RuntimeException e) {
+            destroy(process);
+            deleteQuietly(dir);
+            throw e;
+        }
+    }
+
+    private static String executablePath() {
+        if (executablePath == null) {
+            synchronized (CdpBrowser.class) {
+                if (executablePath == null) {
+                    try (Playwright playwright = Playwright.create()) {
+                        executablePath = playwright.chromium().executablePath();
+                    }
+                }
+            }
+        }
+        return executablePath;
+    }
+
+    /**
+     * 浏览器监听端口后会把端口号写在 DevToolsActivePort 的第一行
+     */
+    private static int awaitPort(Process process, Path portFile, long timeoutMillis) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("浏览器进程启动后立即退出，退出码: " + process.exitValue());
+            }
+            if (Files.exists(portFile)) {
+                List<String> lines = Files.readAllLines(portFile, StandardCharsets.UTF_8);
+                if (!lines.isEmpty() && !lines.get(0).isBlank()) {
+                    return Integer.parseInt(lines.get(0).trim());
+                }
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待浏览器调试端口时被中断");
+            }
+        }
+        throw new IOException("等待浏览器调试端口超时");
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * 用一个新的 Playwright 驱动连接浏览器并创建上下文，上下文关闭后驱动随之关闭
+     */
+    public BrowserContext newContext(Browser.NewContextOptions options) {
+        Playwright playwright = Playwright.create();
+        try {
+            Browser browser = playwright.chromium().connectOverCDP(endpoint);
+            BrowserContext context = browser.newContext(options);
+            // 关闭事件在驱动的派发过程中触发，不能在回调里直接关闭驱动
+            context.onClose(closed -> CompletableFuture.runAsync(() -> BrowserUtil.gracefullyClosePlaywright(playwright)));
+            return context;
+        } catch (RuntimeException e) {
+            BrowserUtil.gracefullyClosePlaywright(playwright);
+            throw e;
+        }
+    }
+
+    /**
+     * 结束浏览器进程并删除临时用户目录
+     */
+    public void close() {
+        destroy(process);
+        deleteQuietly(userDataDir);
+    }
+
+    private static void destroy(Process process) {
+        process.destroy();
+        try {
+            if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void deleteQuietly(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.debug("删除临时文件失败: {}", path);
+                }
+            });
+        } catch (IOException e) {
+            log.debug("删除临时目录失败: {}", dir);
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package com.playwright.utils;
 
+import com.microsoft.playwright.Page;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * 剪贴板访问
+ * 复制结果优先从页面级捕获（PageClipboard）中读取，各页面并行执行；
+ * 只有页面没有通过可拦截的方式复制时，才在全局锁内重新复制并读取系统剪贴板，复制与读取之间不会被其他页面覆盖。
+ *
  * @author AspireLife
  * @version JDK 1.8
  * @date 2025年06月17日 14:06
@@ -12,8 +19,22 @@ import java.util.concurrent.locks.ReentrantLock;
 @Component
 public class ClipboardLockManager {
 
+    // 等待页面复制完成的默认时长
+    private static final long DEFAULT_COPY_TIMEOUT = 3000;
+
     private final ReentrantLock lock = new ReentrantLock();
 
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * 复制操作，通常是点击页面上的复制按钮
+     */
+    @FunctionalInterface
+    public interface CopyAction {
+        void run() throws InterruptedException;
+    }
+
     public void runWithClipboardLock(Runnable action) {
         try {
             lock.lock();
@@ -22,4 +43,75 @@ public class ClipboardLockManager {
             lock.unlock();
         }
     }
+
+    /**
+     * 执行复制操作并返回复制的文本
+     */
+    public String copyText(Page page, CopyAction copyAction) throws InterruptedException {
+        return copyText(page, copyAction, DEFAULT_COPY_TIMEOUT);
+    }
+
+    /**
+     * 执行复制操作并返回复制的文本
+     * 复制操作本身不加锁；页面级捕获超时后在全局锁内重新复制并读取系统剪贴板
+     *
+     * @param timeoutMillis 等待页面复制完成的最长时间
+     */
+    public String copyText(Page page, CopyAction copyAction, long timeoutMillis) throws InterruptedException {
+        long mark;
+        try {
+            mark = PageClipboard.mark(page);
+        } catch (RuntimeException e) {
+            // 页面无法注入脚本，整个复制过程按原方式在锁内完成
+            fallbacks.incrementAndGet();
+            return copyWithLock(page, copyAction, timeoutMillis, false, 0);
+        }
+        copyAction.run();
+        String text = PageClipboard.awaitText(page, mark, timeoutMillis);
+        if (text != null) {
+            captured.incrementAndGet();
+            return text;
+        }
+        fallbacks.incrementAndGet();
+        // 锁外的复制可能已被其他页面覆盖，点击与读取都必须在锁内完成
+        return copyWithLock(page, copyAction, timeoutMillis, true, mark);
+    }
+
+    /**
+     * 在锁内复制并读取，可拦截时先检查页面缓冲，其次才读取系统剪贴板
+     */
+    private String copyWithLock(Page page, CopyAction copyAction, long waitMillis, boolean intercepted, long mark)
+            throws InterruptedException {
+        lock.lock();
+        try {
+            if (intercepted) {
+                // 超时之后才到达的复制结果仍在页面缓冲中，无需再次复制
+                String late = PageClipboard.awaitText(page, mark, 0);
+                if (late != null) {
+                    return late;
+                }
+            }
+            copyAction.run();
+            page.waitForTimeout(Math.min(waitMillis, 2000));
+            if (intercepted) {
+                String text = PageClipboard.awaitText(page, mark, 0);
+                if (text != null) {
+                    return text;
+                }
+            }
+            return (String) page.evaluate("navigator.clipboard.readText()");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 页面级捕获与回退到系统剪贴板的次数
+     */
+    public Map<String, Long> getStats() {
+        return Map.of(
+                "captured", captured.get(),
+                "fallbacks", fallbacks.get()
+        );
+    }
 }
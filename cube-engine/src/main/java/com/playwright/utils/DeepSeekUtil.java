@@ -49,6 +49,242 @@ public class DeepSeekUtil {
     @Autowired
     private ScreenshotUtil screenshotUtil;
 
+    @Autowired
+    private ResponseWatcher responseWatcher;
+
+    @Autowired
+    private PollingGovernor pollingGovernor;
+
+    // 回答监听规则：最新回复容器中的 markdown，出现操作按钮组即完成
+    private static final ResponseWatcher.Spec WATCH_SPEC = new ResponseWatcher.Spec("div._4f9bf79.d7dc56a8._43c05b5 .ds-markdown")
+            .done("div._4f9bf79.d7dc56a8._43c05b5 div.ds-flex._0a3d93b[style*=\"align-items: center; gap: 10px\"] div.ds-flex._965abe9._54866f7")
+            .generating(".ds-typing-container, .ds-loading-dots");
+
+    // 回答轮询中反复执行的页面函数，每个页面只注入一次
+    private static final PageScripts.Bundle SCRIPTS = new PageScripts.Bundle("deepseek", """
+            {
+                errorText() {
+                    const errorElements = document.querySelectorAll('.error-message, .ds-error, [class*="error"]');
+                    for (const el of errorElements) {
+                        if (el.innerText && el.innerText.trim() && 
+                            window.getComputedStyle(el).display !== 'none') {
+                            return el.innerText.trim();
+                        }
+                    }
+                    return null;
+                },
+
+                isGenerating() {
+                    try {
+                        // 检查停止指示器
+                        const thinkingIndicators = document.querySelectorAll(
+                            '.generating-indicator, .loading-indicator, .thinking-indicator, ' +
+                            '.ds-typing-container, .ds-loading-dots, .loading-container, ' +
+                            '[class*="loading"], [class*="typing"], [class*="generating"]'
+                        );
+
+                        for (const indicator of thinkingIndicators) {
+                            if (indicator && 
+                                window.getComputedStyle(indicator).display !== 'none' && 
+                                window.getComputedStyle(indicator).visibility !== 'hidden') {
+                                return true;
+                            }
+                        }
+
+                        // 检查停止生成按钮
+                        const stopButtons = document.querySelectorAll(
+                            'button:contains("停止生成"), button:contains("Stop"), ' +
+                            '[title="停止生成"], [title="Stop generating"], ' +
+                            '.stop-generating-button, [class*="stop"]'
+                        );
+
+                        for (const btn of stopButtons) {
+                            if (btn && 
+                                window.getComputedStyle(btn).display !== 'none' && 
+                                window.getComputedStyle(btn).visibility !== 'hidden') {
+                                return true;
+                            }
+                        }
+
+                        // 检查光标闪烁
+                        const blinkingElements = document.querySelectorAll(
+                            '[class*="cursor"], [class*="blink"]'
+                        );
+
+                        for (const el of blinkingElements) {
+                            if (el && 
+                                window.getComputedStyle(el).display !== 'none' && 
+                                window.getComputedStyle(el).visibility !== 'hidden') {
+                                // 检查是否在最后一个回复中
+                                const responses = document.querySelectorAll('.ds-markdown');
+                                if (responses.length > 0) {
+                                    const lastResponse = responses[responses.length - 1];
+                                    if (lastResponse.contains(el)) {
+                                        return true;
+                                    }
+                                }
+                            }
+                        }
+
+                        return false;
+                    } catch (e) {
+                        console.error('检查生成状态时出错:', e);
+                        return false;
+                    }
+                },
+
+                latestResponse() {
+                    try {
+                        // 获取所有包含AI回答的消息
+                        const markdownElements = document.querySelectorAll('.ds-markdown');
+                        if (markdownElements.length === 0) {
+                            // 尝试其他可能的选择器
+                            const alternativeElements = document.querySelectorAll(
+                                '.markdown-body, .ai-response, .message-content, [class*="markdown"]'
+                            );
+
+                            if (alternativeElements.length > 0) {
+                                const latestAlt = alternativeElements[alternativeElements.length - 1];
+                                const textContent = latestAlt.textContent || '';
+                                return {
+                                    content: latestAlt.innerHTML,
+                                    textContent: textContent,
+                                    length: textContent.trim().length,
+                                    source: 'alternative-selector',
+                                    timestamp: Date.now()
+                                };
+                            }
+
+                            return {
+                                content: '',
+                                textContent: '',
+                                length: 0,
+                                source: 'no-markdown-elements',
+                                timestamp: Date.now()
+                            };
+                        }
+
+                        // 获取最新的Markdown内容
+                        const latestMarkdown = markdownElements[markdownElements.length - 1];
+
+                        // 为元素添加时间戳以便后续检查
+                        if (!latestMarkdown.hasAttribute('data-timestamp')) {
+                            latestMarkdown.setAttribute('data-timestamp', Date.now().toString());
+                        }
+
+                        // 克隆内容以避免修改原DOM
+                        const contentClone = latestMarkdown.cloneNode(true);
+
+                        // 移除头像图标和其他无关元素
+                        const iconsToRemove = contentClone.querySelectorAll(
+                            '._7eb2358, ._58dfa60, .ds-icon, svg, ' +
+                            '.avatar, .user-avatar, .ai-avatar, ' +
+                            '.ds-button, button, [role="button"], ' +
+                            '[class*="loading"], [class*="typing"], [class*="cursor"]'
+                        );
+                        iconsToRemove.forEach(icon => icon.remove());
+
+                        // 移除空的div容器
+                        const emptyDivs = contentClone.querySelectorAll('div:empty');
+                        emptyDivs.forEach(div => div.remove());
+
+                        // 检查内容长度
+                        const textContent = contentClone.textContent || '';
+                        const contentLength = textContent.trim().length;
+
+                        return {
+                            content: contentClone.innerHTML,
+                            textContent: textContent,
+                            length: contentLength,
+                            hasCodeBlocks: contentClone.querySelectorAll('pre, code').length > 0,
+                            source: 'latest-markdown',
+                            timestamp: Date.now()
+                        };
+                    } catch (e) {
+                        return {
+                            content: '',
+                            textContent: '',
+                            length: 0,
+                            source: 'error',
+                            error: e.toString(),
+                            timestamp: Date.now()
+                        };
+                    }
+                },
+
+                latestResponseWithCompletion() {
+                    try {
+                        // 查找包含特定class的最新回复区域
+                        const responseContainers = document.querySelectorAll('div._4f9bf79.d7dc56a8._43c05b5');
+                        if (responseContainers.length === 0) {
+                            return {
+                                content: '',
+                                textContent: '',
+                                length: 0,
+                                hasActionButtons: false,
+                                source: 'no-response-containers',
+                                timestamp: Date.now()
+                            };
+                        }
+
+                        // 获取最后一个回复容器（最新的回复）
+                        const latestContainer = responseContainers[responseContainers.length - 1];
+
+                        // 检查是否包含操作按钮组
+                        const actionButtonsSelector = 'div.ds-flex._0a3d93b[style*="align-items: center; gap: 10px"] div.ds-flex._965abe9._54866f7';
+                        const hasActionButtons = latestContainer.querySelector(actionButtonsSelector) !== null;
+
+                        // 获取markdown内容
+                        const markdownElement = latestContainer.querySelector('.ds-markdown');
+                        if (!markdownElement) {
+                            return {
+                                content: '',
+                                textContent: '',
+                                length: 0,
+                                hasActionButtons: hasActionButtons,
+                                source: 'no-markdown-in-container',
+                                timestamp: Date.now()
+                            };
+                        }
+
+                        // 克隆内容以避免修改原DOM
+                        const contentClone = markdownElement.cloneNode(true);
+
+                        // 移除不需要的元素
+                        const elementsToRemove = contentClone.querySelectorAll(
+                            'svg, .ds-icon, button, [role="button"], ' +
+                            '[class*="loading"], [class*="typing"], [class*="cursor"], ' +
+                            '.md-code-block-banner, .code-info-button-text'
+                        );
+                        elementsToRemove.forEach(el => el.remove());
+
+                        // 获取文本内容
+                        const textContent = contentClone.textContent || '';
+                        const contentLength = textContent.trim().length;
+
+                        return {
+                            content: contentClone.innerHTML,
+                            textContent: textContent,
+                            length: contentLength,
+                            hasActionButtons: hasActionButtons,
+                            source: 'latest-container-with-buttons',
+                            timestamp: Date.now()
+                        };
+                    } catch (e) {
+                        return {
+                            content: '',
+                            textContent: '',
+                            length: 0,
+                            hasActionButtons: false,
+                            source: 'error',
+                            error: e.toString(),
+                            timestamp: Date.now()
+                        };
+                    }
+                }
+            }
+            """);
+
     /**
      * 检查DeepSeek登录状态
      * @param page Playwright页面对象
@@ -185,6 +421,7 @@ public class DeepSeekUtil {
             boolean hasCompletionMarkers = false; // 是否检测到完成标记
   
             long startTime = System.currentTimeMillis();
+            PollingGovernor.Session poll = pollingGovernor.begin("deepseek", 0);
 
             // 添加初始延迟，确保页面完全加载
             page.waitForTimeout(500);
@@ -196,22 +433,18 @@ public class DeepSeekUtil {
             // 根据不同模式设置不同的超时和稳定参数
             long maxTimeout = 300000; // 默认5分钟
             int requiredStableCount = 1; // 默认稳定次数
-            int checkInterval = 200; // 默认检查间隔
             
             if (isDeepThinkingMode && isWebSearchMode) {
                 maxTimeout = 1200000; // 深度思考+联网模式20分钟
                 requiredStableCount = 2; // 需要更多的稳定确认
-                checkInterval = 300; // 增加检查间隔
                 logInfo.sendTaskLog("启用深度思考+联网模式监听，等待时间可能较长", userId, aiName);
             } else if (isDeepThinkingMode) {
                 maxTimeout = 900000; // 深度思考模式15分钟
                 requiredStableCount = 2; // 需要更多的稳定确认
-                checkInterval = 250; // 增加检查间隔
                 logInfo.sendTaskLog("启用深度思考模式监听，等待时间可能较长", userId, aiName);
             } else if (isWebSearchMode) {
                 maxTimeout = 600000; // 联网模式10分钟
                 requiredStableCount = 2; // 需要更多的稳定确认
-                checkInterval = 250; // 增加检查间隔
                 logInfo.sendTaskLog("启用联网搜索模式监听", userId, aiName);
             }
 
@@ -224,8 +457,33 @@ public class DeepSeekUtil {
             int screenshotInterval = 6000; // 6秒截图一次
             boolean hasEverHadContent = false; // 记录是否曾经有过内容
 
+            // 优先等待页面推送的完成事件，监听未能接管时回退到下面的轮询检测
+            boolean watchCompleted = false;
+            ResponseWatcher.Watch watch = responseWatcher.watch(page, WATCH_SPEC);
+            if (watch != null) {
+                long[] lastShotTime = {lastScreenshotTime};
+                watchCompleted = watch.await(maxTimeout - (System.currentTimeMillis() - startTime), 1000, () -> {
+                    // 定期截图（每6秒一次）
+                    if (System.currentTimeMillis() - lastShotTime[0] >= screenshotInterval) {
+                        try {
+                            long elapsed = System.currentTimeMillis() - startTime;
+                            screenshotUtil.screenshotProgressAsync(page, userId + aiName + "执行过程截图" + ((int)(elapsed/1000/6) + 1) + ".png", userId, null);
+                        } catch (Exception e) {
+                            logInfo.sendTaskLog("定期截图失败: " + e.getMessage(), userId, aiName);
+                        }
+                        lastShotTime[0] = System.currentTimeMillis();
+                    }
+                    return true;
+                });
+                if (watchCompleted) {
+                    poll.complete(watch);
+                    hasEverHadContent = true;
+                    logInfo.sendTaskLog("DeepSeek回答完成，正在自动提取内容", userId, aiName);
+                }
+            }
+
             // 进入循环，直到内容不再变化或者超时
-            while (true) {
+            while (!watchCompleted) {
                 // 检查是否超时
                 long elapsedTime = System.currentTimeMillis() - startTime;
                 if (elapsedTime > maxTimeout) {
@@ -236,7 +494,7 @@ public class DeepSeekUtil {
                 // 定期截图（每6秒一次）- 无论什么状态都截图
                 if (System.currentTimeMillis() - lastScreenshotTime >= screenshotInterval) {
                     try {
-                        screenshotUtil.screenshotAndUpload(page, userId + aiName + "执行过程截图" + ((int)(elapsedTime/1000/6) + 1) + ".png");
+                        screenshotUtil.screenshotProgressAsync(page, userId + aiName + "执行过程截图" + ((int)(elapsedTime/1000/6) + 1) + ".png", userId, null);
                         lastScreenshotTime = System.currentTimeMillis();
                         // 移除定期截图日志，减少噪音
                     } catch (Exception e) {
@@ -254,6 +512,7 @@ public class DeepSeekUtil {
                 if (responseData.containsKey("length")) {
                     contentLength = ((Number) responseData.get("length")).intValue();
                 }
+                poll.observe(currentContent);
 
                 // 如果成功获取到内容
                 if (currentContent != null && !currentContent.trim().isEmpty()) {
@@ -312,6 +571,7 @@ public class DeepSeekUtil {
                         }
                         
                         if (isComplete) {
+                            poll.complete();
                             logInfo.sendTaskLog("DeepSeek回答完成，正在自动提取内容", userId, aiName);
                             break;
                         }
@@ -329,18 +589,7 @@ public class DeepSeekUtil {
                     if (emptyCount > 8) {
                         // 检查页面是否有错误提示
                         try {
-                            Object errorResult = page.evaluate("""
-                                () => {
-                                    const errorElements = document.querySelectorAll('.error-message, .ds-error, [class*="error"]');
-                                    for (const el of errorElements) {
-                                        if (el.innerText && el.innerText.trim() && 
-                                            window.getComputedStyle(el).display !== 'none') {
-                                            return el.innerText.trim();
-                                        }
-                                    }
-                                    return null;
-                                }
-                            """);
+                            Object errorResult = PageScripts.call(page, SCRIPTS, "errorText");
                             
                             if (errorResult instanceof String && !((String)errorResult).isEmpty()) {
                                 logInfo.sendTaskLog("DeepSeek返回错误: " + errorResult, userId, aiName);
@@ -364,13 +613,8 @@ public class DeepSeekUtil {
                     }
                 }
 
-                // 根据不同模式使用不同的检查间隔
-                page.waitForTimeout(checkInterval);
-                
-                // 动态调整检查间隔，随着等待时间增加而增加，避免频繁检查
-                if (elapsedTime > 30000) { // 30秒后
-                    checkInterval = Math.min(800, checkInterval + 50); // 逐渐增加到最多800ms
-                }
+                // 检查间隔由 PollingGovernor 按引擎负载、内容增长与历史耗时决定
+                poll.pause(page);
             }
 
             // 尝试通过复制按钮获取纯回答内容（过滤思考过程）
@@ -403,66 +647,7 @@ public class DeepSeekUtil {
     private boolean checkIfGenerating(Page page) {
         try {
             // 使用更可靠的方法检查生成状态
-            Object generatingStatus = page.evaluate("""
-            () => {
-                try {
-                    // 检查停止指示器
-                    const thinkingIndicators = document.querySelectorAll(
-                        '.generating-indicator, .loading-indicator, .thinking-indicator, ' +
-                        '.ds-typing-container, .ds-loading-dots, .loading-container, ' +
-                        '[class*="loading"], [class*="typing"], [class*="generating"]'
-                    );
-                    
-                    for (const indicator of thinkingIndicators) {
-                        if (indicator && 
-                            window.getComputedStyle(indicator).display !== 'none' && 
-                            window.getComputedStyle(indicator).visibility !== 'hidden') {
-                            return true;
-                        }
-                    }
-                    
-                    // 检查停止生成按钮
-                    const stopButtons = document.querySelectorAll(
-                        'button:contains("停止生成"), button:contains("Stop"), ' +
-                        '[title="停止生成"], [title="Stop generating"], ' +
-                        '.stop-generating-button, [class*="stop"]'
-                    );
-                    
-                    for (const btn of stopButtons) {
-                        if (btn && 
-                            window.getComputedStyle(btn).display !== 'none' && 
-                            window.getComputedStyle(btn).visibility !== 'hidden') {
-                            return true;
-                        }
-                    }
-                    
-                    // 检查光标闪烁
-                    const blinkingElements = document.querySelectorAll(
-                        '[class*="cursor"], [class*="blink"]'
-                    );
-                    
-                    for (const el of blinkingElements) {
-                        if (el && 
-                            window.getComputedStyle(el).display !== 'none' && 
-                            window.getComputedStyle(el).visibility !== 'hidden') {
-                            // 检查是否在最后一个回复中
-                            const responses = document.querySelectorAll('.ds-markdown');
-                            if (responses.length > 0) {
-                                const lastResponse = responses[responses.length - 1];
-                                if (lastResponse.contains(el)) {
-                                    return true;
-                                }
-                            }
-                        }
-                    }
-                    
-                    return false;
-                } catch (e) {
-                    console.error('检查生成状态时出错:', e);
-                    return false;
-                }
-            }
-            """);
+            Object generatingStatus = PageScripts.call(page, SCRIPTS, "isGenerating");
 
             return generatingStatus instanceof Boolean ? (Boolean) generatingStatus : false;
         } catch (Exception e) {
@@ -580,86 +765,7 @@ public class DeepSeekUtil {
      */
     private Map<String, Object> getLatestAiResponseWithDetails(Page page) {
         try {
-            Object jsResult = page.evaluate("""
-            () => {
-                try {
-                    // 获取所有包含AI回答的消息
-                    const markdownElements = document.querySelectorAll('.ds-markdown');
-                    if (markdownElements.length === 0) {
-                        // 尝试其他可能的选择器
-                        const alternativeElements = document.querySelectorAll(
-                            '.markdown-body, .ai-response, .message-content, [class*="markdown"]'
-                        );
-                        
-                        if (alternativeElements.length > 0) {
-                            const latestAlt = alternativeElements[alternativeElements.length - 1];
-                            const textContent = latestAlt.textContent || '';
-                            return {
-                                content: latestAlt.innerHTML,
-                                textContent: textContent,
-                                length: textContent.trim().length,
-                                source: 'alternative-selector',
-                                timestamp: Date.now()
-                            };
-                        }
-                        
-                        return {
-                            content: '',
-                            textContent: '',
-                            length: 0,
-                            source: 'no-markdown-elements',
-                            timestamp: Date.now()
-                        };
-                    }
-                    
-                    // 获取最新的Markdown内容
-                    const latestMarkdown = markdownElements[markdownElements.length - 1];
-                    
-                    // 为元素添加时间戳以便后续检查
-                    if (!latestMarkdown.hasAttribute('data-timestamp')) {
-                        latestMarkdown.setAttribute('data-timestamp', Date.now().toString());
-                    }
-                    
-                    // 克隆内容以避免修改原DOM
-                    const contentClone = latestMarkdown.cloneNode(true);
-                    
-                    // 移除头像图标和其他无关元素
-                    const iconsToRemove = contentClone.querySelectorAll(
-                        '._7eb2358, ._58dfa60, .ds-icon, svg, ' +
-                        '.avatar, .user-avatar, .ai-avatar, ' +
-                        '.ds-button, button, [role="button"], ' +
-                        '[class*="loading"], [class*="typing"], [class*="cursor"]'
-                    );
-                    iconsToRemove.forEach(icon => icon.remove());
-                    
-                    // 移除空的div容器
-                    const emptyDivs = contentClone.querySelectorAll('div:empty');
-                    emptyDivs.forEach(div => div.remove());
-                    
-                    // 检查内容长度
-                    const textContent = contentClone.textContent || '';
-                    const contentLength = textContent.trim().length;
-                    
-                    return {
-                        content: contentClone.innerHTML,
-                        textContent: textContent,
-                        length: contentLength,
-                        hasCodeBlocks: contentClone.querySelectorAll('pre, code').length > 0,
-                        source: 'latest-markdown',
-                        timestamp: Date.now()
-                    };
-                } catch (e) {
-                    return {
-                        content: '',
-                        textContent: '',
-                        length: 0,
-                        source: 'error',
-                        error: e.toString(),
-                        timestamp: Date.now()
-                    };
-                }
-            }
-            """);
+            Object jsResult = PageScripts.call(page, SCRIPTS, "latestResponse");
 
             if (jsResult instanceof Map) {
                 return (Map<String, Object>) jsResult;
@@ -1404,78 +1510,7 @@ public class DeepSeekUtil {
      */
     private Map<String, Object> getLatestDeepSeekResponseWithCompletion(Page page) {
         try {
-            Object jsResult = page.evaluate("""
-            () => {
-                try {
-                    // 查找包含特定class的最新回复区域
-                    const responseContainers = document.querySelectorAll('div._4f9bf79.d7dc56a8._43c05b5');
-                    if (responseContainers.length === 0) {
-                        return {
-                            content: '',
-                            textContent: '',
-                            length: 0,
-                            hasActionButtons: false,
-                            source: 'no-response-containers',
-                            timestamp: Date.now()
-                        };
-                    }
-                    
-                    // 获取最后一个回复容器（最新的回复）
-                    const latestContainer = responseContainers[responseContainers.length - 1];
-                    
-                    // 检查是否包含操作按钮组
-                    const actionButtonsSelector = 'div.ds-flex._0a3d93b[style*="align-items: center; gap: 10px"] div.ds-flex._965abe9._54866f7';
-                    const hasActionButtons = latestContainer.querySelector(actionButtonsSelector) !== null;
-                    
-                    // 获取markdown内容
-                    const markdownElement = latestContainer.querySelector('.ds-markdown');
-                    if (!markdownElement) {
-                        return {
-                            content: '',
-                            textContent: '',
-                            length: 0,
-                            hasActionButtons: hasActionButtons,
-                            source: 'no-markdown-in-container',
-                            timestamp: Date.now()
-                        };
-                    }
-                    
-                    // 克隆内容以避免修改原DOM
-                    const contentClone = markdownElement.cloneNode(true);
-                    
-                    // 移除不需要的元素
-                    const elementsToRemove = contentClone.querySelectorAll(
-                        'svg, .ds-icon, button, [role="button"], ' +
-                        '[class*="loading"], [class*="typing"], [class*="cursor"], ' +
-                        '.md-code-block-banner, .code-info-button-text'
-                    );
-                    elementsToRemove.forEach(el => el.remove());
-                    
-                    // 获取文本内容
-                    const textContent = contentClone.textContent || '';
-                    const contentLength = textContent.trim().length;
-                    
-                    return {
-                        content: contentClone.innerHTML,
-                        textContent: textContent,
-                        length: contentLength,
-                        hasActionButtons: hasActionButtons,
-                        source: 'latest-container-with-buttons',
-                        timestamp: Date.now()
-                    };
-                } catch (e) {
-                    return {
-                        content: '',
-                        textContent: '',
-                        length: 0,
-                        hasActionButtons: false,
-                        source: 'error',
-                        error: e.toString(),
-                        timestamp: Date.now()
-                    };
-                }
-            }
-            """);
+            Object jsResult = PageScripts.call(page, SCRIPTS, "latestResponseWithCompletion");
 
             if (jsResult instanceof Map) {
                 return (Map<String, Object>) jsResult;
@@ -1658,75 +1693,69 @@ public class DeepSeekUtil {
     private String clickCopyButtonAndGetAnswer(Page page, String userId) {
         try {
             logInfo.sendTaskLog("正在点击复制按钮获取回答内容", userId, "DeepSeek");
-            
-            // 等待并点击复制按钮
-            Object result = page.evaluate("""
-                () => {
-                    try {
-                        // 查找最新的回复容器
-                        const responseContainers = document.querySelectorAll('div._4f9bf79.d7dc56a8._43c05b5');
-                        if (responseContainers.length === 0) {
-                            return { success: false, error: 'no-response-containers' };
-                        }
+
+            // 查找并点击复制按钮，复制内容由页面级捕获获得；找不到按钮时不再等待复制结果
+            Map<String, Object> resultMap = new HashMap<>();
+            String clipboardContent = clipboardLockManager.copyText(page, () -> {
+                Object result = page.evaluate("""
+                    () => {
+                        try {
+                            // 查找最新的回复容器
+                            const responseContainers = document.querySelectorAll('div._4f9bf79.d7dc56a8._43c05b5');
+                            if (responseContainers.length === 0) {
+                                return { success: false, error: 'no-response-containers' };
+                            }
                         
-                        // 获取最后一个回复容器（最新的回复）
-                        const latestContainer = responseContainers[responseContainers.length - 1];
+                            // 获取最后一个回复容器（最新的回复）
+                            const latestContainer = responseContainers[responseContainers.length - 1];
                         
-                        // 查找复制按钮组 - 使用你提供的DOM结构
-                        const actionButtonsContainer = latestContainer.querySelector('div.ds-flex._965abe9._54866f7[style*="align-items: center; gap: 10px"]');
-                        if (!actionButtonsContainer) {
-                            return { success: false, error: 'no-action-buttons' };
-                        }
+                            // 查找复制按钮组 - 使用你提供的DOM结构
+                            const actionButtonsContainer = latestContainer.querySelector('div.ds-flex._965abe9._54866f7[style*="align-items: center; gap: 10px"]');
+                            if (!actionButtonsContainer) {
+                                return { success: false, error: 'no-action-buttons' };
+                            }
                         
-                        // 查找复制按钮 - 第一个按钮就是复制按钮
-                        const copyButton = actionButtonsContainer.querySelector('div._17e543b.db183363[role="button"]');
-                        if (!copyButton) {
-                            return { success: false, error: 'no-copy-button' };
-                        }
+                            // 查找复制按钮 - 第一个按钮就是复制按钮
+                            const copyButton = actionButtonsContainer.querySelector('div._17e543b.db183363[role="button"]');
+                            if (!copyButton) {
+                                return { success: false, error: 'no-copy-button' };
+                            }
                         
-                        // 检查是否有复制图标（SVG path中包含复制相关的路径）
-                        const copyIcon = copyButton.querySelector('svg path[d*="M6.14926 4.02039"]');
-                        if (!copyIcon) {
-                            return { success: false, error: 'not-copy-button' };
-                        }
+                            // 检查是否有复制图标（SVG path中包含复制相关的路径）
+                            const copyIcon = copyButton.querySelector('svg path[d*="M6.14926 4.02039"]');
+                            if (!copyIcon) {
+                                return { success: false, error: 'not-copy-button' };
+                            }
                         
-                        // 点击复制按钮
-                        copyButton.click();
+                            // 点击复制按钮
+                            copyButton.click();
                         
-                        return { success: true, message: 'copy-button-clicked' };
-                    } catch (e) {
-                        return { success: false, error: e.toString() };
+                            return { success: true, message: 'copy-button-clicked' };
+                        } catch (e) {
+                            return { success: false, error: e.toString() };
+                        }
                     }
+                    """);
+                resultMap.clear();
+                if (result instanceof Map) {
+                    resultMap.putAll((Map<String, Object>) result);
                 }
-                """);
-            
-            if (result instanceof Map) {
-                Map<String, Object> resultMap = (Map<String, Object>) result;
-                Boolean success = (Boolean) resultMap.get("success");
-                
-                if (success != null && success) {
-                    // 等待剪贴板更新
-                    Thread.sleep(2000);
-                    
-                    // 获取剪贴板内容
-                    String clipboardContent = (String) page.evaluate("navigator.clipboard.readText()");
-                    
-                    if (clipboardContent != null && !clipboardContent.trim().isEmpty()) {
-                        // 过滤思考内容，只保留回答部分
-                        String filteredContent = filterThinkingContent(clipboardContent, userId);
-                        logInfo.sendTaskLog("成功获取并过滤回答内容", userId, "DeepSeek");
-                        return filteredContent;
-                    } else {
-                        logInfo.sendTaskLog("剪贴板内容为空", userId, "DeepSeek");
-                        return "";
-                    }
-                } else {
-                    String error = (String) resultMap.get("error");
-                    logInfo.sendTaskLog("复制按钮点击失败: " + error, userId, "DeepSeek");
-                    return "";
+                if (!Boolean.TRUE.equals(resultMap.get("success"))) {
+                    throw new IllegalStateException(String.valueOf(resultMap.get("error")));
                 }
+            }, 3000);
+
+            if (clipboardContent != null && !clipboardContent.trim().isEmpty()) {
+                // 过滤思考内容，只保留回答部分
+                String filteredContent = filterThinkingContent(clipboardContent, userId);
+                logInfo.sendTaskLog("成功获取并过滤回答内容", userId, "DeepSeek");
+                return filteredContent;
+            } else {
+                logInfo.sendTaskLog("剪贴板内容为空", userId, "DeepSeek");
+                return "";
             }
-            
+        } catch (IllegalStateException e) {
+            logInfo.sendTaskLog("复制按钮点击失败: " + e.getMessage(), userId, "DeepSeek");
             return "";
         } catch (Exception e) {
             logInfo.sendTaskLog("点击复制按钮时发生错误: " + e.getMessage(), userId, "DeepSeek");
@@ -34,17 +34,28 @@ public class DouBaoUtil {
     @Autowired
     private WebSocketClientService webSocketClientService;
 
+    @Autowired
+    private ResponseWatcher responseWatcher;
+
+    @Autowired
+    private PollingGovernor pollingGovernor;
+
     @Value("${cube.url}")
     private String url;
 
+    // 回答监听规则：最后一个 markdown 节点，出现新的复制按钮即完成
+    private static final ResponseWatcher.Spec WATCH_SPEC = new ResponseWatcher.Spec(".flow-markdown-body")
+            .done("[data-testid='message_action_copy']")
+            .quietMillis(2000);
+
     public void waitAndClickDBScoreCopyButton(Page page, String userId) throws InterruptedException {
         long startTime = System.currentTimeMillis();
         try {
             // 等待页面内容稳定
             String currentContent = "";
-            String lastContent = "";
             long timeout = 600000; // 10分钟超时
             long operationStartTime = System.currentTimeMillis();
+            PollingGovernor.Session poll = pollingGovernor.begin("db", 5000);
 
             while (true) {
                 long elapsedTime = System.currentTimeMillis() - operationStartTime;
@@ -56,13 +67,14 @@ public class DouBaoUtil {
 
                 Locator outputLocator = page.locator(".flow-markdown-body").last();
                 currentContent = outputLocator.innerHTML();
+                poll.observe(currentContent);
 
-                if (!currentContent.isEmpty() && currentContent.equals(lastContent)) {
+                if (!currentContent.isEmpty() && poll.isStable(5000)) {
+                    poll.complete();
                     break;
                 }
 
-                lastContent = currentContent;
-                page.waitForTimeout(5000); // 每5秒检查一次
+                poll.pause(page);
             }
 
             Locator locator = page.locator("//*[@id=\"root\"]/div[1]/div/div[3]/div[1]/div[1]/div/div/div[2]/div/div[2]/div/div/div");
@@ -100,9 +112,9 @@ public class DouBaoUtil {
         try {
             // 等待页面内容稳定
             String currentContent = "";
-            String lastContent = "";
             long timeout = 600000; // 10分钟超时
             long startTime = System.currentTimeMillis();
+            PollingGovernor.Session poll = pollingGovernor.begin("db", 5000);
 
             while (true) {
                 long elapsedTime = System.currentTimeMillis() - startTime;
@@ -112,12 +124,13 @@ public class DouBaoUtil {
 
                 Locator outputLocator = page.locator(".flow-markdown-body").last();
                 currentContent = outputLocator.innerHTML();
+                poll.observe(currentContent);
 
-                if (!currentContent.isEmpty() && currentContent.equals(lastContent)) {
+                if (!currentContent.isEmpty() && poll.isStable(5000)) {
+                    poll.complete();
                     break;
                 }
-                lastContent = currentContent;
-                page.waitForTimeout(5000); // 每5秒检查一次
+                poll.pause(page);
             }
             String copiedText = "";
             // 等待复制按钮出现
@@ -131,11 +144,10 @@ public class DouBaoUtil {
 
             page.waitForSelector("[data-testid='message_action_copy']", new Page.WaitForSelectorOptions().setState(WaitForSelectorState.VISIBLE).setTimeout(600000));  // 600秒超时
             logInfo.sendTaskLog("豆包回答完成，正在自动提取内容", userId, "豆包");
-            // 点击复制按钮
-            page.locator("[data-testid='message_action_copy']").last()  // 获取最后一个复制按钮
-                    .click();
-            Thread.sleep(2000);
-            copiedText = (String) page.evaluate("navigator.clipboard.readText()");
+            // 点击复制按钮，复制内容由页面级捕获获得
+            copiedText = clipboardLockManager.copyText(page, () ->
+                    page.locator("[data-testid='message_action_copy']").last()  // 获取最后一个复制按钮
+                            .click());
             logInfo.sendTaskLog("豆包内容已自动提取完成", userId, "豆包");
 
             // 记录成功日志
@@ -161,18 +173,44 @@ public class DouBaoUtil {
         try {
             // 等待聊天框的内容稳定
             String currentContent = "";
-            String lastContent = "";
             String rightCurrentContent = "";
-            String rightLastContent = "";
             String textContent = "";
             String rightTextContent = "";
             boolean isRight = false;
             // 设置最大等待时间（单位：毫秒），比如 10 分钟
             long timeout = 600000; // 10 分钟
             long startTime = System.currentTimeMillis();  // 获取当前时间戳
+            // 内容 5 秒不变视为回答完成
+            PollingGovernor.Session poll = pollingGovernor.begin("db", 5000);
+            boolean isStream = userInfoRequest.getAiName() != null && userInfoRequest.getAiName().contains("stream");
+
+            // 优先等待页面推送的完成事件；出现代码生成画布或监听未能接管时回退到轮询
+            boolean watchCompleted = false;
+            ResponseWatcher.Watch watch = responseWatcher.watch(page, WATCH_SPEC);
+            if (watch != null) {
+                if (isStream) {
+                    watch.onDelta(delta -> webSocketClientService.sendDelta(userInfoRequest, delta, "db-stream"))
+                            .onReset(text -> webSocketClientService.sendReset(userInfoRequest, text, "db-stream"));
+                }
+                watchCompleted = watch.await(timeout, 5000, () -> {
+                    if (page.locator("//div[@class='canvas-header-Bc97DC']").count() > 0) {
+                        return false;
+                    }
+                    Locator changeTypeLocator = page.locator("text=改用对话直接回答");
+                    if (changeTypeLocator.isVisible()) {
+                        changeTypeLocator.click();
+                    }
+                    return true;
+                });
+                if (watchCompleted) {
+                    poll.complete(watch);
+                    currentContent = watch.getHtml();
+                    logInfo.sendTaskLog(aiName + "回答完成，正在自动提取内容", userId, aiName);
+                }
+            }
 
             // 进入循环，直到内容不再变化或者超时
-            while (true) {
+            while (!watchCompleted) {
                 // 检查是否是代码生成
                 Locator chatHis = page.locator("//div[@class='canvas-header-Bc97DC']");
                 if (chatHis.count() > 0) {
@@ -205,31 +243,31 @@ public class DouBaoUtil {
                 Locator outputLocator = page.locator(".flow-markdown-body").last();
                 currentContent = outputLocator.innerHTML();
                 textContent = outputLocator.textContent();
-                // 如果当前内容和上次内容相同，认为 AI 已经完成回答，退出循环
-                if (!currentContent.isEmpty() && currentContent.equals(lastContent)) {
+                poll.observe(currentContent + rightCurrentContent);
+                // 如果内容一段时间内没有变化，认为 AI 已经完成回答，退出循环
+                if (!currentContent.isEmpty() && poll.isStable(5000)) {
                     if(isRight) {
-                        if(!rightCurrentContent.isEmpty() && rightCurrentContent.equals(rightLastContent)) {
+                        if(!rightCurrentContent.isEmpty()) {
+                            poll.complete();
                             logInfo.sendTaskLog(aiName + "回答完成，正在自动提取内容", userId, aiName);
                             break;
                         }
                     } else {
+                        poll.complete();
                         logInfo.sendTaskLog(aiName + "回答完成，正在自动提取内容", userId, aiName);
                         break;
                     }
                 }
-                if (userInfoRequest.getAiName() != null && userInfoRequest.getAiName().contains("stream")) {
+                if (isStream) {
                     if(isRight) {
                         webSocketClientService.sendMessage(userInfoRequest, McpResult.success(rightTextContent, ""), "db-stream");
                     } else {
                         webSocketClientService.sendMessage(userInfoRequest, McpResult.success(textContent, ""), "db-stream");
                     }
                 }
-                // 更新上次内容为当前内容
-                lastContent = currentContent;
-                rightLastContent = rightCurrentContent;
-                page.waitForTimeout(5000);  // 等待10秒再次检查
+                poll.pause(page);
             }
-            if (userInfoRequest.getAiName() != null && userInfoRequest.getAiName().contains("stream")) {
+            if (isStream) {
 //                延迟3秒结束，确保剩余内容全部输出
                 Thread.sleep(3000);
                 webSocketClientService.sendMessage(userInfoRequest, McpResult.success("END", ""), "db-stream");
@@ -273,6 +311,7 @@ public class DouBaoUtil {
             // 设置最大等待时间（单位：毫秒），比如 10 分钟
             long timeout = 600000; // 10 分钟
             long startTime = System.currentTimeMillis();  // 获取当前时间戳
+            PollingGovernor.Session poll = pollingGovernor.begin("db", 10000);
             AtomicReference<String> textRef = new AtomicReference<>();
             // 进入循环，直到内容不再变化或者超时
             while (true) {
@@ -286,12 +325,14 @@ public class DouBaoUtil {
 
                 Locator outputLocator = page.locator(".flow-markdown-body").last();
                 currentContent = outputLocator.innerHTML();
-                // 如果当前内容和上次内容相同，认为 AI 已经完成回答，退出循环
-                if (currentContent.equals(lastContent)) {
+                poll.observe(currentContent);
+                // 如果内容 10 秒内没有变化，认为 AI 已经完成回答，退出循环
+                if (currentContent.equals(lastContent) && (currentContent.isEmpty() || poll.isStable(10000))) {
+                    poll.complete();
                     logInfo.sendTaskLog(aiName + "回答完成，正在自动提取内容", userId, aiName);
 
-                    clipboardLockManager.runWithClipboardLock(() -> {
-                        try {
+                    try {
+                        String text = clipboardLockManager.copyText(page, () -> {
                             // 获取所有复制按钮的 SVG 元素（通过 xlink:href 属性定位）
                             if (page.locator("[data-testid='code-block-copy']").count() > 0) {
                                 page.locator("[data-testid='code-block-copy']").last()  // 获取最后一个复制按钮
@@ -300,20 +341,18 @@ public class DouBaoUtil {
                                 page.locator("[data-testid='message_action_copy']").last()  // 获取最后一个复制按钮
                                         .click();
                             }
-
-                            String text = (String) page.evaluate("navigator.clipboard.readText()");
-                            textRef.set(text);
-                        } catch (Exception e) {
-                            // 记录剪贴板操作异常
-                            UserLogUtil.sendAIBusinessLog(userId, aiName, "剪贴板操作", "复制内容到剪贴板失败：" + e.getMessage(), System.currentTimeMillis(), url + "/saveLogInfo");
-                            e.printStackTrace();
-                        }
-                    });
+                        });
+                        textRef.set(text);
+                    } catch (Exception e) {
+                        // 记录剪贴板操作异常
+                        UserLogUtil.sendAIBusinessLog(userId, aiName, "剪贴板操作", "复制内容到剪贴板失败：" + e.getMessage(), System.currentTimeMillis(), url + "/saveLogInfo");
+                        e.printStackTrace();
+                    }
                     break;
                 }
                 // 更新上次内容为当前内容
                 lastContent = currentContent;
-                page.waitForTimeout(10000);  // 等待10秒再次检查
+                poll.pause(page);
             }
             logInfo.sendTaskLog(aiName + "内容已自动提取完成", userId, aiName);
 
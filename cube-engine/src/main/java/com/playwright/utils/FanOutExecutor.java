@@ -0,0 +1,268 @@
+package com.playwright.utils;
+
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 多AI并发执行
+ * 用户一次选择多个AI时，所有平台在同一个用户专属的 Chromium 中以标签页运行，而不是每个平台各启动一个持久化 Chromium。
+ * 浏览器由 CdpBrowser 启动，各平台任务线程用自己的 Playwright 驱动连接同一个浏览器（Playwright 对象不能跨线程使用），
+ * 每个平台一个隔离上下文，登录状态从 cube.datadir/name/userId/storage-state.json 恢复，关闭时写回；
+ * 该文件比持久化目录旧时该平台仍按原方式启动，两者的同步见 StorageStateSync。
+ * 各平台按间隔错开提交，等待期间不占用并发槽位；全部结束后关闭浏览器并记录各平台结果。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月26日 09:20
+ */
+@Slf4j
+@Component
+public class FanOutExecutor {
+
+    // 当前线程所属的批次，BrowserUtil 据此把上下文创建到批次的浏览器中
+    private static final ThreadLocal<Session> CURRENT = new ThreadLocal<>();
+
+    // 是否启用多AI共享浏览器
+    @Value("${cube.fanout.enabled:false}")
+    private boolean enabled;
+
+    // 一次选择的平台数达到该值才共享浏览器
+    @Value("${cube.fanout.min-platforms:2}")
+    private int minPlatforms;
+
+    // 相邻平台的启动间隔（毫秒），避免同时导航造成 CPU 与网络尖峰
+    @Value("${cube.fanout.stagger-millis:1500}")
+    private long staggerMillis;
+
+    @Value("${cube.datadir}")
+    private String userDataDir;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService staggerScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "fanout-stagger");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 统计指标
+    private final AtomicLong sessionCount = new AtomicLong();
+    private final AtomicLong browserLaunches = new AtomicLong();
+    private final AtomicLong tabs = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong staleStates = new AtomicLong();
+
+    /**
+     * 一次多AI调用
+     */
+    public static class Session {
+        private final String id = UUID.randomUUID().toString();
+        private final String userId;
+        private final List<String> platforms;
+        private final long startTime = System.currentTimeMillis();
+        private final AtomicInteger remaining;
+        private final Map<String, String> results = new ConcurrentHashMap<>();
+        private CdpBrowser browser;
+        private boolean broken;
+
+        private Session(String userId, List<String> platforms) {
+            this.userId = userId;
+            this.platforms = platforms;
+            this.remaining = new AtomicInteger(platforms.size());
+        }
+    }
+
+    /**
+     * 本次选择的平台数量是否需要共享浏览器
+     */
+    public boolean shouldFanOut(int platformCount) {
+        return enabled && platformCount >= Math.max(2, minPlatforms);
+    }
+
+    /**
+     * 开始一个批次
+     *
+     * @param platforms 本次运行的平台名称，顺序即启动顺序
+     */
+    public Session open(String userId, List<String> platforms) {
+        Session session = new Session(userId, new ArrayList<>(platforms));
+        sessions.put(session.id, session);
+        sessionCount.incrementAndGet();
+        return session;
+    }
+
+    /**
+     * 按平台在批次中的顺序错开提交，等待在调度线程中进行，不占用任务的并发槽位
+     *
+     * @param submitter 把平台任务提交到并发管理器，抛出异常时该平台按失败计入批次
+     */
+    public void submit(Session session, String platform, Runnable submitter) {
+        long delay = session.startTime + Math.max(0, session.platforms.indexOf(platform)) * staggerMillis
+                - System.currentTimeMillis();
+        if (delay <= 0) {
+            submitSafely(session, platform, submitter);
+            return;
+        }
+        staggerScheduler.schedule(() -> submitSafely(session, platform, submitter), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void submitSafely(Session session, String platform, Runnable submitter) {
+        try {
+            submitter.run();
+        } catch (Exception e) {
+            log.warn("提交多AI任务失败: 用户={}, 平台={}", session.userId, platform, e);
+            skip(session, platform);
+        }
+    }
+
+    /**
+     * 在批次中运行一个平台
+     *
+     * @param task 返回该平台是否成功
+     */
+    public void run(Session session, String platform, BooleanSupplier task) {
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            CURRENT.set(session);
+            success = task.getAsBoolean();
+        } finally {
+            CURRENT.remove();
+            finish(session, platform, success, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * 平台任务未执行（重复提交、排队已满或排队中被取消），按失败计入批次；已计入结果的平台不再重复计入
+     */
+    public void skip(Session session, String platform) {
+        finish(session, platform, false, 0);
+    }
+
+    private void finish(Session session, String platform, boolean success, long elapsed) {
+        if (session.results.putIfAbsent(platform, (success ? "成功" : "失败") + "/" + elapsed + "ms") != null) {
+            return;
+        }
+        if (session.remaining.decrementAndGet() > 0) {
+            return;
+        }
+        sessions.remove(session.id);
+        closeBrowser(session);
+
+        List<String> results = new ArrayList<>();
+        for (String name : session.platforms) {
+            results.add(name + ":" + session.results.get(name));
+        }
+        log.info("多AI批次结束: 用户={}, 耗时={}ms, 结果={}", session.userId,
+                System.currentTimeMillis() - session.startTime, results);
+    }
+
+    /**
+     * 当前线程属于该用户的批次时，在批次浏览器中为平台创建上下文
+     *
+     * @return 不在批次中、storage-state.json 比持久化目录旧或创建失败时返回 null，调用方按原方式启动浏览器
+     */
+    public BrowserContext openTab(boolean isHead, String userId, String name) {
+        Session session = CURRENT.get();
+        if (session == null || !session.userId.equals(userId)) {
+            return null;
+        }
+        Path profileDir = Paths.get(userDataDir, name, userId);
+        if (Files.isDirectory(profileDir) && !StorageStateSync.isCurrent(profileDir)) {
+            // 持久化目录中的登录状态更新，本次按原方式启动，关闭时写回 storage-state.json
+            staleStates.incrementAndGet();
+            return null;
+        }
+        try {
+            CdpBrowser browser = ensureBrowser(session, isHead);
+            if (browser == null) {
+                fallbacks.incrementAndGet();
+                return null;
+            }
+            Path statePath = StorageStateSync.statePath(profileDir);
+            Browser.NewContextOptions options = new Browser.NewContextOptions()
+                    .setViewportSize(1280, 760)
+                    .setPermissions(Arrays.asList("clipboard-read", "clipboard-write"));
+            if (Files.exists(statePath)) {
+                options.setStorageStatePath(statePath);
+            }
+            BrowserContext context = browser.newContext(options);
+            tabs.incrementAndGet();
+            return StorageStateSync.saveOnClose(context, profileDir, null);
+        } catch (Exception e) {
+            log.warn("在共享浏览器中创建上下文失败，改为单独启动: 用户={}, 平台={}", userId, name, e);
+            fallbacks.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * 启动批次的浏览器，只启动一次；启动失败后本批次全部退回原方式
+     */
+    private CdpBrowser ensureBrowser(Session session, boolean isHead) {
+        synchronized (session) {
+            if (session.browser != null || session.broken) {
+                return session.browser;
+            }
+            try {
+                session.browser = CdpBrowser.launch(isHead, Arrays.asList(BrowserOptimizer.getOptimizedArgs()), 90000);
+                browserLaunches.incrementAndGet();
+                log.info("多AI共享浏览器已启动: 用户={}, 平台={}", session.userId, session.platforms);
+            } catch (Exception e) {
+                log.warn("多AI共享浏览器启动失败: {}", session.userId, e);
+                session.broken = true;
+            }
+            return session.browser;
+        }
+    }
+
+    private void closeBrowser(Session session) {
+        synchronized (session) {
+            if (session.browser != null) {
+                session.browser.close();
+                session.browser = null;
+            }
+        }
+    }
+
+    /**
+     * 批次统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("active", (long) sessions.size());
+        stats.put("sessions", sessionCount.get());
+        stats.put("browserLaunches", browserLaunches.get());
+        stats.put("tabs", tabs.get());
+        stats.put("staleStates", staleStates.get());
+        stats.put("fallbacks", fallbacks.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        staggerScheduler.shutdownNow();
+        sessions.values().forEach(this::closeBrowser);
+        sessions.clear();
+    }
+}
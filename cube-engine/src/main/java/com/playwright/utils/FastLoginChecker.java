@@ -4,17 +4,15 @@ import com.microsoft.playwright.*;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 高性能登录状态检测器
  * 专门针对状态检测场景进行极致优化，减少CPU和内存占用
+ * 检测结果由 LoginStateCache 缓存，这里不再缓存上下文，每次检测后随上下文关闭浏览器
  */
 @Component
 public class FastLoginChecker {
     
-    // 轻量级浏览器实例缓存（专用于状态检测）
-    private static final ConcurrentHashMap<String, BrowserContext> quickCheckContexts = new ConcurrentHashMap<>();
     private static Playwright lightweightPlaywright = null;
     
     /**
@@ -90,24 +88,6 @@ public class FastLoginChecker {
      * 创建极速状态检测浏览器上下文
      */
     public BrowserContext createFastCheckContext(String userId, String platform) {
-        String contextKey = userId + "_" + platform + "_check";
-        
-        // 检查是否已有可用的上下文
-        BrowserContext existingContext = quickCheckContexts.get(contextKey);
-        if (existingContext != null) {
-            try {
-                // 验证上下文是否仍然有效
-                existingContext.pages().get(0).title();
-                return existingContext;
-            } catch (Exception e) {
-                // 上下文已失效，移除并重新创建
-                quickCheckContexts.remove(contextKey);
-                try {
-                    existingContext.close();
-                } catch (Exception ignored) {}
-            }
-        }
-        
         try {
             Playwright playwright = getLightweightPlaywright();
             
@@ -126,8 +106,12 @@ public class FastLoginChecker {
                 .setIgnoreHTTPSErrors(true)
             );
             
-            // 缓存上下文以重复使用
-            quickCheckContexts.put(contextKey, context);
+            // 调用方关闭上下文时一并关闭浏览器
+            context.onClose(closed -> {
+                try {
+                    browser.close();
+                } catch (Exception ignored) {}
+            });
             
             return context;
             
@@ -205,34 +189,10 @@ public class FastLoginChecker {
         }
     }
     
-    /**
-     * 清理快速检测上下文（定期调用）
-     */
-    public static void cleanupFastCheckContexts() {
-        quickCheckContexts.entrySet().removeIf(entry -> {
-            try {
-                entry.getValue().pages().get(0).title();
-                return false; // 上下文有效，保留
-            } catch (Exception e) {
-                try {
-                    entry.getValue().close();
-                } catch (Exception ignored) {}
-                return true; // 上下文无效，移除
-            }
-        });
-    }
-    
     /**
      * 关闭所有快速检测资源
      */
     public static void shutdown() {
-        quickCheckContexts.values().forEach(context -> {
-            try {
-                context.close();
-            } catch (Exception ignored) {}
-        });
-        quickCheckContexts.clear();
-        
         if (lightweightPlaywright != null) {
             try {
                 lightweightPlaywright.close();
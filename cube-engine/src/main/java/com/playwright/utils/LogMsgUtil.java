@@ -22,6 +22,9 @@ public class LogMsgUtil {
     @Autowired
     private ScreenshotUtil screenshotUtil;
 
+    @Autowired
+    private ScreenshotUploadPipeline uploadPipeline;
+
 
     // WebSocket客户端服务，用于实际的消息发送
     private final WebSocketClientService webSocketClientService;
@@ -36,24 +39,45 @@ public class LogMsgUtil {
 
     /**
      * 发送图片数据消息
+     * 截图在当前线程完成，上传在后台进行，上传完成后再推送图片地址
      * @param page Playwright页面对象
      * @param imageName 图片名称（自动添加.png后缀）
      * @param userId 用户ID
      */
     public void sendImgData(Page page, String imageName, String userId){
         try {
-        // 截图并上传到指定存储服务
-        String url = screenshotUtil.screenshotAndUpload(page,imageName+".png");
+        // 截图并交给后台上传
+        screenshotUtil.screenshotAsync(page, imageName + ".png", userId, url -> sendImgUrl(url, userId));
+        } catch (Exception e) {
+            System.err.println("发送截图数据失败: " + e.getMessage());
+            // 静默处理，不影响主要业务流程
+        }
+    }
+
+    /**
+     * 发送执行过程截图
+     * 与 sendImgData 相同，但上传积压时会丢弃较早的过程截图，页面没有变化时不重复上传
+     * @param page Playwright页面对象
+     * @param imageName 图片名称（自动添加.png后缀）
+     * @param userId 用户ID
+     */
+    public void sendProgressImgData(Page page, String imageName, String userId){
+        try {
+            screenshotUtil.screenshotProgressAsync(page, imageName + ".png", userId, url -> sendImgUrl(url, userId));
+        } catch (Exception e) {
+            System.err.println("发送过程截图失败: " + e.getMessage());
+        }
+    }
 
+    private void sendImgUrl(String url, String userId) {
+        if (url == null || url.isEmpty()) {
+            return;
+        }
         JSONObject imgData = new JSONObject();
         imgData.put("url",url);
         imgData.put("userId",userId);
         imgData.put("type","RETURN_PC_TASK_IMG");
         webSocketClientService.sendMessage(imgData.toJSONString());
-        } catch (Exception e) {
-            System.err.println("发送截图数据失败: " + e.getMessage());
-            // 静默处理，不影响主要业务流程
-        }
     }
 
 
@@ -75,6 +99,7 @@ public class LogMsgUtil {
 
     /**
      * 发送结果数据消息
+     * 排在该用户尚未上传完的截图之后发送，前端收到结果时过程截图已全部到达
      * @param copiedText 文本内容（如剪贴板内容）
      * @param userId 用户ID
      * @param aiName AI服务名称
@@ -102,7 +127,7 @@ public class LogMsgUtil {
         resData.put("aiResponses", aiResponses);
         
         System.out.println("🔥 发送WebSocket消息到前端: " + type + " - " + aiName + " - 用户ID: " + userId);
-        webSocketClientService.sendMessage(resData.toJSONString());
+        uploadPipeline.afterPending(userId, () -> webSocketClientService.sendMessage(resData.toJSONString()));
     }
 
 
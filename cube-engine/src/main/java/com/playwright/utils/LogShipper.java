@@ -0,0 +1,533 @@
+package com.playwright.utils;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * 日志异步批量上报
+ * UserLogUtil 记录的日志先写入无锁环形缓冲区，由后台线程按条数或时间间隔合并后批量提交给后台（/saveLogInfoBatch），
+ * 浏览器自动化线程不再等待 HTTP 请求。后台不可达时未发送的日志写入本地磁盘暂存，恢复后按顺序补发；暂存目录有容量上限，超出时删除最旧的批次。
+ * 后台版本较旧、没有批量接口时自动退回逐条提交，逐条提交时按条记录进度，已发送的日志不会重复提交。
+ * 后台返回 4xx（404/405 除外）的日志重试也不会成功，直接丢弃。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月18日 14:10
+ */
+@Slf4j
+@Component
+public class LogShipper {
+
+    private static volatile LogShipper instance;
+
+    // 环形缓冲区容量，写满后丢弃新日志
+    @Value("${cube.log.buffer-size:8192}")
+    private int bufferSize;
+
+    // 每批最多提交的日志条数
+    @Value("${cube.log.batch-size:200}")
+    private int batchSize;
+
+    // 不足一批时最长等待时间（毫秒）
+    @Value("${cube.log.flush-millis:500}")
+    private long flushMillis;
+
+    // 后台不可达时的暂存目录
+    @Value("${cube.log.spool-dir:${java.io.tmpdir}/cube-log-spool}")
+    private String spoolDir;
+
+    // 暂存目录容量上限（MB）
+    @Value("${cube.log.spool-max-mb:64}")
+    private long spoolMaxMb;
+
+    private static final String SINGLE_PATH = "/saveLogInfo";
+    private static final String BATCH_PATH = "/saveLogInfoBatch";
+
+    // 补发暂存批次的间隔
+    private static final long SPOOL_RETRY_MILLIS = 30000;
+    // 后台持续返回 5xx 的暂存批次最多补发次数，超过后丢弃，避免阻塞同一地址之后的批次
+    private static final int MAX_REPLAY_ATTEMPTS = 10;
+
+    private RingBuffer<Entry> buffer;
+    private RestTemplate restTemplate;
+    private Path spoolPath;
+    private Thread shipperThread;
+    private volatile boolean running;
+    // 缓冲区达到该条数时唤醒挂起的后台线程
+    private volatile int wakeThreshold = Integer.MAX_VALUE;
+
+    // 不支持批量接口的后台地址
+    private final Set<String> batchUnsupported = ConcurrentHashMap.newKeySet();
+
+    private long lastSpoolRetry;
+    private long spoolSeq;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong shipped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong spoolEvicted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private record Entry(String url, Object event) {
+    }
+
+    /**
+     * 一次发送的结果
+     *
+     * @param done     已处理的条数（发送成功或被后台拒绝），其后的日志需要暂存重试
+     * @param answered 失败是否来自后台的 5xx 响应，false 表示后台不可达
+     */
+    private record SendResult(int done, boolean answered) {
+    }
+
+    @PostConstruct
+    public void init() {
+        buffer = new RingBuffer<>(Math.max(2, bufferSize));
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(3000);
+        requestFactory.setReadTimeout(10000);
+        restTemplate = new RestTemplate(requestFactory);
+        spoolPath = Paths.get(spoolDir);
+        try {
+            Files.createDirectories(spoolPath);
+        } catch (IOException e) {
+            log.warn("创建日志暂存目录失败: {}", spoolPath, e);
+        }
+        running = true;
+        shipperThread = new Thread(this::run, "LogShipper");
+        shipperThread.setDaemon(true);
+        shipperThread.start();
+        instance = this;
+        log.info("日志批量上报已启动 - 缓冲区: {}, 每批: {}, 间隔: {}ms, 暂存目录: {}", buffer.capacity(), batchSize, flushMillis, spoolPath);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        instance = null;
+        running = false;
+        if (shipperThread != null) {
+            LockSupport.unpark(shipperThread);
+            try {
+                shipperThread.join(15000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 提交一条日志，由后台线程批量发送
+     *
+     * @return 上报管道未启动时返回 false，调用方应自行发送
+     */
+    public static boolean offer(String url, Object event) {
+        LogShipper shipper = instance;
+        if (shipper == null) {
+            return false;
+        }
+        if (shipper.buffer.offer(new Entry(url, event))) {
+            shipper.accepted.incrementAndGet();
+            if (shipper.buffer.size() >= shipper.wakeThreshold) {
+                LockSupport.unpark(shipper.shipperThread);
+            }
+        } else {
+            shipper.dropped.incrementAndGet();
+        }
+        return true;
+    }
+
+    private void run() {
+        List<Entry> pending = new ArrayList<>(batchSize);
+        long firstAt = 0;
+        while (running || buffer.size() > 0) {
+            Entry entry;
+            while (pending.size() < batchSize && (entry = buffer.poll()) != null) {
+                if (pending.isEmpty()) {
+                    firstAt = System.currentTimeMillis();
+                }
+                pending.add(entry);
+            }
+            boolean due = !pending.isEmpty()
+                    && (pending.size() >= batchSize || !running || System.currentTimeMillis() - firstAt >= flushMillis);
+            if (due) {
+                flush(pending);
+                pending.clear();
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastSpoolRetry >= SPOOL_RETRY_MILLIS) {
+                lastSpoolRetry = now;
+                replaySpool();
+                continue;
+            }
+            long waitMillis = lastSpoolRetry + SPOOL_RETRY_MILLIS - now;
+            if (!pending.isEmpty()) {
+                waitMillis = Math.min(waitMillis, firstAt + flushMillis - now);
+            }
+            awaitEntries(pending.isEmpty() ? 1 : batchSize - pending.size(), waitMillis);
+        }
+        if (!pending.isEmpty()) {
+            flush(pending);
+        }
+    }
+
+    /**
+     * 挂起后台线程，直到缓冲区达到指定条数、超时或停止
+     */
+    private void awaitEntries(int count, long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return;
+        }
+        wakeThreshold = count;
+        // 设置阈值后再检查一次，避免错过设置前写入的日志
+        if (running && buffer.size() < count) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        }
+        wakeThreshold = Integer.MAX_VALUE;
+    }
+
+    /**
+     * 按目标地址分组发送，未发送的日志写入暂存目录
+     */
+    private void flush(List<Entry> pending) {
+        Map<String, JSONArray> groups = new LinkedHashMap<>();
+        for (Entry entry : pending) {
+            groups.computeIfAbsent(entry.url(), key -> new JSONArray())
+                    .add(JSONObject.parseObject(JSON.toJSONString(entry.event())));
+        }
+        for (Map.Entry<String, JSONArray> group : groups.entrySet()) {
+            JSONArray events = group.getValue();
+            int done = send(group.getKey(), events).done();
+            if (done < events.size()) {
+                spool(group.getKey(), remaining(events, done));
+            }
+        }
+    }
+
+    private static JSONArray remaining(JSONArray events, int done) {
+        return new JSONArray(new ArrayList<>(events.subList(done, events.size())));
+    }
+
+    /**
+     * 发送一组日志，批量接口失败时整批重试，逐条提交时按条记录进度
+     */
+    private SendResult send(String url, JSONArray events) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (url.endsWith(SINGLE_PATH) && !batchUnsupported.contains(url)) {
+            String batchUrl = url.substring(0, url.length() - SINGLE_PATH.length()) + BATCH_PATH;
+            try {
+                restTemplate.postForEntity(batchUrl, new HttpEntity<>(events, headers), String.class);
+                batches.incrementAndGet();
+                shipped.addAndGet(events.size());
+                return new SendResult(events.size(), true);
+            } catch (HttpClientErrorException e) {
+                if (!isMissingEndpoint(e)) {
+                    reject(batchUrl, events.size(), e);
+                    return new SendResult(events.size(), true);
+                }
+                // 后台没有批量接口，之后逐条发送
+                batchUnsupported.add(url);
+                log.info("后台不支持批量日志接口，改为逐条提交: {}", url);
+            } catch (Exception e) {
+                log.debug("日志上报失败: {} - {}", batchUrl, e.getMessage());
+                return new SendResult(0, e instanceof HttpServerErrorException);
+            }
+        }
+        int done = 0;
+        try {
+            for (; done < events.size(); done++) {
+                try {
+                    restTemplate.postForEntity(url, new HttpEntity<>(events.getJSONObject(done), headers), String.class);
+                    shipped.incrementAndGet();
+                } catch (HttpClientErrorException e) {
+                    if (isMissingEndpoint(e)) {
+                        throw e;
+                    }
+                    reject(url, 1, e);
+                }
+            }
+            batches.incrementAndGet();
+            return new SendResult(done, true);
+        } catch (Exception e) {
+            log.debug("日志上报失败: {} - {}", url, e.getMessage());
+            return new SendResult(done, e instanceof HttpServerErrorException);
+        }
+    }
+
+    private static boolean isMissingEndpoint(HttpClientErrorException e) {
+        return e.getStatusCode() == HttpStatus.NOT_FOUND || e.getStatusCode() == HttpStatus.METHOD_NOT_ALLOWED;
+    }
+
+    /**
+     * 后台拒绝的日志重试也不会成功，记录后丢弃
+     */
+    private void reject(String url, int count, HttpClientErrorException e) {
+        rejected.addAndGet(count);
+        log.warn("后台拒绝日志 {} 条，已丢弃: {} - {}", count, url, e.getStatusCode());
+    }
+
+    private void spool(String url, JSONArray events) {
+        JSONObject batch = new JSONObject();
+        batch.put("url", url);
+        batch.put("events", events);
+        try {
+            Path file = spoolPath.resolve(String.format("%013d-%06d.json", System.currentTimeMillis(), spoolSeq++ % 1000000));
+            Files.write(file, batch.toJSONString().getBytes(StandardCharsets.UTF_8));
+            spooled.addAndGet(events.size());
+            trimSpool();
+        } catch (IOException e) {
+            dropped.addAndGet(events.size());
+            log.warn("日志写入暂存目录失败，丢弃 {} 条", events.size(), e);
+        }
+    }
+
+    /**
+     * 暂存目录超出容量时删除最旧的批次
+     */
+    private void trimSpool() throws IOException {
+        List<Path> files = listSpool();
+        long total = 0;
+        for (Path file : files) {
+            total += Files.size(file);
+        }
+        long limit = spoolMaxMb * 1024 * 1024;
+        for (Path file : files) {
+            if (total <= limit) {
+                break;
+            }
+            total -= Files.size(file);
+            Files.deleteIfExists(file);
+            spoolEvicted.incrementAndGet();
+        }
+    }
+
+    /**
+     * 按写入顺序补发暂存的批次
+     * 某个地址补发失败后，本轮跳过该地址之后的批次以保持顺序，其他地址照常补发；
+     * 部分发送成功的批次只保留未发送的部分，后台持续返回 5xx 的批次超过补发次数后丢弃
+     */
+    private void replaySpool() {
+        List<Path> files;
+        try {
+            files = listSpool();
+        } catch (IOException e) {
+            log.warn("读取日志暂存目录失败: {}", spoolPath, e);
+            return;
+        }
+        Set<String> failedUrls = new HashSet<>();
+        for (Path file : files) {
+            try {
+                JSONObject batch = JSONObject.parseObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                String url = batch.getString("url");
+                if (failedUrls.contains(url)) {
+                    continue;
+                }
+                JSONArray events = batch.getJSONArray("events");
+                SendResult result = send(url, events);
+                replayed.addAndGet(result.done());
+                if (result.done() >= events.size()) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                failedUrls.add(url);
+                int attempts = batch.getIntValue("attempts") + (result.answered() ? 1 : 0);
+                if (attempts >= MAX_REPLAY_ATTEMPTS) {
+                    Files.deleteIfExists(file);
+                    dropped.addAndGet(events.size() - result.done());
+                    log.warn("暂存日志补发 {} 次仍失败，丢弃 {} 条: {}", attempts, events.size() - result.done(), url);
+                    continue;
+                }
+                if (result.done() > 0 || attempts > 0) {
+                    batch.put("events", remaining(events, result.done()));
+                    batch.put("attempts", attempts);
+                    Files.write(file, batch.toJSONString().getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (Exception e) {
+                log.warn("补发暂存日志失败: {}", file, e);
+            }
+        }
+    }
+
+    private List<Path> listSpool() throws IOException {
+        if (!Files.isDirectory(spoolPath)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> stream = Files.list(spoolPath)) {
+            return stream.filter(path -> path.getFileName().toString().endsWith(".json")).sorted().toList();
+        }
+    }
+
+    /**
+     * 获取日志上报状态
+     */
+    public ShipperStats getStats() {
+        int spoolFiles = 0;
+        try {
+            spoolFiles = listSpool().size();
+        } catch (IOException e) {
+            // 忽略
+        }
+        return new ShipperStats(
+                buffer.size(),
+                buffer.capacity(),
+                accepted.get(),
+                dropped.get(),
+                shipped.get(),
+                batches.get(),
+                spooled.get(),
+                replayed.get(),
+                spoolEvicted.get(),
+                rejected.get(),
+                spoolFiles
+        );
+    }
+
+    /**
+     * 日志上报状态信息类
+     */
+    public static class ShipperStats {
+        private final int buffered;
+        private final int capacity;
+        private final long accepted;
+        private final long dropped;
+        private final long shipped;
+        private final long batches;
+        private final long spooled;
+        private final long replayed;
+        private final long spoolEvicted;
+        private final long rejected;
+        private final int spoolFiles;
+
+        public ShipperStats(int buffered, int capacity, long accepted, long dropped, long shipped, long batches,
+                            long spooled, long replayed, long spoolEvicted, long rejected, int spoolFiles) {
+            this.buffered = buffered;
+            this.capacity = capacity;
+            this.accepted = accepted;
+            this.dropped = dropped;
+            this.shipped = shipped;
+            this.batches = batches;
+            this.spooled = spooled;
+            this.replayed = replayed;
+            this.spoolEvicted = spoolEvicted;
+            this.rejected = rejected;
+            this.spoolFiles = spoolFiles;
+        }
+
+        // Getters
+        public int getBuffered() { return buffered; }
+        public int getCapacity() { return capacity; }
+        public long getAccepted() { return accepted; }
+        public long getDropped() { return dropped; }
+        public long getShipped() { return shipped; }
+        public long getBatches() { return batches; }
+        public long getSpooled() { return spooled; }
+        public long getReplayed() { return replayed; }
+        public long getSpoolEvicted() { return spoolEvicted; }
+        public long getRejected() { return rejected; }
+        public int getSpoolFiles() { return spoolFiles; }
+    }
+
+    /**
+     * 有界无锁环形缓冲区，多个生产者、单个消费者
+     * 每个槽位带一个序号，生产者通过 CAS 抢占写入位置，消费者按序号判断槽位是否已写入
+     */
+    static final class RingBuffer<E> {
+        private final int mask;
+        private final AtomicReferenceArray<E> items;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong head = new AtomicLong();
+
+        RingBuffer(int capacity) {
+            int size = Integer.highestOneBit(capacity - 1) << 1;
+            this.mask = size - 1;
+            this.items = new AtomicReferenceArray<>(size);
+            this.sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(E item) {
+            long pos = tail.get();
+            while (true) {
+                int index = (int) (pos & mask);
+                long diff = sequences.get(index) - pos;
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        items.set(index, item);
+                        sequences.set(index, pos + 1);
+                        return true;
+                    }
+                    pos = tail.get();
+                } else if (diff < 0) {
+                    // 已满
+                    return false;
+                } else {
+                    pos = tail.get();
+                }
+            }
+        }
+
+        /**
+         * 只能由消费线程调用
+         */
+        E poll() {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            if (sequences.get(index) != pos + 1) {
+                return null;
+            }
+            E item = items.get(index);
+            items.set(index, null);
+            sequences.set(index, pos + mask + 1);
+            head.set(pos + 1);
+            return item;
+        }
+
+        int size() {
+            return (int) Math.max(0, tail.get() - head.get());
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.playwright.utils;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 登录状态缓存
+ * 所有平台的登录检测都经过这里：按 用户-平台 缓存检测结果，已登录与未登录分别设置过期时间；
+ * 同一用户同一平台同时发起的检测只执行一次，其余请求等待同一结果，等待超时抛出 TimeoutException，由调用方按检测失败处理；
+ * 未命中时先由 LoginStateProbe 读取配置目录，无法确定时才执行调用方传入的浏览器检测。
+ * 任务运行中页面跳转到登录页时立即清除对应缓存。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月25日 10:40
+ */
+@Slf4j
+@Component
+public class LoginStateCache {
+
+    /**
+     * 浏览器检测
+     */
+    @FunctionalInterface
+    public interface Loader {
+        /**
+         * @return "false" 表示未登录，其他值为已登录的昵称
+         */
+        String load() throws Exception;
+    }
+
+    private record Entry(String status, long expireAt) {
+    }
+
+    @Autowired
+    private LoginStateProbe loginStateProbe;
+
+    // 已登录结果的缓存时间（毫秒）
+    @Value("${cube.login-cache.ttl:1800000}")
+    private long ttl;
+
+    // 各平台单独的已登录缓存时间，格式 平台:毫秒，多个用逗号分隔
+    @Value("${cube.login-cache.platform-ttl:}")
+    private String platformTtlConfig;
+
+    // 未登录结果的缓存时间（毫秒）
+    @Value("${cube.login-cache.negative-ttl:10000}")
+    private long negativeTtl;
+
+    // 等待其他线程检测结果的最长时间（毫秒）
+    @Value("${cube.login-cache.await-timeout:60000}")
+    private long awaitTimeout;
+
+    // 任务运行中跳转到这些地址视为登录失效，格式 平台:地址片段，多个用逗号分隔
+    // 豆包、元宝、通义、秘塔登录失效时在当前页弹出登录框，不发生跳转，不在此覆盖
+    @Value("${cube.login-cache.logout-urls:Zhihu:/signin,baidu:passport.baidu.com,deepseek:/sign_in}")
+    private String logoutUrlsConfig;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Long> platformTtl = new HashMap<>();
+    private final Map<String, List<String>> logoutUrls = new HashMap<>();
+
+    // 统计指标
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+    private final AtomicLong awaitTimeouts = new AtomicLong();
+    private final AtomicLong probed = new AtomicLong();
+    private final AtomicLong browserChecks = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong loggedOutDetected = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        for (Map.Entry<String, String> item : parsePairs(platformTtlConfig).entrySet()) {
+            try {
+                platformTtl.put(item.getKey(), Long.parseLong(item.getValue()));
+            } catch (NumberFormatException e) {
+                log.warn("登录缓存时间配置无效: {}", item);
+            }
+        }
+        for (String item : split(logoutUrlsConfig)) {
+            String[] pair = item.split(":", 2);
+            if (pair.length == 2 && !pair[1].isBlank()) {
+                logoutUrls.computeIfAbsent(pair[0].trim().toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(pair[1].trim());
+            }
+        }
+    }
+
+    private static Map<String, String> parsePairs(String config) {
+        Map<String, String> pairs = new LinkedHashMap<>();
+        for (String item : split(config)) {
+            String[] pair = item.split(":", 2);
+            if (pair.length == 2) {
+                pairs.put(pair[0].trim().toLowerCase(Locale.ROOT), pair[1].trim());
+            }
+        }
+        return pairs;
+    }
+
+    private static List<String> split(String config) {
+        List<String> items = new ArrayList<>();
+        if (config != null) {
+            for (String item : config.split(",")) {
+                if (!item.isBlank()) {
+                    items.add(item.trim());
+                }
+            }
+        }
+        return items;
+    }
+
+    private static String key(String userId, String platform) {
+        return userId + "-" + platform;
+    }
+
+    private static boolean isLoggedOut(String status) {
+        return status == null || status.isBlank() || "false".equals(status) || status.contains("未登录");
+    }
+
+    /**
+     * 获取登录状态
+     *
+     * @param platform 平台，与 createPersistentBrowserContext 的 name 一致
+     * @param loader   缓存与配置目录都无法确定时执行的浏览器检测
+     * @return "false" 表示未登录，其他值为已登录的昵称
+     * @throws TimeoutException 等待其他线程的检测超时
+     */
+    public String get(String userId, String platform, Loader loader) throws Exception {
+        String key = key(userId, platform);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expireAt() > System.currentTimeMillis()) {
+            hits.incrementAndGet();
+            return entry.status();
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            // 已有线程在检测，等待同一结果
+            shared.incrementAndGet();
+            return await(key, running);
+        }
+        try {
+            String status = loginStateProbe.probe(userId, platform);
+            if (status != null) {
+                probed.incrementAndGet();
+            } else {
+                browserChecks.incrementAndGet();
+                status = loader.load();
+                if (status == null || status.contains("未登录")) {
+                    status = "false";
+                }
+                loginStateProbe.remember(userId, platform, status);
+            }
+            // 检测期间被清除的结果不再写入
+            if (inFlight.get(key) == mine) {
+                store(key, platform, status);
+            }
+            mine.complete(status);
+            return status;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private String await(String key, CompletableFuture<String> future) throws Exception {
+        try {
+            return future.get(awaitTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 检测卡住时移除进行中的记录，后续请求重新发起检测，本次结果不缓存
+            inFlight.remove(key, future);
+            awaitTimeouts.incrementAndGet();
+            log.warn("等待登录检测超时: {}", key);
+            throw new TimeoutException("等待登录检测超时: " + key);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void store(String key, String platform, String status) {
+        long expire = isLoggedOut(status)
+                ? negativeTtl
+                : platformTtl.getOrDefault(platform.toLowerCase(Locale.ROOT), ttl);
+        if (expire > 0) {
+            entries.put(key, new Entry(status, System.currentTimeMillis() + expire));
+        } else {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * 读取未过期的已登录昵称，不触发检测
+     *
+     * @return 未缓存或未登录时返回 null
+     */
+    public String peek(String userId, String platform) {
+        Entry entry = entries.get(key(userId, platform));
+        if (entry == null || entry.expireAt() <= System.currentTimeMillis() || isLoggedOut(entry.status())) {
+            return null;
+        }
+        return entry.status();
+    }
+
+    /**
+     * 写入扫码登录等流程得到的登录状态
+     */
+    public void put(String userId, String platform, String status) {
+        inFlight.remove(key(userId, platform));
+        store(key(userId, platform), platform, status);
+        loginStateProbe.remember(userId, platform, status);
+    }
+
+    /**
+     * 清除缓存，下次检测重新读取
+     */
+    public void invalidate(String userId, String platform) {
+        String key = key(userId, platform);
+        inFlight.remove(key);
+        if (entries.remove(key) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * 任务运行中发现登录已失效，清除缓存并删除保存的昵称，下次必须经过浏览器检测
+     */
+    public void markLoggedOut(String userId, String platform) {
+        loggedOutDetected.incrementAndGet();
+        invalidate(userId, platform);
+        loginStateProbe.remember(userId, platform, "false");
+        log.info("检测到登录失效: 用户={}, 平台={}", userId, platform);
+    }
+
+    /**
+     * 监听上下文中页面的跳转，跳转到该平台的登录页时清除登录缓存
+     * 只覆盖 logout-urls 中配置的平台，登录失效时不跳转的平台由下次检测发现
+     *
+     * @return 原上下文
+     */
+    public BrowserContext watch(BrowserContext context, String userId, String platform) {
+        List<String> patterns = logoutUrls.get(platform.toLowerCase(Locale.ROOT));
+        if (context == null || patterns == null) {
+            return context;
+        }
+        Consumer<Page> attach = page -> page.onFrameNavigated(frame -> {
+            if (frame.parentFrame() != null) {
+                return;
+            }
+            String url = frame.url();
+            for (String pattern : patterns) {
+                if (url.contains(pattern)) {
+                    markLoggedOut(userId, platform);
+                    return;
+                }
+            }
+        });
+        context.pages().forEach(attach);
+        context.onPage(attach);
+        return context;
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expireAt() <= now);
+    }
+
+    /**
+     * 缓存命中情况
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) entries.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("shared", shared.get());
+        stats.put("awaitTimeouts", awaitTimeouts.get());
+        stats.put("probed", probed.get());
+        stats.put("browserChecks", browserChecks.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("loggedOutDetected", loggedOutDetected.get());
+        return stats;
+    }
+}
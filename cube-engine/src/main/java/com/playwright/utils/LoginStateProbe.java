@@ -0,0 +1,264 @@
+package com.playwright.utils;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 免浏览器的登录状态探测
+ * 直接读取 cube.datadir/name/userId 下 Chromium 配置目录中的 Cookies 数据库，或 shared 模式保存的 storage-state.json，
+ * 根据各平台登录凭证 cookie 是否存在且未过期判断登录状态，毫秒级返回。
+ * 只能判断是否登录，拿不到昵称，因此浏览器检测成功后把昵称保存在配置目录中，下次直接返回；
+ * 无法确定时返回 null，由调用方回退到浏览器检测。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月24日 14:30
+ */
+@Slf4j
+@Component
+public class LoginStateProbe {
+
+    // 浏览器检测成功后保存的昵称
+    private static final String LOGIN_NAME_FILE = "login-name.txt";
+    // Chromium 时间戳从 1601-01-01 起算（微秒）
+    private static final long CHROMIUM_EPOCH_OFFSET_MICROS = 11644473600L * 1_000_000L;
+
+    /**
+     * 平台的登录凭证
+     *
+     * @param domain      cookie 所属域名
+     * @param cookies     任意一个存在即视为已登录的 cookie
+     * @param strict      凭证缺失时能否直接判定未登录；cookie 名不确定的平台只用来判定已登录
+     * @param origin      凭证保存在 localStorage 时的来源
+     * @param storageKey  localStorage 中的键
+     */
+    private record Credential(String domain, List<String> cookies, boolean strict, String origin, String storageKey) {
+    }
+
+    // 配置目录名 -> 登录凭证
+    private static final Map<String, Credential> CREDENTIALS = Map.of(
+            "Zhihu", new Credential("zhihu.com", List.of("z_c0"), true, null, null),
+            "baidu", new Credential("baidu.com", List.of("BDUSS"), true, null, null),
+            "db", new Credential("doubao.com", List.of("sessionid"), true, null, null),
+            "ty", new Credential("tongyi.com", List.of("tongyi_sso_ticket"), false, null, null),
+            "metaso", new Credential("metaso.cn", List.of("uid", "sid"), false, null, null),
+            // DeepSeek 的登录凭证在 localStorage 中，只有 storage-state.json 能读到
+            "deepseek", new Credential("deepseek.com", List.of(), true, "https://chat.deepseek.com", "userToken")
+    );
+
+    @Value("${cube.datadir}")
+    private String userDataDir;
+
+    @Autowired
+    private BrowserContextPool browserContextPool;
+
+    // 是否启用免浏览器探测
+    @Value("${cube.login-probe.enabled:true}")
+    private boolean enabled;
+
+    private final AtomicLong loggedIn = new AtomicLong();
+    private final AtomicLong loggedOut = new AtomicLong();
+    private final AtomicLong fallback = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+
+    /**
+     * 探测登录状态
+     *
+     * @param name 配置目录名，与 createPersistentBrowserContext 的 name 一致
+     * @return "false" 表示未登录，其他值为已登录的昵称，null 表示无法确定
+     */
+    public String probe(String userId, String name) {
+        Credential credential = CREDENTIALS.get(name);
+        if (!enabled || credential == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Boolean present;
+        Path profileDir = Paths.get(userDataDir, name, userId);
+        try {
+            present = hasCredential(userId, name, profileDir, credential);
+        } catch (Exception e) {
+            log.debug("读取登录凭证失败: {}", profileDir, e);
+            present = null;
+        }
+        String result = null;
+        if (Boolean.TRUE.equals(present)) {
+            result = readLoginName(profileDir);
+        } else if (Boolean.FALSE.equals(present) && credential.strict()) {
+            result = "false";
+        }
+        totalMicros.addAndGet((System.nanoTime() - start) / 1000);
+        if (result == null) {
+            fallback.incrementAndGet();
+        } else if ("false".equals(result)) {
+            loggedOut.incrementAndGet();
+        } else {
+            loggedIn.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * 记录浏览器检测的结果，已登录时保存昵称，未登录时删除
+     */
+    public void remember(String userId, String name, String status) {
+        if (!CREDENTIALS.containsKey(name)) {
+            return;
+        }
+        Path file = Paths.get(userDataDir, name, userId, LOGIN_NAME_FILE);
+        try {
+            if (status == null || status.isBlank() || "false".equals(status) || status.contains("未登录")) {
+                Files.deleteIfExists(file);
+            } else if (Files.isDirectory(file.getParent())) {
+                Files.writeString(file, status.trim(), StandardCharsets.UTF_8);
+            }
+        } catch (Exception e) {
+            log.debug("保存登录昵称失败: {}", file, e);
+        }
+    }
+
+    /**
+     * 凭证是否存在
+     *
+     * @return null 表示无法确定
+     */
+    private Boolean hasCredential(String userId, String name, Path profileDir, Credential credential) throws Exception {
+        if (!Files.isDirectory(profileDir)) {
+            // 该用户从未在本机打开过该平台
+            return false;
+        }
+        Path statePath = profileDir.resolve(SharedBrowserHost.STORAGE_STATE_FILE);
+        Path cookiesPath = findCookiesDb(profileDir);
+        // 两种来源都存在时以最近写入的为准
+        if (Files.exists(statePath) && (cookiesPath == null
+                || Files.getLastModifiedTime(statePath).compareTo(Files.getLastModifiedTime(cookiesPath)) >= 0)) {
+            return hasCredentialInState(statePath, credential);
+        }
+        if (credential.cookies().isEmpty()) {
+            return null;
+        }
+        // 池中仍打开着的 Chromium 会延迟把 cookie 写入数据库，刚扫码登录时可能还读不到
+        String poolKey = userDataDir + "/" + name + "/" + userId;
+        if (browserContextPool.isOpen(poolKey) || browserContextPool.isOpen(poolKey + "#headless")) {
+            return null;
+        }
+        if (cookiesPath == null) {
+            return Files.isDirectory(profileDir.resolve("Default")) ? Boolean.FALSE : null;
+        }
+        // 使用 WAL 时最新数据可能还没写回主文件
+        Path wal = cookiesPath.resolveSibling(cookiesPath.getFileName() + "-wal");
+        if (Files.exists(wal) && Files.size(wal) > 0) {
+            return null;
+        }
+        return hasCredentialInProfile(cookiesPath, credential);
+    }
+
+    static Path findCookiesDb(Path profileDir) {
+        Path network = profileDir.resolve("Default").resolve("Network").resolve("Cookies");
+        if (Files.exists(network)) {
+            return network;
+        }
+        Path legacy = profileDir.resolve("Default").resolve("Cookies");
+        return Files.exists(legacy) ? legacy : null;
+    }
+
+    private Boolean hasCredentialInState(Path statePath, Credential credential) throws Exception {
+        JSONObject state = JSONObject.parseObject(Files.readString(statePath, StandardCharsets.UTF_8));
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        JSONArray cookies = state.getJSONArray("cookies");
+        if (cookies != null) {
+            for (int i = 0; i < cookies.size(); i++) {
+                JSONObject cookie = cookies.getJSONObject(i);
+                double expires = cookie.getDoubleValue("expires");
+                if (matches(credential, cookie.getString("domain"), cookie.getString("name"))
+                        && cookie.getString("value") != null && !cookie.getString("value").isEmpty()
+                        && (expires <= 0 || expires > nowSeconds)) {
+                    return true;
+                }
+            }
+        }
+        if (credential.origin() != null) {
+            JSONArray origins = state.getJSONArray("origins");
+            for (int i = 0; origins != null && i < origins.size(); i++) {
+                JSONObject origin = origins.getJSONObject(i);
+                if (!credential.origin().equals(origin.getString("origin"))) {
+                    continue;
+                }
+                JSONArray items = origin.getJSONArray("localStorage");
+                for (int j = 0; items != null && j < items.size(); j++) {
+                    JSONObject item = items.getJSONObject(j);
+                    if (credential.storageKey().equals(item.getString("name"))
+                            && item.getString("value") != null && !item.getString("value").isEmpty()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private Boolean hasCredentialInProfile(Path cookiesPath, Credential credential) throws Exception {
+        long nowMicros = System.currentTimeMillis() * 1000 + CHROMIUM_EPOCH_OFFSET_MICROS;
+        List<Map<String, Object>> rows = SqliteReader.readTable(cookiesPath, "cookies",
+                List.of("host_key", "name", "expires_utc"));
+        for (Map<String, Object> row : rows) {
+            Object expires = row.get("expires_utc");
+            long expiresUtc = expires instanceof Long value ? value : 0;
+            if (matches(credential, (String) row.get("host_key"), (String) row.get("name"))
+                    && (expiresUtc == 0 || expiresUtc > nowMicros)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(Credential credential, String domain, String name) {
+        if (domain == null || name == null || !credential.cookies().contains(name)) {
+            return false;
+        }
+        String host = domain.startsWith(".") ? domain.substring(1) : domain;
+        return host.equals(credential.domain()) || host.endsWith("." + credential.domain());
+    }
+
+    /**
+     * 读取上次浏览器检测保存的昵称，没有时无法给出昵称，返回 null 交给浏览器检测
+     */
+    private static String readLoginName(Path profileDir) {
+        Path file = profileDir.resolve(LOGIN_NAME_FILE);
+        try {
+            if (Files.exists(file)) {
+                String name = Files.readString(file, StandardCharsets.UTF_8).trim();
+                return name.isEmpty() ? null : name;
+            }
+        } catch (Exception e) {
+            log.debug("读取登录昵称失败: {}", file, e);
+        }
+        return null;
+    }
+
+    /**
+     * 探测结果统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        long total = loggedIn.get() + loggedOut.get() + fallback.get();
+        stats.put("loggedIn", loggedIn.get());
+        stats.put("loggedOut", loggedOut.get());
+        stats.put("fallback", fallback.get());
+        stats.put("avgMicros", total == 0 ? 0 : totalMicros.get() / total);
+        return stats;
+    }
+}
@@ -0,0 +1,321 @@
+package com.playwright.utils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 长图流式拼接器
+ * 分段截图逐段解码后按行写入同一个 PNG 文件，任意时刻内存中只有当前这一段图像，
+ * 与对话长度无关；结束时可按配置的质量转码为 JPEG 或 WebP（需要运行环境提供 WebP 的 ImageIO 插件，否则使用 JPEG）。
+ * <p>
+ * JPEG/WebP 编码器需要完整的像素数据，超过 maxEncodePixels 的长图保持 PNG 输出，保证内存占用有上限。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月17日 15:30
+ */
+public class LongImageStitcher implements Closeable {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    // IHDR 中高度字段与 CRC 在文件中的偏移
+    private static final int IHDR_HEIGHT_OFFSET = 20;
+    private static final int IHDR_CRC_OFFSET = 29;
+
+    private static final int IDAT_CHUNK_SIZE = 64 * 1024;
+
+    // 转码为 JPEG/WebP 时允许的最大像素数（约 3 字节/像素）
+    private static final long DEFAULT_MAX_ENCODE_PIXELS = 40_000_000L;
+
+    private final String format;
+    private final float quality;
+    private final int padding;
+    private long maxEncodePixels = DEFAULT_MAX_ENCODE_PIXELS;
+
+    private Path pngPath;
+    private Path outputPath;
+    private DataOutputStream fileOut;
+    private DeflaterOutputStream idatOut;
+    private int width;
+    private int height;
+    private byte[] previousRow;
+    private byte[] currentRow;
+    private byte[] filteredRow;
+    private int[] pixels;
+
+    /**
+     * @param format  输出格式：png、jpeg/jpg、webp
+     * @param quality JPEG/WebP 质量，0~1
+     * @param padding 左右留白（像素）
+     */
+    public LongImageStitcher(String format, float quality, int padding) {
+        this.format = normalizeFormat(format);
+        this.quality = Math.max(0.05f, Math.min(1f, quality));
+        this.padding = Math.max(0, padding);
+    }
+
+    public LongImageStitcher maxEncodePixels(long maxEncodePixels) {
+        this.maxEncodePixels = maxEncodePixels;
+        return this;
+    }
+
+    private static String normalizeFormat(String format) {
+        String value = format == null ? "png" : format.trim().toLowerCase(Locale.ROOT);
+        return switch (value) {
+            case "jpg", "jpeg" -> "jpeg";
+            case "webp" -> "webp";
+            default -> "png";
+        };
+    }
+
+    /**
+     * 追加一段截图（PNG/JPEG 编码的字节），宽度以第一段为准，更窄的段以白色补齐，更宽的段被裁剪
+     */
+    public void append(byte[] encodedSegment) throws IOException {
+        BufferedImage segment = ImageIO.read(new ByteArrayInputStream(encodedSegment));
+        if (segment == null) {
+            throw new IOException("无法解码截图分段");
+        }
+        append(segment);
+    }
+
+    /**
+     * 追加一段已解码的图像，写入后即可丢弃
+     */
+    public void append(BufferedImage segment) throws IOException {
+        if (fileOut == null) {
+            start(segment.getWidth() + padding * 2);
+        }
+        int copyWidth = Math.min(segment.getWidth(), width - padding * 2);
+        for (int y = 0; y < segment.getHeight(); y++) {
+            Arrays.fill(pixels, 0xFFFFFF);
+            segment.getRGB(0, y, copyWidth, 1, pixels, padding, width);
+            writeRow();
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    private void start(int imageWidth) throws IOException {
+        this.width = imageWidth;
+        this.pixels = new int[width];
+        this.currentRow = new byte[width * 3];
+        this.previousRow = new byte[width * 3];
+        this.filteredRow = new byte[width * 3 + 1];
+        this.pngPath = Files.createTempFile("long_screenshot_", ".png");
+        this.fileOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(pngPath)));
+        fileOut.write(PNG_SIGNATURE);
+        // 高度先写 0，结束时回填
+        byte[] ihdr = new byte[13];
+        writeInt(ihdr, 0, width);
+        writeInt(ihdr, 4, 0);
+        ihdr[8] = 8;  // 位深
+        ihdr[9] = 2;  // RGB
+        writeChunk(fileOut, "IHDR", ihdr, ihdr.length);
+        this.idatOut = new DeflaterOutputStream(new IdatOutputStream(fileOut), new Deflater(6), IDAT_CHUNK_SIZE);
+    }
+
+    /**
+     * 以 Up 滤波写出一行，截图中大量重复的背景行压缩效果较好
+     */
+    private void writeRow() throws IOException {
+        for (int x = 0; x < width; x++) {
+            int rgb = pixels[x];
+            currentRow[x * 3] = (byte) (rgb >> 16);
+            currentRow[x * 3 + 1] = (byte) (rgb >> 8);
+            currentRow[x * 3 + 2] = (byte) rgb;
+        }
+        filteredRow[0] = 2;
+        for (int i = 0; i < currentRow.length; i++) {
+            filteredRow[i + 1] = (byte) (currentRow[i] - previousRow[i]);
+        }
+        idatOut.write(filteredRow);
+        byte[] swap = previousRow;
+        previousRow = currentRow;
+        currentRow = swap;
+        height++;
+    }
+
+    /**
+     * 结束拼接并返回输出文件，调用方负责在使用后删除
+     */
+    public Path finish() throws IOException {
+        if (fileOut == null || height == 0) {
+            throw new IOException("没有可拼接的截图分段");
+        }
+        idatOut.finish();
+        idatOut.flush();
+        writeChunk(fileOut, "IEND", new byte[0], 0);
+        fileOut.close();
+        fileOut = null;
+        patchHeight();
+
+        if ("png".equals(format) || (long) width * height > maxEncodePixels) {
+            outputPath = pngPath;
+            pngPath = null;
+            return outputPath;
+        }
+        outputPath = transcode();
+        return outputPath;
+    }
+
+    private void patchHeight() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(pngPath.toFile(), "rw")) {
+            byte[] ihdr = new byte[4 + 13];
+            file.seek(IHDR_HEIGHT_OFFSET - 8);
+            file.readFully(ihdr);
+            writeInt(ihdr, 4 + 4, height);
+            CRC32 crc = new CRC32();
+            crc.update(ihdr);
+            file.seek(IHDR_HEIGHT_OFFSET);
+            file.writeInt(height);
+            file.seek(IHDR_CRC_OFFSET);
+            file.writeInt((int) crc.getValue());
+        }
+    }
+
+    private Path transcode() throws IOException {
+        ImageWriter writer = findWriter(format);
+        String outputFormat = format;
+        if (writer == null) {
+            writer = findWriter("jpeg");
+            outputFormat = "jpeg";
+        }
+        BufferedImage image = ImageIO.read(pngPath.toFile());
+        Path target = Files.createTempFile("long_screenshot_", "jpeg".equals(outputFormat) ? ".jpg" : "." + outputFormat);
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                String[] types = param.getCompressionTypes();
+                if (types != null && types.length > 0 && param.getCompressionType() == null) {
+                    param.setCompressionType(types[0]);
+                }
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return target;
+    }
+
+    private static ImageWriter findWriter(String format) {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        return writers.hasNext() ? writers.next() : null;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * 把压缩数据切分为 IDAT 块写出
+     */
+    private static class IdatOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[IDAT_CHUNK_SIZE];
+        private int count;
+
+        private IdatOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer[count++] = (byte) b;
+            if (count == buffer.length) {
+                flushChunk();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushChunk();
+            out.flush();
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk(out, "IDAT", buffer, count);
+                count = 0;
+            }
+        }
+    }
+
+    /**
+     * 删除中间文件；finish 返回的输出文件由调用方删除
+     */
+    @Override
+    public void close() {
+        try {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        } catch (IOException e) {
+            // 忽略
+        }
+        if (pngPath != null && !pngPath.equals(outputPath)) {
+            try {
+                Files.deleteIfExists(pngPath);
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+}
@@ -3,15 +3,10 @@ package com.playwright.utils;
 import com.alibaba.fastjson.JSONObject;
 import com.microsoft.playwright.*;
 import com.microsoft.playwright.options.*;
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.awt.Graphics2D;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -19,49 +14,60 @@ import static com.playwright.utils.ScreenshotUtil.uploadFile;
 
 public class MessageScreenshot {
 
-    /**
-     * 只截取最后一个回复容器的完整内容
-     */
-    public String captureMessagesAsLongScreenshot(Page page, String uploadUrl, String userId) {
-        String shareImgUrl = "";
-        Path finalScreenshotPath = null;
-        ViewportSize originalViewport = null;
+    // 超过该高度的回复改为分段截图
+    private static final int SEGMENT_THRESHOLD = 6000;
 
-        try {
-            // 保存原始视口大小
-            originalViewport = page.viewportSize();
+    // 每段截图的高度
+    private static final int SEGMENT_HEIGHT = 2000;
 
-            // 隐藏可能遮挡内容的固定元素
-            hideFixedElements(page);
+    // 分段数量上限，防止页面异常时无限滚动
+    private static final int MAX_SEGMENTS = 200;
 
-            // 查找最后一个回复容器
-            Map<String, Object> containerInfo = (Map<String, Object>) page.evaluate("""
-                () => {
+    // 长图输出格式（png、jpeg、webp）与 JPEG/WebP 质量
+    private final String format;
+    private final float quality;
+
+    public MessageScreenshot() {
+        this("png", 0.85f);
+    }
+
+    public MessageScreenshot(String format, float quality) {
+        this.format = format;
+        this.quality = quality;
+    }
+
+    // DeepSeek 回复容器
+    private static final String CONTAINER_SELECTOR = "div._4f9bf79.d7dc56a8._43c05b5";
+
+    // 截图过程中使用的页面函数，每个页面只注入一次
+    private static final PageScripts.Bundle SCRIPTS = new PageScripts.Bundle("screenshot", """
+            {
+                lastContainerInfo(selector) {
                     try {
                         // 查找所有回复容器
-                        const containers = document.querySelectorAll('div._4f9bf79.d7dc56a8._43c05b5');
+                        const containers = document.querySelectorAll(selector);
                         if (containers.length === 0) {
                             return { success: false, message: 'no-containers-found' };
                         }
-                        
+
                         // 获取最后一个容器（最新的回复）
                         const lastContainer = containers[containers.length - 1];
-                        
+
                         // 滚动到容器顶部，确保完全可见
                         lastContainer.scrollIntoView({ behavior: 'auto', block: 'start' });
-                        
+
                         // 等待滚动完成
                         setTimeout(() => {}, 500);
-                        
+
                         // 获取容器的完整尺寸信息（包括滚动内容）
                         const rect = lastContainer.getBoundingClientRect();
                         const scrollHeight = lastContainer.scrollHeight;
                         const scrollWidth = lastContainer.scrollWidth;
-                        
+
                         // 确保获取完整的内容区域，添加适当边距
                         const padding = 20;
                         const bottomMargin = 50;
-                        
+
                         return {
                             success: true,
                             x: Math.max(0, rect.x - padding),
@@ -77,9 +83,171 @@ public class MessageScreenshot {
                     } catch (e) {
                         return { success: false, message: e.toString() };
                     }
+                },
+
+                expandLastContainer(selector) {
+                    try {
+                        const containers = document.querySelectorAll(selector);
+                        if (containers.length > 0) {
+                            const lastContainer = containers[containers.length - 1];
+
+                            // 移除任何高度限制，确保内容完全展开
+                            lastContainer.style.height = 'auto';
+                            lastContainer.style.maxHeight = 'none';
+                            lastContainer.style.overflow = 'visible';
+
+                            // 展开所有可能的折叠内容
+                            const expandButtons = lastContainer.querySelectorAll('[data-testid="expand-button"], .expand-btn, .more-btn');
+                            expandButtons.forEach(btn => {
+                                try { btn.click(); } catch(e) {}
+                            });
+
+                            // 滚动到容器顶部
+                            lastContainer.scrollIntoView({ behavior: 'auto', block: 'start' });
+
+                            // 确保页面滚动到合适位置
+                            const rect = lastContainer.getBoundingClientRect();
+                            if (rect.top < 50) {
+                                window.scrollBy(0, rect.top - 50);
+                            }
+                        }
+                    } catch (e) {
+                        console.error('展开容器内容失败:', e);
+                    }
+                },
+
+                lastContainerRect(selector) {
+                    try {
+                        const containers = document.querySelectorAll(selector);
+                        if (containers.length === 0) return null;
+
+                        const lastContainer = containers[containers.length - 1];
+                        const rect = lastContainer.getBoundingClientRect();
+
+                        // 获取页面边界
+                        const pageWidth = Math.max(document.documentElement.scrollWidth, window.innerWidth);
+                        const pageHeight = Math.max(document.documentElement.scrollHeight, window.innerHeight);
+
+                        const padding = 20;
+
+                        return {
+                            x: Math.max(0, rect.x - padding),
+                            y: Math.max(0, rect.y - padding),
+                            width: Math.min(rect.width + padding * 2, pageWidth),
+                            height: Math.min(rect.height + padding * 2, pageHeight - rect.y + padding),
+                            pageWidth: pageWidth,
+                            pageHeight: pageHeight
+                        };
+                    } catch (e) {
+                        return null;
+                    }
+                },
+
+                scrollToLastContainer(selector) {
+                    const containers = document.querySelectorAll(selector);
+                    if (containers.length > 0) {
+                        const lastContainer = containers[containers.length - 1];
+                        lastContainer.scrollIntoView({ behavior: 'auto', block: 'start' });
+                    }
+                },
+
+                segmentClip({selector, offset, maxHeight}) {
+                    const containers = document.querySelectorAll(selector);
+                    if (containers.length === 0) return null;
+
+                    const lastContainer = containers[containers.length - 1];
+
+                    // 找到实际负责滚动的祖先元素，没有则使用页面本身
+                    let scroller = lastContainer.parentElement;
+                    while (scroller && !(scroller.scrollHeight > scroller.clientHeight
+                            && /(auto|scroll)/.test(getComputedStyle(scroller).overflowY))) {
+                        scroller = scroller.parentElement;
+                    }
+                    const pageScroller = !scroller;
+                    scroller = scroller || document.scrollingElement;
+
+                    const total = lastContainer.getBoundingClientRect().height;
+                    if (offset >= total) return { done: true };
+
+                    // 让容器第 offset 像素对齐到滚动区域顶部，滚到底时实际位置由下面重新计算
+                    const viewTop = pageScroller ? 0 : Math.max(0, scroller.getBoundingClientRect().top);
+                    scroller.scrollTop += lastContainer.getBoundingClientRect().top + offset - viewTop;
+
+                    const rect = lastContainer.getBoundingClientRect();
+                    const top = rect.top + offset;
+                    const viewBottom = pageScroller ? window.innerHeight
+                            : Math.min(window.innerHeight, scroller.getBoundingClientRect().bottom);
+                    const height = Math.floor(Math.min(maxHeight, total - offset, viewBottom - top));
+
+                    return {
+                        done: false,
+                        x: Math.max(0, rect.x),
+                        y: Math.max(0, top),
+                        width: rect.width,
+                        height: height
+                    };
+                },
+
+                hideFixedElements() {
+                    // 保存原始样式以便恢复
+                    window._originalFixedElementStyles = {};
+
+                    // 查找所有可能遮挡内容的固定定位元素
+                    const fixedElements = document.querySelectorAll('[class*="fixed"], [class*="sticky"], [style*="fixed"], [style*="sticky"]');
+
+                    fixedElements.forEach((el, index) => {
+                        // 检查元素是否在底部（可能是输入框）
+                        const rect = el.getBoundingClientRect();
+                        if (rect.bottom > window.innerHeight - 100) { // 底部100像素内的元素
+                            window._originalFixedElementStyles[`element_${index}`] = {
+                                element: el,
+                                display: el.style.display,
+                                visibility: el.style.visibility,
+                                position: el.style.position
+                            };
+
+                            // 隐藏元素
+                            el.style.display = 'none';
+                            el.style.visibility = 'hidden';
+                        }
+                    });
+
+                    return Object.keys(window._originalFixedElementStyles).length;
+                },
+
+                restoreFixedElements() {
+                    if (window._originalFixedElementStyles) {
+                        Object.values(window._originalFixedElementStyles).forEach(styleInfo => {
+                            if (styleInfo.element && styleInfo.element.style) {
+                                styleInfo.element.style.display = styleInfo.display;
+                                styleInfo.element.style.visibility = styleInfo.visibility;
+                                styleInfo.element.style.position = styleInfo.position;
+                            }
+                        });
+                        delete window._originalFixedElementStyles;
+                    }
                 }
+            }
             """);
 
+    /**
+     * 只截取最后一个回复容器的完整内容
+     */
+    public String captureMessagesAsLongScreenshot(Page page, String uploadUrl, String userId) {
+        String shareImgUrl = "";
+        Path finalScreenshotPath = null;
+        ViewportSize originalViewport = null;
+
+        try {
+            // 保存原始视口大小
+            originalViewport = page.viewportSize();
+
+            // 隐藏可能遮挡内容的固定元素
+            hideFixedElements(page);
+
+            // 查找最后一个回复容器
+            Map<String, Object> containerInfo = (Map<String, Object>) PageScripts.call(page, SCRIPTS, "lastContainerInfo", CONTAINER_SELECTOR);
+
             if (!Boolean.TRUE.equals(containerInfo.get("success"))) {
                 System.err.println("查找最后一个回复容器失败: " + containerInfo.get("message"));
                 return captureFullPageScreenshot(page, uploadUrl);
@@ -97,7 +265,10 @@ public class MessageScreenshot {
             System.out.println(String.format("容器尺寸: x=%.0f, y=%.0f, width=%.0f, height=%.0f, scrollHeight=%.0f", 
                 containerX, containerY, containerWidth, containerHeight, scrollHeight));
 
-            // 🔥 新的策略：无论内容多大，都尝试单次完整截图
+            // 较短的回复单次完整截图；超长回复若放大视口一次截完，浏览器和拼接都要持有整张图，改为分段流式拼接
+            if (scrollHeight > SEGMENT_THRESHOLD) {
+                return captureContainerWithSegments(page, uploadUrl, containerInfo, originalViewport);
+            }
             return captureCompleteContainerScreenshot(page, uploadUrl, containerInfo, originalViewport);
 
         } catch (Exception e) {
@@ -144,70 +315,12 @@ public class MessageScreenshot {
             page.waitForTimeout(800); // 等待视口调整完成
 
             // 🔥 确保容器完全可见并展开所有内容
-            page.evaluate("""
-                () => {
-                    try {
-                        const containers = document.querySelectorAll('div._4f9bf79.d7dc56a8._43c05b5');
-                        if (containers.length > 0) {
-                            const lastContainer = containers[containers.length - 1];
-                            
-                            // 移除任何高度限制，确保内容完全展开
-                            lastContainer.style.height = 'auto';
-                            lastContainer.style.maxHeight = 'none';
-                            lastContainer.style.overflow = 'visible';
-                            
-                            // 展开所有可能的折叠内容
-                            const expandButtons = lastContainer.querySelectorAll('[data-testid="expand-button"], .expand-btn, .more-btn');
-                            expandButtons.forEach(btn => {
-                                try { btn.click(); } catch(e) {}
-                            });
-                            
-                            // 滚动到容器顶部
-                            lastContainer.scrollIntoView({ behavior: 'auto', block: 'start' });
-                            
-                            // 确保页面滚动到合适位置
-                            const rect = lastContainer.getBoundingClientRect();
-                            if (rect.top < 50) {
-                                window.scrollBy(0, rect.top - 50);
-                            }
-                        }
-                    } catch (e) {
-                        console.error('展开容器内容失败:', e);
-                    }
-                }
-            """);
+            PageScripts.call(page, SCRIPTS, "expandLastContainer", CONTAINER_SELECTOR);
             
             page.waitForTimeout(1000); // 等待内容展开和滚动完成
 
             // 🔥 重新获取展开后的容器尺寸
-            Map<String, Object> updatedContainerInfo = (Map<String, Object>) page.evaluate("""
-                () => {
-                    try {
-                        const containers = document.querySelectorAll('div._4f9bf79.d7dc56a8._43c05b5');
-                        if (containers.length === 0) return null;
-                        
-                        const lastContainer = containers[containers.length - 1];
-                        const rect = lastContainer.getBoundingClientRect();
-                        
-                        // 获取页面边界
-                        const pageWidth = Math.max(document.documentElement.scrollWidth, window.innerWidth);
-                        const pageHeight = Math.max(document.documentElement.scrollHeight, window.innerHeight);
-                        
-                        const padding = 20;
-                        
-                        return {
-                            x: Math.max(0, rect.x - padding),
-                            y: Math.max(0, rect.y - padding),
-                            width: Math.min(rect.width + padding * 2, pageWidth),
-                            height: Math.min(rect.height + padding * 2, pageHeight - rect.y + padding),
-                            pageWidth: pageWidth,
-                            pageHeight: pageHeight
-                        };
-                    } catch (e) {
-                        return null;
-                    }
-                }
-            """);
+            Map<String, Object> updatedContainerInfo = (Map<String, Object>) PageScripts.call(page, SCRIPTS, "lastContainerRect", CONTAINER_SELECTOR);
 
             if (updatedContainerInfo != null) {
                 containerX = getDoubleValue(updatedContainerInfo, "x");
@@ -270,15 +383,7 @@ public class MessageScreenshot {
             page.waitForTimeout(500);
 
             // 重新滚动到容器位置
-            page.evaluate("""
-                () => {
-                    const containers = document.querySelectorAll('div._4f9bf79.d7dc56a8._43c05b5');
-                    if (containers.length > 0) {
-                        const lastContainer = containers[containers.length - 1];
-                        lastContainer.scrollIntoView({ behavior: 'auto', block: 'start' });
-                    }
-                }
-            """);
+            PageScripts.call(page, SCRIPTS, "scrollToLastContainer", CONTAINER_SELECTOR);
             
             page.waitForTimeout(800);
 
@@ -322,143 +427,80 @@ public class MessageScreenshot {
     }
 
     /**
-     * 分段截图然后拼接（适用于很长的回复）
+     * 分段截图并流式拼接（适用于很长的回复）
+     * 每段截图直接以字节返回并写入拼接器，内存中最多保留一段图像
      */
     private String captureContainerWithSegments(Page page, String uploadUrl, Map<String, Object> containerInfo, ViewportSize originalViewport) {
-        List<Path> segmentPaths = new ArrayList<>();
         Path finalPath = null;
 
-        try {
+        try (LongImageStitcher stitcher = new LongImageStitcher(format, quality, 20)) {
             double containerHeight = getDoubleValue(containerInfo, "scrollHeight");
             double containerWidth = getDoubleValue(containerInfo, "width");
-            
-            // 每段的高度（避免过大的截图）
-            int segmentHeight = 2000;
-            int totalSegments = (int) Math.ceil(containerHeight / segmentHeight);
-            
-            System.out.println(String.format("容器总高度: %.0f, 分为 %d 段截图", containerHeight, totalSegments));
+
+            System.out.println(String.format("容器总高度: %.0f, 按每段 %d 像素分段截图", containerHeight, SEGMENT_HEIGHT));
 
             // 调整视口以适应宽度
             page.setViewportSize(
                 Math.max(originalViewport.width, (int) containerWidth + 100),
-                Math.max(originalViewport.height, segmentHeight + 100)
+                Math.max(originalViewport.height, SEGMENT_HEIGHT + 100)
             );
             page.waitForTimeout(500);
 
-            // 分段截图
-            for (int i = 0; i < totalSegments; i++) {
-                // 计算当前段的滚动位置
-                int scrollOffset = i * segmentHeight;
-                
-                // 滚动到指定位置
-                page.evaluate(String.format("""
-                    (scrollOffset) => {
-                        const containers = document.querySelectorAll('div._4f9bf79.d7dc56a8._43c05b5');
-                        if (containers.length > 0) {
-                            const lastContainer = containers[containers.length - 1];
-                            lastContainer.scrollTop = scrollOffset;
-                            
-                            // 同时滚动页面确保容器可见
-                            const rect = lastContainer.getBoundingClientRect();
-                            if (rect.top < 0 || rect.bottom > window.innerHeight) {
-                                lastContainer.scrollIntoView({ behavior: 'auto', block: 'center' });
-                            }
-                        }
-                    }
-                """, scrollOffset));
-                
-                page.waitForTimeout(300);
-
-                // 获取当前段的截图区域
-                Map<String, Object> segmentInfo = (Map<String, Object>) page.evaluate(String.format("""
-                    (segmentIndex, segmentHeight) => {
-                        const containers = document.querySelectorAll('div._4f9bf79.d7dc56a8._43c05b5');
-                        if (containers.length === 0) return null;
-                        
-                        const lastContainer = containers[containers.length - 1];
-                        const rect = lastContainer.getBoundingClientRect();
-                        
-                        // 安全检查所有数值，避免 NaN
-                        const safeValue = (val, defaultVal = 0) => {
-                            return (isNaN(val) || !isFinite(val)) ? defaultVal : val;
-                        };
-                        
-                        // 计算当前段的实际高度
-                        const scrollHeight = safeValue(lastContainer.scrollHeight, 1000);
-                        const remainingHeight = scrollHeight - (segmentIndex * segmentHeight);
-                        const actualSegmentHeight = Math.max(100, Math.min(segmentHeight, remainingHeight));
-                        
-                        return {
-                            x: safeValue(Math.max(0, rect.x - 20)),
-                            y: safeValue(Math.max(0, rect.y)),
-                            width: safeValue(rect.width + 40, 800),
-                            height: safeValue(Math.min(actualSegmentHeight + 70, rect.height), 600),
-                            scrollTop: safeValue(lastContainer.scrollTop)
-                        };
-                    }
-                """, i, segmentHeight));
-
-                if (segmentInfo == null) continue;
+            // 按实际截到的高度推进，避免滚动到底时段与段之间出现空隙或重叠
+            int offset = 0;
+            for (int i = 0; i < MAX_SEGMENTS; i++) {
+                Map<String, Object> clip = (Map<String, Object>) PageScripts.call(page, SCRIPTS, "segmentClip",
+                        Map.of("selector", CONTAINER_SELECTOR, "offset", offset, "maxHeight", SEGMENT_HEIGHT));
+                if (clip == null || Boolean.TRUE.equals(clip.get("done"))) {
+                    break;
+                }
 
-                double segX = getDoubleValue(segmentInfo, "x");
-                double segY = getDoubleValue(segmentInfo, "y");
-                double segWidth = getDoubleValue(segmentInfo, "width");
-                double segHeight = getDoubleValue(segmentInfo, "height");
+                double segX = getDoubleValue(clip, "x");
+                double segY = getDoubleValue(clip, "y");
+                double segWidth = getDoubleValue(clip, "width");
+                double segHeight = getDoubleValue(clip, "height");
 
                 // 验证截图参数的有效性
                 if (segWidth <= 0 || segHeight <= 0) {
-                    System.err.println(String.format("跳过无效的截图参数: x=%f, y=%f, width=%f, height=%f", 
+                    System.err.println(String.format("截图参数无效，结束分段: x=%f, y=%f, width=%f, height=%f",
                             segX, segY, segWidth, segHeight));
-                    continue;
+                    break;
                 }
 
-                // 创建段截图路径
-                Path segmentPath = Paths.get(System.getProperty("java.io.tmpdir"),
-                        "segment_" + i + "_" + UUID.randomUUID() + ".png");
-
-                try {
-                    // 截图当前段
-                    page.screenshot(new Page.ScreenshotOptions()
-                            .setPath(segmentPath)
-                            .setClip(segX, segY, segWidth, segHeight));
-                    
-                    segmentPaths.add(segmentPath);
-                    System.out.println(String.format("完成第 %d/%d 段截图", i + 1, totalSegments));
-                } catch (Exception e) {
-                    System.err.println(String.format("第 %d 段截图失败: %s", i + 1, e.getMessage()));
-                    // 继续下一段截图，不中断整个流程
-                }
+                page.waitForTimeout(300);
+                byte[] segment = page.screenshot(new Page.ScreenshotOptions()
+                        .setClip(segX, segY, segWidth, segHeight));
+                stitcher.append(segment);
+                offset += (int) segHeight;
+                System.out.println(String.format("完成第 %d 段截图，已拼接 %d 像素", i + 1, stitcher.getHeight()));
             }
 
-            // 拼接所有段
-            if (!segmentPaths.isEmpty()) {
-                try {
-                    finalPath = Paths.get(System.getProperty("java.io.tmpdir"),
-                            "deepseek_combined_" + UUID.randomUUID() + ".png");
-                    
-                    combineImagesVertically(segmentPaths, finalPath);
-
-                    // 上传拼接后的图片
-                    String result = uploadFile(uploadUrl, finalPath.toString());
-                    JSONObject jsonObject = JSONObject.parseObject(result);
-                    String shareImgUrl = jsonObject.getString("url");
-
-                    System.out.println("分段截图拼接完成: " + shareImgUrl);
-                    return shareImgUrl;
-                } catch (Exception e) {
-                    System.err.println("分段截图拼接失败: " + e.getMessage());
-                    // 继续执行，最后会回退到全屏截图
-                }
-            } else {
+            if (stitcher.getHeight() == 0) {
                 System.err.println("所有分段截图都失败，回退到全屏截图");
+                return captureFullPageScreenshot(page, uploadUrl);
             }
 
+            finalPath = stitcher.finish();
+
+            // 上传拼接后的图片
+            String result = uploadFile(uploadUrl, finalPath.toString());
+            JSONObject jsonObject = JSONObject.parseObject(result);
+            String shareImgUrl = jsonObject.getString("url");
+
+            System.out.println(String.format("分段截图拼接完成(%dx%d): %s", stitcher.getWidth(), stitcher.getHeight(), shareImgUrl));
+            return shareImgUrl;
+
         } catch (Exception e) {
             System.err.println("分段截图失败: " + e.getMessage());
             e.printStackTrace();
         } finally {
-            // 清理所有临时文件
-            cleanupTempFiles(segmentPaths, finalPath);
+            if (finalPath != null) {
+                try {
+                    Files.deleteIfExists(finalPath);
+                } catch (IOException e) {
+                    System.err.println("删除最终截图失败: " + finalPath + ": " + e.getMessage());
+                }
+            }
         }
 
         return captureFullPageScreenshot(page, uploadUrl);
@@ -469,34 +511,7 @@ public class MessageScreenshot {
      */
     private void hideFixedElements(Page page) {
         try {
-            page.evaluate("""
-                () => {
-                    // 保存原始样式以便恢复
-                    window._originalFixedElementStyles = {};
-                    
-                    // 查找所有可能遮挡内容的固定定位元素
-                    const fixedElements = document.querySelectorAll('[class*="fixed"], [class*="sticky"], [style*="fixed"], [style*="sticky"]');
-                    
-                    fixedElements.forEach((el, index) => {
-                        // 检查元素是否在底部（可能是输入框）
-                        const rect = el.getBoundingClientRect();
-                        if (rect.bottom > window.innerHeight - 100) { // 底部100像素内的元素
-                            window._originalFixedElementStyles[`element_${index}`] = {
-                                element: el,
-                                display: el.style.display,
-                                visibility: el.style.visibility,
-                                position: el.style.position
-                            };
-                            
-                            // 隐藏元素
-                            el.style.display = 'none';
-                            el.style.visibility = 'hidden';
-                        }
-                    });
-                    
-                    return Object.keys(window._originalFixedElementStyles).length;
-                }
-            """);
+            PageScripts.call(page, SCRIPTS, "hideFixedElements");
         } catch (Exception e) {
             System.err.println("隐藏固定元素失败: " + e.getMessage());
         }
@@ -507,20 +522,7 @@ public class MessageScreenshot {
      */
     private void restoreFixedElements(Page page) {
         try {
-            page.evaluate("""
-                () => {
-                    if (window._originalFixedElementStyles) {
-                        Object.values(window._originalFixedElementStyles).forEach(styleInfo => {
-                            if (styleInfo.element && styleInfo.element.style) {
-                                styleInfo.element.style.display = styleInfo.display;
-                                styleInfo.element.style.visibility = styleInfo.visibility;
-                                styleInfo.element.style.position = styleInfo.position;
-                            }
-                        });
-                        delete window._originalFixedElementStyles;
-                    }
-                }
-            """);
+            PageScripts.call(page, SCRIPTS, "restoreFixedElements");
         } catch (Exception e) {
             System.err.println("恢复固定元素失败: " + e.getMessage());
         }
@@ -552,57 +554,6 @@ public class MessageScreenshot {
         return result;
     }
 
-    /**
-     * 将多张图片垂直拼接成一张长图
-     */
-    private void combineImagesVertically(List<Path> imagePaths, Path outputPath) throws Exception {
-        if (imagePaths.isEmpty()) {
-            throw new IllegalArgumentException("没有图片可拼接");
-        }
-
-        List<BufferedImage> images = new ArrayList<>();
-        int totalHeight = 0;
-        int maxWidth = 0;
-
-        // 读取所有图片并计算总高度和最大宽度
-        for (Path path : imagePaths) {
-            BufferedImage img = ImageIO.read(path.toFile());
-            images.add(img);
-            totalHeight += img.getHeight();
-            maxWidth = Math.max(maxWidth, img.getWidth());
-        }
-
-        // 创建新的空白图片，增加边距
-        int padding = 20; // 左右边距
-        BufferedImage combined = new BufferedImage(maxWidth + padding * 2, totalHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = combined.createGraphics();
-
-        // 设置背景色（白色）
-        g.setColor(java.awt.Color.WHITE);
-        g.fillRect(0, 0, maxWidth + padding * 2, totalHeight);
-
-        // 将每张图片绘制到合适的位置
-        int currentY = 0;
-        for (BufferedImage img : images) {
-            // 居中放置图片，增加左右边距
-            int x = padding;
-            g.drawImage(img, x, currentY, null);
-            currentY += img.getHeight();
-
-            // 添加分隔线（可选）
-            if (currentY < totalHeight) {
-                g.setColor(java.awt.Color.LIGHT_GRAY);
-                g.drawLine(0, currentY, maxWidth + padding * 2, currentY);
-                currentY += 2; // 分隔线高度
-            }
-        }
-
-        g.dispose();
-
-        // 保存拼接后的图片
-        ImageIO.write(combined, "png", outputPath.toFile());
-    }
-
     /**
      * 全屏截图作为备用方案
      */
@@ -640,27 +591,4 @@ public class MessageScreenshot {
         }
     }
 
-    /**
-     * 清理临时文件
-     */
-    private void cleanupTempFiles(List<Path> tempImagePaths, Path finalScreenshotPath) {
-        // 删除所有临时消息截图
-        for (Path path : tempImagePaths) {
-            try {
-                Files.deleteIfExists(path);
-            } catch (IOException e) {
-                System.err.println("删除临时文件失败: " + path.toString() + ": " + e.getMessage());
-            }
-        }
-
-        // 删除最终拼接的图片（如果已上传）
-        if (finalScreenshotPath != null) {
-            try {
-                Files.deleteIfExists(finalScreenshotPath);
-            } catch (IOException e) {
-                System.err.println("删除最终截图失败: " + finalScreenshotPath.toString() + ": " + e.getMessage());
-            }
-        }
-    }
-
 }
\ No newline at end of file
@@ -21,6 +21,16 @@ public class MetasoUtil {
     @Autowired
     private WebSocketClientService webSocketClientService;
 
+    @Autowired
+    private ResponseWatcher responseWatcher;
+
+    @Autowired
+    private PollingGovernor pollingGovernor;
+
+    // 回答监听规则：最后一个 markdown 节点，内容静默即完成
+    private static final ResponseWatcher.Spec WATCH_SPEC = new ResponseWatcher.Spec("div.MuiBox-root .markdown-body")
+            .quietMillis(2000);
+
     //    检查登录
     public String  checkLogin(Page page, String userId) {
         Locator loginLocator = page.locator("//button[contains(text(),'登录/注册')]");
@@ -45,12 +55,38 @@ public class MetasoUtil {
     public String waitMetasoHtmlDom(Page page, String userId, String aiName, UserInfoRequest userInfoRequest) {
         try {
             String currentContent = "";
-            String lastContent = "";
             String textContent = "";
             long timeout = 60000 * 3; //  20分钟超时设置
             long startTime = System.currentTimeMillis();
+            // 内容 2 秒不变视为回答完成
+            PollingGovernor.Session poll = pollingGovernor.begin("metaso", 2000);
+            boolean isStream = userInfoRequest.getAiName() != null && userInfoRequest.getAiName().contains("stream");
+
+            // 优先等待页面推送的完成事件，监听未能接管时回退到轮询
+            boolean watchCompleted = false;
+            ResponseWatcher.Watch watch = responseWatcher.watch(page, WATCH_SPEC);
+            if (watch != null) {
+                if (isStream) {
+                    watch.onDelta(delta -> webSocketClientService.sendDelta(userInfoRequest, delta, userInfoRequest.getAiName()))
+                            .onReset(text -> webSocketClientService.sendReset(userInfoRequest, text, userInfoRequest.getAiName()));
+                }
+                boolean[] quotaExhausted = {false};
+                watchCompleted = watch.await(timeout, 2000, () -> {
+                    // 搜索额度用尽弹窗判断
+                    quotaExhausted[0] = page.getByText("今日搜索额度已用尽").isVisible();
+                    return !quotaExhausted[0];
+                });
+                if (quotaExhausted[0]) {
+                    return "今日搜索额度已用尽";
+                }
+                if (watchCompleted) {
+                    poll.complete(watch);
+                    currentContent = watch.getHtml();
+                    logInfo.sendTaskLog(aiName + "回答完成，正在提取内容", userId, aiName);
+                }
+            }
 
-            while (true) {
+            while (!watchCompleted) {
                 // 检查超时
                 if (System.currentTimeMillis() - startTime > timeout) {
                     break;
@@ -68,19 +104,20 @@ public class MetasoUtil {
                         .setTimeout(1200000) // 20分钟 = 1200000毫秒
                 );
                 textContent = contentLocator.textContent();
+                poll.observe(currentContent);
                 // 内容稳定且已完成回答时退出循环
-                if(userInfoRequest.getAiName() != null && userInfoRequest.getAiName().contains("stream")) {
+                if(isStream) {
                     webSocketClientService.sendMessage(userInfoRequest, McpResult.success(textContent, ""), userInfoRequest.getAiName());
                 }
-                if(!currentContent.isEmpty() && currentContent.equals(lastContent)) {
+                if(!currentContent.isEmpty() && poll.isStable(2000)) {
+                    poll.complete();
                     logInfo.sendTaskLog(aiName + "回答完成，正在提取内容", userId, aiName);
                     break;
                 }
-                lastContent = currentContent;
-                page.waitForTimeout(2000); // 5秒检查一次
+                poll.pause(page);
             }
             logInfo.sendTaskLog(aiName + "内容已提取完成", userId, aiName);
-            if(userInfoRequest.getAiName() != null && userInfoRequest.getAiName().contains("stream")) {
+            if(isStream) {
                 webSocketClientService.sendMessage(userInfoRequest, McpResult.success("END", ""), userInfoRequest.getAiName());
             }
             return currentContent;
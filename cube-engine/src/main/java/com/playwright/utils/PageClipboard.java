@@ -0,0 +1,129 @@
+package com.playwright.utils;
+
+import com.microsoft.playwright.Page;
+
+/**
+ * 页面级剪贴板捕获
+ * 通过初始化脚本拦截页面对 navigator.clipboard.writeText / write、document.execCommand('copy')
+ * 以及 copy 事件中 clipboardData.setData 的调用，把复制的文本记录在页面自己的缓冲区中。
+ * 读取复制结果时不再依赖系统剪贴板，不同页面之间互不干扰，也就不需要全局的剪贴板锁。
+ * 原有的剪贴板写入照常执行，页面行为不受影响。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月18日 11:05
+ */
+public class PageClipboard {
+
+    private static final PageScripts.Bundle SCRIPTS = new PageScripts.Bundle("clipboard", """
+            (() => {
+                const state = { seq: 0, text: null };
+                const record = (text) => {
+                    if (text === undefined || text === null) return;
+                    state.seq += 1;
+                    state.text = String(text);
+                };
+
+                const clipboard = navigator.clipboard;
+                if (clipboard) {
+                    if (clipboard.writeText) {
+                        const writeText = clipboard.writeText.bind(clipboard);
+                        clipboard.writeText = (text) => {
+                            record(text);
+                            return writeText(text);
+                        };
+                    }
+                    if (clipboard.write) {
+                        const write = clipboard.write.bind(clipboard);
+                        clipboard.write = (items) => {
+                            // 先调用原方法，保证仍在用户操作的激活期内
+                            const result = write(items);
+                            (async () => {
+                                for (const item of items || []) {
+                                    if (item.types && item.types.includes('text/plain')) {
+                                        record(await (await item.getType('text/plain')).text());
+                                        return;
+                                    }
+                                }
+                            })().catch(() => {});
+                            return result;
+                        };
+                    }
+                }
+
+                // copy 事件中页面通过 clipboardData.setData 写入的内容
+                let copying = false;
+                window.addEventListener('copy', () => {
+                    copying = true;
+                    setTimeout(() => { copying = false; }, 0);
+                }, true);
+                const setData = DataTransfer.prototype.setData;
+                DataTransfer.prototype.setData = function (format, data) {
+                    if (copying && (format === 'text/plain' || format === 'text')) {
+                        record(data);
+                    }
+                    return setData.call(this, format, data);
+                };
+
+                // 通过选中文本 + execCommand('copy') 复制的旧写法
+                const execCommand = document.execCommand.bind(document);
+                document.execCommand = (command, ...args) => {
+                    if (String(command).toLowerCase() !== 'copy') {
+                        return execCommand(command, ...args);
+                    }
+                    const el = document.activeElement;
+                    let selected = '';
+                    if (el && (el.tagName === 'TEXTAREA' || el.tagName === 'INPUT')) {
+                        selected = el.value.substring(el.selectionStart || 0, el.selectionEnd ?? el.value.length);
+                    } else {
+                        selected = String(document.getSelection() || '');
+                    }
+                    const before = state.seq;
+                    const result = execCommand(command, ...args);
+                    if (state.seq === before && selected) {
+                        record(selected);
+                    }
+                    return result;
+                };
+
+                return {
+                    seq() {
+                        return state.seq;
+                    },
+                    since(seq) {
+                        return state.seq > seq ? state.text : null;
+                    }
+                };
+            })()
+            """);
+
+    private PageClipboard() {
+    }
+
+    /**
+     * 在页面上安装拦截脚本，并返回当前的复制序号，复制操作之前调用
+     */
+    public static long mark(Page page) {
+        Object seq = PageScripts.call(page, SCRIPTS, "seq");
+        return seq instanceof Number ? ((Number) seq).longValue() : 0;
+    }
+
+    /**
+     * 等待页面在 mark 之后复制的文本
+     *
+     * @return 复制的文本，超时返回 null
+     */
+    public static String awaitText(Page page, long mark, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            Object text = PageScripts.call(page, SCRIPTS, "since", mark);
+            if (text instanceof String) {
+                return (String) text;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return null;
+            }
+            page.waitForTimeout(100);
+        }
+    }
+}
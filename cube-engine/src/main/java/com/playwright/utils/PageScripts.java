@@ -0,0 +1,133 @@
+package com.playwright.utils;
+
+import com.microsoft.playwright.Page;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 页面脚本注册表
+ * 把各平台轮询时反复执行的大段 JS 以函数集合的形式注入到页面的 window.__cube 命名空间下，
+ * 每个页面只注入一次（通过 addInitScript 在后续导航中自动恢复），轮询时只需发送 "window.__cube.平台.函数(参数)"，
+ * 避免每次 page.evaluate 都传输并重新编译几 KB 的脚本。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月17日 10:20
+ */
+@Slf4j
+public class PageScripts {
+
+    private static final String NAMESPACE = "__cube";
+
+    // 已安装的脚本集合，页面关闭后自动回收
+    private static final Map<Page, Set<String>> installed = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // 按 "集合.函数" 缓存调用表达式
+    private static final Map<String, String> callExpressions = new ConcurrentHashMap<>();
+
+    private static final AtomicLong installs = new AtomicLong();
+    private static final AtomicLong calls = new AtomicLong();
+    private static final AtomicLong reinstalls = new AtomicLong();
+
+    /**
+     * 一组页面函数，source 为对象字面量，如 { isGenerating() {...}, latest(sel) {...} }
+     */
+    public static class Bundle {
+        private final String name;
+        private final String installScript;
+
+        public Bundle(String name, String source) {
+            this.name = name;
+            // 同一文档中重复执行时保留已有实例，函数内部可以在 this 上保存状态
+            this.installScript = "(() => { const root = window." + NAMESPACE + " = window." + NAMESPACE + " || {};"
+                    + " if (!root['" + name + "']) root['" + name + "'] = (" + source + "); })();";
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private PageScripts() {
+    }
+
+    /**
+     * 调用脚本集合中的函数，首次调用时在页面上安装
+     *
+     * @param page     页面
+     * @param bundle   脚本集合
+     * @param function 函数名
+     * @return 函数返回值，类型规则与 page.evaluate 相同
+     */
+    public static Object call(Page page, Bundle bundle, String function) {
+        return call(page, bundle, function, null);
+    }
+
+    /**
+     * 调用脚本集合中的函数，首次调用时在页面上安装
+     *
+     * @param arg 传给函数的参数，可以是 ElementHandle、Map、基本类型等 page.evaluate 支持的类型
+     */
+    public static Object call(Page page, Bundle bundle, String function, Object arg) {
+        install(page, bundle);
+        calls.incrementAndGet();
+        String expression = callExpressions.computeIfAbsent(bundle.name + "." + function,
+                key -> "(a) => window." + NAMESPACE + "['" + bundle.name + "']." + function + "(a)");
+        try {
+            return page.evaluate(expression, arg);
+        } catch (RuntimeException e) {
+            // 初始化脚本在页面导航后才生效，当前文档可能被整体替换（如 document.open），重新注入后再试一次
+            if (!isMissing(e)) {
+                throw e;
+            }
+            reinstalls.incrementAndGet();
+            page.evaluate(bundle.installScript);
+            return page.evaluate(expression, arg);
+        }
+    }
+
+    /**
+     * 在页面上安装脚本集合：注册为初始化脚本并立即注入当前文档
+     */
+    public static void install(Page page, Bundle bundle) {
+        synchronized (installed) {
+            Set<String> names = installed.computeIfAbsent(page, key -> new HashSet<>());
+            if (names.contains(bundle.name)) {
+                return;
+            }
+            page.addInitScript(bundle.installScript);
+            try {
+                page.evaluate(bundle.installScript);
+            } catch (RuntimeException e) {
+                // 页面正在导航，初始化脚本会在新文档中生效
+                log.debug("注入页面脚本失败，等待导航后生效: {}", bundle.name);
+            }
+            names.add(bundle.name);
+            installs.incrementAndGet();
+        }
+    }
+
+    private static boolean isMissing(RuntimeException e) {
+        String message = e.getMessage();
+        return message != null && (message.contains(NAMESPACE) || message.contains("is not a function")
+                || message.contains("Cannot read properties of undefined"));
+    }
+
+    /**
+     * 获取注入与调用次数
+     */
+    public static Map<String, Long> getStats() {
+        return Map.of(
+                "installs", installs.get(),
+                "calls", calls.get(),
+                "reinstalls", reinstalls.get()
+        );
+    }
+}
@@ -0,0 +1,305 @@
+package com.playwright.utils;
+
+import com.microsoft.playwright.Page;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 轮询节奏统一调度
+ * 各平台等待回答的轮询循环不再各自写死间隔，每次等待多久由这里决定：
+ * 以平台的基础间隔为准，还没有内容且远未到该平台历史首字时间时放慢，内容持续增长且远未到历史完成时间时放慢，
+ * 增长速度明显回落或内容停止变化时加快以尽快确认完成；引擎同时运行的任务越多整体越慢。
+ * 每个平台记录最近的首字时间与完成时间，既用于上面的判断，也通过 ConcurrencyController 输出分布。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月28日 11:05
+ */
+@Slf4j
+@Component
+public class PollingGovernor {
+
+    // 历史样本少于该数量时不参考历史
+    private static final int MIN_HISTORY = 5;
+
+    @Autowired
+    private BrowserConcurrencyManager concurrencyManager;
+
+    // 轮询间隔下限（毫秒）
+    @Value("${cube.polling.min-millis:200}")
+    private long minMillis;
+
+    // 轮询间隔上限（毫秒）
+    @Value("${cube.polling.max-millis:5000}")
+    private long maxMillis;
+
+    // 各平台基础间隔，格式 平台:毫秒，多个用逗号分隔
+    @Value("${cube.polling.base-millis:deepseek:300,db:1500,ty:1000,metaso:1000,yb:1000,baidu:1000,Zhihu:1500}")
+    private String baseMillisConfig;
+
+    // 未配置基础间隔的平台使用的间隔（毫秒）
+    @Value("${cube.polling.default-base-millis:1000}")
+    private long defaultBaseMillis;
+
+    // 引擎满载时间隔增加的比例，按运行任务数占并发上限的比例线性增加
+    @Value("${cube.polling.load-weight:1.0}")
+    private double loadWeight;
+
+    // 每个平台保留的首字与完成时间样本数
+    @Value("${cube.polling.history-size:200}")
+    private int historySize;
+
+    private final Map<String, Long> baseMillis = new HashMap<>();
+    private final Map<String, Profile> profiles = new ConcurrentHashMap<>();
+
+    /**
+     * 固定容量的耗时样本，写满后覆盖最早的样本
+     */
+    private static class History {
+        private final long[] samples;
+        private int size;
+        private int next;
+
+        private History(int capacity) {
+            this.samples = new long[Math.max(1, capacity)];
+        }
+
+        private synchronized void add(long value) {
+            samples[next] = value;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        /**
+         * @return 样本不足时返回 0
+         */
+        private synchronized long percentile(int percent, int minSize) {
+            if (size < Math.max(1, minSize)) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percent / 100.0 * size) - 1;
+            return sorted[Math.max(0, Math.min(size - 1, index))];
+        }
+    }
+
+    /**
+     * 单个平台的历史与计数
+     */
+    private class Profile {
+        private final History firstContent = new History(historySize);
+        private final History complete = new History(historySize);
+        private final AtomicLong sessions = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong polls = new AtomicLong();
+        private final AtomicLong totalIntervalMillis = new AtomicLong();
+    }
+
+    /**
+     * 平台轮询统计
+     *
+     * @param sessions        等待次数
+     * @param completed       检测到完成的次数，其余为超时或异常
+     * @param polls           轮询次数
+     * @param avgInterval     平均轮询间隔（毫秒）
+     * @param firstContentP50 首字时间中位数（毫秒）
+     * @param firstContentP90 首字时间 90 分位（毫秒）
+     * @param completeP50     完成时间中位数（毫秒）
+     * @param completeP90     完成时间 90 分位（毫秒）
+     * @param completeMax     最近样本中最长的完成时间（毫秒）
+     */
+    public record PollStats(long sessions, long completed, long polls, long avgInterval,
+                            long firstContentP50, long firstContentP90,
+                            long completeP50, long completeP90, long completeMax) {
+    }
+
+    /**
+     * 一次等待回答的过程
+     */
+    public class Session {
+        private final Profile profile;
+        private final long base;
+        private final long stableMillis;
+        private final long startTime = System.currentTimeMillis();
+        private String lastContent;
+        private boolean changed;
+        private long firstContentAt;
+        private long lastChangeAt;
+        private long lastObserveAt = startTime;
+        // 内容增长速度（字符/秒）的滑动平均与峰值
+        private double rate;
+        private double peakRate;
+        private boolean completed;
+
+        private Session(Profile profile, long base, long stableMillis) {
+            this.profile = profile;
+            this.base = base;
+            this.stableMillis = stableMillis;
+        }
+
+        /**
+         * 记录本次轮询读到的内容
+         */
+        public void observe(String content) {
+            long now = System.currentTimeMillis();
+            if (content == null || content.isEmpty()) {
+                // 已有的内容被清空同样算作变化
+                changed = lastContent != null && !lastContent.isEmpty();
+                if (changed) {
+                    lastChangeAt = now;
+                    lastContent = "";
+                }
+                lastObserveAt = now;
+                return;
+            }
+            if (firstContentAt == 0) {
+                firstContentAt = now;
+            }
+            changed = !content.equals(lastContent);
+            if (changed) {
+                int growth = content.length() - (lastContent == null ? 0 : lastContent.length());
+                long span = Math.max(1, now - lastObserveAt);
+                double current = Math.max(0, growth) * 1000.0 / span;
+                rate = lastContent == null ? current : rate * 0.6 + current * 0.4;
+                peakRate = Math.max(peakRate, rate);
+                lastChangeAt = now;
+                lastContent = content;
+            }
+            lastObserveAt = now;
+        }
+
+        /**
+         * 内容非空且至少 window 毫秒没有变化
+         */
+        public boolean isStable(long window) {
+            return firstContentAt > 0 && !changed && System.currentTimeMillis() - lastChangeAt >= window;
+        }
+
+        /**
+         * 下一次轮询前应等待的时间（毫秒）
+         */
+        public long next() {
+            long now = System.currentTimeMillis();
+            long elapsed = now - startTime;
+            double interval = base;
+            if (firstContentAt == 0) {
+                // 还没有内容，离该平台通常出首字的时间还远
+                long typical = profile.firstContent.percentile(50, MIN_HISTORY);
+                if (typical > 0 && elapsed < typical / 2) {
+                    interval = base * 2;
+                }
+            } else if (changed) {
+                long typical = profile.complete.percentile(50, MIN_HISTORY);
+                if (peakRate > 0 && rate < peakRate * 0.25) {
+                    // 增长明显放缓，接近尾声
+                    interval = base * 0.5;
+                } else if (typical > 0 && elapsed < typical / 2) {
+                    interval = base * 1.5;
+                }
+            } else if (stableMillis > 0) {
+                // 内容未变化，在满足稳定时长时正好再看一次
+                interval = Math.min(base, Math.max(0, stableMillis - (now - lastChangeAt)));
+            } else {
+                interval = base * 0.5;
+            }
+            interval *= 1 + loadWeight * Math.min(1.5, Math.max(0, concurrencyManager.getSystemLoad()));
+            long result = Math.max(minMillis, Math.min(maxMillis, Math.round(interval)));
+            profile.polls.incrementAndGet();
+            profile.totalIntervalMillis.addAndGet(result);
+            return result;
+        }
+
+        /**
+         * 按 next() 的间隔等待，期间页面事件照常派发
+         */
+        public void pause(Page page) {
+            page.waitForTimeout(next());
+        }
+
+        /**
+         * 回答已完成，记录首字与完成时间；从未读到内容时不记录首字时间
+         */
+        public void complete() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            long now = System.currentTimeMillis();
+            profile.completed.incrementAndGet();
+            if (firstContentAt > 0) {
+                profile.firstContent.add(firstContentAt - startTime);
+            }
+            profile.complete.add(now - startTime);
+        }
+
+        /**
+         * 回答由 ResponseWatcher 推送完成时记录耗时
+         */
+        public void complete(ResponseWatcher.Watch watch) {
+            if (firstContentAt == 0 && watch.getFirstEventTime() > 0) {
+                firstContentAt = watch.getFirstEventTime();
+            }
+            complete();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (baseMillisConfig == null) {
+            return;
+        }
+        for (String item : baseMillisConfig.split(",")) {
+            String[] pair = item.split(":", 2);
+            if (pair.length != 2) {
+                continue;
+            }
+            try {
+                baseMillis.put(pair[0].trim().toLowerCase(Locale.ROOT), Long.parseLong(pair[1].trim()));
+            } catch (NumberFormatException e) {
+                log.warn("轮询间隔配置无效: {}", item);
+            }
+        }
+    }
+
+    /**
+     * 开始一次等待
+     *
+     * @param platform     平台，与 createPersistentBrowserContext 的 name 一致
+     * @param stableMillis 调用方判定完成所需的内容不变时长，内容停止变化后据此安排下一次轮询；0 表示尽快复查
+     */
+    public Session begin(String platform, long stableMillis) {
+        String name = platform.toLowerCase(Locale.ROOT);
+        Profile profile = profiles.computeIfAbsent(name, k -> new Profile());
+        profile.sessions.incrementAndGet();
+        return new Session(profile, baseMillis.getOrDefault(name, defaultBaseMillis), stableMillis);
+    }
+
+    /**
+     * 各平台的轮询次数与首字、完成时间分布
+     */
+    public Map<String, PollStats> getStats() {
+        Map<String, PollStats> stats = new TreeMap<>();
+        for (Map.Entry<String, Profile> entry : profiles.entrySet()) {
+            Profile profile = entry.getValue();
+            long polls = profile.polls.get();
+            stats.put(entry.getKey(), new PollStats(profile.sessions.get(), profile.completed.get(), polls,
+                    polls == 0 ? 0 : profile.totalIntervalMillis.get() / polls,
+                    profile.firstContent.percentile(50, 1), profile.firstContent.percentile(90, 1),
+                    profile.complete.percentile(50, 1), profile.complete.percentile(90, 1),
+                    profile.complete.percentile(100, 1)));
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,254 @@
+package com.playwright.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.CDPSession;
+import com.microsoft.playwright.Page;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 按平台拦截非必要资源
+ * 每个平台一份拦截规则：字体、音视频以及统计/监控上报地址，转换成通配符地址后通过页面的 CDP 会话下发 Network.setBlockedURLs，
+ * 由浏览器直接拦截，请求不经过 Java。不使用 context.route()：Playwright 注册任意路由后会关闭该页面的 HTTP 缓存，
+ * 并让所有请求暂停等待 Java 处理，抵消了上下文复用带来的缓存收益。
+ * 代价是每个页面多一个 CDP 会话，开启 Network 域后网络事件会异步推送给 Java（不阻塞请求），被拦截的请求据此计数；
+ * 跨域 iframe 运行在独立进程中，其中的请求不受规则约束。图片、样式和脚本一律放行，扫码登录与页面交互依赖它们。
+ * 某个平台因拦截出现异常时可在运行时关闭该平台的规则；Playwright 对象只能在所属线程使用，
+ * 已打开的页面在下一次主框架导航时同步开关状态，新页面立即生效。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月27日 10:15
+ */
+@Slf4j
+@Component
+public class ResourceBlocker {
+
+    private static final List<String> FONT_EXTENSIONS = List.of("woff", "woff2", "ttf", "otf", "eot");
+    private static final List<String> MEDIA_EXTENSIONS = List.of("mp4", "webm", "m3u8", "mp3", "m4a", "aac", "ogg", "wav", "flv", "mov");
+
+    // 所有平台共用的统计上报地址
+    private static final List<String> COMMON_TRACKERS = List.of(
+            "google-analytics.com", "googletagmanager.com", "doubleclick.net", "hm.baidu.com", "cnzz.com");
+
+    /**
+     * 平台的拦截规则
+     *
+     * @param fonts    是否拦截字体文件
+     * @param media    是否拦截音视频
+     * @param trackers 额外拦截的统计/监控上报域名
+     */
+    private record Profile(boolean fonts, boolean media, List<String> trackers) {
+    }
+
+    // 配置目录名 -> 拦截规则，与 createPersistentBrowserContext 的 name 一致
+    private static final Map<String, Profile> PROFILES = Map.of(
+            "deepseek", new Profile(true, true, List.of()),
+            // 豆包：字节埋点与前端监控，安全校验相关的 SDK 不能拦截
+            "db", new Profile(true, true, List.of("mcs.zijieapi.com", "mon.zijieapi.com")),
+            // 元宝：腾讯灯塔埋点与前端监控
+            "yb", new Profile(true, true, List.of("beacon.qq.com", "aegis.qq.com")),
+            // 通义：阿里埋点与前端监控
+            "ty", new Profile(true, true, List.of("gm.mmstat.com", "log.mmstat.com", "arms-retcode.aliyuncs.com")),
+            "metaso", new Profile(true, true, List.of()),
+            "baidu", new Profile(true, true, List.of("fclog.baidu.com")),
+            // 知乎：信息流中的视频自动播放占用大量流量
+            "Zhihu", new Profile(true, true, List.of("zhihu-web-analytics.zhihu.com"))
+    );
+
+    // 是否启用资源拦截，关闭后新建的页面不再下发拦截规则
+    @Value("${cube.resource-block.enabled:true}")
+    private boolean enabled;
+
+    // 启动时即关闭规则的平台，多个用逗号分隔
+    @Value("${cube.resource-block.disabled:}")
+    private String disabledConfig;
+
+    // 各平台额外拦截的域名，格式 平台:域名，多个用逗号分隔
+    @Value("${cube.resource-block.extra-trackers:}")
+    private String extraTrackersConfig;
+
+    // 平台 -> Network.setBlockedURLs 的通配符地址
+    private final Map<String, List<String>> blockedUrls = new ConcurrentHashMap<>();
+    private final Set<String> disabled = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicLong> blockedCounts = new ConcurrentHashMap<>();
+
+    /**
+     * 平台拦截统计
+     *
+     * @param enabled 规则是否生效
+     * @param blocked 浏览器按规则拦截的请求数
+     */
+    public record ProfileStats(boolean enabled, long blocked) {
+    }
+
+    @PostConstruct
+    public void init() {
+        Map<String, List<String>> extra = new TreeMap<>();
+        for (String item : split(extraTrackersConfig)) {
+            String[] pair = item.split(":", 2);
+            if (pair.length == 2 && !pair[1].isBlank()) {
+                extra.computeIfAbsent(pair[0].trim().toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(pair[1].trim());
+            }
+        }
+        for (Map.Entry<String, Profile> entry : PROFILES.entrySet()) {
+            String platform = entry.getKey().toLowerCase(Locale.ROOT);
+            List<String> trackers = new ArrayList<>(COMMON_TRACKERS);
+            trackers.addAll(entry.getValue().trackers());
+            trackers.addAll(extra.getOrDefault(platform, List.of()));
+            blockedUrls.put(platform, compile(entry.getValue(), trackers));
+        }
+        for (String platform : split(disabledConfig)) {
+            disabled.add(platform.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * 转换成 Network.setBlockedURLs 的通配符地址，通配符需匹配完整地址
+     */
+    private static List<String> compile(Profile profile, List<String> trackers) {
+        List<String> urls = new ArrayList<>();
+        for (String host : trackers) {
+            urls.add("*://" + host + "/*");
+            urls.add("*://*." + host + "/*");
+        }
+        if (profile.fonts()) {
+            addExtensions(urls, FONT_EXTENSIONS);
+        }
+        if (profile.media()) {
+            addExtensions(urls, MEDIA_EXTENSIONS);
+        }
+        return List.copyOf(urls);
+    }
+
+    private static void addExtensions(List<String> urls, List<String> extensions) {
+        for (String extension : extensions) {
+            urls.add("*." + extension);
+            urls.add("*." + extension + "?*");
+        }
+    }
+
+    private static List<String> split(String config) {
+        List<String> items = new ArrayList<>();
+        if (config != null) {
+            for (String item : config.split(",")) {
+                if (!item.isBlank()) {
+                    items.add(item.trim());
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 为上下文中已有和之后打开的页面下发平台的拦截规则，每个上下文只需调用一次
+     *
+     * @param platform 平台，与 createPersistentBrowserContext 的 name 一致
+     * @return 原上下文
+     */
+    public BrowserContext apply(BrowserContext context, String platform) {
+        if (!enabled || context == null || platform == null) {
+            return context;
+        }
+        String name = platform.toLowerCase(Locale.ROOT);
+        if (!blockedUrls.containsKey(name)) {
+            return context;
+        }
+        Consumer<Page> attach = page -> attach(context, page, name);
+        try {
+            context.pages().forEach(attach);
+            context.onPage(attach);
+        } catch (Exception e) {
+            log.warn("注册资源拦截规则失败: {}", platform, e);
+        }
+        return context;
+    }
+
+    private void attach(BrowserContext context, Page page, String platform) {
+        try {
+            CDPSession session = context.newCDPSession(page);
+            AtomicLong blocked = blockedCounts.computeIfAbsent(platform, k -> new AtomicLong());
+            session.on("Network.loadingFailed", event -> {
+                if (event.has("blockedReason") && "inspector".equals(event.get("blockedReason").getAsString())) {
+                    blocked.incrementAndGet();
+                }
+            });
+            // 不缓存响应体，只需要拦截与失败事件
+            JsonObject enable = new JsonObject();
+            enable.addProperty("maxTotalBufferSize", 0);
+            enable.addProperty("maxResourceBufferSize", 0);
+            session.send("Network.enable", enable);
+            boolean active = !disabled.contains(platform);
+            send(session, active ? blockedUrls.get(platform) : List.of());
+            AtomicBoolean applied = new AtomicBoolean(active);
+            page.onFrameNavigated(frame -> {
+                boolean wanted = !disabled.contains(platform);
+                if (frame.parentFrame() == null && applied.get() != wanted) {
+                    try {
+                        send(session, wanted ? blockedUrls.get(platform) : List.of());
+                        applied.set(wanted);
+                    } catch (Exception e) {
+                        log.debug("同步资源拦截规则失败: {}", platform, e);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            // 页面已关闭或浏览器不支持 CDP 时不拦截
+            log.debug("下发资源拦截规则失败: {}", platform, e);
+        }
+    }
+
+    private static void send(CDPSession session, List<String> urls) {
+        JsonArray items = new JsonArray();
+        urls.forEach(items::add);
+        JsonObject params = new JsonObject();
+        params.add("urls", items);
+        session.send("Network.setBlockedURLs", params);
+    }
+
+    /**
+     * 运行时开启或关闭平台的拦截规则，新页面立即生效，已打开的页面在下一次主框架导航时生效
+     *
+     * @return 平台没有拦截规则时返回 false
+     */
+    public boolean setEnabled(String platform, boolean enable) {
+        String name = platform.toLowerCase(Locale.ROOT);
+        if (!blockedUrls.containsKey(name)) {
+            return false;
+        }
+        if (enable) {
+            disabled.remove(name);
+        } else {
+            disabled.add(name);
+        }
+        log.info("资源拦截规则已{}: {}", enable ? "开启" : "关闭", platform);
+        return true;
+    }
+
+    /**
+     * 各平台拦截统计
+     */
+    public Map<String, ProfileStats> getStats() {
+        Map<String, ProfileStats> stats = new TreeMap<>();
+        for (String platform : blockedUrls.keySet()) {
+            AtomicLong blocked = blockedCounts.get(platform);
+            stats.put(platform, new ProfileStats(enabled && !disabled.contains(platform), blocked == null ? 0 : blocked.get()));
+        }
+        return stats;
+    }
+}
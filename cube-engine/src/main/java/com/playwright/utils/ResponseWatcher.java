@@ -0,0 +1,427 @@
+package com.playwright.utils;
+
+import com.alibaba.fastjson.JSONObject;
+import com.microsoft.playwright.Page;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * AI回答监听器
+ * 在页面中注入 MutationObserver，由浏览器侧判断回答内容的增量与完成状态，
+ * 再通过 page.exposeBinding 主动推送给 Java，替代每隔几百毫秒一次的 page.evaluate 轮询。
+ * <p>
+ * 注意：绑定回调只会在当前线程执行 Playwright 调用时派发，等待时必须使用 page.waitForTimeout 而不是 Thread.sleep。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月10日 09:30
+ */
+@Slf4j
+@Component
+public class ResponseWatcher {
+
+    private static final String BINDING_NAME = "__cubeWatchEmit";
+
+    // 开始监听后迟迟没有内容变化（如回答在监听前已结束），放弃监听交给调用方轮询
+    private static final long START_TIMEOUT = 20000;
+
+    private static final String WATCH_SCRIPT = """
+            (cfg) => {
+                const root = window.__cubeWatchers = window.__cubeWatchers || {};
+                if (root[cfg.id]) root[cfg.id].stop();
+                const pick = () => {
+                    const list = document.querySelectorAll(cfg.content);
+                    return list.length ? list[list.length - 1] : null;
+                };
+                const count = (sel) => sel ? document.querySelectorAll(sel).length : 0;
+                const visible = (sel) => {
+                    if (!sel) return false;
+                    for (const el of document.querySelectorAll(sel)) {
+                        const style = window.getComputedStyle(el);
+                        if (style.display !== 'none' && style.visibility !== 'hidden') return true;
+                    }
+                    return false;
+                };
+                const initial = cfg.resume ? null : pick();
+                const initialText = initial ? (initial.innerText || '') : '';
+                const initialDone = cfg.resume ? -1 : count(cfg.done);
+                // 恢复监听时浏览器侧不知道已推送的内容，首次以全文重置
+                let sent = cfg.resume ? null : '';
+                let started = !!cfg.resume;
+                let finished = false;
+                let flushTimer = null;
+                let quietTimer = null;
+                let lastChange = Date.now();
+                const emit = (event) => {
+                    event.id = cfg.id;
+                    window[cfg.binding](JSON.stringify(event));
+                };
+                const finish = (el) => {
+                    finished = true;
+                    observer.disconnect();
+                    emit({type: 'done', text: el.innerText || '', html: el.innerHTML});
+                };
+                const check = () => {
+                    clearTimeout(quietTimer);
+                    quietTimer = setTimeout(() => {
+                        if (finished || !started) return;
+                        const el = pick();
+                        const idle = Date.now() - lastChange >= cfg.idleMillis;
+                        if (!el || !(el.innerText || '').trim()
+                                || visible(cfg.generating) || (!idle && cfg.done && count(cfg.done) <= initialDone)) {
+                            check();
+                            return;
+                        }
+                        finish(el);
+                    }, cfg.quietMillis);
+                };
+                const flush = () => {
+                    flushTimer = null;
+                    if (finished) return;
+                    const el = pick();
+                    if (!el) return;
+                    const current = el.innerText || '';
+                    if (!started) {
+                        if (el === initial && current === initialText) return;
+                        started = true;
+                    }
+                    if (current !== sent) {
+                        if (sent !== null && current.startsWith(sent)) {
+                            emit({type: 'delta', delta: current.slice(sent.length)});
+                        } else {
+                            emit({type: 'reset', text: current});
+                        }
+                        sent = current;
+                        lastChange = Date.now();
+                    }
+                    check();
+                };
+                const observer = new MutationObserver(() => {
+                    if (!flushTimer) flushTimer = setTimeout(flush, cfg.throttleMillis);
+                });
+                observer.observe(document.body, {childList: true, subtree: true, characterData: true,
+                    attributes: true, attributeFilter: ['class', 'style', 'disabled']});
+                root[cfg.id] = {stop: () => {
+                    finished = true;
+                    observer.disconnect();
+                    clearTimeout(flushTimer);
+                    clearTimeout(quietTimer);
+                }};
+                flush();
+                return true;
+            }
+            """;
+
+    private final AtomicLong idGenerator = new AtomicLong();
+
+    // 已注册绑定的页面及其上的监听，页面关闭后自动回收
+    private final Map<Page, Map<String, Watch>> pageWatches = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * 监听规则，选择器均为 CSS 选择器
+     */
+    public static class Spec {
+        private final String content;
+        private String generating;
+        private String done;
+        private int quietMillis = 1500;
+        private int throttleMillis = 150;
+        private int idleMillis = 30000;
+
+        /**
+         * @param content 回答内容节点，取最后一个匹配项
+         */
+        public Spec(String content) {
+            this.content = content;
+        }
+
+        /**
+         * 生成中标记（如停止按钮），可见时不判定完成
+         */
+        public Spec generating(String selector) {
+            this.generating = selector;
+            return this;
+        }
+
+        /**
+         * 完成标记（如复制按钮），数量比开始监听时增加后才判定完成
+         */
+        public Spec done(String selector) {
+            this.done = selector;
+            return this;
+        }
+
+        /**
+         * 内容静默多久后检查完成状态
+         */
+        public Spec quietMillis(int quietMillis) {
+            this.quietMillis = quietMillis;
+            return this;
+        }
+
+        /**
+         * 增量推送的最小间隔
+         */
+        public Spec throttleMillis(int throttleMillis) {
+            this.throttleMillis = throttleMillis;
+            return this;
+        }
+
+        /**
+         * 内容超过该时间无变化且不在生成中时，即使没有出现完成标记也判定完成
+         */
+        public Spec idleMillis(int idleMillis) {
+            this.idleMillis = idleMillis;
+            return this;
+        }
+    }
+
+    /**
+     * 一次监听，保存浏览器推送过来的内容与完成状态
+     */
+    public class Watch {
+        private final String id;
+        private final Page page;
+        private final Spec spec;
+        private final StringBuilder text = new StringBuilder();
+        private final List<Consumer<String>> deltaListeners = new CopyOnWriteArrayList<>();
+        private final List<Consumer<String>> resetListeners = new CopyOnWriteArrayList<>();
+        private volatile String html = "";
+        private volatile boolean started;
+        private volatile boolean done;
+        private final long createdTime = System.currentTimeMillis();
+        private volatile long lastEventTime = createdTime;
+        private volatile long firstEventTime;
+
+        private Watch(String id, Page page, Spec spec) {
+            this.id = id;
+            this.page = page;
+            this.spec = spec;
+        }
+
+        /**
+         * 注册增量回调，参数为新增的文本
+         */
+        public Watch onDelta(Consumer<String> listener) {
+            deltaListeners.add(listener);
+            return this;
+        }
+
+        /**
+         * 注册改写回调，参数为改写后的全文，之后的增量以该全文为基准
+         */
+        public Watch onReset(Consumer<String> listener) {
+            resetListeners.add(listener);
+            return this;
+        }
+
+        public synchronized String getText() {
+            return text.toString();
+        }
+
+        public String getHtml() {
+            return html;
+        }
+
+        public boolean isStarted() {
+            return started;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public long getLastEventTime() {
+            return lastEventTime;
+        }
+
+        /**
+         * 收到第一条推送的时间，未收到时为 0
+         */
+        public long getFirstEventTime() {
+            return firstEventTime;
+        }
+
+        /**
+         * 等待回答完成
+         *
+         * @param timeout    最长等待时间（毫秒）
+         * @param tickMillis 每次等待的时长，期间派发浏览器推送的事件
+         * @param onTick     每次等待后执行（截图、弹窗检测等），返回 false 时放弃监听
+         * @return 是否检测到完成；超时、放弃或迟迟没有内容变化时返回 false
+         */
+        public boolean await(long timeout, int tickMillis, BooleanSupplier onTick) {
+            long deadline = System.currentTimeMillis() + timeout;
+            try {
+                while (!done && System.currentTimeMillis() < deadline) {
+                    page.waitForTimeout(Math.min(tickMillis, Math.max(1, deadline - System.currentTimeMillis())));
+                    if (done) {
+                        break;
+                    }
+                    if (!started && System.currentTimeMillis() - createdTime > START_TIMEOUT) {
+                        return false;
+                    }
+                    if (onTick != null && !onTick.getAsBoolean()) {
+                        return false;
+                    }
+                }
+                return done;
+            } finally {
+                if (!done) {
+                    close();
+                }
+            }
+        }
+
+        public boolean await(long timeout) {
+            return await(timeout, 1000, null);
+        }
+
+        /**
+         * 停止监听
+         */
+        public void close() {
+            Map<String, Watch> watches = pageWatches.get(page);
+            if (watches != null) {
+                watches.remove(id);
+            }
+            try {
+                if (!page.isClosed()) {
+                    page.evaluate("(id) => { const w = window.__cubeWatchers && window.__cubeWatchers[id]; if (w) w.stop(); }", id);
+                }
+            } catch (Exception e) {
+                // 页面已跳转或关闭，忽略
+            }
+        }
+
+        private void accept(JSONObject event) {
+            lastEventTime = System.currentTimeMillis();
+            if (firstEventTime == 0) {
+                firstEventTime = lastEventTime;
+            }
+            started = true;
+            String type = event.getString("type");
+            if ("delta".equals(type)) {
+                String delta = event.getString("delta");
+                synchronized (this) {
+                    text.append(delta);
+                }
+                for (Consumer<String> listener : deltaListeners) {
+                    try {
+                        listener.accept(delta);
+                    } catch (Exception e) {
+                        log.warn("回答增量回调执行失败: {}", e.getMessage());
+                    }
+                }
+            } else if ("reset".equals(type)) {
+                // 已渲染的内容被改写（如 markdown 重新排版），更新全文并通知下游重新对齐
+                String reset = event.getString("text");
+                synchronized (this) {
+                    text.setLength(0);
+                    text.append(reset);
+                }
+                for (Consumer<String> listener : resetListeners) {
+                    try {
+                        listener.accept(reset);
+                    } catch (Exception e) {
+                        log.warn("回答改写回调执行失败: {}", e.getMessage());
+                    }
+                }
+            } else if ("done".equals(type)) {
+                synchronized (this) {
+                    text.setLength(0);
+                    text.append(event.getString("text"));
+                }
+                html = event.getString("html");
+                done = true;
+                Map<String, Watch> watches = pageWatches.get(page);
+                if (watches != null) {
+                    watches.remove(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在页面上开始监听回答
+     *
+     * @return 监听对象；注入失败时返回 null，调用方应回退到轮询
+     */
+    public Watch watch(Page page, Spec spec) {
+        try {
+            Map<String, Watch> watches = bind(page);
+            Watch watch = new Watch("w" + idGenerator.incrementAndGet(), page, spec);
+            watches.put(watch.id, watch);
+            if (!inject(watch, false)) {
+                watches.remove(watch.id);
+                return null;
+            }
+            return watch;
+        } catch (Exception e) {
+            log.warn("注入回答监听脚本失败，回退到轮询: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 每个页面只注册一次绑定，页面整页跳转后重新注入仍在进行的监听
+     */
+    private Map<String, Watch> bind(Page page) {
+        synchronized (pageWatches) {
+            Map<String, Watch> watches = pageWatches.get(page);
+            if (watches != null) {
+                return watches;
+            }
+            Map<String, Watch> created = new ConcurrentHashMap<>();
+            page.exposeBinding(BINDING_NAME, (source, args) -> {
+                if (args.length == 0 || !(args[0] instanceof String)) {
+                    return null;
+                }
+                JSONObject event = JSONObject.parseObject((String) args[0]);
+                Watch watch = created.get(event.getString("id"));
+                if (watch != null) {
+                    watch.accept(event);
+                }
+                return null;
+            });
+            page.onLoad(loaded -> created.values().forEach(watch -> inject(watch, true)));
+            page.onClose(closed -> pageWatches.remove(closed));
+            pageWatches.put(page, created);
+            return created;
+        }
+    }
+
+    private boolean inject(Watch watch, boolean resume) {
+        Map<String, Object> cfg = new HashMap<>();
+        cfg.put("id", watch.id);
+        cfg.put("binding", BINDING_NAME);
+        cfg.put("content", watch.spec.content);
+        cfg.put("quietMillis", watch.spec.quietMillis);
+        cfg.put("throttleMillis", watch.spec.throttleMillis);
+        cfg.put("idleMillis", watch.spec.idleMillis);
+        cfg.put("resume", resume);
+        if (watch.spec.generating != null) {
+            cfg.put("generating", watch.spec.generating);
+        }
+        if (watch.spec.done != null) {
+            cfg.put("done", watch.spec.done);
+        }
+        try {
+            return Boolean.TRUE.equals(watch.page.evaluate(WATCH_SCRIPT, cfg));
+        } catch (Exception e) {
+            log.warn("注入回答监听脚本失败: {}", e.getMessage());
+            return false;
+        }
+    }
+}
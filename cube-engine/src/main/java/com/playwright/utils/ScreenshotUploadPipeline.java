@@ -0,0 +1,404 @@
+package com.playwright.utils;
+
+import com.alibaba.fastjson.JSONObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 截图后台上传管道
+ * 截图在调用线程上以内存字节的形式完成，上传交给后台线程，轮询循环不再等待上传。
+ * <p>
+ * 过程截图（每隔几秒一张的进度图）进入有界队列，队列满时丢弃最旧的一张；
+ * 同一页面的过程截图与上一张内容相同时直接跳过。步骤截图（登录二维码、操作节点等）不丢弃、不去重。
+ * 所有上传共用 ScreenshotUtil 中的连接池。
+ * <p>
+ * 截图按用户分道排队，同一用户的截图同一时间只由一个线程按提交顺序上传，图片地址的推送顺序与截图顺序一致；
+ * 最终结果通过 afterPending 排在该用户已提交的截图之后发送，不会早于过程截图到达前端。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月17日 16:40
+ */
+@Slf4j
+@Component
+public class ScreenshotUploadPipeline {
+
+    // 每个用户的过程截图排队上限，超出后丢弃该用户最旧的过程截图
+    @Value("${cube.screenshot.upload-queue:16}")
+    private int maxProgressQueue;
+
+    // 上传线程数
+    @Value("${cube.screenshot.upload-workers:2}")
+    private int workers;
+
+    // 同一页面的过程截图内容未变化时跳过上传
+    @Value("${cube.screenshot.skip-unchanged:true}")
+    private boolean skipUnchanged;
+
+    @Value("${cube.uploadurl}")
+    private String uploadUrl;
+
+    // 每个工作线程一次最多从同一队列取出的截图数
+    private static final int BATCH_SIZE = 8;
+
+    private final Object lock = new Object();
+    // 用户 -> 该用户的上传队列，队列排空且没有线程处理时移除
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+
+    // 每个页面上一张过程截图的摘要，页面关闭后自动回收
+    private final Map<Object, String> lastDigests = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong uploaded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private final AtomicLong totalUploadMillis = new AtomicLong();
+
+    /**
+     * 队列中的一项：待上传的截图，或排在截图之后执行的动作
+     */
+    private static class Shot {
+        private final String fileName;
+        private final byte[] data;
+        private final Consumer<String> onUploaded;
+        private final boolean progress;
+        private final Runnable action;
+
+        private Shot(String fileName, byte[] data, Consumer<String> onUploaded, boolean progress) {
+            this.fileName = fileName;
+            this.data = data;
+            this.onUploaded = onUploaded;
+            this.progress = progress;
+            this.action = null;
+        }
+
+        private Shot(Runnable action) {
+            this.fileName = null;
+            this.data = null;
+            this.onUploaded = null;
+            this.progress = false;
+            this.action = action;
+        }
+    }
+
+    /**
+     * 单个用户的上传队列
+     */
+    private static class Lane {
+        private final Deque<Shot> shots = new ArrayDeque<>();
+        private int progressCount;
+        // 是否有线程正在处理该队列取出的截图
+        private boolean busy;
+    }
+
+    @PostConstruct
+    public void init() {
+        running = true;
+        int count = Math.max(1, workers);
+        for (int i = 0; i < count; i++) {
+            Thread thread = new Thread(this::work, "ScreenshotUpload-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        log.info("截图上传管道已启动 - 线程数: {}, 过程截图队列上限: {}, 跳过未变化截图: {}", count, maxProgressQueue, skipUnchanged);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Lane lane(String key) {
+        return lanes.computeIfAbsent(key == null ? "" : key, k -> new Lane());
+    }
+
+    /**
+     * 提交步骤截图，保证上传
+     *
+     * @param key        排队的用户，同一用户的截图按提交顺序上传
+     * @param onUploaded 上传完成后的回调，参数为图片地址，上传失败时为空字符串，可为 null
+     */
+    public void submitStep(String key, String fileName, byte[] data, Consumer<String> onUploaded) {
+        submitted.incrementAndGet();
+        synchronized (lock) {
+            lane(key).shots.addLast(new Shot(fileName, data, onUploaded, false));
+            lock.notify();
+        }
+    }
+
+    /**
+     * 提交过程截图，该用户排队的过程截图已满时丢弃其中最旧的一张
+     *
+     * @param key    排队的用户，同一用户的截图按提交顺序上传
+     * @param source 截图来源（通常是页面），用于判断内容是否与上一张相同
+     * @return 是否进入队列；内容未变化时返回 false
+     */
+    public boolean submitProgress(String key, Object source, String fileName, byte[] data, Consumer<String> onUploaded) {
+        submitted.incrementAndGet();
+        if (skipUnchanged && source != null) {
+            String digest = DigestUtils.md5DigestAsHex(data);
+            if (digest.equals(lastDigests.put(source, digest))) {
+                unchanged.incrementAndGet();
+                return false;
+            }
+        }
+        synchronized (lock) {
+            Lane lane = lane(key);
+            if (lane.progressCount >= Math.max(1, maxProgressQueue)) {
+                for (Iterator<Shot> it = lane.shots.iterator(); it.hasNext(); ) {
+                    if (it.next().progress) {
+                        it.remove();
+                        lane.progressCount--;
+                        dropped.incrementAndGet();
+                        break;
+                    }
+                }
+            }
+            lane.shots.addLast(new Shot(fileName, data, onUploaded, true));
+            lane.progressCount++;
+            lock.notify();
+        }
+        return true;
+    }
+
+    /**
+     * 在该用户已提交的截图全部上传并推送之后执行动作，没有待上传的截图时在当前线程立即执行
+     *
+     * @param key 排队的用户
+     */
+    public void afterPending(String key, Runnable action) {
+        synchronized (lock) {
+            Lane lane = lanes.get(key == null ? "" : key);
+            if (lane != null && (lane.busy || !lane.shots.isEmpty())) {
+                lane.shots.addLast(new Shot(action));
+                lock.notify();
+                return;
+            }
+        }
+        action.run();
+    }
+
+    private void work() {
+        List<Shot> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || hasPending()) {
+            Map.Entry<String, Lane> claimed;
+            synchronized (lock) {
+                while ((claimed = nextLane()) == null && (running || hasPending())) {
+                    try {
+                        lock.wait(1000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (claimed == null) {
+                    return;
+                }
+                Lane lane = claimed.getValue();
+                while (batch.size() < BATCH_SIZE && !lane.shots.isEmpty()) {
+                    Shot shot = lane.shots.pollFirst();
+                    if (shot.progress) {
+                        lane.progressCount--;
+                    }
+                    batch.add(shot);
+                }
+                lane.busy = true;
+            }
+            try {
+                for (Shot shot : batch) {
+                    if (shot.action != null) {
+                        runAction(shot.action);
+                    } else {
+                        upload(shot);
+                    }
+                }
+            } finally {
+                batch.clear();
+                synchronized (lock) {
+                    Lane lane = claimed.getValue();
+                    lane.busy = false;
+                    if (lane.shots.isEmpty()) {
+                        lanes.remove(claimed.getKey(), lane);
+                    }
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * 选出下一个可处理的用户队列，队首是步骤截图的优先；调用方持有 lock
+     */
+    private Map.Entry<String, Lane> nextLane() {
+        Map.Entry<String, Lane> candidate = null;
+        for (Map.Entry<String, Lane> entry : lanes.entrySet()) {
+            Lane lane = entry.getValue();
+            if (lane.busy || lane.shots.isEmpty()) {
+                continue;
+            }
+            if (!lane.shots.peekFirst().progress) {
+                candidate = entry;
+                break;
+            }
+            if (candidate == null) {
+                candidate = entry;
+            }
+        }
+        if (candidate != null) {
+            // 移到末尾，各用户轮流处理
+            lanes.remove(candidate.getKey());
+            lanes.put(candidate.getKey(), candidate.getValue());
+        }
+        return candidate;
+    }
+
+    private boolean hasPending() {
+        synchronized (lock) {
+            for (Lane lane : lanes.values()) {
+                if (lane.busy || !lane.shots.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private void runAction(Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            log.warn("截图之后的动作执行失败", e);
+        }
+    }
+
+    private void upload(Shot shot) {
+        long start = System.currentTimeMillis();
+        String url = "";
+        try {
+            String response = ScreenshotUtil.uploadBytes(uploadUrl, shot.fileName, shot.data);
+            url = JSONObject.parseObject(response).getString("url");
+            if (url == null || url.isEmpty()) {
+                url = "";
+                failed.incrementAndGet();
+            } else {
+                uploaded.incrementAndGet();
+                uploadedBytes.addAndGet(shot.data.length);
+            }
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.warn("截图上传失败: {} - {}", shot.fileName, e.getMessage());
+        } finally {
+            totalUploadMillis.addAndGet(System.currentTimeMillis() - start);
+        }
+        if (shot.onUploaded != null) {
+            try {
+                shot.onUploaded.accept(url);
+            } catch (Exception e) {
+                log.warn("截图上传回调失败: {}", shot.fileName, e);
+            }
+        }
+    }
+
+    /**
+     * 获取上传管道状态
+     */
+    public UploadStats getStats() {
+        int stepPending;
+        int progressPending;
+        synchronized (lock) {
+            stepPending = 0;
+            progressPending = 0;
+            for (Lane lane : lanes.values()) {
+                progressPending += lane.progressCount;
+                for (Shot shot : lane.shots) {
+                    if (!shot.progress && shot.action == null) {
+                        stepPending++;
+                    }
+                }
+            }
+        }
+        long done = uploaded.get() + failed.get();
+        return new UploadStats(
+                stepPending,
+                progressPending,
+                submitted.get(),
+                uploaded.get(),
+                dropped.get(),
+                unchanged.get(),
+                failed.get(),
+                uploadedBytes.get(),
+                done > 0 ? totalUploadMillis.get() / done : 0
+        );
+    }
+
+    /**
+     * 上传管道状态信息类
+     */
+    public static class UploadStats {
+        private final int stepPending;
+        private final int progressPending;
+        private final long submitted;
+        private final long uploaded;
+        private final long dropped;
+        private final long unchanged;
+        private final long failed;
+        private final long uploadedBytes;
+        private final long avgUploadMillis;
+
+        public UploadStats(int stepPending, int progressPending, long submitted, long uploaded, long dropped,
+                           long unchanged, long failed, long uploadedBytes, long avgUploadMillis) {
+            this.stepPending = stepPending;
+            this.progressPending = progressPending;
+            this.submitted = submitted;
+            this.uploaded = uploaded;
+            this.dropped = dropped;
+            this.unchanged = unchanged;
+            this.failed = failed;
+            this.uploadedBytes = uploadedBytes;
+            this.avgUploadMillis = avgUploadMillis;
+        }
+
+        // Getters
+        public int getStepPending() { return stepPending; }
+        public int getProgressPending() { return progressPending; }
+        public long getSubmitted() { return submitted; }
+        public long getUploaded() { return uploaded; }
+        public long getDropped() { return dropped; }
+        public long getUnchanged() { return unchanged; }
+        public long getFailed() { return failed; }
+        public long getUploadedBytes() { return uploadedBytes; }
+        public long getAvgUploadMillis() { return avgUploadMillis; }
+    }
+}
@@ -9,6 +9,7 @@ import com.microsoft.playwright.options.ScreenshotType;
 import com.microsoft.playwright.options.ViewportSize;
 import com.microsoft.playwright.options.WaitForSelectorState;
 import okhttp3.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -21,6 +22,8 @@ import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * @author 优立方
@@ -33,6 +36,17 @@ public class ScreenshotUtil {
     @Value("${cube.uploadurl}")
     public String uploadUrl;
 
+    @Autowired
+    private ScreenshotUploadPipeline uploadPipeline;
+
+    // 所有上传共用一个连接池，避免每次上传重新建立连接
+    private static final OkHttpClient HTTP_CLIENT = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(8, 5, TimeUnit.MINUTES))
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .writeTimeout(60, TimeUnit.SECONDS)
+            .readTimeout(60, TimeUnit.SECONDS)
+            .build();
+
     public String screenshotElementAndUpload(Locator locator, String imageName) throws IOException {
 
         SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
@@ -43,20 +57,17 @@ public class ScreenshotUtil {
                 return "";
             }
 
-            // 🔥 优化：截取全屏截图，增加超时设置
-            locator.screenshot(new Locator.ScreenshotOptions()
-                    .setPath(Paths.get(imageName))
+            // 🔥 优化：截取全屏截图，增加超时设置，截图直接保存在内存中
+            byte[] image = locator.screenshot(new Locator.ScreenshotOptions()
                     .setTimeout(45000) // 45秒超时，防止长时间等待
             );
 
 
             // 上传截图
-            String response = uploadFile(uploadUrl, imageName);
+            String response = uploadBytes(uploadUrl, imageName, image);
             JSONObject jsonObject = JSONObject.parseObject(response);
 
-            String url = jsonObject.get("url")+"";
-            Files.delete(Paths.get(imageName));
-            return url;
+            return jsonObject.get("url")+"";
         } catch (com.microsoft.playwright.impl.TargetClosedError e) {
             return "";
         } catch (com.microsoft.playwright.PlaywrightException e) {
@@ -77,21 +88,15 @@ public class ScreenshotUtil {
                 return "";
             }
 
-            // 🔥 优化：截取全屏截图，增加超时设置
-            page.screenshot(new Page.ScreenshotOptions()
-                    .setPath(Paths.get(imageName))
-                    .setFullPage(true)
-                    .setTimeout(45000) // 45秒超时，防止长时间等待
-            );
+            // 🔥 优化：截取全屏截图，增加超时设置，截图直接保存在内存中
+            byte[] image = captureFullPage(page);
 
 
             // 上传截图
-            String response = uploadFile(uploadUrl, imageName);
+            String response = uploadBytes(uploadUrl, imageName, image);
             JSONObject jsonObject = JSONObject.parseObject(response);
 
-            String url = jsonObject.get("url")+"";
-            Files.delete(Paths.get(imageName));
-            return url;
+            return jsonObject.get("url")+"";
         } catch (com.microsoft.playwright.impl.TargetClosedError e) {
             return "";
         } catch (com.microsoft.playwright.PlaywrightException e) {
@@ -101,6 +106,50 @@ public class ScreenshotUtil {
         }
     }
 
+    /**
+     * 截取过程截图并交给后台上传，不等待上传完成
+     * 队列满时丢弃最旧的过程截图，页面内容与上一张相同时跳过
+     *
+     * @param userId     截图所属用户，同一用户的截图按顺序上传
+     * @param onUploaded 上传完成后的回调，参数为图片地址，可为 null
+     * @return 是否提交了上传；页面已关闭、截图失败或内容未变化时返回 false
+     */
+    public boolean screenshotProgressAsync(Page page, String imageName, String userId, Consumer<String> onUploaded) {
+        try {
+            if (page.isClosed()) {
+                return false;
+            }
+            return uploadPipeline.submitProgress(userId, page, imageName, captureFullPage(page), onUploaded);
+        } catch (com.microsoft.playwright.PlaywrightException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 截取步骤截图并交给后台上传，不等待上传完成，也不会被丢弃
+     *
+     * @param userId     截图所属用户，同一用户的截图按顺序上传
+     * @param onUploaded 上传完成后的回调，参数为图片地址，可为 null
+     */
+    public boolean screenshotAsync(Page page, String imageName, String userId, Consumer<String> onUploaded) {
+        try {
+            if (page.isClosed()) {
+                return false;
+            }
+            uploadPipeline.submitStep(userId, imageName, captureFullPage(page), onUploaded);
+            return true;
+        } catch (com.microsoft.playwright.PlaywrightException e) {
+            return false;
+        }
+    }
+
+    private static byte[] captureFullPage(Page page) {
+        return page.screenshot(new Page.ScreenshotOptions()
+                .setFullPage(true)
+                .setTimeout(45000) // 45秒超时，防止长时间等待
+        );
+    }
+
     public String screenShootAllDivAndUpload(Page page, String imageName, String bodyPath) throws IOException {
         SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
@@ -127,16 +176,13 @@ public class ScreenshotUtil {
                     (int) Math.ceil(boundingBox.height) * 2
             );
 
-            Path path = Paths.get(imageName);
             // 截取元素的完整屏幕截图
-            targetElement.screenshot(new Locator.ScreenshotOptions()
-                    .setType(ScreenshotType.PNG)
-                    .setPath(path));
-            String response = uploadFile(uploadUrl, imageName);
+            byte[] image = targetElement.screenshot(new Locator.ScreenshotOptions()
+                    .setType(ScreenshotType.PNG));
+            String response = uploadBytes(uploadUrl, imageName, image);
             JSONObject jsonObject = JSONObject.parseObject(response);
 
             String url = jsonObject.get("url")+"";
-            Files.delete(path);
             page.setViewportSize(
                     viewportSize.width,
                     viewportSize.height
@@ -151,27 +197,41 @@ public class ScreenshotUtil {
         }
     }
     public static String uploadFile(String serverUrl, String filePath) throws IOException {
-        OkHttpClient client = new OkHttpClient();
         File file = new File(filePath);
+        return upload(serverUrl, file.getName(), RequestBody.create(file, MediaType.parse(mimeTypeOf(filePath))));
+    }
 
-        // 根据文件扩展名自动判断 MIME 类型
-        String mimeType;
-        if (filePath.toLowerCase().endsWith(".png")) {
-            mimeType = "image/png";
-        } else if (filePath.toLowerCase().endsWith(".jpg") || filePath.toLowerCase().endsWith(".jpeg")) {
-            mimeType = "image/jpeg";
-        } else if (filePath.toLowerCase().endsWith(".pdf")) {
-            mimeType = "application/pdf";
-        } else {
-            // 默认纯文本
-            mimeType = "text/plain";
+    /**
+     * 上传内存中的文件内容，不落盘
+     */
+    public static String uploadBytes(String serverUrl, String fileName, byte[] data) throws IOException {
+        String name = Paths.get(fileName).getFileName().toString();
+        return upload(serverUrl, name, RequestBody.create(data, MediaType.parse(mimeTypeOf(fileName))));
+    }
+
+    /**
+     * 根据文件扩展名自动判断 MIME 类型
+     */
+    private static String mimeTypeOf(String fileName) {
+        String lower = fileName.toLowerCase();
+        if (lower.endsWith(".png")) {
+            return "image/png";
+        } else if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) {
+            return "image/jpeg";
+        } else if (lower.endsWith(".webp")) {
+            return "image/webp";
+        } else if (lower.endsWith(".pdf")) {
+            return "application/pdf";
         }
+        // 默认纯文本
+        return "text/plain";
+    }
 
+    private static String upload(String serverUrl, String fileName, RequestBody fileBody) throws IOException {
         // 构建 Multipart 请求体
         RequestBody requestBody = new MultipartBody.Builder()
                 .setType(MultipartBody.FORM)
-                .addFormDataPart("file", file.getName(),
-                        RequestBody.create(file, MediaType.parse(mimeType)))
+                .addFormDataPart("file", fileName, fileBody)
                 .build();
 
         // 构建 HTTP 请求
@@ -181,7 +241,7 @@ public class ScreenshotUtil {
                 .build();
 
         // 发送请求并处理中断异常
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = HTTP_CLIENT.newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 throw new IOException("Unexpected code " + response);
             }
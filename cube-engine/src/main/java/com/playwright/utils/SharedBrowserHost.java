@@ -0,0 +1,224 @@
+package com.playwright.utils;
+
+import com.microsoft.playwright.*;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 共享浏览器宿主
+ * shared 模式下由少量常驻的 Chromium 进程承载所有用户的轻量级隔离上下文，
+ * 每个用户每个平台的 cookie 与 localStorage 以 storageState 的形式保存在
+ * cube.datadir/name/userId/storage-state.json 中，内存占用随打开的标签页增长，而不是随 Chromium 实例增长。
+ * Playwright 对象不能被多个线程同时使用，浏览器进程以 CDP 端口对外提供服务，每个上下文由自己的驱动连接，
+ * 同一上下文被不同任务先后使用时由上下文池的租用保证串行。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月09日 15:40
+ */
+@Slf4j
+@Component
+public class SharedBrowserHost {
+
+    public static final String STORAGE_STATE_FILE = "storage-state.json";
+
+    // 引擎模式：persistent 每个用户独立的持久化 Chromium；shared 共享 Chromium + 隔离上下文
+    @Value("${cube.browser.mode:persistent}")
+    private String mode;
+
+    // 每种显示模式下常驻的 Chromium 进程数量
+    @Value("${cube.browser.shared-processes:2}")
+    private int processCount;
+
+    @Value("${cube.datadir}")
+    private String userDataDir;
+
+    // 按 headless 区分的浏览器进程槽位
+    private final Map<Boolean, List<BrowserSlot>> slots = new ConcurrentHashMap<>();
+
+    // 上下文所在的槽位，用于关闭时回收计数
+    private final Map<BrowserContext, BrowserSlot> contextSlots = new ConcurrentHashMap<>();
+
+    // 上下文对应的 storageState 文件
+    private final Map<BrowserContext, Path> statePaths = new ConcurrentHashMap<>();
+
+    /**
+     * 一个常驻的浏览器进程
+     */
+    private static class BrowserSlot {
+        private final int index;
+        private final boolean headless;
+        private final AtomicInteger contextCount = new AtomicInteger(0);
+        private CdpBrowser browser;
+
+        private BrowserSlot(int index, boolean headless) {
+            this.index = index;
+            this.headless = headless;
+        }
+    }
+
+    public boolean isEnabled() {
+        return "shared".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * 在共享浏览器中为用户创建上下文，并恢复其登录状态
+     *
+     * @param isHead          是否无头
+     * @param userId          用户ID
+     * @param name            平台目录名
+     * @param profileExporter 首次切换到 shared 模式时，从旧的持久化目录导出登录状态到指定文件，可为 null
+     */
+    public BrowserContext newUserContext(boolean isHead, String userId, String name, Consumer<Path> profileExporter) {
+        Path profileDir = Paths.get(userDataDir, name, userId);
+        Path statePath = profileDir.resolve(STORAGE_STATE_FILE);
+        if (!Files.exists(statePath) && profileExporter != null && Files.isDirectory(profileDir.resolve("Default"))) {
+            try {
+                profileExporter.accept(statePath);
+            } catch (Exception e) {
+                log.warn("从持久化目录导出登录状态失败: {}", statePath);
+            }
+        }
+
+        Browser.NewContextOptions options = new Browser.NewContextOptions()
+                .setViewportSize(1280, 760)
+                .setPermissions(Arrays.asList("clipboard-read", "clipboard-write"));
+        if (Files.exists(statePath)) {
+            options.setStorageStatePath(statePath);
+        }
+        BrowserContext context = newContext(isHead, options);
+        statePaths.put(context, statePath);
+        return context;
+    }
+
+    /**
+     * 在共享浏览器中创建一个不落盘的隔离上下文
+     */
+    public BrowserContext newIsolatedContext(boolean isHead) {
+        return newContext(isHead, new Browser.NewContextOptions()
+                .setPermissions(Arrays.asList("clipboard-read", "clipboard-write")));
+    }
+
+    private BrowserContext newContext(boolean isHead, Browser.NewContextOptions options) {
+        BrowserSlot slot = pickSlot(isHead);
+        CdpBrowser browser;
+        synchronized (slot) {
+            browser = ensureConnected(slot);
+        }
+        BrowserContext context = browser.newContext(options);
+        slot.contextCount.incrementAndGet();
+        contextSlots.put(context, slot);
+        context.onClose(closed -> {
+            BrowserSlot owner = contextSlots.remove(closed);
+            if (owner != null) {
+                owner.contextCount.decrementAndGet();
+            }
+            statePaths.remove(closed);
+        });
+        return context;
+    }
+
+    /**
+     * 保存上下文的登录状态
+     */
+    public void saveStorageState(BrowserContext context) {
+        Path statePath = statePaths.get(context);
+        if (statePath == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(statePath.getParent());
+            context.storageState(new BrowserContext.StorageStateOptions().setPath(statePath));
+        } catch (Exception e) {
+            log.warn("保存登录状态失败: {}", statePath);
+        }
+    }
+
+    /**
+     * 保存登录状态后关闭上下文
+     */
+    public void saveAndClose(BrowserContext context) {
+        saveStorageState(context);
+        try {
+            context.close();
+        } catch (Exception e) {
+        }
+    }
+
+    /**
+     * 选择当前上下文最少的浏览器进程
+     */
+    private BrowserSlot pickSlot(boolean isHead) {
+        List<BrowserSlot> group = slots.computeIfAbsent(isHead, headless -> {
+            List<BrowserSlot> created = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, processCount); i++) {
+                created.add(new BrowserSlot(i, headless));
+            }
+            return created;
+        });
+        BrowserSlot best = group.get(0);
+        for (BrowserSlot slot : group) {
+            if (slot.contextCount.get() < best.contextCount.get()) {
+                best = slot;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 确保槽位中的浏览器进程存活，断开时重新启动
+     */
+    private CdpBrowser ensureConnected(BrowserSlot slot) {
+        if (slot.browser != null && slot.browser.isAlive()) {
+            return slot.browser;
+        }
+        if (slot.browser != null) {
+            slot.browser.close();
+        }
+        try {
+            slot.browser = CdpBrowser.launch(slot.headless, Arrays.asList(BrowserOptimizer.getOptimizedArgs()), 90000);
+        } catch (IOException e) {
+            slot.browser = null;
+            throw new RuntimeException("共享浏览器进程启动失败: #" + slot.index, e);
+        }
+        log.info("共享浏览器进程已启动: #{} headless={} {}", slot.index, slot.headless, slot.browser.getEndpoint());
+        return slot.browser;
+    }
+
+    /**
+     * 获取各浏览器进程承载的上下文数量
+     */
+    public Map<String, Integer> getStatus() {
+        Map<String, Integer> status = new ConcurrentHashMap<>();
+        slots.forEach((headless, group) -> group.forEach(slot ->
+                status.put((headless ? "headless-" : "headed-") + slot.index, slot.contextCount.get())));
+        return status;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        statePaths.keySet().forEach(this::saveStorageState);
+        slots.values().forEach(group -> group.forEach(slot -> {
+            synchronized (slot) {
+                if (slot.browser != null) {
+                    slot.browser.close();
+                    slot.browser = null;
+                }
+            }
+        }));
+    }
+}
@@ -0,0 +1,318 @@
+package com.playwright.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 只读的 SQLite 表读取器
+ * 用于不启动浏览器直接读取 Chromium 配置目录中的 Cookies 数据库，只支持普通的 rowid 表与 UTF-8 编码。
+ * 文件格式参考 https://www.sqlite.org/fileformat.html
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月24日 14:30
+ */
+public final class SqliteReader {
+
+    private static final byte[] MAGIC = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII);
+    // 读取的数据库文件大小上限
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+
+    private final byte[] data;
+    private final int pageSize;
+    private final int usableSize;
+
+    private SqliteReader(byte[] data) {
+        if (data.length < 100 || !startsWith(data, MAGIC)) {
+            throw new IllegalArgumentException("不是 SQLite 数据库");
+        }
+        int size = ((data[16] & 0xFF) << 8) | (data[17] & 0xFF);
+        this.pageSize = size == 1 ? 65536 : size;
+        this.usableSize = pageSize - (data[20] & 0xFF);
+        if (readInt(data, 56) > 1) {
+            throw new IllegalArgumentException("只支持 UTF-8 编码的数据库");
+        }
+        this.data = data;
+    }
+
+    /**
+     * 读取表中指定列的所有行
+     *
+     * @param columns 需要的列名
+     * @return 每行为 列名 -> 值（Long、Double、String、byte[] 或 null）
+     * @throws IllegalArgumentException 文件损坏、表不存在或格式不受支持
+     */
+    public static List<Map<String, Object>> readTable(Path file, String table, List<String> columns) throws IOException {
+        if (Files.size(file) > MAX_FILE_SIZE) {
+            throw new IllegalArgumentException("数据库文件过大");
+        }
+        SqliteReader reader = new SqliteReader(Files.readAllBytes(file));
+        try {
+            return reader.read(table, columns);
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException | ClassCastException e) {
+            // 文件被截断或内容损坏时偏移量会越界，统一按文件损坏处理
+            throw new IllegalArgumentException("数据库文件损坏", e);
+        }
+    }
+
+    private List<Map<String, Object>> read(String table, List<String> columns) {
+        int rootPage = -1;
+        String sql = null;
+        for (Object[] row : scan(1)) {
+            if ("table".equals(row[0]) && table.equalsIgnoreCase(String.valueOf(row[1]))) {
+                rootPage = ((Long) row[3]).intValue();
+                sql = (String) row[4];
+                break;
+            }
+        }
+        if (rootPage <= 0 || sql == null) {
+            throw new IllegalArgumentException("表不存在: " + table);
+        }
+        List<String> names = parseColumns(sql);
+        int[] indexes = new int[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            indexes[i] = names.indexOf(columns.get(i).toLowerCase(Locale.ROOT));
+            if (indexes[i] < 0) {
+                throw new IllegalArgumentException("列不存在: " + columns.get(i));
+            }
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Object[] record : scan(rootPage)) {
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 0; i < indexes.length; i++) {
+                row.put(columns.get(i), indexes[i] < record.length ? record[indexes[i]] : null);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * 遍历表 B 树的所有记录
+     */
+    private List<Object[]> scan(int rootPage) {
+        List<Object[]> records = new ArrayList<>();
+        Deque<Integer> pages = new ArrayDeque<>();
+        pages.push(rootPage);
+        int visited = 0;
+        int totalPages = data.length / pageSize;
+        while (!pages.isEmpty()) {
+            int page = pages.pop();
+            if (page < 1 || page > totalPages || ++visited > totalPages) {
+                throw new IllegalArgumentException("页号异常: " + page);
+            }
+            int pageStart = (page - 1) * pageSize;
+            int header = page == 1 ? 100 : pageStart;
+            int type = data[header] & 0xFF;
+            int cellCount = readShort(header + 3);
+            if (type == 0x05) {
+                // 内部页：先压入最右子页，保证按顺序遍历
+                pages.push(readInt(data, header + 8));
+                for (int i = cellCount - 1; i >= 0; i--) {
+                    int cell = pageStart + readShort(header + 12 + i * 2);
+                    pages.push(readInt(data, cell));
+                }
+            } else if (type == 0x0D) {
+                for (int i = 0; i < cellCount; i++) {
+                    int cell = pageStart + readShort(header + 8 + i * 2);
+                    records.add(readLeafCell(cell));
+                }
+            } else {
+                throw new IllegalArgumentException("不支持的页类型: " + type);
+            }
+        }
+        return records;
+    }
+
+    private Object[] readLeafCell(int offset) {
+        long[] varint = new long[2];
+        offset += readVarint(offset, varint);
+        int payloadSize = (int) varint[0];
+        // 跳过 rowid
+        offset += readVarint(offset, varint);
+        return parseRecord(readPayload(offset, payloadSize));
+    }
+
+    /**
+     * 读取单元格负载，超出本页的部分在溢出页链中
+     */
+    private byte[] readPayload(int offset, int payloadSize) {
+        int maxLocal = usableSize - 35;
+        if (payloadSize <= maxLocal) {
+            byte[] payload = new byte[payloadSize];
+            System.arraycopy(data, offset, payload, 0, payloadSize);
+            return payload;
+        }
+        int minLocal = (usableSize - 12) * 32 / 255 - 23;
+        int local = minLocal + (payloadSize - minLocal) % (usableSize - 4);
+        if (local > maxLocal) {
+            local = minLocal;
+        }
+        byte[] payload = new byte[payloadSize];
+        System.arraycopy(data, offset, payload, 0, local);
+        int copied = local;
+        int overflow = readInt(data, offset + local);
+        while (copied < payloadSize) {
+            if (overflow < 1 || (long) overflow * pageSize > data.length) {
+                throw new IllegalArgumentException("溢出页异常: " + overflow);
+            }
+            int pageStart = (overflow - 1) * pageSize;
+            int length = Math.min(usableSize - 4, payloadSize - copied);
+            System.arraycopy(data, pageStart + 4, payload, copied, length);
+            copied += length;
+            overflow = readInt(data, pageStart);
+        }
+        return payload;
+    }
+
+    private Object[] parseRecord(byte[] payload) {
+        long[] varint = new long[2];
+        int headerSize = (int) readVarint(payload, 0, varint)[0];
+        int pos = (int) varint[1];
+        List<Long> serialTypes = new ArrayList<>();
+        while (pos < headerSize) {
+            readVarint(payload, pos, varint);
+            serialTypes.add(varint[0]);
+            pos += (int) varint[1];
+        }
+        Object[] values = new Object[serialTypes.size()];
+        int body = headerSize;
+        for (int i = 0; i < values.length; i++) {
+            long serialType = serialTypes.get(i);
+            int length = serialLength(serialType);
+            values[i] = decode(payload, body, serialType, length);
+            body += length;
+        }
+        return values;
+    }
+
+    private static int serialLength(long serialType) {
+        if (serialType >= 12) {
+            return (int) ((serialType - (serialType % 2 == 0 ? 12 : 13)) / 2);
+        }
+        return switch ((int) serialType) {
+            case 1 -> 1;
+            case 2 -> 2;
+            case 3 -> 3;
+            case 4 -> 4;
+            case 5 -> 6;
+            case 6, 7 -> 8;
+            default -> 0;
+        };
+    }
+
+    private static Object decode(byte[] payload, int offset, long serialType, int length) {
+        if (serialType == 0) {
+            return null;
+        }
+        if (serialType == 8) {
+            return 0L;
+        }
+        if (serialType == 9) {
+            return 1L;
+        }
+        if (serialType == 7) {
+            return Double.longBitsToDouble(readSigned(payload, offset, 8));
+        }
+        if (serialType < 7) {
+            return readSigned(payload, offset, length);
+        }
+        if (serialType % 2 == 0) {
+            byte[] blob = new byte[length];
+            System.arraycopy(payload, offset, blob, 0, length);
+            return blob;
+        }
+        return new String(payload, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 从建表语句中解析列名（小写）
+     */
+    static List<String> parseColumns(String sql) {
+        String body = sql.substring(sql.indexOf('(') + 1, sql.lastIndexOf(')'));
+        List<String> names = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i <= body.length(); i++) {
+            char c = i < body.length() ? body.charAt(i) : ',';
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                String definition = body.substring(start, i).trim();
+                start = i + 1;
+                String name = definition.split("\\s+")[0].replaceAll("[\"`\\[\\]]", "").toLowerCase(Locale.ROOT);
+                if (!name.isEmpty() && !List.of("unique", "primary", "constraint", "check", "foreign").contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    private int readVarint(int offset, long[] result) {
+        readVarint(data, offset, result);
+        return (int) result[1];
+    }
+
+    /**
+     * 读取变长整数
+     *
+     * @param result [0] 为数值，[1] 为占用字节数
+     */
+    private static long[] readVarint(byte[] bytes, int offset, long[] result) {
+        long value = 0;
+        for (int i = 0; i < 9; i++) {
+            int b = bytes[offset + i] & 0xFF;
+            if (i == 8) {
+                value = (value << 8) | b;
+                result[0] = value;
+                result[1] = 9;
+                return result;
+            }
+            value = (value << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                result[0] = value;
+                result[1] = i + 1;
+                return result;
+            }
+        }
+        return result;
+    }
+
+    private int readShort(int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static long readSigned(byte[] bytes, int offset, int length) {
+        long value = bytes[offset];
+        for (int i = 1; i < length; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
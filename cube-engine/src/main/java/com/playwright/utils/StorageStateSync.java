@@ -0,0 +1,153 @@
+package com.playwright.utils;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.options.Cookie;
+import com.microsoft.playwright.options.SameSiteAttribute;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 持久化目录与 storage-state.json 之间的登录状态同步
+ * persistent 模式下同一平台的登录状态有两份：持久化目录中的 Cookies 数据库，以及多AI批次标签页使用的 storage-state.json。
+ * 两者以最近写入的为准，同步时都不额外启动浏览器：
+ * 持久化上下文启动时 storage-state.json 不旧于 Cookies 数据库，就把其中的 cookie 写入上下文；
+ * 持久化上下文归还或关闭前把登录状态写回 storage-state.json，关闭后刷新其修改时间，使其不早于浏览器关闭时落盘的 Cookies；
+ * 批次标签页只在 storage-state.json 不旧于 Cookies 数据库时使用，关闭前写回。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年10月18日 15:40
+ */
+@Slf4j
+final class StorageStateSync {
+
+    private StorageStateSync() {
+    }
+
+    static Path statePath(Path profileDir) {
+        return profileDir.resolve(SharedBrowserHost.STORAGE_STATE_FILE);
+    }
+
+    /**
+     * storage-state.json 存在且不旧于持久化目录中的 Cookies 数据库
+     */
+    static boolean isCurrent(Path profileDir) {
+        Path statePath = statePath(profileDir);
+        if (!Files.exists(statePath)) {
+            return false;
+        }
+        Path cookiesPath = LoginStateProbe.findCookiesDb(profileDir);
+        try {
+            return cookiesPath == null
+                    || Files.getLastModifiedTime(statePath).compareTo(Files.getLastModifiedTime(cookiesPath)) >= 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * storage-state.json 较新时把其中的 cookie 写入刚启动的持久化上下文
+     */
+    static void restoreCookies(BrowserContext context, Path profileDir) {
+        if (!isCurrent(profileDir)) {
+            return;
+        }
+        Path statePath = statePath(profileDir);
+        try {
+            JSONArray items = JSONObject.parseObject(Files.readString(statePath, StandardCharsets.UTF_8))
+                    .getJSONArray("cookies");
+            if (items == null || items.isEmpty()) {
+                return;
+            }
+            List<Cookie> cookies = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                JSONObject item = items.getJSONObject(i);
+                Cookie cookie = new Cookie(item.getString("name"), item.getString("value"))
+                        .setDomain(item.getString("domain"))
+                        .setPath(item.getString("path"))
+                        .setExpires(item.getDoubleValue("expires"))
+                        .setHttpOnly(item.getBooleanValue("httpOnly"))
+                        .setSecure(item.getBooleanValue("secure"));
+                String sameSite = item.getString("sameSite");
+                if (sameSite != null) {
+                    cookie.setSameSite(SameSiteAttribute.valueOf(sameSite.toUpperCase(Locale.ROOT)));
+                }
+                cookies.add(cookie);
+            }
+            context.addCookies(cookies);
+        } catch (Exception e) {
+            log.warn("恢复登录状态到持久化目录失败: {}", statePath);
+        }
+    }
+
+    /**
+     * 把上下文的登录状态写回 storage-state.json
+     */
+    static void save(BrowserContext context, Path profileDir) {
+        Path statePath = statePath(profileDir);
+        try {
+            Files.createDirectories(profileDir);
+            context.storageState(new BrowserContext.StorageStateOptions().setPath(statePath));
+        } catch (Exception e) {
+            log.warn("保存登录状态失败: {}", statePath);
+        }
+    }
+
+    /**
+     * 浏览器关闭时会再写一次 Cookies 数据库，关闭后刷新 storage-state.json 的修改时间
+     */
+    static void touch(Path profileDir) {
+        Path statePath = statePath(profileDir);
+        try {
+            if (Files.exists(statePath)) {
+                Files.setLastModifiedTime(statePath, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+        } catch (Exception e) {
+            log.debug("刷新登录状态文件时间失败: {}", statePath);
+        }
+    }
+
+    /**
+     * 调用方 close() 时先写回登录状态再关闭上下文
+     *
+     * @param afterClose 上下文关闭后执行，可为 null
+     */
+    static BrowserContext saveOnClose(BrowserContext target, Path profileDir, Runnable afterClose) {
+        AtomicBoolean closed = new AtomicBoolean(false);
+        return (BrowserContext) Proxy.newProxyInstance(
+                BrowserContext.class.getClassLoader(),
+                new Class<?>[]{BrowserContext.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName())) {
+                        if (closed.compareAndSet(false, true)) {
+                            save(target, profileDir);
+                            try {
+                                target.close();
+                            } catch (Exception e) {
+                            }
+                            if (afterClose != null) {
+                                afterClose.run();
+                            }
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -55,9 +55,16 @@ public class TencentUtil {
 
     @Autowired
     private ClipboardLockManager clipboardLockManager;
+
+    // 元宝的模型、深度思考、联网开关记在账号上，同一用户的 T1 与 DS 页面不能同时切换
+    @Autowired
+    private UserLockManager userLockManager;
     @Autowired
     private WebSocketClientService webSocketClientService;
 
+    @Autowired
+    private PollingGovernor pollingGovernor;
+
     /**
      * 检查元宝登录状态
      *
@@ -225,7 +232,7 @@ public class TencentUtil {
         ScheduledFuture<?> screenshotFuture = screenshotExecutor.scheduleAtFixedRate(() -> {
             try {
                 int currentCount = i.getAndIncrement(); // 获取当前值并自增
-                logInfo.sendImgData(page, userId + agentName + "工作流执行过程截图" + currentCount, userId);
+                logInfo.sendProgressImgData(page, userId + agentName + "工作流执行过程截图" + currentCount, userId);
             } catch (Exception e) {
                 UserLogUtil.sendExceptionLog(userId, agentName + "截图异常", "saveAgentDraftData", e, url + "/saveLogInfo");
             }
@@ -239,25 +246,22 @@ public class TencentUtil {
 
             AtomicReference<String> shareUrlRef = new AtomicReference<>();
 
-            clipboardLockManager.runWithClipboardLock(() -> {
-                try {
+            try {
+                String shareUrl = clipboardLockManager.copyText(page, () -> {
                     page.locator("span.icon-yb-ic_share_2504").last().click();
                     Thread.sleep(2000);
                     page.locator("div.agent-chat__share-bar__item__logo").first().click();
-                    // 建议适当延迟等待内容更新
-                    Thread.sleep(2000);
-                    String shareUrl = (String) page.evaluate("navigator.clipboard.readText()");
-                    Pattern pattern = Pattern.compile("https?://\\S+");
-                    Matcher matcher = pattern.matcher(shareUrl);
-                    String url = null;
-                    if (matcher.find()) {
-                        url = matcher.group();
-                    }
-                    shareUrlRef.set(url);
-                } catch (Exception e) {
-                    UserLogUtil.sendExceptionLog(userId, agentName + "复制异常", "saveAgentDraftData", e, url + "/saveLogInfo");
+                });
+                Pattern pattern = Pattern.compile("https?://\\S+");
+                Matcher matcher = pattern.matcher(shareUrl);
+                String url = null;
+                if (matcher.find()) {
+                    url = matcher.group();
                 }
-            });
+                shareUrlRef.set(url);
+            } catch (Exception e) {
+                UserLogUtil.sendExceptionLog(userId, agentName + "复制异常", "saveAgentDraftData", e, url + "/saveLogInfo");
+            }
             Thread.sleep(1000);
             String shareUrl = shareUrlRef.get();
 
@@ -306,7 +310,12 @@ public class TencentUtil {
      * @param chatId     会话ID
      * @return 初始复制按钮数量
      */
-    public synchronized int handleYBAI(Page page, String userPrompt, String role, String userId, String aiName, String chatId) throws Exception {
+    public int handleYBAI(Page page, String userPrompt, String role, String userId, String aiName, String chatId) throws Exception {
+        // 每个请求使用自己的页面，只有同一用户的配置过程需要互斥，不同用户的会话并行执行
+        return userLockManager.callWithUserLock(userId, () -> configureAndSend(page, userPrompt, role, userId, aiName, chatId));
+    }
+
+    private int configureAndSend(Page page, String userPrompt, String role, String userId, String aiName, String chatId) throws Exception {
 
         // 页面导航与元素定位
         page.navigate("https://yuanbao.tencent.com/chat/naQivTmsDa/" + chatId);
@@ -437,7 +446,7 @@ public class TencentUtil {
         return copyButtonCount;
     }
 
-    public synchronized McpResult saveDraftData(Page page, UserInfoRequest userInfoRequest, String aiName, String userId) throws InterruptedException, IOException {
+    public McpResult saveDraftData(Page page, UserInfoRequest userInfoRequest, String aiName, String userId) throws InterruptedException, IOException {
 
         // 创建定时截图线程
         AtomicInteger i = new AtomicInteger(0);
@@ -451,7 +460,7 @@ public class TencentUtil {
                         return;
                     }
                     int currentCount = i.getAndIncrement(); // 获取当前值并自增
-                    logInfo.sendImgData(page, userId + "元宝执行过程截图" + currentCount, userId);
+                    logInfo.sendProgressImgData(page, userId + "元宝执行过程截图" + currentCount, userId);
                 } catch (Exception e) {
                     UserLogUtil.sendExceptionLog(userId, "元宝截图", "saveDraftData", e, url + "/saveLogInfo");
                 }
@@ -488,50 +497,44 @@ public class TencentUtil {
             final String finalAiName = aiName;
             final String finalUrl = url;
 
-            clipboardLockManager.runWithClipboardLock(() -> {
-                try {
-                    // 🔥 修复：确保分享按钮可见并点击
-                    logInfo.sendTaskLog("正在点击分享按钮...", finalUserId, finalAgentName);
-
-                    // 等待分享按钮出现并点击
-                    page.waitForSelector("span.icon-yb-ic_share_2504", new Page.WaitForSelectorOptions().setTimeout(10000));
-                    Thread.sleep(2000);
-                    page.locator("span.icon-yb-ic_share_2504").last().click();
-                    Thread.sleep(2000);
-
-                    // 确保分享选项出现
-                    page.waitForSelector("div.agent-chat__share-bar__item__logo", new Page.WaitForSelectorOptions().setTimeout(5000));
-
-                    // 点击复制链接（第一个选项）
-                    page.locator("div.agent-chat__share-bar__item__logo").first().click();
-                    logInfo.sendTaskLog("已点击复制链接按钮", finalUserId, finalAgentName);
-
-                    // 等待剪贴板更新
-                    Thread.sleep(3000);
-                    String shareUrl = (String) page.evaluate("navigator.clipboard.readText()");
-                    logInfo.sendTaskLog("获取到剪贴板内容: " + shareUrl, finalUserId, finalAgentName);
-
-                    Pattern pattern = Pattern.compile("https://yuanbao\\.tencent\\.com/[^\s\"']+");
-                    Matcher matcher = pattern.matcher(shareUrl);
-
-                    String extractedUrl = null;
-                    if (matcher.find()) {
-                        extractedUrl = matcher.group();
-                        logInfo.sendTaskLog("提取到分享链接: " + extractedUrl, finalUserId, finalAgentName);
-                    } else {
-                        logInfo.sendTaskLog("未能提取到有效的分享链接，原始内容: " + shareUrl, finalUserId, finalAgentName);
-                    }
-                    shareUrlRef.set(extractedUrl);
-                } catch (TimeoutError e) {
-                    // 记录分享操作超时
-                    logInfo.sendTaskLog("分享按钮点击超时: " + e.getMessage(), finalUserId, finalAgentName);
-                    UserLogUtil.sendAITimeoutLog(finalUserId, finalAiName, "分享链接获取", e, "点击分享按钮或复制链接", finalUrl + "/saveLogInfo");
-                } catch (Exception e) {
-                    // 记录分享操作异常
-                    logInfo.sendTaskLog("分享操作异常: " + e.getMessage(), finalUserId, finalAgentName);
-                    UserLogUtil.sendAIBusinessLog(finalUserId, finalAiName, "分享操作", e.getMessage(), System.currentTimeMillis(), finalUrl + "/saveLogInfo");
+            try {
+                // 🔥 修复：确保分享按钮可见并点击
+                logInfo.sendTaskLog("正在点击分享按钮...", finalUserId, finalAgentName);
+
+                // 等待分享按钮出现并点击
+                page.waitForSelector("span.icon-yb-ic_share_2504", new Page.WaitForSelectorOptions().setTimeout(10000));
+                page.waitForTimeout(2000);
+                page.locator("span.icon-yb-ic_share_2504").last().click();
+
+                // 确保分享选项出现
+                page.waitForSelector("div.agent-chat__share-bar__item__logo", new Page.WaitForSelectorOptions().setTimeout(7000));
+
+                // 点击复制链接（第一个选项），复制内容由页面级捕获获得
+                String shareText = clipboardLockManager.copyText(page, () ->
+                        page.locator("div.agent-chat__share-bar__item__logo").first().click());
+                logInfo.sendTaskLog("已点击复制链接按钮", finalUserId, finalAgentName);
+                logInfo.sendTaskLog("获取到剪贴板内容: " + shareText, finalUserId, finalAgentName);
+
+                Pattern pattern = Pattern.compile("https://yuanbao\\.tencent\\.com/[^\s\"']+");
+                Matcher matcher = pattern.matcher(shareText == null ? "" : shareText);
+
+                String extractedUrl = null;
+                if (matcher.find()) {
+                    extractedUrl = matcher.group();
+                    logInfo.sendTaskLog("提取到分享链接: " + extractedUrl, finalUserId, finalAgentName);
+                } else {
+                    logInfo.sendTaskLog("未能提取到有效的分享链接，原始内容: " + shareText, finalUserId, finalAgentName);
                 }
-            });
+                shareUrlRef.set(extractedUrl);
+            } catch (TimeoutError e) {
+                // 记录分享操作超时
+                logInfo.sendTaskLog("分享按钮点击超时: " + e.getMessage(), finalUserId, finalAgentName);
+                UserLogUtil.sendAITimeoutLog(finalUserId, finalAiName, "分享链接获取", e, "点击分享按钮或复制链接", finalUrl + "/saveLogInfo");
+            } catch (Exception e) {
+                // 记录分享操作异常
+                logInfo.sendTaskLog("分享操作异常: " + e.getMessage(), finalUserId, finalAgentName);
+                UserLogUtil.sendAIBusinessLog(finalUserId, finalAiName, "分享操作", e.getMessage(), System.currentTimeMillis(), finalUrl + "/saveLogInfo");
+            }
 
             Thread.sleep(1000);
             String shareUrl = shareUrlRef.get();
@@ -695,11 +698,12 @@ public class TencentUtil {
         try {
             // 等待聊天框的内容稳定
             String currentContent = "";
-            String lastContent = "";
             String textContent = "";
             // 设置最大等待时间（单位：毫秒），比如 10 分钟
             long timeout = 600000; // 10 分钟
             long startTime = System.currentTimeMillis();  // 获取当前时间戳
+            // 内容 2 秒不变视为回答完成
+            PollingGovernor.Session poll = pollingGovernor.begin("yb", 2000);
             // 进入循环，直到内容不再变化或者超时
             while (true) {
                 // 获取当前时间戳
@@ -713,9 +717,11 @@ public class TencentUtil {
                 Locator outputLocator = page.locator(".hyc-common-markdown").last();
                 textContent = outputLocator.textContent();
                 currentContent = outputLocator.innerHTML();
+                poll.observe(currentContent);
 
-                // 如果当前内容和上次内容相同，认为 AI 已经完成回答，退出循环
-                if (currentContent.equals(lastContent)) {
+                // 如果内容一段时间内没有变化，认为 AI 已经完成回答，退出循环
+                if (poll.isStable(2000)) {
+                    poll.complete();
                     logInfo.sendTaskLog(agentName + "回答完成，正在自动提取内容", userId, agentName);
                     break;
                 }
@@ -723,11 +729,7 @@ public class TencentUtil {
                 if (userInfoRequest.getAiName() != null && userInfoRequest.getAiName().contains("stream")) {
                     webSocketClientService.sendMessage(userInfoRequest, McpResult.success(textContent, ""), userInfoRequest.getAiName());
                 }
-                // 更新上次内容为当前内容
-                lastContent = currentContent;
-
-                // 等待 2 秒后再次检查
-                page.waitForTimeout(2000);  // 等待2秒
+                poll.pause(page);
             }
             if (userInfoRequest.getAiName() != null && userInfoRequest.getAiName().contains("stream")) {
                 //延迟3秒结束，确保剩余内容全部输出
@@ -38,9 +38,20 @@ public class TongYiUtil {
     @Autowired
     private ElementSelectorUtil elementSelectorUtil;
     
+    @Autowired
+    private ResponseWatcher responseWatcher;
+
+    @Autowired
+    private PollingGovernor pollingGovernor;
+
     @Value("${cube.url}")
     private String url;
 
+    // 回答监听规则：最后一个 markdown 节点，停止按钮消失后内容静默即完成
+    private static final ResponseWatcher.Spec WATCH_SPEC = new ResponseWatcher.Spec(".tongyi-markdown")
+            .generating("div.operateBtn--qMhYIdIu.stop--P_jcrPFo")
+            .quietMillis(2000);
+
 
     /**
      * 处理通义千问的特殊模式切换（深度思考/联网搜索）
@@ -211,10 +222,29 @@ public class TongYiUtil {
 
             long timeout = 600000;
             long operationStartTime = System.currentTimeMillis();
+            PollingGovernor.Session poll = pollingGovernor.begin("ty", 0);
 
             Thread.sleep(3000);
+            boolean isStream = userInfoRequest.getAiName() != null && userInfoRequest.getAiName().contains("stream");
+
+            // 优先等待页面推送的完成事件，监听未能接管时回退到轮询
+            boolean watchCompleted = false;
+            ResponseWatcher.Watch watch = responseWatcher.watch(page, WATCH_SPEC);
+            if (watch != null) {
+                if (isStream) {
+                    watch.onDelta(delta -> webSocketClientService.sendDelta(userInfoRequest, delta, userInfoRequest.getAiName()))
+                            .onReset(text -> webSocketClientService.sendReset(userInfoRequest, text, userInfoRequest.getAiName()));
+                }
+                watchCompleted = watch.await(timeout, 2000, null);
+                if (watchCompleted) {
+                    poll.complete(watch);
+                    currentContent = watch.getText();
+                    logInfo.sendTaskLog(aiName + "回答完成，正在自动提取内容", userId, aiName);
+                }
+            }
+
             boolean isEnd = false;
-            while (true) {
+            while (!watchCompleted) {
                 long elapsedTime = System.currentTimeMillis() - operationStartTime;
 
                 if (elapsedTime > timeout) {
@@ -230,26 +260,28 @@ public class TongYiUtil {
                     isEnd = true;
                 }
                 if (outputLocator.count() == 0) {
-                    page.waitForTimeout(2000);
+                    poll.pause(page);
                     continue;
                 }
 
 //                currentContent = outputLocator.innerHTML();
                 currentContent = outputLocator.innerText();
                 textContent = outputLocator.textContent();
-                if(userInfoRequest.getAiName() != null && userInfoRequest.getAiName().contains("stream")) {
+                poll.observe(currentContent);
+                if(isStream) {
                     webSocketClientService.sendMessage(userInfoRequest, McpResult.success(textContent, ""), userInfoRequest.getAiName());
                 }
                 if (isEnd && !currentContent.isEmpty() && currentContent.equals(lastContent)) {
+                    poll.complete();
                     logInfo.sendTaskLog(aiName + "回答完成，正在自动提取内容", userId, aiName);
                     break;
                 }
 
                 lastContent = currentContent;
-                page.waitForTimeout(2000);
+                poll.pause(page);
             }
             logInfo.sendTaskLog(aiName + "内容已自动提取完成", userId, aiName);
-            if(userInfoRequest.getAiName() != null && userInfoRequest.getAiName().contains("stream")) {
+            if(isStream) {
                 webSocketClientService.sendMessage(userInfoRequest, McpResult.success("END", ""), userInfoRequest.getAiName());
             }
             // 记录内容提取成功
@@ -0,0 +1,55 @@
+package com.playwright.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按用户划分的锁
+ * 同一用户共用同一个浏览器配置目录与平台账号，必须串行的操作（如切换账号下的模型设置）只在同一用户内互斥，
+ * 不同用户之间互不影响。用户的锁在没有调用方持有或等待时即被回收，不随用户数量累积。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月18日 09:40
+ */
+@Component
+public class UserLockManager {
+
+    // 用户 -> 锁，只保留正在持有或等待锁的用户，最后一个使用者离开时移除
+    private final ConcurrentHashMap<String, UserLock> locks = new ConcurrentHashMap<>();
+
+    private static class UserLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        // 持有或等待该锁的调用数，只在 compute 中修改
+        private int holders;
+    }
+
+    public <T> T callWithUserLock(String userId, Callable<T> action) throws Exception {
+        String key = userId == null ? "" : userId;
+        UserLock userLock = locks.compute(key, (k, existing) -> {
+            UserLock current = existing == null ? new UserLock() : existing;
+            current.holders++;
+            return current;
+        });
+        try {
+            userLock.lock.lock();
+            try {
+                return action.call();
+            } finally {
+                userLock.lock.unlock();
+            }
+        } finally {
+            locks.computeIfPresent(key, (k, current) -> --current.holders == 0 ? null : current);
+        }
+    }
+
+    /**
+     * 当前持有或等待锁的用户数
+     */
+    public int getActiveUsers() {
+        return locks.size();
+    }
+}
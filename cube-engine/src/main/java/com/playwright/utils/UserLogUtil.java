@@ -40,7 +40,10 @@ public class UserLogUtil {
             logInfo.setMethodParams("通过UserLogUtil记录");
             logInfo.setIsSuccess(isSuccess);
             
-            RestUtils.post(url, logInfo);
+            // 交给后台线程批量上报，上报管道未启动时直接提交
+            if (!LogShipper.offer(url, logInfo)) {
+                RestUtils.post(url, logInfo);
+            }
         } catch (Exception ex) {
             // 避免日志记录本身出现异常影响主流程
             System.err.println("UserLogUtil记录日志失败: " + ex.getMessage());
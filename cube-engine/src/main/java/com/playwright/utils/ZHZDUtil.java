@@ -17,6 +17,17 @@ public class ZHZDUtil {
     @Autowired
     private LogMsgUtil logInfo;
 
+    @Autowired
+    private ResponseWatcher responseWatcher;
+
+    @Autowired
+    private PollingGovernor pollingGovernor;
+
+    // 回答监听规则：最后一个 markdown 节点，出现新的分享按钮即完成
+    private static final ResponseWatcher.Spec WATCH_SPEC = new ResponseWatcher.Spec(".Render-markdown")
+            .done("[data-testid='Button:Share:zhida_message_share_btn']")
+            .quietMillis(2000);
+
     /**
      * 检测知乎直答是否开启深度思考
      *
@@ -226,6 +237,8 @@ public class ZHZDUtil {
             // 提问
 
             int copyButtonCount = getCopyButtonCount(page);
+            // 发送前开始监听，以便和已有的回答区分
+            ResponseWatcher.Watch watch = responseWatcher.watch(page, WATCH_SPEC);
 
             inputBox.click();
             inputBox.type(userInfoRequest.getUserPrompt());
@@ -243,17 +256,25 @@ public class ZHZDUtil {
             logInfo.sendTaskLog("开启自动监听任务，持续监听" + aiName + "回答中", userId, aiName);
 
             // 获取原始回答HTML
-            return waitZHZDHtmlDom(page, userId, aiName, copyButtonCount);
+            return waitZHZDHtmlDom(page, userId, aiName, copyButtonCount, watch);
         } catch (Exception e) {
             logInfo.sendTaskLog("处理通义千问请求时发生错误", userId, aiName);
             throw e;
         }
     }
 
-    private String waitZHZDHtmlDom(Page page, String userId, String aiName, int copyButtonCount) throws Exception {
+    private String waitZHZDHtmlDom(Page page, String userId, String aiName, int copyButtonCount, ResponseWatcher.Watch watch) throws Exception {
         try {
             long timeout = 600000;
             long startTime = System.currentTimeMillis();
+            PollingGovernor.Session poll = pollingGovernor.begin("Zhihu", 0);
+
+            // 优先等待页面推送的完成事件，监听未能接管时回退到轮询
+            if (watch != null && watch.await(timeout, 2000, null)) {
+                poll.complete(watch);
+                logInfo.sendTaskLog("AI回复已完成", userId, aiName);
+                return cleanHtml(watch.getHtml());
+            }
 
             // 等待5秒
             page.waitForTimeout(5000);
@@ -267,11 +288,12 @@ public class ZHZDUtil {
                 }
 
                 if (copyButtonCount != getCopyButtonCount(page)) {
+                    poll.complete();
                     logInfo.sendTaskLog("AI回复已完成", userId, aiName);
                     break;
                 }
 
-                page.waitForTimeout(5000);
+                poll.pause(page);
             }
 
             Locator contentLocator = page.locator(".Render-markdown").last();
@@ -0,0 +1,116 @@
+package com.playwright.websocket;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * admin 与引擎之间 WebSocket 消息的类型
+ * 二进制帧头部只携带一个字节的类型编号，编号与 admin 端 MessageType 保持一致，新增类型只能追加编号。
+ * token 为旧版 JSON 协议中 type 字段（或其中一段）的取值。
+ *
+ * @author 优立方
+ * @version JDK 17
+ * @date 2025年09月22日 10:15
+ */
+public enum MessageType {
+
+    OTHER(0, null),
+    PROTOCOL(1, "PROTOCOL"),
+    HEARTBEAT(2, "heartbeat"),
+
+    // admin -> 引擎
+    AI_CHAT(3, "使用F8S"),
+    AI_LAYOUT(4, "AI排版"),
+    AI_SCORE(5, "AI评分"),
+    START_YB(6, "START_YB"),
+    CHECK_ZHIHU_LOGIN(10, "PLAY_CHECK_ZHIHU_LOGIN"),
+    CHECK_METASO_LOGIN(11, "CHECK_METASO_LOGIN"),
+    CHECK_DEEPSEEK_LOGIN(12, "PLAY_CHECK_DEEPSEEK_LOGIN"),
+    CHECK_BAIDU_LOGIN(13, "PLAY_CHECK_BAIDU_LOGIN"),
+    CHECK_QW_LOGIN(14, "PLAY_CHECK_QW_LOGIN"),
+    CHECK_YB_LOGIN(15, "CHECK_YB_LOGIN"),
+    CHECK_DB_LOGIN(16, "CHECK_DB_LOGIN"),
+    GET_ZHIHU_QRCODE(20, "PLAY_GET_ZHIHU_QRCODE"),
+    GET_METASO_QRCODE(21, "PLAY_GET_METASO_QRCODE"),
+    GET_DEEPSEEK_QRCODE(22, "PLAY_GET_DEEPSEEK_QRCODE"),
+    GET_BAIDU_QRCODE(23, "PLAY_GET_BAIDU_QRCODE"),
+    GET_QW_QRCODE(24, "PLAY_GET_QW_QRCODE"),
+    GET_YB_QRCODE(25, "PLAY_GET_YB_QRCODE"),
+    GET_DB_QRCODE(26, "PLAY_GET_DB_QRCODE"),
+
+    // 引擎 -> admin
+    OPENAI(40, "openAI"),
+    OPENAI_DELTA(41, "openAIDelta"),
+    MCP(42, "mcp");
+
+    private static final MessageType[] BY_CODE = new MessageType[256];
+    private static final Map<String, MessageType> BY_TOKEN = new HashMap<>();
+
+    static {
+        for (MessageType type : values()) {
+            BY_CODE[type.code] = type;
+            if (type.token != null) {
+                BY_TOKEN.put(type.token, type);
+            }
+        }
+    }
+
+    private final int code;
+    private final String token;
+
+    MessageType(int code, String token) {
+        this.code = code;
+        this.token = token;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * 根据帧头中的编号查找类型，未知编号按 OTHER 处理
+     */
+    public static MessageType of(int code) {
+        MessageType type = BY_CODE[code & 0xFF];
+        return type == null ? OTHER : type;
+    }
+
+    /**
+     * 根据 type 字段的完整取值查找类型
+     *
+     * @return 没有对应类型时返回 null
+     */
+    public static MessageType ofToken(String token) {
+        return token == null ? null : BY_TOKEN.get(token);
+    }
+
+    /**
+     * 根据旧版 JSON 中的 type 与 roles 字段识别类型
+     * type 取值既有 PLAY_CHECK_YB_LOGIN 也有 CHECK_YB_LOGIN，因此完全匹配不到时再按包含关系匹配；
+     * roles 以“使用F8S”开头的是 openAI/MCP 调用。
+     *
+     * @return 无法识别时返回 null
+     */
+    public static MessageType resolve(String type, String roles) {
+        if (roles != null && roles.startsWith(AI_CHAT.token)) {
+            return AI_CHAT;
+        }
+        if (type == null || type.isEmpty()) {
+            return null;
+        }
+        MessageType exact = ofToken(type);
+        if (exact != null) {
+            return exact;
+        }
+        for (MessageType candidate : values()) {
+            if (candidate.token != null && candidate != AI_CHAT && type.contains(candidate.token)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+}
@@ -14,9 +14,14 @@ import com.playwright.entity.mcp.McpResult;
 import com.playwright.mcp.CubeMcp;
 import com.playwright.utils.BrowserConcurrencyManager;
 import com.playwright.utils.BrowserTaskWrapper;
+import com.playwright.utils.FanOutExecutor;
 import com.playwright.utils.SpringContextUtils;
 import lombok.RequiredArgsConstructor;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
 import org.java_websocket.handshake.ServerHandshake;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -24,9 +29,17 @@ import org.springframework.stereotype.Service;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -47,11 +60,29 @@ public class WebSocketClientService {
     private ScheduledFuture<?> reconnectTask;
     private ScheduledFuture<?> heartbeatTask;
 
+    // 是否与 admin 协商使用二进制帧
+    private final boolean binaryEnabled;
+    // 是否请求 permessage-deflate 压缩
+    private final boolean deflateEnabled;
+    // 未协商到 permessage-deflate 时，消息体超过该字节数单独压缩
+    private final int compressThreshold;
+    // admin 已确认支持二进制帧，断线后重新协商
+    private volatile boolean envelopeActive = false;
+    // 消息类型 -> 处理方法
+    private final Map<MessageType, Consumer<UserInfoRequest>> handlers = new EnumMap<>(MessageType.class);
+
     /**
      * 构造函数，初始化WebSocket连接
      */
-    public WebSocketClientService(@Value("${cube.wssurl}") String serverUri) {
+    public WebSocketClientService(@Value("${cube.wssurl}") String serverUri,
+                                  @Value("${cube.ws.binary:true}") boolean binaryEnabled,
+                                  @Value("${cube.ws.deflate:true}") boolean deflateEnabled,
+                                  @Value("${cube.ws.compress-threshold:4096}") int compressThreshold) {
         this.serverUri = serverUri;
+        this.binaryEnabled = binaryEnabled;
+        this.deflateEnabled = deflateEnabled;
+        this.compressThreshold = compressThreshold;
+        registerHandlers();
         if (serverUri == null || serverUri.trim().isEmpty()) {
             return;
         }
@@ -75,16 +106,25 @@ public class WebSocketClientService {
         try {
             // 创建WebSocket服务器URI
             URI uri = new URI(serverUri);
+            Draft draft = deflateEnabled ? new Draft_6455(new PerMessageDeflateExtension()) : new Draft_6455();
             // 创建WebSocket客户端
-            webSocketClient = new WebSocketClient(uri) {
+            webSocketClient = new WebSocketClient(uri, draft) {
                 /**
                  * 当WebSocket连接成功时调用
                  */
                 @Override
                 public void onOpen(ServerHandshake handshake) {
                     reconnecting = false;
+                    envelopeActive = false;
                     stopReconnectionTask(); // 停止重连任务
                     startHeartbeatTask();
+                    if (binaryEnabled) {
+                        // 告知 admin 支持二进制帧，admin 确认后双方切换，旧版 admin 会忽略该消息
+                        JSONObject protocol = new JSONObject();
+                        protocol.put("type", MessageType.PROTOCOL.getToken());
+                        protocol.put("version", MessageEnvelope.VERSION);
+                        send(protocol.toJSONString());
+                    }
                 }
 
 
@@ -93,298 +133,22 @@ public class WebSocketClientService {
                  */
                 @Override
                 public void onMessage(String message) {
-                    BrowserController browserController = SpringContextUtils.getBean(BrowserController.class);
-                    AIGCController aigcController = SpringContextUtils.getBean(AIGCController.class);
-                    UserInfoRequest userInfoRequest = JSONObject.parseObject(message, UserInfoRequest.class);
-                    BrowserConcurrencyManager concurrencyManager = SpringContextUtils.getBean(BrowserConcurrencyManager.class);
-                    BrowserTaskWrapper taskWrapper = SpringContextUtils.getBean(BrowserTaskWrapper.class);
-                    CubeMcp cubeMcp = SpringContextUtils.getBean(CubeMcp.class);
-                    // 打印当前并发状态
-                    taskWrapper.printStatus();
-                    String aiName = userInfoRequest.getAiName();
-                    // 处理包含"使用F8S"的消息
-                    if(message.contains("使用F8S")){
-                        //豆包生成图片
-                        if(message.contains("db-img")) {
-                            concurrencyManager.submitBrowserTaskWithDeduplication(() -> {
-                                startAI(userInfoRequest, aiName, "图片生成", browserController, aigcController);
-                            }, "豆包智能体", userInfoRequest.getUserId(), 5, userInfoRequest.getUserPrompt());
-                        }
-                        // 公众号排版
-                        if (message.contains("znpb-ds")) {
-                            concurrencyManager.submitBrowserTaskWithDeduplication(() -> {
-                                startAI(userInfoRequest, aiName, "排版", browserController, aigcController);
-                            }, "豆包智能体", userInfoRequest.getUserId(), 5, userInfoRequest.getUserPrompt());
-                        }
-                        // 使用带去重功能的任务提交，防止重复调用
-                        if (message.contains("zhzd-chat")) {
-                            concurrencyManager.submitBrowserTaskWithDeduplication(() -> {
-                                startAI(userInfoRequest, aiName, "知乎直答", browserController, aigcController);
-                            }, "智谱AI", userInfoRequest.getUserId(), 5, userInfoRequest.getUserPrompt());
-                        }
-                        // 处理包含"metaso"的消息
-                        if(message.contains("mita")){
-                            concurrencyManager.submitBrowserTask(() -> {
-                                startAI(userInfoRequest, aiName, "秘塔", browserController, aigcController);
-                            }, "Metaso智能体", userInfoRequest.getUserId());
-                        }
-                        // 处理包含"yb-hunyuan"息,yb-deepseek"的消息
-                        if(message.contains("yb-hunyuan-pt") || message.contains("yb-deepseek-pt")){
-                            concurrencyManager.submitBrowserTask(() -> {
-                                startAI(userInfoRequest, aiName, "元宝", browserController, aigcController);
-                            }, "元宝智能体", userInfoRequest.getUserId());
-                        }
-                        // 处理包含"zj-db"的消息
-                        if(message.contains("zj-db")){
-                            concurrencyManager.submitBrowserTaskWithDeduplication(() -> {
-                                startAI(userInfoRequest, aiName, "豆包", browserController, aigcController);
-                            }, "豆包智能体", userInfoRequest.getUserId(), 5, userInfoRequest.getUserPrompt());
-                        }
-
-                        // 处理包含"baidu-agent"的消息
-                        if(userInfoRequest.getRoles() != null && userInfoRequest.getRoles().contains("baidu-agent")){
-                            concurrencyManager.submitBrowserTask(() -> {
-                                startAI(userInfoRequest, aiName, "百度", browserController, aigcController);
-                            }, "百度AI", userInfoRequest.getUserId());
-                        }
-                        // 处理包含"deepseek"的消息
-                        if(message.contains("deepseek,")){
-                            concurrencyManager.submitBrowserTaskWithDeduplication(() -> {
-                                startAI(userInfoRequest, aiName, "DeepSeek", browserController, aigcController);
-                            }, "DeepSeek智能体", userInfoRequest.getUserId(), 5, userInfoRequest.getUserPrompt());
-                        }
-                        // 处理包含"ty-qw"的信息
-                        if (message.contains("ty-qw")){
-                            concurrencyManager.submitBrowserTaskWithDeduplication(() -> {
-                                startAI(userInfoRequest, aiName, "通义千问", browserController, aigcController);
-                            }, "通义千问", userInfoRequest.getUserId(), 5, userInfoRequest.getUserPrompt());
-                        }
-                    }
-                    // 处理获取知乎二维码的消息
-                    if(message.contains("PLAY_GET_ZHIHU_QRCODE")){
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                browserController.getZhihuQrCode(userInfoRequest.getUserId());
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "获取知乎二维码", userInfoRequest.getUserId());
-                    }
-
-                    // 处理检查知乎登录状态的消息
-                    if (message.contains("PLAY_CHECK_ZHIHU_LOGIN")) {
-                        // 🚀 知乎状态检测使用高优先级，优先处理
-                        concurrencyManager.submitHighPriorityTask(() -> {
-                            try {
-                                String checkLogin = browserController.checkZhihuLogin(userInfoRequest.getUserId());
-                                userInfoRequest.setStatus(checkLogin);
-                                userInfoRequest.setType("RETURN_ZHIHU_STATUS");
-                                sendMessage(JSON.toJSONString(userInfoRequest));
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                                // 发送错误状态
-                                userInfoRequest.setStatus("false");
-                                userInfoRequest.setType("RETURN_ZHIHU_STATUS");
-                                sendMessage(JSON.toJSONString(userInfoRequest));
-                            }
-                        }, "知乎登录检查", userInfoRequest.getUserId());
-                    }
-
-                    //  处理检查秘塔登录状态的信息
-                    if (message.contains("CHECK_METASO_LOGIN")) {
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                String checkLogin = browserController.checkMetasoLogin(userInfoRequest.getUserId());
-                                userInfoRequest.setStatus(checkLogin);
-                                userInfoRequest.setType("RETURN_METASO_STATUS");
-                                sendMessage(JSON.toJSONString(userInfoRequest));
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "Metaso登录检查", userInfoRequest.getUserId());
-                    }
-
-                    // 处理获取秘塔二维码的消息
-                    if(message.contains("PLAY_GET_METASO_QRCODE")){
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                browserController.getMetasoQrCode(userInfoRequest.getUserId());
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "获取Metaso二维码", userInfoRequest.getUserId());
-                    }
-
-                    // 处理检查DeepSeek登录状态的消息
-                    if (message.contains("PLAY_CHECK_DEEPSEEK_LOGIN")) {
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                // 先尝试获取登录状态
-                                String checkLogin = browserController.checkDSLogin(userInfoRequest.getUserId());
-
-                                // 构建并发送状态消息 - 使用与其他AI智能体一致的格式
-                                userInfoRequest.setStatus(checkLogin);
-                                userInfoRequest.setType("RETURN_DEEPSEEK_STATUS");
-                                sendMessage(JSON.toJSONString(userInfoRequest));
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                                // 发送错误状态 - 使用与其他AI智能体一致的格式
-                                userInfoRequest.setStatus("false");
-                                userInfoRequest.setType("RETURN_DEEPSEEK_STATUS");
-                                sendMessage(JSON.toJSONString(userInfoRequest));
-                            }
-                        }, "DeepSeek登录检查", userInfoRequest.getUserId());
-                    }
-
-                    // 处理获取DeepSeek二维码的消息
-                    if(message.contains("PLAY_GET_DEEPSEEK_QRCODE")){
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                browserController.getDSQrCode(userInfoRequest.getUserId());
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "获取DeepSeek二维码", userInfoRequest.getUserId());
-                    }
-
-                    // 处理包含"START_YB"的消息
-                    if(message.contains("START_YB")){
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                aigcController.startYB(userInfoRequest);
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "启动元包", userInfoRequest.getUserId());
-                    }
-                    
-                    // 处理包含"AI排版"的消息
-                    if(message.contains("AI排版")){
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-//                                aigcController.startYBOffice(userInfoRequest);
-                                cubeMcp.publishToOffice(userInfoRequest);
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "AI排版", userInfoRequest.getUserId());
-                    }
-
-                    // 处理检查百度AI登录状态的消息
-                    if (message.contains("PLAY_CHECK_BAIDU_LOGIN")) {
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                String checkLogin = browserController.checkBaiduLogin(userInfoRequest.getUserId());
-                                userInfoRequest.setStatus(checkLogin);
-                                userInfoRequest.setType("RETURN_BAIDU_STATUS");
-                                sendMessage(JSON.toJSONString(userInfoRequest));
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                                // 发送错误状态
-                                userInfoRequest.setStatus("false");
-                                userInfoRequest.setType("RETURN_BAIDU_STATUS");
-                                sendMessage(JSON.toJSONString(userInfoRequest));
-                            }
-                        }, "百度AI登录检查", userInfoRequest.getUserId());
-                    }
-
-                    // 处理检查通义千问登录状态的消息
-                    if (message.contains("PLAY_CHECK_QW_LOGIN")) {
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                String checkLogin = browserController.checkTongYiLogin(userInfoRequest.getUserId());
-                                userInfoRequest.setStatus(checkLogin);
-                                userInfoRequest.setType("RETURN_TY_STATUS");
-                                sendMessage(JSON.toJSONString(userInfoRequest));
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "通义千问登录检查", userInfoRequest.getUserId());
-                    }
-
-
-                    // 处理获取百度AI二维码的消息
-                    if(message.contains("PLAY_GET_BAIDU_QRCODE")){
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                browserController.getBaiduQrCode(userInfoRequest.getUserId());
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "获取百度AI二维码", userInfoRequest.getUserId());
-                    }
-
-                    // 处理获取通义千问二维码的消息
-                    if(message.contains("PLAY_GET_QW_QRCODE")){
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                browserController.getTongYiQrCode(userInfoRequest.getUserId());
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "获取通义千问二维码", userInfoRequest.getUserId());
-                    }
-                    
-                    // 处理获取yb二维码的消息
-                    if(message.contains("PLAY_GET_YB_QRCODE")){
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                browserController.getYBQrCode(userInfoRequest.getUserId());
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "获取元宝二维码", userInfoRequest.getUserId());
-                    }
-
-                    if(message.contains("AI评分")){
-                        new Thread(() -> {
-                            try {
-                                aigcController.startDBScore(userInfoRequest);
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }).start();
-                    }
-                    // 处理检查yb登录状态的消息
-                    if (message.contains("CHECK_YB_LOGIN")) {
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                String checkLogin = browserController.checkYBLogin(userInfoRequest.getUserId());
-                                userInfoRequest.setStatus(checkLogin);
-                                userInfoRequest.setType("RETURN_YB_STATUS");
-                                sendMessage(JSON.toJSONString(userInfoRequest));
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "元宝登录检查", userInfoRequest.getUserId());
-                    }
-
-                    // 处理检查数据库登录状态的消息
-                    if (message.contains("CHECK_DB_LOGIN")) {
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                String checkLogin = browserController.checkDBLogin(userInfoRequest.getUserId());
-                                userInfoRequest.setStatus(checkLogin);
-                                userInfoRequest.setType("RETURN_DB_STATUS");
-                                sendMessage(JSON.toJSONString(userInfoRequest));
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "豆包登录检查", userInfoRequest.getUserId());
-                    }
-
+                    dispatch(message, null);
+                }
 
-                    // 处理获取数据库二维码的消息
-                    if(message.contains("PLAY_GET_DB_QRCODE")){
-                        concurrencyManager.submitBrowserTask(() -> {
-                            try {
-                                browserController.getDBQrCode(userInfoRequest.getUserId());
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, "获取豆包二维码", userInfoRequest.getUserId());
+                /**
+                 * 当接收到二进制帧时调用
+                 */
+                @Override
+                public void onMessage(ByteBuffer bytes) {
+                    MessageEnvelope envelope;
+                    try {
+                        envelope = MessageEnvelope.decode(bytes);
+                    } catch (IllegalArgumentException e) {
+                        e.printStackTrace();
+                        return;
                     }
-
+                    dispatch(envelope.getBody(), envelope.getType());
                 }
 
                 /**
@@ -392,6 +156,7 @@ public class WebSocketClientService {
                  */
                 @Override
                 public void onClose(int code, String reason, boolean remote) {
+                    envelopeActive = false;
                     startReconnectionTask();
                     stopHeartbeatTask();
                 }
@@ -413,6 +178,248 @@ public class WebSocketClientService {
         }
     }
 
+    /**
+     * 分发 admin 下发的消息
+     * 二进制帧直接使用帧头中的类型；JSON 消息根据 type、roles 字段识别类型，
+     * 只有不带 type 字段的旧版消息才按内容匹配。
+     */
+    private void dispatch(String message, MessageType type) {
+        UserInfoRequest userInfoRequest = JSONObject.parseObject(message, UserInfoRequest.class);
+        if (type == null || type == MessageType.OTHER) {
+            type = MessageType.resolve(userInfoRequest.getType(), userInfoRequest.getRoles());
+        }
+        if (type == MessageType.PROTOCOL) {
+            // admin 确认支持二进制帧
+            envelopeActive = binaryEnabled && JSONObject.parseObject(message).getIntValue("version") >= MessageEnvelope.VERSION;
+            return;
+        }
+        // 打印当前并发状态
+        SpringContextUtils.getBean(BrowserTaskWrapper.class).printStatus();
+        if (type != null) {
+            Consumer<UserInfoRequest> handler = handlers.get(type);
+            if (handler != null) {
+                handler.accept(userInfoRequest);
+            }
+            return;
+        }
+        if (userInfoRequest.getType() == null || userInfoRequest.getType().isEmpty()) {
+            handlers.forEach((candidate, handler) -> {
+                if (message.contains(candidate.getToken())) {
+                    handler.accept(userInfoRequest);
+                }
+            });
+        }
+    }
+
+    /**
+     * 登记各类型消息的处理方法
+     */
+    private void registerHandlers() {
+        handlers.put(MessageType.AI_CHAT, this::startAIChat);
+        handlers.put(MessageType.AI_LAYOUT, userInfoRequest -> submit(userInfoRequest, "AI排版",
+                () -> SpringContextUtils.getBean(CubeMcp.class).publishToOffice(userInfoRequest)));
+        handlers.put(MessageType.AI_SCORE, userInfoRequest -> submit(userInfoRequest, "豆包评分",
+                () -> SpringContextUtils.getBean(AIGCController.class).startDBScore(userInfoRequest)));
+        handlers.put(MessageType.START_YB, userInfoRequest -> submit(userInfoRequest, "启动元包",
+                () -> SpringContextUtils.getBean(AIGCController.class).startYB(userInfoRequest)));
+
+        // 🚀 知乎状态检测使用高优先级，优先处理
+        handlers.put(MessageType.CHECK_ZHIHU_LOGIN, userInfoRequest -> checkLogin(userInfoRequest, "知乎登录检查",
+                "RETURN_ZHIHU_STATUS", true, BrowserController::checkZhihuLogin));
+        handlers.put(MessageType.CHECK_METASO_LOGIN, userInfoRequest -> checkLogin(userInfoRequest, "Metaso登录检查",
+                "RETURN_METASO_STATUS", false, BrowserController::checkMetasoLogin));
+        handlers.put(MessageType.CHECK_DEEPSEEK_LOGIN, userInfoRequest -> checkLogin(userInfoRequest, "DeepSeek登录检查",
+                "RETURN_DEEPSEEK_STATUS", false, BrowserController::checkDSLogin));
+        handlers.put(MessageType.CHECK_BAIDU_LOGIN, userInfoRequest -> checkLogin(userInfoRequest, "百度AI登录检查",
+                "RETURN_BAIDU_STATUS", false, BrowserController::checkBaiduLogin));
+        handlers.put(MessageType.CHECK_QW_LOGIN, userInfoRequest -> checkLogin(userInfoRequest, "通义千问登录检查",
+                "RETURN_TY_STATUS", false, BrowserController::checkTongYiLogin));
+        handlers.put(MessageType.CHECK_YB_LOGIN, userInfoRequest -> checkLogin(userInfoRequest, "元宝登录检查",
+                "RETURN_YB_STATUS", false, BrowserController::checkYBLogin));
+        handlers.put(MessageType.CHECK_DB_LOGIN, userInfoRequest -> checkLogin(userInfoRequest, "豆包登录检查",
+                "RETURN_DB_STATUS", false, BrowserController::checkDBLogin));
+
+        handlers.put(MessageType.GET_ZHIHU_QRCODE, userInfoRequest -> getQrCode(userInfoRequest, "获取知乎二维码",
+                BrowserController::getZhihuQrCode));
+        handlers.put(MessageType.GET_METASO_QRCODE, userInfoRequest -> getQrCode(userInfoRequest, "获取Metaso二维码",
+                BrowserController::getMetasoQrCode));
+        handlers.put(MessageType.GET_DEEPSEEK_QRCODE, userInfoRequest -> getQrCode(userInfoRequest, "获取DeepSeek二维码",
+                BrowserController::getDSQrCode));
+        handlers.put(MessageType.GET_BAIDU_QRCODE, userInfoRequest -> getQrCode(userInfoRequest, "获取百度AI二维码",
+                BrowserController::getBaiduQrCode));
+        handlers.put(MessageType.GET_QW_QRCODE, userInfoRequest -> getQrCode(userInfoRequest, "获取通义千问二维码",
+                BrowserController::getTongYiQrCode));
+        handlers.put(MessageType.GET_YB_QRCODE, userInfoRequest -> getQrCode(userInfoRequest, "获取元宝二维码",
+                BrowserController::getYBQrCode));
+        handlers.put(MessageType.GET_DB_QRCODE, userInfoRequest -> getQrCode(userInfoRequest, "获取豆包二维码",
+                BrowserController::getDBQrCode));
+    }
+
+    /**
+     * 处理 openAI/MCP 调用，roles 中的智能体标识决定启动哪些AI
+     * 同时选择多个AI时，在同一个用户浏览器中以标签页运行
+     */
+    private void startAIChat(UserInfoRequest userInfoRequest) {
+        List<AITask> tasks = resolveAITasks(userInfoRequest.getRoles());
+
+        FanOutExecutor fanOutExecutor = SpringContextUtils.getBean(FanOutExecutor.class);
+        FanOutExecutor.Session session = null;
+        if (fanOutExecutor.shouldFanOut(tasks.size())) {
+            session = fanOutExecutor.open(userInfoRequest.getUserId(), tasks.stream().map(AITask::cnName).toList());
+        }
+        for (AITask task : tasks) {
+            if (session == null) {
+                submitAI(userInfoRequest, task, fanOutExecutor, null);
+            } else {
+                // 错开提交，等待期间不占用并发槽位
+                FanOutExecutor.Session batch = session;
+                fanOutExecutor.submit(batch, task.cnName(), () -> submitAI(userInfoRequest, task, fanOutExecutor, batch));
+            }
+        }
+    }
+
+    /**
+     * 按 roles 中的智能体标识解析需要启动的AI
+     * roles 以逗号分隔，标识本身或以“标识-”开头的变体（如 ty-qw-sdsk）都算选中，
+     * 不按子串匹配，deepseek 不会误匹配 yb-deepseek-pt，有无结尾逗号都一样
+     */
+    public static List<AITask> resolveAITasks(String roles) {
+        List<String> selected = new ArrayList<>();
+        if (roles != null) {
+            for (String role : roles.split(",")) {
+                if (!role.isBlank()) {
+                    selected.add(role.trim());
+                }
+            }
+        }
+        List<AITask> tasks = new ArrayList<>();
+        //豆包生成图片
+        if (hasRole(selected, "db-img")) {
+            tasks.add(new AITask("图片生成", "豆包智能体", true));
+        }
+        // 公众号排版
+        if (hasRole(selected, "znpb-ds")) {
+            tasks.add(new AITask("排版", "豆包智能体", true));
+        }
+        // 使用带去重功能的任务提交，防止重复调用
+        if (hasRole(selected, "zhzd-chat")) {
+            tasks.add(new AITask("知乎直答", "智谱AI", true));
+        }
+        // 处理包含"metaso"的消息
+        if (hasRole(selected, "mita")) {
+            tasks.add(new AITask("秘塔", "Metaso智能体", false));
+        }
+        // 处理包含"yb-hunyuan"息,yb-deepseek"的消息
+        if (hasRole(selected, "yb-hunyuan-pt") || hasRole(selected, "yb-deepseek-pt")) {
+            tasks.add(new AITask("元宝", "元宝智能体", false));
+        }
+        // 处理包含"zj-db"的消息
+        if (hasRole(selected, "zj-db")) {
+            tasks.add(new AITask("豆包", "豆包智能体", true));
+        }
+        // 处理包含"baidu-agent"的消息
+        if (hasRole(selected, "baidu-agent")) {
+            tasks.add(new AITask("百度", "百度AI", false));
+        }
+        // 处理包含"deepseek"的消息
+        if (hasRole(selected, "deepseek")) {
+            tasks.add(new AITask("DeepSeek", "DeepSeek智能体", true));
+        }
+        // 处理包含"ty-qw"的信息
+        if (hasRole(selected, "ty-qw")) {
+            tasks.add(new AITask("通义千问", "通义千问", true));
+        }
+        return tasks;
+    }
+
+    private static boolean hasRole(List<String> selected, String role) {
+        for (String item : selected) {
+            if (item.equals(role) || item.startsWith(role + "-")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 需要启动的AI
+     *
+     * @param cnName      中文名称，用于日志与批次结果
+     * @param taskName    并发管理中的任务名称
+     * @param deduplicate 是否按用户与提示词去重
+     */
+    public record AITask(String cnName, String taskName, boolean deduplicate) {
+    }
+
+    private void submitAI(UserInfoRequest userInfoRequest, AITask aiTask, FanOutExecutor fanOutExecutor, FanOutExecutor.Session session) {
+        BrowserConcurrencyManager concurrencyManager = SpringContextUtils.getBean(BrowserConcurrencyManager.class);
+        String cnName = aiTask.cnName();
+        Runnable task = () -> {
+            BrowserController browserController = SpringContextUtils.getBean(BrowserController.class);
+            AIGCController aigcController = SpringContextUtils.getBean(AIGCController.class);
+            if (session == null) {
+                startAI(userInfoRequest, userInfoRequest.getAiName(), cnName, browserController, aigcController);
+            } else {
+                fanOutExecutor.run(session, cnName,
+                        () -> startAI(userInfoRequest, userInfoRequest.getAiName(), cnName, browserController, aigcController));
+            }
+        };
+        Future<?> future = aiTask.deduplicate()
+                ? concurrencyManager.submitBrowserTaskWithDeduplication(task, aiTask.taskName(), userInfoRequest.getUserId(), 5, userInfoRequest.getUserPrompt())
+                : concurrencyManager.submitBrowserTask(task, aiTask.taskName(), userInfoRequest.getUserId());
+        // 重复提交、被拒绝或排队中被取消的任务不会执行，结束时补记批次结果；已执行的任务由 run 计入，不会重复
+        if (session != null && future instanceof CompletableFuture<?> completion) {
+            completion.whenComplete((result, e) -> fanOutExecutor.skip(session, cnName));
+        }
+        reportAdmission(future, userInfoRequest);
+    }
+
+    private void submit(UserInfoRequest userInfoRequest, String taskName, TaskAction action) {
+        reportAdmission(SpringContextUtils.getBean(BrowserConcurrencyManager.class).submitBrowserTask(() -> {
+            try {
+                action.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, taskName, userInfoRequest.getUserId()), userInfoRequest);
+    }
+
+    /**
+     * 检查登录状态并回传，检查出错时回传 false
+     */
+    private void checkLogin(UserInfoRequest userInfoRequest, String taskName, String returnType,
+                            boolean highPriority, BrowserAction checker) {
+        BrowserConcurrencyManager concurrencyManager = SpringContextUtils.getBean(BrowserConcurrencyManager.class);
+        Runnable task = () -> {
+            String status;
+            try {
+                status = checker.apply(SpringContextUtils.getBean(BrowserController.class), userInfoRequest.getUserId());
+            } catch (Exception e) {
+                e.printStackTrace();
+                status = "false";
+            }
+            userInfoRequest.setStatus(status);
+            userInfoRequest.setType(returnType);
+            sendMessage(JSON.toJSONString(userInfoRequest));
+        };
+        reportAdmission(highPriority
+                ? concurrencyManager.submitHighPriorityTask(task, taskName, userInfoRequest.getUserId())
+                : concurrencyManager.submitBrowserTask(task, taskName, userInfoRequest.getUserId()), userInfoRequest);
+    }
+
+    private void getQrCode(UserInfoRequest userInfoRequest, String taskName, BrowserAction action) {
+        submit(userInfoRequest, taskName,
+                () -> action.apply(SpringContextUtils.getBean(BrowserController.class), userInfoRequest.getUserId()));
+    }
+
+    private interface TaskAction {
+        void run() throws Exception;
+    }
+
+    private interface BrowserAction {
+        String apply(BrowserController browserController, String userId) throws Exception;
+    }
+
     /**
      * 启动心跳任务
      */
@@ -427,7 +434,16 @@ public class WebSocketClientService {
             if (webSocketClient != null && webSocketClient.isOpen()) {
                 JSONObject pingMessage = new JSONObject();
                 pingMessage.put("type", "heartbeat");
-                webSocketClient.send(pingMessage.toJSONString());
+                // 上报并发容量与当前负载，供后台在同一主体的多台主机之间分配任务
+                try {
+                    BrowserConcurrencyManager.ConcurrencyStatus status = SpringContextUtils.getBean(BrowserConcurrencyManager.class).getStatus();
+                    pingMessage.put("maxConcurrent", status.getMaxConcurrent());
+                    pingMessage.put("running", status.getCurrentRunning());
+                    pingMessage.put("queued", status.getQueueSize());
+                } catch (Exception e) {
+                    // 容器尚未就绪时只发送心跳
+                }
+                send(MessageType.HEARTBEAT, null, pingMessage.toJSONString());
             }
         }, 0, 30, TimeUnit.SECONDS); // 每 30 秒发送一次
     }
@@ -481,9 +497,33 @@ public class WebSocketClientService {
      * 发送消息到WebSocket服务器
      */
     public void sendMessage(String message) {
-        if (webSocketClient != null && webSocketClient.isOpen()) {
-            webSocketClient.send(message);
+        send(MessageType.OTHER, null, message);
+    }
+
+    /**
+     * 发送消息，admin 支持时使用二进制帧，否则发送原 JSON
+     */
+    private void send(MessageType type, String taskId, String message) {
+        WebSocketClient client = webSocketClient;
+        if (client == null || !client.isOpen()) {
+            return;
+        }
+        if (!envelopeActive) {
+            client.send(message);
+            return;
+        }
+        client.send(MessageEnvelope.encode(type, taskId, message, isDeflateNegotiated(client) ? 0 : compressThreshold));
+    }
+
+    /**
+     * 连接是否已协商 permessage-deflate，协商成功时由传输层压缩，不再单独压缩消息体
+     */
+    private boolean isDeflateNegotiated(WebSocketClient client) {
+        if (client.getDraft() instanceof Draft_6455 draft) {
+            IExtension extension = draft.getExtension();
+            return extension instanceof PerMessageDeflateExtension;
         }
+        return false;
     }
 
     /**
@@ -503,15 +543,103 @@ public class WebSocketClientService {
                 result = mcpResult.getResult();
             }
             content.put("message", result);
+        } else if("mcp".equals(userInfoRequest.getType())) {
+            if(mcpResult == null) {
+                mcpResult = McpResult.fail(aiName + "执行错误,请稍后重试", null);
+            }
+            content.put("message", JSONObject.toJSONString(mcpResult));
         } else{
 //            TODO 其他情况
         }
-        if (webSocketClient != null && webSocketClient.isOpen()) {
-            webSocketClient.send(JSONObject.toJSONString(content));
+        MessageType type = "openAI".equals(userInfoRequest.getType()) ? MessageType.OPENAI
+                : "mcp".equals(userInfoRequest.getType()) ? MessageType.MCP : MessageType.OTHER;
+        send(type, userInfoRequest.getTaskId(), JSONObject.toJSONString(content));
+    }
+
+    /**
+     * 推送流式回答的增量内容，由 admin 按 taskId 直接转发给 SSE 客户端
+     */
+    public void sendDelta(UserInfoRequest userInfoRequest, String delta, String aiName) {
+        if (delta == null || delta.isEmpty()) {
+            return;
+        }
+        Map<String, String> content = deltaContent(userInfoRequest, aiName);
+        content.put("delta", delta);
+        send(MessageType.OPENAI_DELTA, userInfoRequest.getTaskId(), JSONObject.toJSONString(content));
+    }
+
+    /**
+     * 页面改写了已推送的内容，推送改写后的全文，admin 据此重新对齐后续增量
+     */
+    public void sendReset(UserInfoRequest userInfoRequest, String text, String aiName) {
+        if (text == null) {
+            return;
+        }
+        Map<String, String> content = deltaContent(userInfoRequest, aiName);
+        content.put("reset", text);
+        send(MessageType.OPENAI_DELTA, userInfoRequest.getTaskId(), JSONObject.toJSONString(content));
+    }
+
+    private static Map<String, String> deltaContent(UserInfoRequest userInfoRequest, String aiName) {
+        Map<String, String> content = new HashMap<>();
+        content.put("type", "openAIDelta");
+        content.put("userId", userInfoRequest.getUserId());
+        content.put("aiName", aiName);
+        content.put("taskId", userInfoRequest.getTaskId());
+        return content;
+    }
+
+    /**
+     * 反馈任务的排队情况：排队时告知位置与预计等待时间，排队已满被拒绝时告知建议的重试时间。
+     * openAI/MCP 调用被拒绝时直接回传失败结果，admin 无需等到超时。
+     */
+    private void reportAdmission(Future<?> future, UserInfoRequest userInfoRequest) {
+        if (!(future instanceof BrowserConcurrencyManager.TaskFuture<?> taskFuture)) {
+            return;
+        }
+        String aiName = userInfoRequest.getAiName();
+        if (taskFuture.isRejected()) {
+            long retryAfterSeconds = taskFuture.getRetryAfterMillis() / 1000;
+            String tip = "当前任务较多，请在 " + retryAfterSeconds + " 秒后重试";
+            if ("openAI".equals(userInfoRequest.getType()) || "mcp".equals(userInfoRequest.getType())) {
+                sendMessage(userInfoRequest, McpResult.fail(tip, null), aiName);
+                if (aiName != null && aiName.contains("stream")) {
+                    sendMessage(userInfoRequest, McpResult.success("END", ""), aiName);
+                }
+                return;
+            }
+            JSONObject rejected = new JSONObject();
+            rejected.put("type", "RETURN_TASK_REJECTED");
+            rejected.put("userId", userInfoRequest.getUserId());
+            rejected.put("taskId", userInfoRequest.getTaskId());
+            rejected.put("taskName", taskFuture.getTaskName());
+            rejected.put("retryAfter", retryAfterSeconds);
+            rejected.put("message", tip);
+            sendMessage(rejected.toJSONString());
+            return;
+        }
+        BiConsumer<Integer, Long> notifyQueued = (position, waitMillis) -> {
+            JSONObject queued = new JSONObject();
+            queued.put("type", "RETURN_TASK_QUEUED");
+            queued.put("userId", userInfoRequest.getUserId());
+            queued.put("taskId", userInfoRequest.getTaskId());
+            queued.put("aiName", aiName);
+            queued.put("taskName", taskFuture.getTaskName());
+            queued.put("position", position);
+            queued.put("estimatedWait", waitMillis / 1000);
+            queued.put("message", "排队中，第 " + position + " 位，预计等待 " + Math.max(1, waitMillis / 1000) + " 秒");
+            sendMessage(queued.toJSONString());
+        };
+        if (taskFuture.getQueuePosition() > 0) {
+            notifyQueued.accept(taskFuture.getQueuePosition(), taskFuture.getEstimatedWaitMillis());
         }
+        taskFuture.onQueueUpdate(notifyQueued);
     }
 
-    public void startAI(UserInfoRequest userInfoRequest, String aiName, String cnName, BrowserController browserController, AIGCController aigcController) {
+    /**
+     * @return 是否生成成功
+     */
+    public boolean startAI(UserInfoRequest userInfoRequest, String aiName, String cnName, BrowserController browserController, AIGCController aigcController) {
         try {
 //            不同ai不同处理
             String status = null;
@@ -542,7 +670,7 @@ public class WebSocketClientService {
 
             if (status == null || status.equals("未登录") || status.equals("false")) {
                 sendMessage(userInfoRequest, McpResult.fail("请先前往后台登录" + cnName, null), aiName);
-                return;
+                return false;
             }
 
 //            不同AI不同处理
@@ -579,12 +707,15 @@ public class WebSocketClientService {
             }
 
 
+            boolean success = mcpResult != null && Integer.valueOf(200).equals(mcpResult.getCode());
             if (aiName.contains("stream")) {
-                return;
+                return success;
             }
             sendMessage(userInfoRequest, mcpResult, aiName);
+            return success;
         } catch (Exception e) {
             sendMessage(userInfoRequest,McpResult.fail("生成失败,请稍后再试",null), aiName);
+            return false;
         }
     }
 }
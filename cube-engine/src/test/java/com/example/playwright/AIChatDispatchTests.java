@@ -0,0 +1,79 @@
+package com.example.playwright;
+
+import com.playwright.websocket.WebSocketClientService;
+import com.playwright.websocket.WebSocketClientService.AITask;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 后台 openAI 模型与 MCP 工具下发的 roles 都要解析到对应的AI
+ */
+class AIChatDispatchTests {
+
+    private static List<String> dispatch(String roles) {
+        return WebSocketClientService.resolveAITasks(roles).stream().map(AITask::cnName).toList();
+    }
+
+    @Test
+    void deepSeekIsDispatchedWithOrWithoutTrailingComma() {
+        // DeepSeek 模型的普通/异步调用
+        assertEquals(List.of("DeepSeek"), dispatch("deepseek"));
+        // DeepSeek 模型的流式调用
+        assertEquals(List.of("DeepSeek"), dispatch("deepseek,"));
+    }
+
+    @Test
+    void douBaoIsDispatched() {
+        assertEquals(List.of("豆包"), dispatch("zj-db"));
+        assertEquals(List.of("豆包"), dispatch("zj-db,"));
+    }
+
+    @Test
+    void zhiHuZhiDaIsDispatched() {
+        assertEquals(List.of("知乎直答"), dispatch("zhzd-chat"));
+    }
+
+    @Test
+    void tongYiIsDispatched() {
+        assertEquals(List.of("通义千问"), dispatch("ty-qw"));
+        assertEquals(List.of("通义千问"), dispatch("ty-qw-sdsk,"));
+    }
+
+    @Test
+    void metasoIsDispatched() {
+        assertEquals(List.of("秘塔"), dispatch("mita"));
+    }
+
+    @Test
+    void baiduIsDispatched() {
+        assertEquals(List.of("百度"), dispatch("baidu-agent"));
+    }
+
+    @Test
+    void yuanBaoIsDispatchedWithoutDeepSeek() {
+        assertEquals(List.of("元宝"), dispatch("yb-hunyuan-pt"));
+        assertEquals(List.of("元宝"), dispatch("yb-deepseek-pt"));
+    }
+
+    @Test
+    void layoutRolesDispatchLayoutAndYuanBao() {
+        assertEquals(List.of("排版", "元宝"), dispatch("znpb-ds,yb-deepseek-pt,yb-deepseek-sdsk,yb-deepseek-lwss,"));
+        assertEquals(List.of("元宝"), dispatch("yb-deepseek-pt, znpb"));
+    }
+
+    @Test
+    void multipleRolesDispatchEachAI() {
+        assertEquals(List.of("秘塔", "豆包", "DeepSeek", "通义千问"), dispatch("zj-db,deepseek,mita,ty-qw,"));
+    }
+
+    @Test
+    void unknownOrMissingRolesDispatchNothing() {
+        assertTrue(dispatch(null).isEmpty());
+        assertTrue(dispatch("").isEmpty());
+        assertTrue(dispatch("yb-deepseek").isEmpty());
+    }
+}
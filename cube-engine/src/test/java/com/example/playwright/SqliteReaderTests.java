@@ -0,0 +1,362 @@
+package com.example.playwright;
+
+import com.playwright.utils.SqliteReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 测试用的数据库文件按 SQLite 文件格式逐字节构造，不依赖 sqlite3 命令或 JDBC 驱动
+ */
+class SqliteReaderTests {
+
+    private static final int PAGE_SIZE = 512;
+    private static final String COOKIES_SQL = "CREATE TABLE cookies(creation_utc INTEGER NOT NULL,"
+            + "host_key TEXT NOT NULL,name TEXT NOT NULL,value TEXT NOT NULL,encrypted_value BLOB NOT NULL,"
+            + "path TEXT NOT NULL,expires_utc INTEGER NOT NULL)";
+    private static final List<String> COLUMNS = List.of("host_key", "name", "encrypted_value", "expires_utc");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsSmallCookiesTable() throws IOException {
+        Fixture db = new Fixture();
+        db.leaf(2, List.of(
+                cookie(1, ".deepseek.com", "ds_session_id", new byte[]{1, 2, 3}, 13400000000000000L),
+                cookie(2, ".doubao.com", "sessionid", new byte[0], 0L)));
+        Path file = db.write("Cookies", 2, "cookies", COOKIES_SQL);
+
+        List<Map<String, Object>> rows = SqliteReader.readTable(file, "Cookies", COLUMNS);
+
+        assertEquals(2, rows.size());
+        assertEquals(".deepseek.com", rows.get(0).get("host_key"));
+        assertEquals("ds_session_id", rows.get(0).get("name"));
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) rows.get(0).get("encrypted_value"));
+        assertEquals(13400000000000000L, rows.get(0).get("expires_utc"));
+        assertEquals("sessionid", rows.get(1).get("name"));
+        assertEquals(0L, rows.get(1).get("expires_utc"));
+    }
+
+    @Test
+    void followsOverflowPages() throws IOException {
+        // 负载远超单页可容纳的大小，需要跨越多个溢出页
+        byte[] large = new byte[PAGE_SIZE * 3 + 17];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) (i * 31);
+        }
+        Fixture db = new Fixture();
+        db.leaf(2, List.<Object[]>of(cookie(1, ".tongyi.com", "login_aliyunid_ticket", large, 1L)));
+        Path file = db.write("Cookies", 2, "cookies", COOKIES_SQL);
+
+        List<Map<String, Object>> rows = SqliteReader.readTable(file, "cookies", COLUMNS);
+
+        assertEquals(1, rows.size());
+        assertArrayEquals(large, (byte[]) rows.get(0).get("encrypted_value"));
+        assertEquals("login_aliyunid_ticket", rows.get(0).get("name"));
+        assertEquals(1L, rows.get(0).get("expires_utc"));
+    }
+
+    @Test
+    void walksInteriorPagesInOrder() throws IOException {
+        Fixture db = new Fixture();
+        List<Object[]> first = new ArrayList<>();
+        List<Object[]> second = new ArrayList<>();
+        List<Object[]> third = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            Object[] row = cookie(i, ".metaso.cn", "uid_" + i, new byte[]{(byte) i}, i * 1000L);
+            (i <= 3 ? first : i <= 6 ? second : third).add(row);
+        }
+        db.interior(2, new int[]{3, 4}, new long[]{3, 6}, 5);
+        db.leaf(3, first);
+        db.leaf(4, second);
+        db.leaf(5, third);
+        Path file = db.write("Cookies", 2, "cookies", COOKIES_SQL);
+
+        List<Map<String, Object>> rows = SqliteReader.readTable(file, "cookies", COLUMNS);
+
+        assertEquals(9, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals("uid_" + (i + 1), rows.get(i).get("name"));
+            assertEquals((i + 1) * 1000L, rows.get(i).get("expires_utc"));
+        }
+    }
+
+    @Test
+    void missingValuesReadAsNull() throws IOException {
+        // 后加的列在旧记录中不存在
+        Fixture db = new Fixture();
+        db.leaf(2, List.<Object[]>of(new Object[]{1L, ".baidu.com", "BDUSS"}));
+        Path file = db.write("Cookies", 2, "cookies", COOKIES_SQL);
+
+        Map<String, Object> row = SqliteReader.readTable(file, "cookies", COLUMNS).get(0);
+
+        assertEquals("BDUSS", row.get("name"));
+        assertNull(row.get("expires_utc"));
+    }
+
+    @Test
+    void rejectsMissingTableAndColumn() throws IOException {
+        Fixture db = new Fixture();
+        db.leaf(2, List.<Object[]>of(cookie(1, ".zhihu.com", "z_c0", new byte[0], 0L)));
+        Path file = db.write("Cookies", 2, "cookies", COOKIES_SQL);
+
+        assertThrows(IllegalArgumentException.class, () -> SqliteReader.readTable(file, "meta", COLUMNS));
+        assertThrows(IllegalArgumentException.class, () -> SqliteReader.readTable(file, "cookies", List.of("samesite")));
+    }
+
+    @Test
+    void rejectsNonSqliteFile() throws IOException {
+        Path file = dir.resolve("Cookies");
+        Files.write(file, "not a database".repeat(20).getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IllegalArgumentException.class, () -> SqliteReader.readTable(file, "cookies", COLUMNS));
+    }
+
+    @Test
+    void rejectsTruncatedFile() throws IOException {
+        byte[] large = new byte[PAGE_SIZE * 3];
+        Fixture db = new Fixture();
+        db.leaf(2, List.<Object[]>of(cookie(1, ".yuanbao.tencent.com", "hy_token", large, 0L)));
+        byte[] full = Files.readAllBytes(db.write("Cookies", 2, "cookies", COOKIES_SQL));
+
+        // 截在溢出页链中间、截在表页中间、只剩文件头
+        for (int length : new int[]{PAGE_SIZE * 3, PAGE_SIZE * 2 - 40, PAGE_SIZE + 100, 120}) {
+            Path file = dir.resolve("Truncated-" + length);
+            Files.write(file, Arrays.copyOf(full, length));
+            assertThrows(IllegalArgumentException.class, () -> SqliteReader.readTable(file, "cookies", COLUMNS),
+                    "截断长度 " + length);
+        }
+    }
+
+    @Test
+    void rejectsCorruptCellPointer() throws IOException {
+        Fixture db = new Fixture();
+        db.leaf(2, List.<Object[]>of(cookie(1, ".zhihu.com", "z_c0", new byte[0], 0L)));
+        byte[] bytes = Files.readAllBytes(db.write("Cookies", 2, "cookies", COOKIES_SQL));
+        // 第 2 页第一个单元格的偏移指向页外
+        bytes[PAGE_SIZE + 8] = (byte) 0xFF;
+        bytes[PAGE_SIZE + 9] = (byte) 0xF0;
+        Path file = dir.resolve("Corrupt");
+        Files.write(file, bytes);
+
+        assertThrows(IllegalArgumentException.class, () -> SqliteReader.readTable(file, "cookies", COLUMNS));
+    }
+
+    @Test
+    void rejectsCyclicPages() throws IOException {
+        // 内部页的子页指回自身
+        Fixture db = new Fixture();
+        db.interior(2, new int[]{2}, new long[]{1}, 2);
+        Path file = db.write("Cookies", 2, "cookies", COOKIES_SQL);
+
+        assertThrows(IllegalArgumentException.class, () -> SqliteReader.readTable(file, "cookies", COLUMNS));
+    }
+
+    private static Object[] cookie(long created, String host, String name, byte[] encrypted, long expires) {
+        return new Object[]{created, host, name, "", encrypted, "/", expires};
+    }
+
+    /**
+     * 按页构造数据库文件，第 1 页为 sqlite_master
+     */
+    private class Fixture {
+        private final List<byte[]> pages = new ArrayList<>();
+        private long nextRowid = 1;
+
+        private byte[] page(int pageNo) {
+            while (pages.size() < pageNo) {
+                pages.add(new byte[PAGE_SIZE]);
+            }
+            return pages.get(pageNo - 1);
+        }
+
+        /**
+         * 叶子表页，放不下的负载写入追加在文件末尾的溢出页
+         */
+        void leaf(int pageNo, List<Object[]> rows) {
+            page(pageNo);
+            List<byte[]> cells = new ArrayList<>();
+            for (Object[] row : rows) {
+                cells.add(leafCell(nextRowid++, record(row)));
+            }
+            writeCells(page(pageNo), pageNo == 1 ? 100 : 0, 0x0D, 8, cells);
+        }
+
+        /**
+         * 内部表页，children[i] 中的 rowid 不大于 keys[i]
+         */
+        void interior(int pageNo, int[] children, long[] keys, int rightChild) {
+            List<byte[]> cells = new ArrayList<>();
+            for (int i = 0; i < children.length; i++) {
+                ByteArrayOutputStream cell = new ByteArrayOutputStream();
+                writeInt(cell, children[i]);
+                writeVarint(cell, keys[i]);
+                cells.add(cell.toByteArray());
+            }
+            byte[] page = page(pageNo);
+            writeCells(page, 0, 0x05, 12, cells);
+            page[8] = (byte) (rightChild >>> 24);
+            page[9] = (byte) (rightChild >>> 16);
+            page[10] = (byte) (rightChild >>> 8);
+            page[11] = (byte) rightChild;
+        }
+
+        Path write(String fileName, int rootPage, String table, String sql) throws IOException {
+            page(rootPage);
+            long rowid = nextRowid;
+            nextRowid = 1;
+            leaf(1, List.<Object[]>of(new Object[]{"table", table, table, (long) rootPage, sql}));
+            nextRowid = rowid;
+
+            byte[] header = page(1);
+            byte[] magic = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(magic, 0, header, 0, magic.length);
+            header[16] = (byte) (PAGE_SIZE >>> 8);
+            header[17] = (byte) PAGE_SIZE;
+            header[18] = 1;
+            header[19] = 1;
+            header[21] = 64;
+            header[22] = 32;
+            header[23] = 32;
+            putInt(header, 24, 1);
+            putInt(header, 28, pages.size());
+            putInt(header, 40, 1);
+            putInt(header, 44, 4);
+            putInt(header, 56, 1);
+            putInt(header, 92, 1);
+            putInt(header, 96, 3040001);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (byte[] page : pages) {
+                out.write(page);
+            }
+            Path file = dir.resolve(fileName);
+            Files.write(file, out.toByteArray());
+            return file;
+        }
+
+        private byte[] leafCell(long rowid, byte[] payload) {
+            int usable = PAGE_SIZE;
+            int maxLocal = usable - 35;
+            ByteArrayOutputStream cell = new ByteArrayOutputStream();
+            writeVarint(cell, payload.length);
+            writeVarint(cell, rowid);
+            if (payload.length <= maxLocal) {
+                cell.writeBytes(payload);
+                return cell.toByteArray();
+            }
+            int minLocal = (usable - 12) * 32 / 255 - 23;
+            int local = minLocal + (payload.length - minLocal) % (usable - 4);
+            if (local > maxLocal) {
+                local = minLocal;
+            }
+            cell.write(payload, 0, local);
+            writeInt(cell, pages.size() + 1);
+            for (int offset = local; offset < payload.length; offset += usable - 4) {
+                byte[] overflow = new byte[PAGE_SIZE];
+                int length = Math.min(usable - 4, payload.length - offset);
+                boolean last = offset + length >= payload.length;
+                putInt(overflow, 0, last ? 0 : pages.size() + 2);
+                System.arraycopy(payload, offset, overflow, 4, length);
+                pages.add(overflow);
+            }
+            return cell.toByteArray();
+        }
+    }
+
+    private static void writeCells(byte[] page, int header, int type, int headerSize, List<byte[]> cells) {
+        int content = PAGE_SIZE;
+        page[header] = (byte) type;
+        page[header + 3] = (byte) (cells.size() >>> 8);
+        page[header + 4] = (byte) cells.size();
+        for (int i = 0; i < cells.size(); i++) {
+            byte[] cell = cells.get(i);
+            content -= cell.length;
+            System.arraycopy(cell, 0, page, content, cell.length);
+            int pointer = header + headerSize + i * 2;
+            page[pointer] = (byte) (content >>> 8);
+            page[pointer + 1] = (byte) content;
+        }
+        page[header + 5] = (byte) (content >>> 8);
+        page[header + 6] = (byte) content;
+    }
+
+    private static byte[] record(Object[] values) {
+        ByteArrayOutputStream types = new ByteArrayOutputStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (Object value : values) {
+            if (value == null) {
+                writeVarint(types, 0);
+            } else if (value instanceof Long number) {
+                if (number == 0 || number == 1) {
+                    writeVarint(types, 8 + number);
+                } else if (number >= Byte.MIN_VALUE && number <= Byte.MAX_VALUE) {
+                    writeVarint(types, 1);
+                    body.write(number.intValue());
+                } else {
+                    writeVarint(types, 6);
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        body.write((int) (number >>> shift));
+                    }
+                }
+            } else if (value instanceof String text) {
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                writeVarint(types, 13 + 2L * bytes.length);
+                body.writeBytes(bytes);
+            } else {
+                byte[] bytes = (byte[]) value;
+                writeVarint(types, 12 + 2L * bytes.length);
+                body.writeBytes(bytes);
+            }
+        }
+        int headerSize = types.size() + 1;
+        if (headerSize > 127) {
+            headerSize++;
+        }
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        writeVarint(record, headerSize);
+        record.writeBytes(types.toByteArray());
+        record.writeBytes(body.toByteArray());
+        return record.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        int length = 1;
+        while (length < 8 && (value >>> (7 * length)) != 0) {
+            length++;
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            int b = (int) ((value >>> (7 * i)) & 0x7F);
+            out.write(i > 0 ? b | 0x80 : b);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
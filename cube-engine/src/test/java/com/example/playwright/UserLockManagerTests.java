@@ -0,0 +1,104 @@
+package com.example.playwright;
+
+import com.playwright.utils.UserLockManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserLockManagerTests {
+
+    private static final int THREADS = 8;
+
+    private final UserLockManager lockManager = new UserLockManager();
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void differentUsersHoldTheirLocksAtTheSameTime() throws Exception {
+        // 每个线程都要等到所有线程都进入锁内才能返回，串行执行时会一直等到超时
+        CountDownLatch allInside = new CountDownLatch(THREADS);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            String userId = "user-" + i;
+            futures.add(executor.submit(() -> lockManager.callWithUserLock(userId, () -> {
+                allInside.countDown();
+                return allInside.await(10, TimeUnit.SECONDS);
+            })));
+        }
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get(15, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void sameUserIsSerialized() throws Exception {
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger maxInside = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(THREADS);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                started.countDown();
+                started.await();
+                return lockManager.callWithUserLock("same-user", () -> {
+                    maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                    Thread.yield();
+                    return inside.decrementAndGet();
+                });
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            assertEquals(0, future.get(15, TimeUnit.SECONDS));
+        }
+        assertEquals(1, maxInside.get());
+    }
+
+    @Test
+    void idleLocksAreEvicted() throws Exception {
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Integer> holder = executor.submit(() -> lockManager.callWithUserLock("user-a", () -> {
+            holding.countDown();
+            release.await();
+            return 1;
+        }));
+        assertTrue(holding.await(10, TimeUnit.SECONDS));
+        assertEquals(1, lockManager.getActiveUsers());
+
+        // 重入同一用户的锁不会提前回收
+        assertEquals(2, (int) lockManager.callWithUserLock("user-b",
+                () -> lockManager.callWithUserLock("user-b", () -> lockManager.getActiveUsers())));
+        assertEquals(1, lockManager.getActiveUsers());
+
+        release.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+        assertEquals(0, lockManager.getActiveUsers());
+    }
+
+    @Test
+    void failedActionReleasesTheLock() throws Exception {
+        try {
+            lockManager.callWithUserLock("user-a", () -> {
+                throw new IllegalStateException("失败");
+            });
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, lockManager.getActiveUsers());
+        assertEquals(1, (int) executor.submit(() -> lockManager.callWithUserLock("user-a", () -> 1)).get(10, TimeUnit.SECONDS));
+    }
+}
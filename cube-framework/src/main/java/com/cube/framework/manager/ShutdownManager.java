@@ -3,6 +3,7 @@ package com.cube.framework.manager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import com.cube.common.utils.WriteBehindBuffer;
 import javax.annotation.PreDestroy;
 
 /**
@@ -19,6 +20,7 @@ public class ShutdownManager
     public void destroy()
     {
         shutdownAsyncManager();
+        shutdownWriteBehindBuffers();
     }
 
     /**
@@ -36,4 +38,20 @@ public class ShutdownManager
             logger.error(e.getMessage(), e);
         }
     }
+
+    /**
+     * 写完日志写后缓冲中剩余的数据，需在异步任务停止之后执行
+     */
+    private void shutdownWriteBehindBuffers()
+    {
+        try
+        {
+            logger.info("====关闭日志写后缓冲====");
+            WriteBehindBuffer.shutdownAll();
+        }
+        catch (Exception e)
+        {
+            logger.error(e.getMessage(), e);
+        }
+    }
 }
@@ -1,8 +1,13 @@
 package com.cube.system.service.impl;
 
+import java.util.Date;
 import java.util.List;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import com.cube.common.utils.WriteBehindBuffer;
 import com.cube.system.domain.SysOperLog;
 import com.cube.system.mapper.SysOperLogMapper;
 import com.cube.system.service.ISysOperLogService;
@@ -18,15 +23,46 @@ public class SysOperLogServiceImpl implements ISysOperLogService
     @Autowired
     private SysOperLogMapper operLogMapper;
 
+    @Value("${writeBehind.capacity:10000}")
+    private int capacity;
+
+    @Value("${writeBehind.batchSize:200}")
+    private int batchSize;
+
+    @Value("${writeBehind.flushMillis:1000}")
+    private long flushMillis;
+
+    /**
+     * 操作日志写后缓冲
+     */
+    private WriteBehindBuffer<SysOperLog> operLogBuffer;
+
+    @PostConstruct
+    public void init()
+    {
+        operLogBuffer = new WriteBehindBuffer<>("sys_oper_log", capacity, batchSize, flushMillis,
+                list -> operLogMapper.insertOperlogBatch(list));
+    }
+
+    @PreDestroy
+    public void destroy()
+    {
+        operLogBuffer.shutdown();
+    }
+
     /**
-     * 新增操作日志
+     * 新增操作日志，先进入写后缓冲，由后台线程批量写入
      *
      * @param operLog 操作日志对象
      */
     @Override
     public void insertOperlog(SysOperLog operLog)
     {
-        operLogMapper.insertOperlog(operLog);
+        if (operLog.getOperTime() == null)
+        {
+            operLog.setOperTime(new Date());
+        }
+        operLogBuffer.offer(operLog);
     }
 
     /**
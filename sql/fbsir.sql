@@ -1936,7 +1936,8 @@ CREATE TABLE `wc_playwright_draft` (
     `share_url` varchar(255) DEFAULT NULL COMMENT '分享链接',
     `share_img_url` varchar(255) DEFAULT NULL COMMENT '分享图片链接',
     PRIMARY KEY (`id`) USING BTREE,
-    KEY `user_name` (`user_name`) USING BTREE
+    KEY `user_name` (`user_name`) USING BTREE,
+    KEY `idx_user_create_time` (`user_name`, `create_time`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 ROW_FORMAT=DYNAMIC;
 
 -- ----------------------------